@@ -35,6 +35,13 @@ public interface ProtocolPredictedDatapointService extends ContainerService {
   void updateValues(
       String assetId, String attributeName, List<ValueDatapoint<?>> valuesAndTimestamps);
 
+  /**
+   * Replace the predicted datapoints from the first to the last timestamp of the given datapoints
+   * in a single transaction, so datapoints of a previous forecast in that range are removed.
+   */
+  void replaceValues(
+      String assetId, String attributeName, List<ValueDatapoint<?>> valuesAndTimestamps);
+
   List<ValueDatapoint<?>> queryDatapoints(
       String assetId, String attributeName, AssetDatapointQuery datapointQuery);
 
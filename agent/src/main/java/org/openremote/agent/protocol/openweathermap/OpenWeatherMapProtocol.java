@@ -321,8 +321,8 @@ public class OpenWeatherMapProtocol
       List<ValueDatapoint<?>> predictedDatapoints =
           buildPredictedDatapoints(attributeRef, weatherDatapoints);
 
-      // Update the predicted datapoints for the attribute reference
-      predictedDatapointService.updateValues(
+      // Replace the previous forecast for the attribute reference
+      predictedDatapointService.replaceValues(
           attributeRef.getId(), attributeRef.getName(), predictedDatapoints);
     }
   }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.container.concurrent;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes tasks on a fixed number of single threaded lanes where the lane is selected by hashing a
+ * partition key; tasks with the same key are therefore executed one at a time in submission order
+ * without any locking, whilst tasks with different keys can execute concurrently on other lanes.
+ *
+ * <p>Each lane has a bounded queue and once full {@link #execute} throws a {@link
+ * RejectedExecutionException} rather than running the task on the calling thread.
+ */
+public class PartitionedExecutor {
+
+  protected final String name;
+  protected final int laneQueueSize;
+  protected final ThreadPoolExecutor[] lanes;
+
+  public PartitionedExecutor(String name, int laneCount, int laneQueueSize) {
+    if (laneCount <= 0) {
+      throw new IllegalArgumentException("Lane count must be greater than 0");
+    }
+    this.name = name;
+    this.laneQueueSize = laneQueueSize;
+    this.lanes = new ThreadPoolExecutor[laneCount];
+    ContainerThreadFactory threadFactory = new ContainerThreadFactory(name);
+
+    for (int i = 0; i < laneCount; i++) {
+      lanes[i] =
+          new ThreadPoolExecutor(
+              1,
+              1,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<>(laneQueueSize),
+              threadFactory,
+              new ThreadPoolExecutor.AbortPolicy());
+    }
+  }
+
+  /**
+   * Execute the task on the lane for the specified key.
+   *
+   * @throws RejectedExecutionException if the lane queue is full or the executor has been shutdown.
+   */
+  public void execute(String key, Runnable task) throws RejectedExecutionException {
+    lanes[getLaneIndex(key)].execute(task);
+  }
+
+  public int getLaneIndex(String key) {
+    return key == null ? 0 : Math.floorMod(key.hashCode(), lanes.length);
+  }
+
+  public int getLaneCount() {
+    return lanes.length;
+  }
+
+  /** Get the maximum number of tasks that can wait to be executed on each lane. */
+  public int getLaneQueueSize() {
+    return laneQueueSize;
+  }
+
+  /** Get the number of tasks waiting to be executed on the specified lane. */
+  public int getQueueSize(int laneIndex) {
+    return lanes[laneIndex].getQueue().size();
+  }
+
+  /** Get the number of tasks waiting to be executed across all lanes. */
+  public int getQueueSize() {
+    int size = 0;
+    for (ThreadPoolExecutor lane : lanes) {
+      size += lane.getQueue().size();
+    }
+    return size;
+  }
+
+  /** Stop accepting tasks and wait up to the specified time for queued tasks to complete. */
+  public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+    for (ThreadPoolExecutor lane : lanes) {
+      lane.shutdown();
+    }
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (ThreadPoolExecutor lane : lanes) {
+      if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{"
+        + "name='"
+        + name
+        + '\''
+        + ", lanes="
+        + lanes.length
+        + '}';
+  }
+}
@@ -52,6 +52,7 @@ import org.hibernate.Session;
 import org.hibernate.annotations.Formula;
 import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.jdbc.Work;
 import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
 import org.hibernate.jpa.boot.internal.PersistenceUnitInfoDescriptor;
 import org.openremote.container.message.MessageBrokerService;
@@ -483,6 +484,23 @@ public class PersistenceService implements ContainerService, Consumer<Persistenc
     }
   }
 
+  /**
+   * Do work on a connection in auto-commit mode, outside of any transaction; required for
+   * procedures that commit internally such as refreshing a continuous aggregate.
+   */
+  public void doAutoCommitWork(Work work) {
+    if (!(persistenceUnitProperties.get(AvailableSettings.DATASOURCE)
+        instanceof DataSource dataSource)) {
+      throw new IllegalStateException("No database DataSource is configured");
+    }
+    try (Connection connection = dataSource.getConnection()) {
+      connection.setAutoCommit(true);
+      work.execute(connection);
+    } catch (SQLException e) {
+      throw new IllegalStateException("Failed to do work outside of a transaction", e);
+    }
+  }
+
   public EntityManagerFactory getEntityManagerFactory() {
     return entityManagerFactory;
   }
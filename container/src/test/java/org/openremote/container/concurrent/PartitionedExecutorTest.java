@@ -0,0 +1,172 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.container.concurrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class PartitionedExecutorTest {
+
+  @Test
+  public void shouldExecuteTasksForTheSameKeyInSubmissionOrder() throws Exception {
+    PartitionedExecutor executor = new PartitionedExecutor("test", 4, 1000);
+    Map<String, List<Integer>> executed = new ConcurrentHashMap<>();
+    List<String> keys = List.of("asset1", "asset2", "asset3", "asset4", "asset5", "asset6");
+
+    for (int i = 0; i < 100; i++) {
+      int index = i;
+      for (String key : keys) {
+        executor.execute(
+            key, () -> executed.computeIfAbsent(key, k -> new ArrayList<>()).add(index));
+      }
+    }
+
+    assertTrue(executor.shutdown(10, TimeUnit.SECONDS));
+    for (String key : keys) {
+      List<Integer> expected = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        expected.add(i);
+      }
+      assertEquals(expected, executed.get(key), "Tasks for " + key + " out of order");
+    }
+  }
+
+  @Test
+  public void shouldExecuteTasksForTheSameKeyOnTheSameLane() throws Exception {
+    PartitionedExecutor executor = new PartitionedExecutor("test", 8, 1000);
+    Map<String, Set<String>> threadNames = new ConcurrentHashMap<>();
+
+    for (int i = 0; i < 50; i++) {
+      String key = "asset" + (i % 10);
+      assertEquals(executor.getLaneIndex(key), executor.getLaneIndex(new String(key)));
+      assertTrue(executor.getLaneIndex(key) >= 0 && executor.getLaneIndex(key) < 8);
+      executor.execute(
+          key,
+          () ->
+              threadNames
+                  .computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet())
+                  .add(Thread.currentThread().getName()));
+    }
+    assertEquals(0, executor.getLaneIndex(null));
+
+    assertTrue(executor.shutdown(10, TimeUnit.SECONDS));
+    assertEquals(10, threadNames.size());
+    for (Map.Entry<String, Set<String>> entry : threadNames.entrySet()) {
+      assertEquals(1, entry.getValue().size(), "Tasks for " + entry.getKey() + " used many lanes");
+    }
+    assertTrue(new HashSet<>(threadNames.values()).size() > 1, "All keys used the same lane");
+  }
+
+  @Test
+  public void shouldRejectTasksWhenTheLaneQueueIsFull() throws Exception {
+    PartitionedExecutor executor = new PartitionedExecutor("test", 1, 2);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger executed = new AtomicInteger();
+
+    executor.execute(
+        "asset1",
+        () -> {
+          started.countDown();
+          awaitQuietly(release);
+          executed.incrementAndGet();
+        });
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    executor.execute("asset1", executed::incrementAndGet);
+    executor.execute("asset2", executed::incrementAndGet);
+    assertEquals(2, executor.getQueueSize());
+
+    assertThrows(
+        RejectedExecutionException.class,
+        () -> executor.execute("asset3", executed::incrementAndGet));
+
+    release.countDown();
+    assertTrue(executor.shutdown(10, TimeUnit.SECONDS));
+    assertEquals(3, executed.get());
+  }
+
+  @Test
+  public void shouldDrainQueuedTasksOnShutdown() throws Exception {
+    PartitionedExecutor executor = new PartitionedExecutor("test", 2, 100);
+    AtomicInteger executed = new AtomicInteger();
+
+    for (int i = 0; i < 20; i++) {
+      executor.execute(
+          "asset" + i,
+          () -> {
+            sleepQuietly(10);
+            executed.incrementAndGet();
+          });
+    }
+
+    assertTrue(executor.shutdown(10, TimeUnit.SECONDS));
+    assertEquals(20, executed.get());
+    assertEquals(0, executor.getQueueSize());
+    assertThrows(
+        RejectedExecutionException.class,
+        () -> executor.execute("asset1", executed::incrementAndGet));
+  }
+
+  @Test
+  public void shouldReturnFalseWhenShutdownTimesOut() throws Exception {
+    PartitionedExecutor executor = new PartitionedExecutor("test", 1, 10);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger executed = new AtomicInteger();
+
+    executor.execute("asset1", () -> awaitQuietly(release));
+    executor.execute("asset1", executed::incrementAndGet);
+
+    assertFalse(executor.shutdown(50, TimeUnit.MILLISECONDS));
+    assertEquals(0, executed.get());
+
+    release.countDown();
+    assertTrue(executor.shutdown(10, TimeUnit.SECONDS));
+    assertEquals(1, executed.get());
+  }
+
+  protected static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  protected static void sleepQuietly(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -18,23 +18,43 @@
  */
 package org.openremote.manager.asset;
 
+import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.manager.asset.AttributeEventStageMetrics.*;
 import static org.openremote.model.attribute.AttributeWriteFailure.*;
+import static org.openremote.model.util.MapAccess.getInteger;
+import static org.openremote.model.util.MapAccess.getString;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
-import jakarta.validation.ConstraintViolation;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.apache.camel.AsyncCallback;
 import org.apache.camel.Exchange;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.builder.RouteConfigurationBuilder;
+import org.apache.camel.support.AsyncProcessorSupport;
+import org.openremote.container.concurrent.PartitionedExecutor;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.persistence.PersistenceService;
+import org.openremote.container.security.AuthContext;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.agent.AgentService;
 import org.openremote.manager.datapoint.AssetDatapointService;
@@ -44,15 +64,23 @@ import org.openremote.manager.event.EventSubscriptionAuthorizer;
 import org.openremote.manager.gateway.GatewayService;
 import org.openremote.manager.rules.RulesService;
 import org.openremote.manager.security.ManagerIdentityService;
+import org.openremote.manager.web.ManagerWebService;
 import org.openremote.model.Constants;
 import org.openremote.model.Container;
 import org.openremote.model.ContainerService;
+import org.openremote.model.PersistenceEvent;
 import org.openremote.model.asset.Asset;
+import org.openremote.model.asset.UserAssetLink;
 import org.openremote.model.attribute.Attribute;
 import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.attribute.AttributeEventDeadLetter;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.attribute.AttributeWriteFailure;
 import org.openremote.model.event.Event;
 import org.openremote.model.security.ClientRole;
+import org.openremote.model.security.Realm;
 import org.openremote.model.util.ValueUtil;
+import org.openremote.model.validation.AttributeValueValidator;
 import org.openremote.model.value.MetaItemType;
 
 /**
@@ -62,8 +90,11 @@ import org.openremote.model.value.MetaItemType;
  * continue being processed or not.
  *
  * <p>Any {@link AttributeEvent}s that fail to be processed will generate an {@link
- * AssetProcessingException} which will be logged; there is currently no dead letter queue or retry
- * processing.
+ * AssetProcessingException} which will be logged; events sent without waiting for a reply that fail
+ * with {@link AttributeWriteFailure#QUEUE_FULL} or {@link
+ * AttributeWriteFailure#STATE_STORAGE_FAILED} are added to an {@link
+ * AttributeEventDeadLetterStore} and retried (see {@link
+ * #OR_ATTRIBUTE_EVENT_DEAD_LETTER_MAX_SIZE}).
  *
  * <p>
  *
@@ -91,6 +122,54 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
   public static final String ATTRIBUTE_EVENT_ROUTE_CONFIG_ID = "attributeEvent";
   public static final int PRIORITY = AssetStorageService.PRIORITY + 1000;
   public static final String ATTRIBUTE_EVENT_PROCESSOR = "direct://AttributeEventProcessor";
+
+  /**
+   * Number of attribute event processing lanes; events are assigned to a lane by asset ID so events
+   * for the same asset are processed in order by a single thread.
+   */
+  public static final String OR_ATTRIBUTE_EVENT_THREADS = "OR_ATTRIBUTE_EVENT_THREADS";
+
+  public static final int OR_ATTRIBUTE_EVENT_THREADS_DEFAULT =
+      Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Maximum number of events waiting in each processing lane before events are rejected with
+   * {@link AttributeWriteFailure#QUEUE_FULL}.
+   */
+  public static final String OR_ATTRIBUTE_EVENT_QUEUE_SIZE = "OR_ATTRIBUTE_EVENT_QUEUE_SIZE";
+
+  public static final int OR_ATTRIBUTE_EVENT_QUEUE_SIZE_DEFAULT = 1000;
+
+  /**
+   * Per source rate limits and lane queue quotas for attribute events; see {@link
+   * AttributeEventAdmissionController} for the format. No limits are applied by default, e.g.
+   * <code>RulesEngine:0:50,AttributeLinkingService:0:50</code> only lets events generated by rules
+   * and attribute links occupy half of a lane queue so they are shed before other sources.
+   */
+  public static final String OR_ATTRIBUTE_EVENT_SOURCE_LIMITS = "OR_ATTRIBUTE_EVENT_SOURCE_LIMITS";
+
+  public static final String OR_ATTRIBUTE_EVENT_SOURCE_LIMITS_DEFAULT = "";
+
+  /**
+   * Maximum number of failed attribute events held for retry; set to 0 to disable the dead letter
+   * store and discard failed events.
+   */
+  public static final String OR_ATTRIBUTE_EVENT_DEAD_LETTER_MAX_SIZE =
+      "OR_ATTRIBUTE_EVENT_DEAD_LETTER_MAX_SIZE";
+
+  public static final int OR_ATTRIBUTE_EVENT_DEAD_LETTER_MAX_SIZE_DEFAULT = 10000;
+
+  /** Number of times a failed attribute event is retried before it is parked until replayed. */
+  public static final String OR_ATTRIBUTE_EVENT_RETRY_MAX_ATTEMPTS =
+      "OR_ATTRIBUTE_EVENT_RETRY_MAX_ATTEMPTS";
+
+  public static final int OR_ATTRIBUTE_EVENT_RETRY_MAX_ATTEMPTS_DEFAULT = 10;
+
+  /** Delay before the first retry of a failed attribute event; doubled on each further attempt. */
+  public static final String OR_ATTRIBUTE_EVENT_RETRY_BACKOFF_MILLIS =
+      "OR_ATTRIBUTE_EVENT_RETRY_BACKOFF_MILLIS";
+
+  public static final int OR_ATTRIBUTE_EVENT_RETRY_BACKOFF_MILLIS_DEFAULT = 1000;
   private static final System.Logger LOG = System.getLogger(AssetProcessingService.class.getName());
   protected final List<AttributeEventInterceptor> eventInterceptors = new ArrayList<>();
   protected TimerService timerService;
@@ -106,10 +185,47 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
   protected ClientEventService clientEventService;
   // Used in testing to detect if initial/startup processing has completed
   protected long lastProcessedEventTimestamp = System.currentTimeMillis();
-  protected ExecutorService executorService;
+  protected PartitionedExecutor eventExecutor;
+  protected AttributeEventAdmissionController admissionController;
+  protected ScheduledExecutorService scheduledExecutorService;
+  protected AttributeEventDeadLetterStore deadLetterStore;
+  protected ScheduledFuture<?> deadLetterRetryFuture;
   protected MeterRegistry meterRegistry;
   protected Timer eventTimer;
   protected Map<String, Counter> eventCounters;
+  protected AttributeEventStageMetrics stageMetrics;
+  // Attribute write authorization decisions by asset ID
+  protected final Cache<String, ConcurrentMap<WriteAuthorizationKey, Boolean>>
+      writeAuthorizationCache =
+          CacheBuilder.newBuilder()
+              .maximumSize(100000)
+              .expireAfterWrite(Duration.ofMillis(300000))
+              .build();
+
+  protected record WriteAuthorizationKey(
+      String userId, boolean restricted, String realm, String attributeName) {}
+
+  // Compiled attribute value validators by asset type, attribute and constraints meta
+  protected final Cache<AttributeValidatorKey, AttributeValueValidator> attributeValidatorCache =
+      CacheBuilder.newBuilder()
+          .maximumSize(10000)
+          .expireAfterWrite(Duration.ofMillis(600000))
+          .build();
+
+  protected record AttributeValidatorKey(
+      String assetType, String attributeName, String valueType, String constraintsJSON) {}
+
+  // Attributes with the COALESCE_EVENTS meta item (learnt as their events are processed), those
+  // that also store the data points of dropped events and the number of their events waiting in a
+  // lane
+  protected final Set<AttributeRef> coalescedAttributes = ConcurrentHashMap.newKeySet();
+  protected final Set<AttributeRef> coalescedDatapointAttributes = ConcurrentHashMap.newKeySet();
+  protected final ConcurrentMap<AttributeRef, Integer> pendingCoalescedEvents =
+      new ConcurrentHashMap<>();
+  // Completion of the latest event of each asset holding the asset lock; the lock is passed from
+  // one event to the next whilst their values are waiting to be committed
+  protected final ConcurrentMap<String, CompletableFuture<Boolean>> lockedAssetEvents =
+      new ConcurrentHashMap<>();
 
   @Override
   public int getPriority() {
@@ -129,7 +245,17 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
     assetAttributeLinkingService = container.getService(AttributeLinkingService.class);
     messageBrokerService = container.getService(MessageBrokerService.class);
     clientEventService = container.getService(ClientEventService.class);
-    executorService = container.getExecutor();
+    int eventThreads =
+        getInteger(
+            container.getConfig(), OR_ATTRIBUTE_EVENT_THREADS, OR_ATTRIBUTE_EVENT_THREADS_DEFAULT);
+    int eventQueueSize =
+        getInteger(
+            container.getConfig(),
+            OR_ATTRIBUTE_EVENT_QUEUE_SIZE,
+            OR_ATTRIBUTE_EVENT_QUEUE_SIZE_DEFAULT);
+    eventExecutor =
+        new PartitionedExecutor("AttributeEventProcessor", eventThreads, eventQueueSize);
+    LOG.log(System.Logger.Level.INFO, "Attribute event processor: " + eventExecutor);
     EventSubscriptionAuthorizer assetEventAuthorizer =
         AssetStorageService.assetInfoAuthorizer(identityService, assetStorageService);
 
@@ -141,115 +267,20 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
           return assetEventAuthorizer.authorise(requestedRealm, auth, subscription);
         });
 
-    // TODO: Introduce caching here similar to ActiveMQ auth caching
     clientEventService.addEventAuthorizer(
         (requestedRealm, authContext, event) -> {
           if (!(event instanceof AttributeEvent attributeEvent)) {
             return false;
           }
-
-          if (authContext != null && authContext.isSuperUser()) {
-            return true;
-          }
-
-          // Check realm against user
-          if (!identityService
-              .getIdentityProvider()
-              .isRealmActiveAndAccessible(authContext, requestedRealm)) {
-            LOG.log(
-                System.Logger.Level.INFO,
-                "Realm is inactive, inaccessible or nonexistent: " + requestedRealm);
-            return false;
+          Stage stage = stageMetrics.start(STAGE_AUTHORIZATION, attributeEvent);
+          try {
+            boolean authorized =
+                authorizeAttributeEvent(requestedRealm, authContext, attributeEvent);
+            stage.succeeded();
+            return authorized;
+          } finally {
+            stageMetrics.stop(stage);
           }
-
-          // Users must have write attributes role
-          if (authContext != null
-              && !authContext.hasResourceRole(
-                  ClientRole.WRITE_ATTRIBUTES.getValue(), Constants.KEYCLOAK_CLIENT_ID)) {
-            LOG.log(
-                System.Logger.Level.DEBUG,
-                "User doesn't have required role '"
-                    + ClientRole.WRITE_ATTRIBUTES
-                    + "': username="
-                    + authContext.getUsername()
-                    + ", userRealm="
-                    + authContext.getAuthenticatedRealmName());
-            return false;
-          }
-
-          // Have to load the asset and attribute to perform additional checks - should permissions
-          // be moved out of the
-          // asset model (possibly if the performance is determined to be not good enough)
-          // TODO: Use a targeted query to retrieve just the info we need
-          Asset<?> asset = assetStorageService.find(attributeEvent.getId());
-          Attribute<?> attribute =
-              asset != null ? asset.getAttribute(attributeEvent.getName()).orElse(null) : null;
-
-          if (asset == null || !asset.hasAttribute(attributeEvent.getName())) {
-            LOG.log(
-                System.Logger.Level.INFO,
-                () ->
-                    "Cannot authorize asset event as asset and/or attribute doesn't exist: "
-                        + attributeEvent.getRef());
-            return false;
-          } else if (!Objects.equals(requestedRealm, asset.getRealm())) {
-            LOG.log(
-                System.Logger.Level.INFO,
-                () ->
-                    "Asset is not in the requested realm: requestedRealm="
-                        + requestedRealm
-                        + ", ref="
-                        + attributeEvent.getRef());
-            return false;
-          }
-
-          if (authContext != null) {
-            // Check restricted user
-            if (identityService.getIdentityProvider().isRestrictedUser(authContext)) {
-              // Must be asset linked to user
-              if (!assetStorageService.isUserAsset(
-                  authContext.getUserId(), attributeEvent.getId())) {
-                LOG.log(
-                    System.Logger.Level.DEBUG,
-                    () ->
-                        "Restricted user is not linked to asset '"
-                            + attributeEvent.getId()
-                            + "': username="
-                            + authContext.getUsername()
-                            + ", userRealm="
-                            + authContext.getAuthenticatedRealmName());
-                return false;
-              }
-
-              if (attribute == null
-                  || !attribute.getMetaValue(MetaItemType.ACCESS_RESTRICTED_WRITE).orElse(false)) {
-                LOG.log(
-                    System.Logger.Level.DEBUG,
-                    () ->
-                        "Asset attribute doesn't support restricted write on '"
-                            + attributeEvent.getRef()
-                            + "': username="
-                            + authContext.getUsername()
-                            + ", userRealm="
-                            + authContext.getAuthenticatedRealmName());
-                return false;
-              }
-            }
-          } else {
-            // Check attribute has public write flag set to true for anonymous write
-            if (attribute == null
-                || !attribute.getMetaValue(MetaItemType.ACCESS_PUBLIC_WRITE).orElse(false)) {
-              LOG.log(
-                  System.Logger.Level.DEBUG,
-                  () ->
-                      "Asset doesn't support public write on '"
-                          + attributeEvent.getRef()
-                          + "': username=null");
-              return false;
-            }
-          }
-
-          return true;
         });
 
     // Add exception handling for attribute event processing that logs queue full exceptions and
@@ -273,14 +304,30 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
                         exchange -> {
                           Exception exception =
                               exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
+                          boolean queueFull = false;
 
                           if (exception instanceof RejectedExecutionException
                               || (exception instanceof IllegalStateException illegalStateException
                                   && "Queue full".equals(illegalStateException.getMessage()))) {
+                            queueFull = true;
                             exception =
                                 new AssetProcessingException(
                                     QUEUE_FULL, "Queue for this message is full");
                           }
+                          boolean stateStorageFailed =
+                              exception instanceof AssetProcessingException processingException
+                                  && processingException.getReason() == STATE_STORAGE_FAILED;
+
+                          // Nobody is waiting for the result of an InOnly exchange so retry
+                          // transient failures rather than losing the event; events shed by
+                          // admission control are deliberately not retried
+                          if (deadLetterStore != null
+                              && !exchange.getPattern().isOutCapable()
+                              && (queueFull || stateStorageFailed)
+                              && exchange.getIn().getBody() instanceof AttributeEvent event) {
+                            deadLetterStore.add(
+                                event, queueFull ? QUEUE_FULL : STATE_STORAGE_FAILED);
+                          }
 
                           // Make the exception available if MEP is InOut
                           exchange.getMessage().setBody(exception);
@@ -297,7 +344,8 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
                                   .append(body);
 
                           if (exception instanceof AssetProcessingException processingException) {
-                            if (processingException.getReason() == ASSET_NOT_FOUND) {
+                            if (processingException.getReason() == ASSET_NOT_FOUND
+                                || (processingException.getReason() == QUEUE_FULL && !queueFull)) {
                               LOG.log(System.Logger.Level.DEBUG, error::toString);
                             } else {
                               LOG.log(System.Logger.Level.WARNING, error::toString);
@@ -315,58 +363,542 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
       meterRegistry = container.getMeterRegistry();
       eventCounters = new ConcurrentHashMap<>();
       eventTimer = meterRegistry.timer("or.attributes", Tags.empty());
+      for (int i = 0; i < eventExecutor.getLaneCount(); i++) {
+        int lane = i;
+        meterRegistry.gauge(
+            "or.attributes.queue.size",
+            Tags.of("lane", Integer.toString(lane)),
+            eventExecutor,
+            executor -> executor.getQueueSize(lane));
+      }
+    }
+    stageMetrics = new AttributeEventStageMetrics(meterRegistry);
+
+    List<AttributeEventAdmissionController.SourceLimit> sourceLimits =
+        AttributeEventAdmissionController.parse(
+            getString(
+                container.getConfig(),
+                OR_ATTRIBUTE_EVENT_SOURCE_LIMITS,
+                OR_ATTRIBUTE_EVENT_SOURCE_LIMITS_DEFAULT));
+    if (!sourceLimits.isEmpty()) {
+      admissionController = new AttributeEventAdmissionController(sourceLimits, meterRegistry);
+      LOG.log(
+          System.Logger.Level.INFO, "Attribute event admission control: " + admissionController);
+    }
+
+    scheduledExecutorService = container.getScheduledExecutor();
+    int deadLetterMaxSize =
+        getInteger(
+            container.getConfig(),
+            OR_ATTRIBUTE_EVENT_DEAD_LETTER_MAX_SIZE,
+            OR_ATTRIBUTE_EVENT_DEAD_LETTER_MAX_SIZE_DEFAULT);
+    if (deadLetterMaxSize > 0) {
+      deadLetterStore =
+          new AttributeEventDeadLetterStore(
+              persistenceService
+                  .getStorageDir()
+                  .resolve("manager")
+                  .resolve("attribute_event_dead_letters.json"),
+              deadLetterMaxSize,
+              getInteger(
+                  container.getConfig(),
+                  OR_ATTRIBUTE_EVENT_RETRY_MAX_ATTEMPTS,
+                  OR_ATTRIBUTE_EVENT_RETRY_MAX_ATTEMPTS_DEFAULT),
+              getInteger(
+                  container.getConfig(),
+                  OR_ATTRIBUTE_EVENT_RETRY_BACKOFF_MILLIS,
+                  OR_ATTRIBUTE_EVENT_RETRY_BACKOFF_MILLIS_DEFAULT),
+              this::retryDeadLetter,
+              scheduledExecutorService,
+              meterRegistry);
+      LOG.log(System.Logger.Level.INFO, "Attribute event dead letter store: " + deadLetterStore);
+    } else {
+      LOG.log(System.Logger.Level.INFO, "Attribute event dead letter store disabled");
     }
+
+    container
+        .getService(ManagerWebService.class)
+        .addApiSingleton(
+            new AttributeEventDeadLetterResourceImpl(timerService, identityService, this));
   }
 
   @Override
-  public void start(Container container) throws Exception {}
+  public void start(Container container) throws Exception {
+    if (deadLetterStore != null) {
+      deadLetterStore.load();
+      deadLetterRetryFuture =
+          scheduledExecutorService.scheduleWithFixedDelay(
+              deadLetterStore::tick, 1000, 1000, TimeUnit.MILLISECONDS);
+    }
+  }
 
   @Override
-  public void stop(Container container) throws Exception {}
+  public void stop(Container container) throws Exception {
+    if (eventExecutor != null) {
+      eventExecutor.shutdown(10, TimeUnit.SECONDS);
+    }
+    if (deadLetterRetryFuture != null) {
+      deadLetterRetryFuture.cancel(false);
+      deadLetterRetryFuture = null;
+    }
+    if (deadLetterStore != null) {
+      // Persist anything rejected during shutdown so it is retried on the next start
+      deadLetterStore.write();
+    }
+  }
 
   @Override
   public void configure() throws Exception {
 
+    // Invalidate cached write authorization decisions and coalescing state that may depend on the
+    // modified entity
+    from(PERSISTENCE_TOPIC)
+        .routeId("Persistence-AttributeWriteAuthorization")
+        .filter(body().isInstanceOf(PersistenceEvent.class))
+        .process(
+            exchange -> {
+              PersistenceEvent<?> persistenceEvent =
+                  exchange.getIn().getBody(PersistenceEvent.class);
+
+              if (persistenceEvent.getEntity() instanceof Asset<?> asset) {
+                writeAuthorizationCache.invalidate(asset.getId());
+                // Relearnt when the next event for each attribute is processed
+                coalescedAttributes.removeIf(ref -> ref.getId().equals(asset.getId()));
+                coalescedDatapointAttributes.removeIf(ref -> ref.getId().equals(asset.getId()));
+              } else if (persistenceEvent.getEntity() instanceof UserAssetLink userAssetLink) {
+                writeAuthorizationCache.invalidate(userAssetLink.getId().getAssetId());
+              } else if (persistenceEvent.getEntity() instanceof Realm) {
+                writeAuthorizationCache.invalidateAll();
+              }
+            });
+
     // All user authorisation checks MUST have been carried out before events reach this queue
     from(ATTRIBUTE_EVENT_PROCESSOR)
         .routeId("AttributeEvent-Processor")
         .routeConfigurationId(ATTRIBUTE_EVENT_ROUTE_CONFIG_ID)
-        .threads()
-        .executorService(executorService)
         .process(
-            exchange -> {
-              AttributeEvent event = exchange.getIn().getBody(AttributeEvent.class);
-
-              if (event.getId() == null || event.getId().isEmpty())
-                throw new AssetProcessingException(ASSET_ID_MISSING);
-              if (event.getName() == null || event.getName().isEmpty())
-                throw new AssetProcessingException(ATTRIBUTE_NAME_MISSING);
-
-              if (event.getTimestamp() <= 0) {
-                // Set timestamp if not set
-                event.setTimestamp(timerService.getCurrentTimeMillis());
-              } else if (event.getTimestamp() > timerService.getCurrentTimeMillis()) {
-                // Use system time if event time is in the future (clock issue)
-                event.setTimestamp(timerService.getCurrentTimeMillis());
-              }
+            new AsyncProcessorSupport() {
+              @Override
+              public boolean process(Exchange exchange, AsyncCallback callback) {
+                AttributeEvent event = exchange.getIn().getBody(AttributeEvent.class);
+                String assetId = event != null ? event.getId() : null;
+                // Only events that nobody is waiting on are coalesced
+                AttributeRef coalesceRef =
+                    event != null
+                            && !exchange.getPattern().isOutCapable()
+                            && coalescedAttributes.contains(event.getRef())
+                        ? event.getRef()
+                        : null;
 
-              LOG.log(
-                  System.Logger.Level.TRACE,
-                  () -> ">>> Attribute event processing start: " + event);
-              Counter counter = getEventCounter(event.getSource());
-              if (counter != null) {
-                counter.increment();
+                // Events for the same asset always go to the same lane so are processed in order
+                try {
+                  if (admissionController != null) {
+                    admissionController.admit(
+                        event != null ? event.getSource() : null,
+                        getLaneQueueSize(assetId),
+                        eventExecutor.getLaneQueueSize());
+                  }
+                  if (coalesceRef != null) {
+                    pendingCoalescedEvents.merge(coalesceRef, 1, Integer::sum);
+                  }
+                  eventExecutor.execute(
+                      assetId,
+                      () ->
+                          processLaneExchange(exchange, event, coalesceRef)
+                              .whenComplete(
+                                  (processed, e) -> {
+                                    if (e != null) {
+                                      exchange.setException(unwrapCompletionException(e));
+                                    } else {
+                                      exchange.getIn().setBody(processed);
+                                    }
+                                    callback.done(false);
+                                  }));
+                } catch (AssetProcessingException | RejectedExecutionException e) {
+                  if (coalesceRef != null && e instanceof RejectedExecutionException) {
+                    decrementPendingCoalescedEvents(coalesceRef);
+                  }
+                  exchange.setException(e);
+                  callback.done(true);
+                  return true;
+                }
+                return false;
               }
+            });
+  }
+
+  /**
+   * Process the exchange on the lane of its asset; the lane doesn't wait for the returned future
+   * which completes once the event has been stored and published.
+   */
+  protected CompletableFuture<Boolean> processLaneExchange(
+      Exchange exchange, AttributeEvent event, AttributeRef coalesceRef) {
+    try {
+      // A newer event for the same attribute is queued behind this one
+      if (coalesceRef != null && decrementPendingCoalescedEvents(coalesceRef)) {
+        LOG.log(
+            System.Logger.Level.TRACE,
+            () -> "Attribute event superseded by a queued event: " + event);
+        return coalescedDatapointAttributes.contains(coalesceRef)
+            ? storeSupersededAttributeEvent(event)
+            : CompletableFuture.completedFuture(false);
+      }
+      return processExchange(exchange);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  protected CompletableFuture<Boolean> processExchange(Exchange exchange) {
+    AttributeEvent event = exchange.getIn().getBody(AttributeEvent.class);
 
-              boolean processed =
-                  eventTimer != null
-                      ? eventTimer.record(() -> processAttributeEvent(event))
-                      : processAttributeEvent(event);
+    if (event.getId() == null || event.getId().isEmpty())
+      throw new AssetProcessingException(ASSET_ID_MISSING);
+    if (event.getName() == null || event.getName().isEmpty())
+      throw new AssetProcessingException(ATTRIBUTE_NAME_MISSING);
 
-              exchange.getIn().setBody(processed);
+    if (event.getTimestamp() <= 0) {
+      // Set timestamp if not set
+      event.setTimestamp(timerService.getCurrentTimeMillis());
+    } else if (event.getTimestamp() > timerService.getCurrentTimeMillis()) {
+      // Use system time if event time is in the future (clock issue)
+      event.setTimestamp(timerService.getCurrentTimeMillis());
+    }
+
+    LOG.log(System.Logger.Level.TRACE, () -> ">>> Attribute event processing start: " + event);
+    Counter counter = getEventCounter(event.getSource());
+    if (counter != null) {
+      counter.increment();
+    }
+
+    Timer.Sample sample = eventTimer != null ? Timer.start(meterRegistry) : null;
+    return processAttributeEvent(event)
+        .whenComplete(
+            (processed, e) -> {
+              if (sample != null) {
+                sample.stop(eventTimer);
+              }
             });
   }
 
+  /** Checks whether the user can write the attribute of an inbound attribute event. */
+  protected boolean authorizeAttributeEvent(
+      String requestedRealm, AuthContext authContext, AttributeEvent attributeEvent) {
+    if (authContext != null && authContext.isSuperUser()) {
+      return true;
+    }
+
+    // Check realm against user
+    if (!identityService
+        .getIdentityProvider()
+        .isRealmActiveAndAccessible(authContext, requestedRealm)) {
+      LOG.log(
+          System.Logger.Level.INFO,
+          "Realm is inactive, inaccessible or nonexistent: " + requestedRealm);
+      return false;
+    }
+
+    // Users must have write attributes role
+    if (authContext != null
+        && !authContext.hasResourceRole(
+            ClientRole.WRITE_ATTRIBUTES.getValue(), Constants.KEYCLOAK_CLIENT_ID)) {
+      LOG.log(
+          System.Logger.Level.DEBUG,
+          "User doesn't have required role '"
+              + ClientRole.WRITE_ATTRIBUTES
+              + "': username="
+              + authContext.getUsername()
+              + ", userRealm="
+              + authContext.getAuthenticatedRealmName());
+      return false;
+    }
+
+    // Remaining checks depend on the asset so the decision is cached until the asset, a user asset
+    // link for the asset or a realm is modified
+    boolean restricted =
+        authContext != null && identityService.getIdentityProvider().isRestrictedUser(authContext);
+    WriteAuthorizationKey key =
+        new WriteAuthorizationKey(
+            authContext != null ? authContext.getUserId() : null,
+            restricted,
+            requestedRealm,
+            attributeEvent.getName());
+
+    ConcurrentMap<WriteAuthorizationKey, Boolean> decisions;
+    try {
+      decisions = writeAuthorizationCache.get(attributeEvent.getId(), ConcurrentHashMap::new);
+    } catch (ExecutionException e) {
+      LOG.log(System.Logger.Level.WARNING, "Failed to authorize attribute write", e);
+      return false;
+    }
+
+    Boolean authorized = decisions.get(key);
+    if (authorized == null) {
+      // Loads the asset so must not run inside the map compute which would block other writers;
+      // if the asset is invalidated meanwhile the decision goes into the discarded map
+      authorized =
+          authorizeAssetAttributeWrite(requestedRealm, authContext, restricted, attributeEvent);
+      Boolean existing = decisions.putIfAbsent(key, authorized);
+      if (existing != null) {
+        authorized = existing;
+      }
+    }
+    return authorized;
+  }
+
+  /**
+   * Performs the asset dependent checks of an inbound attribute write; the result is cached in
+   * {@link #writeAuthorizationCache} by the event authorizer so must only depend on the asset, the
+   * user asset links of the asset and the arguments.
+   */
+  protected boolean authorizeAssetAttributeWrite(
+      String requestedRealm,
+      AuthContext authContext,
+      boolean restricted,
+      AttributeEvent attributeEvent) {
+    // Have to load the asset and attribute to perform additional checks - should permissions
+    // be moved out of the
+    // asset model (possibly if the performance is determined to be not good enough)
+    // TODO: Use a targeted query to retrieve just the info we need
+    Asset<?> asset = assetStorageService.find(attributeEvent.getId());
+    Attribute<?> attribute =
+        asset != null ? asset.getAttribute(attributeEvent.getName()).orElse(null) : null;
+
+    if (asset == null || !asset.hasAttribute(attributeEvent.getName())) {
+      LOG.log(
+          System.Logger.Level.INFO,
+          () ->
+              "Cannot authorize asset event as asset and/or attribute doesn't exist: "
+                  + attributeEvent.getRef());
+      return false;
+    } else if (!Objects.equals(requestedRealm, asset.getRealm())) {
+      LOG.log(
+          System.Logger.Level.INFO,
+          () ->
+              "Asset is not in the requested realm: requestedRealm="
+                  + requestedRealm
+                  + ", ref="
+                  + attributeEvent.getRef());
+      return false;
+    }
+
+    if (authContext != null) {
+      // Check restricted user
+      if (restricted) {
+        // Must be asset linked to user
+        if (!assetStorageService.isUserAsset(authContext.getUserId(), attributeEvent.getId())) {
+          LOG.log(
+              System.Logger.Level.DEBUG,
+              () ->
+                  "Restricted user is not linked to asset '"
+                      + attributeEvent.getId()
+                      + "': username="
+                      + authContext.getUsername()
+                      + ", userRealm="
+                      + authContext.getAuthenticatedRealmName());
+          return false;
+        }
+
+        if (attribute == null
+            || !attribute.getMetaValue(MetaItemType.ACCESS_RESTRICTED_WRITE).orElse(false)) {
+          LOG.log(
+              System.Logger.Level.DEBUG,
+              () ->
+                  "Asset attribute doesn't support restricted write on '"
+                      + attributeEvent.getRef()
+                      + "': username="
+                      + authContext.getUsername()
+                      + ", userRealm="
+                      + authContext.getAuthenticatedRealmName());
+          return false;
+        }
+      }
+    } else {
+      // Check attribute has public write flag set to true for anonymous write
+      if (attribute == null
+          || !attribute.getMetaValue(MetaItemType.ACCESS_PUBLIC_WRITE).orElse(false)) {
+        LOG.log(
+            System.Logger.Level.DEBUG,
+            () ->
+                "Asset doesn't support public write on '"
+                    + attributeEvent.getRef()
+                    + "': username=null");
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  protected static boolean isRetryable(AttributeWriteFailure reason) {
+    return reason == QUEUE_FULL || reason == STATE_STORAGE_FAILED;
+  }
+
+  /**
+   * Get the lane queue size of the lane that will process events for the specified asset; used for
+   * admission control.
+   */
+  protected int getLaneQueueSize(String assetId) {
+    return eventExecutor.getQueueSize(eventExecutor.getLaneIndex(assetId));
+  }
+
+  /**
+   * Store the value of a coalesced event that has been superseded by a queued event as a data
+   * point; the value is coerced and validated as when the event is processed but it isn't applied,
+   * intercepted or published.
+   */
+  protected CompletableFuture<Boolean> storeSupersededAttributeEvent(AttributeEvent event) {
+    return withAttributeEventLock(
+        event,
+        () -> {
+          AttributeEvent enrichedEvent =
+              persistenceService.doReturningTransaction(
+                  em -> enrichSupersededAttributeEvent(em, event));
+          assetDatapointService.onAttributeEvent(enrichedEvent);
+          return CompletableFuture.completedFuture(null);
+        });
+  }
+
+  protected AttributeEvent enrichSupersededAttributeEvent(EntityManager em, AttributeEvent event) {
+    Asset<?> asset = assetStorageService.findAttributeState(em, event.getId());
+    if (asset == null) {
+      throw new AssetProcessingException(ASSET_NOT_FOUND, event.getId());
+    }
+    Attribute<Object> attribute =
+        asset
+            .getAttribute(event.getName())
+            .orElseThrow(
+                () -> new AssetProcessingException(ATTRIBUTE_NOT_FOUND, event.getRef().toString()));
+
+    Object value = null;
+    if (event.getValue().isPresent()) {
+      value =
+          ValueUtil.getValueCoerced(event.getValue().get(), attribute.getTypeClass())
+              .orElseThrow(
+                  () ->
+                      new AssetProcessingException(
+                          INVALID_VALUE,
+                          "Superseded event value cannot be coerced: " + event.getRef()));
+    }
+    AttributeValueValidator validator = getAttributeValueValidator(asset, attribute);
+    if (!validator.isEmpty() && !validator.isValid(value, timerService.getNow())) {
+      throw new AssetProcessingException(
+          INVALID_VALUE, "Superseded event value failed constraint validation: " + event.getRef());
+    }
+
+    // Same timestamp correction as when the event is processed
+    long now = timerService.getCurrentTimeMillis();
+    long timestamp =
+        event.getTimestamp() <= 0 || event.getTimestamp() > now ? now : event.getTimestamp();
+
+    return new AttributeEvent(
+        asset,
+        attribute,
+        event.getSource(),
+        value,
+        timestamp,
+        attribute.getValue().orElse(null),
+        attribute.getTimestamp().orElse(0L));
+  }
+
+  /**
+   * Decrement the number of queued events for a coalesced attribute.
+   *
+   * @return <code>true</code> if there are still more events queued for the attribute.
+   */
+  protected boolean decrementPendingCoalescedEvents(AttributeRef ref) {
+    return pendingCoalescedEvents.computeIfPresent(ref, (k, count) -> count > 1 ? count - 1 : null)
+        != null;
+  }
+
+  /**
+   * Get the cached validator for values of the specified attribute; the validator is compiled once
+   * for each asset type, attribute and {@link MetaItemType#CONSTRAINTS} combination.
+   */
+  protected AttributeValueValidator getAttributeValueValidator(
+      Asset<?> asset, Attribute<?> attribute) {
+    String constraintsJSON =
+        AttributeValueValidator.getMetaConstraints(attribute)
+            .flatMap(ValueUtil::asJSON)
+            .orElse(null);
+    AttributeValidatorKey key =
+        new AttributeValidatorKey(
+            asset.getType(), attribute.getName(), attribute.getType().getName(), constraintsJSON);
+
+    try {
+      return attributeValidatorCache.get(
+          key,
+          () ->
+              AttributeValueValidator.compile(
+                  ValueUtil.getAssetInfo(asset.getType())
+                      .map(
+                          assetInfo ->
+                              assetInfo.getAttributeDescriptors().get(attribute.getName()))
+                      .orElse(null),
+                  attribute.getType(),
+                  attribute));
+    } catch (ExecutionException e) {
+      throw new AssetProcessingException(
+          INVALID_VALUE, "Failed to compile attribute value validator: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Re-process a dead letter on the lane for its asset (bypassing the route so a failure is
+   * returned to the store rather than added again).
+   */
+  protected void retryDeadLetter(AttributeEventDeadLetter deadLetter) {
+    AttributeEvent event = deadLetter.toEvent();
+    try {
+      eventExecutor.execute(
+          event.getId(),
+          () ->
+              processAttributeEvent(event)
+                  .whenComplete(
+                      (processed, e) -> {
+                        Throwable cause = e != null ? unwrapCompletionException(e) : null;
+                        if (cause == null) {
+                          deadLetterStore.remove(deadLetter);
+                        } else if (cause instanceof AssetProcessingException processingException
+                            && isRetryable(processingException.getReason())) {
+                          deadLetterStore.retryFailed(deadLetter, processingException.getReason());
+                        } else if (cause instanceof AssetProcessingException processingException) {
+                          deadLetterStore.remove(deadLetter);
+                          LOG.log(
+                              System.Logger.Level.WARNING,
+                              "Attribute event retry failed: reason="
+                                  + processingException.getReason()
+                                  + ", event="
+                                  + event
+                                  + ", error="
+                                  + processingException.getMessage());
+                        } else {
+                          deadLetterStore.remove(deadLetter);
+                          LOG.log(
+                              System.Logger.Level.WARNING,
+                              "Attribute event retry failed: " + event,
+                              cause);
+                        }
+                      }));
+    } catch (RejectedExecutionException e) {
+      deadLetterStore.retryFailed(deadLetter, QUEUE_FULL);
+    }
+  }
+
+  /** Get the store of failed attribute events or <code>null</code> if it is disabled. */
+  public AttributeEventDeadLetterStore getDeadLetterStore() {
+    return deadLetterStore;
+  }
+
+  /**
+   * Retry all attribute events that exhausted their retry attempts.
+   *
+   * @return The number of events scheduled for retry.
+   */
+  public int replayDeadLetters() {
+    return deadLetterStore != null ? deadLetterStore.replay() : 0;
+  }
+
   protected Counter getEventCounter(String source) {
     if (eventCounters == null) {
       return null;
@@ -405,12 +937,14 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
   /**
    * The {@link AttributeEvent} is passed to each registered {@link AttributeEventInterceptor} and
    * if no interceptor handles the event then the {@link Attribute} value is updated in the DB with
-   * the new event value and timestamp.
+   * the new event value and timestamp; when {@link
+   * AssetStorageService#OR_ATTRIBUTE_VALUE_BATCH_WINDOW_MILLIS} is set the update is grouped with
+   * those of other assets and the returned future completes once it has been committed and the
+   * event published.
    */
-  protected boolean processAttributeEvent(AttributeEvent event) throws AssetProcessingException {
-
-    return assetStorageService.withAssetLock(
-        event.getId(),
+  protected CompletableFuture<Boolean> processAttributeEvent(AttributeEvent event) {
+    return withAttributeEventLock(
+        event,
         () -> {
           long startMillis = System.currentTimeMillis();
           // Need to record time here otherwise an infinite loop generated inside one of the
@@ -418,170 +952,349 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
           // is not updated so tests can't then detect the problem.
           lastProcessedEventTimestamp = startMillis;
 
-          Event result =
-              persistenceService.doReturningTransaction(
-                  em -> {
-                    // TODO: Retrieve optimised DTO rather than whole asset
-                    Asset<?> asset = assetStorageService.find(em, event.getId(), true);
-
-                    if (asset == null) {
-                      throw new AssetProcessingException(ASSET_NOT_FOUND, event.getId());
-                    }
-
-                    Attribute<Object> attribute =
-                        asset
-                            .getAttribute(event.getName())
-                            .orElseThrow(
-                                () ->
-                                    new AssetProcessingException(
-                                        ATTRIBUTE_NOT_FOUND, event.getRef().toString()));
-
-                    // Type coercion
-                    Object value =
-                        event
-                            .getValue()
-                            .map(
-                                eventValue -> {
-                                  Class<?> attributeValueType = attribute.getTypeClass();
-                                  return ValueUtil.getValueCoerced(eventValue, attributeValueType)
-                                      .orElseThrow(
-                                          () -> {
-                                            String msg =
-                                                "Event processing failed unable to coerce value into the correct value type: realm="
-                                                    + event.getRealm()
-                                                    + ", attribute="
-                                                    + event.getRef()
-                                                    + ", event value type="
-                                                    + eventValue.getClass()
-                                                    + ", attribute value type="
-                                                    + attributeValueType;
-                                            return new AssetProcessingException(INVALID_VALUE, msg);
-                                          });
-                                })
-                            .orElse(null);
-                    event.setValue(value);
-
-                    AttributeEvent enrichedEvent =
-                        new AttributeEvent(
-                            asset,
-                            attribute,
-                            event.getSource(),
-                            event.getValue().orElse(null),
-                            event.getTimestamp(),
-                            attribute.getValue().orElse(null),
-                            attribute.getTimestamp().orElse(0L));
-
-                    // Do standard JSR-380 validation on the event
-                    Set<ConstraintViolation<AttributeEvent>> validationFailures =
-                        ValueUtil.validate(enrichedEvent);
-
-                    if (!validationFailures.isEmpty()) {
-                      String msg =
-                          "Event processing failed value failed constraint validation: realm="
-                              + enrichedEvent.getRealm()
-                              + ", attribute="
-                              + enrichedEvent.getRef()
-                              + ", event value type="
-                              + enrichedEvent
-                                  .getValue()
-                                  .map(v -> v.getClass().getName())
-                                  .orElse("null")
-                              + ", attribute value type="
-                              + enrichedEvent.getTypeClass();
-                      throw new AssetProcessingException(INVALID_VALUE, msg);
-                    }
-
-                    // TODO: Remove AttributeExecuteStatus
-                    //            // For executable attributes, non-sensor sources can set a
-                    // writable attribute execute status
-                    //            if (attribute.getType() == ValueType.EXECUTION_STATUS && source !=
-                    // SENSOR) {
-                    //                Optional<AttributeExecuteStatus> status = event.getValue()
-                    //                    .flatMap(ValueUtil::getString)
-                    //                    .flatMap(AttributeExecuteStatus::fromString);
-                    //
-                    //                if (status.isPresent() && !status.get().isWrite()) {
-                    //                    throw new
-                    // AssetProcessingException(INVALID_ATTRIBUTE_EXECUTE_STATUS);
-                    //                }
-                    //            }
-
-                    String interceptorName = null;
-                    boolean intercepted = false;
-
-                    for (AttributeEventInterceptor interceptor : eventInterceptors) {
-                      try {
-                        intercepted = interceptor.intercept(em, enrichedEvent);
-                      } catch (AssetProcessingException ex) {
-                        throw new AssetProcessingException(
-                            ex.getReason(),
-                            "Interceptor '" + interceptor + "' error=" + ex.getMessage());
-                      } catch (Throwable t) {
-                        throw new AssetProcessingException(
-                            INTERCEPTOR_FAILURE,
-                            "Interceptor '"
-                                + interceptor
-                                + "' uncaught exception error="
-                                + t.getMessage(),
-                            t);
-                      }
-                      if (intercepted) {
-                        interceptorName = interceptor.getName();
-                        break;
-                      }
-                    }
-
-                    Event eventToPublish = null;
-                    if (intercepted) {
-                      LOG.log(
-                          System.Logger.Level.TRACE,
-                          "Event intercepted: interceptor="
-                              + interceptorName
-                              + ", ref="
-                              + enrichedEvent.getRef()
-                              + ", source="
-                              + enrichedEvent.getSource());
-                    } else {
-                      if (enrichedEvent.isOutdated()) {
-                        LOG.log(
-                            System.Logger.Level.INFO,
-                            () ->
-                                "Event is older than current attribute value so marking as outdated: ref="
-                                    + enrichedEvent.getRef()
-                                    + ", event="
-                                    + Instant.ofEpochMilli(enrichedEvent.getTimestamp())
-                                    + ", previous="
-                                    + Instant.ofEpochMilli(enrichedEvent.getOldValueTimestamp()));
-                        // Generate an event for this so internal subscribers can act on it if
-                        // needed
-                        eventToPublish = new OutdatedAttributeEvent(enrichedEvent);
-                      } else {
-                        if (assetStorageService.updateAttributeValue(em, enrichedEvent)) {
-                          eventToPublish = enrichedEvent;
-                        } else {
+          try {
+            Event result = doProcessAttributeEvent(event, startMillis);
+
+            if (result instanceof AttributeEvent enrichedEvent
+                && assetStorageService.isAttributeValueBatchingEnabled()) {
+              Stage dbUpdateStage = stageMetrics.start(STAGE_DB_UPDATE, enrichedEvent);
+              return assetStorageService
+                  .updateAttributeValue(enrichedEvent)
+                  .thenApply(
+                      stored -> {
+                        if (!stored) {
                           throw new AssetProcessingException(
                               STATE_STORAGE_FAILED, "database update failed, no rows updated");
                         }
-                      }
-                    }
-
-                    if (LOG.isLoggable(System.Logger.Level.DEBUG)) {
-                      long processingMillis = System.currentTimeMillis() - startMillis;
-                      LOG.log(
-                          System.Logger.Level.DEBUG,
-                          "<<< Attribute event processed in "
-                              + processingMillis
-                              + "ms: processor="
-                              + Thread.currentThread().getName()
-                              + ", event="
-                              + enrichedEvent);
-                    }
-                    return eventToPublish;
-                  });
-          if (result != null) {
-            clientEventService.publishEvent(result);
+                        dbUpdateStage.succeeded();
+                        return result;
+                      })
+                  .whenComplete((stored, e) -> stageMetrics.stop(dbUpdateStage));
+            }
+            return CompletableFuture.completedFuture(result);
+          } catch (PersistenceException e) {
+            assetStorageService.invalidateAttributeState(event.getId());
+            throw new AssetProcessingException(
+                STATE_STORAGE_FAILED, "database error: " + e.getMessage(), e);
+          } catch (RuntimeException e) {
+            // Cached state may no longer reflect what was committed so force a reload
+            assetStorageService.invalidateAttributeState(event.getId());
+            throw e;
+          }
+        });
+  }
+
+  /**
+   * Run the task of an attribute event whilst holding the asset lock and then publish the event it
+   * returns (if any) once the earlier events of the asset have completed.
+   *
+   * <p>Events for the same asset are already serialised by the processing lanes so the asset lock
+   * is uncontended between events; it is still required to exclude concurrent asset merges and
+   * deletes from when the cached attribute state is read until the value has been committed. The
+   * lane doesn't wait for values written by the group commit stage so the lock is passed on to the
+   * next event of the asset and only released once the last of them has completed (or sooner if
+   * another thread is waiting for it).
+   *
+   * @return A future that completes with whether or not an event was published.
+   */
+  protected CompletableFuture<Boolean> withAttributeEventLock(
+      AttributeEvent event, Supplier<CompletableFuture<Event>> task) {
+    String assetId = event.getId();
+    CompletableFuture<Boolean> completion = new CompletableFuture<>();
+    CompletableFuture<Boolean> previous;
+
+    Stage lockWaitStage = stageMetrics.start(STAGE_LOCK_WAIT, event);
+    try {
+      previous = lockAssetForEvent(assetId, completion);
+      lockWaitStage.succeeded();
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    } finally {
+      stageMetrics.stop(lockWaitStage);
+    }
+
+    CompletableFuture<Event> result;
+    try {
+      result = task.get();
+    } catch (RuntimeException e) {
+      result = CompletableFuture.failedFuture(e);
+    }
+    if (previous != null) {
+      // Keep the publishing order of the asset even when an earlier event failed
+      CompletableFuture<Event> taskResult = result;
+      result = previous.handle((processed, e) -> null).thenCompose(ignored -> taskResult);
+    }
+
+    result
+        .thenApply(
+            eventToPublish -> {
+              if (eventToPublish != null) {
+                Stage publishStage = stageMetrics.start(STAGE_PUBLISH, event);
+                try {
+                  clientEventService.publishEvent(eventToPublish);
+                  publishStage.succeeded();
+                } finally {
+                  stageMetrics.stop(publishStage);
+                }
+              }
+              return eventToPublish != null;
+            })
+        .whenComplete(
+            (processed, e) -> {
+              unlockAssetForEvent(assetId, completion);
+              if (e != null) {
+                completion.completeExceptionally(unwrapCompletionException(e));
+              } else {
+                completion.complete(processed);
+              }
+            });
+    return completion;
+  }
+
+  /**
+   * Acquire the asset lock for an event or take it over from the previous event of the asset if
+   * that still holds it; it isn't taken over when another thread (e.g. an asset merge) is waiting
+   * for it so that thread isn't starved by a steady stream of events.
+   *
+   * @return The completion of the event the lock was taken over from or <code>null</code>.
+   */
+  protected CompletableFuture<Boolean> lockAssetForEvent(
+      String assetId, CompletableFuture<Boolean> completion) {
+    AtomicReference<CompletableFuture<Boolean>> previous = new AtomicReference<>();
+
+    if (!assetStorageService.isAssetLockContended(assetId)) {
+      lockedAssetEvents.computeIfPresent(
+          assetId,
+          (id, lockedCompletion) -> {
+            previous.set(lockedCompletion);
+            return completion;
+          });
+    }
+    if (previous.get() == null) {
+      assetStorageService.lockAsset(assetId);
+      lockedAssetEvents.put(assetId, completion);
+    }
+    return previous.get();
+  }
+
+  /** Release the asset lock of an event unless a later event of the asset has taken it over. */
+  protected void unlockAssetForEvent(String assetId, CompletableFuture<Boolean> completion) {
+    if (lockedAssetEvents.remove(assetId, completion)) {
+      assetStorageService.unlockAsset(assetId);
+    }
+  }
+
+  protected static Throwable unwrapCompletionException(Throwable e) {
+    return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+  }
+
+  /**
+   * Enriches, validates, intercepts and stores the event in a single transaction (unless attribute
+   * value group commit is enabled in which case the caller must store the returned event); the
+   * asset lock must be held by the caller.
+   *
+   * @return The event to publish or <code>null</code> if the event was intercepted.
+   */
+  protected Event doProcessAttributeEvent(AttributeEvent event, long startMillis) {
+    return persistenceService.doReturningTransaction(
+        em -> {
+          Stage stage = stageMetrics.start(STAGE_ASSET_LOAD, event);
+          Asset<?> asset;
+          Attribute<Object> attribute;
+          try {
+            asset = assetStorageService.findAttributeState(em, event.getId());
+
+            if (asset == null) {
+              throw new AssetProcessingException(ASSET_NOT_FOUND, event.getId());
+            }
+
+            attribute =
+                asset
+                    .getAttribute(event.getName())
+                    .orElseThrow(
+                        () ->
+                            new AssetProcessingException(
+                                ATTRIBUTE_NOT_FOUND, event.getRef().toString()));
+            stage.succeeded();
+          } finally {
+            stageMetrics.stop(stage);
+          }
+
+          if (attribute.getMetaValue(MetaItemType.COALESCE_EVENTS).orElse(false)) {
+            coalescedAttributes.add(event.getRef());
+          } else {
+            coalescedAttributes.remove(event.getRef());
+          }
+          if (attribute
+              .getMetaValue(MetaItemType.COALESCE_EVENTS_STORE_DATA_POINTS)
+              .orElse(false)) {
+            coalescedDatapointAttributes.add(event.getRef());
+          } else {
+            coalescedDatapointAttributes.remove(event.getRef());
+          }
+
+          // Type coercion
+          stage = stageMetrics.start(STAGE_COERCION, event);
+          try {
+            Object value =
+                event
+                    .getValue()
+                    .map(
+                        eventValue -> {
+                          Class<?> attributeValueType = attribute.getTypeClass();
+                          return ValueUtil.getValueCoerced(eventValue, attributeValueType)
+                              .orElseThrow(
+                                  () -> {
+                                    String msg =
+                                        "Event processing failed unable to coerce value into the correct value type: realm="
+                                            + event.getRealm()
+                                            + ", attribute="
+                                            + event.getRef()
+                                            + ", event value type="
+                                            + eventValue.getClass()
+                                            + ", attribute value type="
+                                            + attributeValueType;
+                                    return new AssetProcessingException(INVALID_VALUE, msg);
+                                  });
+                        })
+                    .orElse(null);
+            event.setValue(value);
+            stage.succeeded();
+          } finally {
+            stageMetrics.stop(stage);
+          }
+
+          AttributeEvent enrichedEvent =
+              new AttributeEvent(
+                  asset,
+                  attribute,
+                  event.getSource(),
+                  event.getValue().orElse(null),
+                  event.getTimestamp(),
+                  attribute.getValue().orElse(null),
+                  attribute.getTimestamp().orElse(0L));
+
+          // Validate the value against the compiled constraints of the attribute
+          stage = stageMetrics.start(STAGE_VALIDATION, event);
+          try {
+            AttributeValueValidator validator = getAttributeValueValidator(asset, attribute);
+
+            if (!validator.isEmpty()
+                && !validator.isValid(
+                    enrichedEvent.getValue().orElse(null), timerService.getNow())) {
+              String msg =
+                  "Event processing failed value failed constraint validation: realm="
+                      + enrichedEvent.getRealm()
+                      + ", attribute="
+                      + enrichedEvent.getRef()
+                      + ", event value type="
+                      + enrichedEvent.getValue().map(v -> v.getClass().getName()).orElse("null")
+                      + ", attribute value type="
+                      + enrichedEvent.getTypeClass();
+              throw new AssetProcessingException(INVALID_VALUE, msg);
+            }
+            stage.succeeded();
+          } finally {
+            stageMetrics.stop(stage);
+          }
+
+          // TODO: Remove AttributeExecuteStatus
+          //            // For executable attributes, non-sensor sources can set a
+          // writable attribute execute status
+          //            if (attribute.getType() == ValueType.EXECUTION_STATUS && source !=
+          // SENSOR) {
+          //                Optional<AttributeExecuteStatus> status = event.getValue()
+          //                    .flatMap(ValueUtil::getString)
+          //                    .flatMap(AttributeExecuteStatus::fromString);
+          //
+          //                if (status.isPresent() && !status.get().isWrite()) {
+          //                    throw new
+          // AssetProcessingException(INVALID_ATTRIBUTE_EXECUTE_STATUS);
+          //                }
+          //            }
+
+          String interceptorName = null;
+          boolean intercepted = false;
+
+          for (AttributeEventInterceptor interceptor : eventInterceptors) {
+            stage = stageMetrics.start(STAGE_INTERCEPTOR, event);
+            try {
+              intercepted = interceptor.intercept(em, enrichedEvent);
+              stage.succeeded();
+            } catch (AssetProcessingException ex) {
+              throw new AssetProcessingException(
+                  ex.getReason(), "Interceptor '" + interceptor + "' error=" + ex.getMessage());
+            } catch (Throwable t) {
+              throw new AssetProcessingException(
+                  INTERCEPTOR_FAILURE,
+                  "Interceptor '"
+                      + interceptor
+                      + "' uncaught exception error="
+                      + t.getMessage(),
+                  t);
+            } finally {
+              stageMetrics.stop(stage, interceptor.getName());
+            }
+            if (intercepted) {
+              interceptorName = interceptor.getName();
+              break;
+            }
+          }
+
+          Event eventToPublish = null;
+          if (intercepted) {
+            LOG.log(
+                System.Logger.Level.TRACE,
+                "Event intercepted: interceptor="
+                    + interceptorName
+                    + ", ref="
+                    + enrichedEvent.getRef()
+                    + ", source="
+                    + enrichedEvent.getSource());
+          } else {
+            if (enrichedEvent.isOutdated()) {
+              LOG.log(
+                  System.Logger.Level.INFO,
+                  () ->
+                      "Event is older than current attribute value so marking as outdated: ref="
+                          + enrichedEvent.getRef()
+                          + ", event="
+                          + Instant.ofEpochMilli(enrichedEvent.getTimestamp())
+                          + ", previous="
+                          + Instant.ofEpochMilli(enrichedEvent.getOldValueTimestamp()));
+              // Generate an event for this so internal subscribers can act on it if needed
+              eventToPublish = new OutdatedAttributeEvent(enrichedEvent);
+            } else if (assetStorageService.isAttributeValueBatchingEnabled()) {
+              // Value is written by the group commit stage once this transaction has completed
+              eventToPublish = enrichedEvent;
+            } else {
+              stage = stageMetrics.start(STAGE_DB_UPDATE, event);
+              try {
+                if (assetStorageService.updateAttributeValue(em, enrichedEvent)) {
+                  eventToPublish = enrichedEvent;
+                } else {
+                  throw new AssetProcessingException(
+                      STATE_STORAGE_FAILED, "database update failed, no rows updated");
+                }
+                stage.succeeded();
+              } finally {
+                stageMetrics.stop(stage);
+              }
+            }
+          }
+
+          if (LOG.isLoggable(System.Logger.Level.DEBUG)) {
+            long processingMillis = System.currentTimeMillis() - startMillis;
+            LOG.log(
+                System.Logger.Level.DEBUG,
+                "<<< Attribute event processed in "
+                    + processingMillis
+                    + "ms: processor="
+                    + Thread.currentThread().getName()
+                    + ", event="
+                    + enrichedEvent);
           }
-          return result != null;
+          return eventToPublish;
         });
   }
 
@@ -26,18 +26,27 @@ import static org.openremote.model.attribute.Attribute.getAddedOrModifiedAttribu
 import static org.openremote.model.query.AssetQuery.*;
 import static org.openremote.model.query.AssetQuery.Access.*;
 import static org.openremote.model.query.filter.ValuePredicate.asPredicateOrTrue;
+import static org.openremote.model.util.MapAccess.getInteger;
 import static org.openremote.model.util.TextUtil.isNullOrEmpty;
 import static org.openremote.model.value.MetaItemType.ACCESS_PUBLIC_READ;
 import static org.openremote.model.value.MetaItemType.ACCESS_RESTRICTED_READ;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.*;
+import java.time.temporal.Temporal;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
@@ -88,7 +97,6 @@ import org.openremote.model.util.LockByKey;
 import org.openremote.model.util.Pair;
 import org.openremote.model.util.TextUtil;
 import org.openremote.model.util.ValueUtil;
-import org.postgresql.util.PGobject;
 
 public class AssetStorageService extends RouteBuilder implements ContainerService {
 
@@ -128,6 +136,31 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
   private static final Logger LOG = Logger.getLogger(AssetStorageService.class.getName());
   public static final int PRIORITY = MED_PRIORITY;
 
+  /**
+   * Maximum number of fully loaded assets held in the attribute state cache used by {@link
+   * AssetProcessingService}; a value of 0 disables the cache.
+   */
+  public static final String OR_ASSET_STATE_CACHE_SIZE = "OR_ASSET_STATE_CACHE_SIZE";
+
+  public static final int OR_ASSET_STATE_CACHE_SIZE_DEFAULT = 10000;
+
+  /**
+   * Window in milliseconds within which attribute value updates (across assets) are grouped into a
+   * single transaction; a value of 0 disables group commit and each update is written in the
+   * transaction of the attribute event. Group commit requires the asset state cache (see {@link
+   * #OR_ASSET_STATE_CACHE_SIZE}).
+   */
+  public static final String OR_ATTRIBUTE_VALUE_BATCH_WINDOW_MILLIS =
+      "OR_ATTRIBUTE_VALUE_BATCH_WINDOW_MILLIS";
+
+  public static final int OR_ATTRIBUTE_VALUE_BATCH_WINDOW_MILLIS_DEFAULT = 0;
+
+  /** Maximum number of attribute value updates written by a single group commit. */
+  public static final String OR_ATTRIBUTE_VALUE_BATCH_MAX_SIZE =
+      "OR_ATTRIBUTE_VALUE_BATCH_MAX_SIZE";
+
+  public static final int OR_ATTRIBUTE_VALUE_BATCH_MAX_SIZE_DEFAULT = 500;
+
   //    protected static final Field assetParentNameField;
   //    protected static final Field assetParentTypeField;
   //
@@ -238,6 +271,13 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
   protected GatewayService gatewayService;
   protected ExecutorService executorService;
   protected final LockByKey assetLocks = new LockByKey();
+  // Write-through cache of fully loaded assets used when processing attribute events
+  protected Cache<String, Asset<?>> assetStateCache;
+  // Cached assets with values not yet committed by the group commit stage; kept whilst the asset
+  // lock is held so eviction from the cache doesn't lose them
+  protected final ConcurrentMap<String, Asset<?>> uncommittedAttributeState =
+      new ConcurrentHashMap<>();
+  protected AttributeValueBatcher attributeValueBatcher;
 
   /**
    * Will evaluate each {@link CalendarEventPredicate} and apply it depending on the {@link
@@ -334,6 +374,36 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     EventSubscriptionAuthorizer assetEventAuthorizer =
         AssetStorageService.assetInfoAuthorizer(identityService, this);
 
+    int assetStateCacheSize =
+        getInteger(
+            container.getConfig(), OR_ASSET_STATE_CACHE_SIZE, OR_ASSET_STATE_CACHE_SIZE_DEFAULT);
+    if (assetStateCacheSize > 0) {
+      assetStateCache = CacheBuilder.newBuilder().maximumSize(assetStateCacheSize).build();
+    } else {
+      LOG.info("Asset state cache disabled");
+    }
+
+    int attributeValueBatchWindowMillis =
+        getInteger(
+            container.getConfig(),
+            OR_ATTRIBUTE_VALUE_BATCH_WINDOW_MILLIS,
+            OR_ATTRIBUTE_VALUE_BATCH_WINDOW_MILLIS_DEFAULT);
+    if (attributeValueBatchWindowMillis > 0 && assetStateCache == null) {
+      // Later events of an asset are processed before its pending values are committed
+      LOG.warning("Attribute value group commit requires the asset state cache so is disabled");
+    } else if (attributeValueBatchWindowMillis > 0) {
+      attributeValueBatcher =
+          new AttributeValueBatcher(
+              persistenceService,
+              container.getScheduledExecutor(),
+              attributeValueBatchWindowMillis,
+              getInteger(
+                  container.getConfig(),
+                  OR_ATTRIBUTE_VALUE_BATCH_MAX_SIZE,
+                  OR_ATTRIBUTE_VALUE_BATCH_MAX_SIZE_DEFAULT));
+      LOG.info("Attribute value group commit enabled: " + attributeValueBatcher);
+    }
+
     clientEventService.addSubscriptionAuthorizer(
         (realm, auth, subscription) -> {
           if (!subscription.isEventType(AssetEvent.class)) {
@@ -395,7 +465,11 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
   public void start(Container container) throws Exception {}
 
   @Override
-  public void stop(Container container) throws Exception {}
+  public void stop(Container container) throws Exception {
+    if (attributeValueBatcher != null) {
+      attributeValueBatcher.flush();
+    }
+  }
 
   @SuppressWarnings("unchecked")
   @Override
@@ -530,6 +604,39 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     return find(em, assetId, loadComplete, PRIVATE);
   }
 
+  /**
+   * Get the fully loaded asset used to enrich {@link AttributeEvent}s; assets are served from the
+   * attribute state cache when possible and loaded using the supplied {@link EntityManager}
+   * otherwise. The returned instance is shared so must not be modified by the caller and the asset
+   * lock must be held (see {@link #withAssetLock}).
+   */
+  protected Asset<?> findAttributeState(EntityManager em, String assetId) {
+    if (assetStateCache == null) {
+      return find(em, assetId, true);
+    }
+
+    Asset<?> asset = assetStateCache.getIfPresent(assetId);
+    if (asset == null) {
+      // The DB doesn't have the values still pending in the group commit stage
+      asset = uncommittedAttributeState.get(assetId);
+    }
+    if (asset == null) {
+      asset = find(em, assetId, true);
+      if (asset != null) {
+        assetStateCache.put(assetId, asset);
+      }
+    }
+    return asset;
+  }
+
+  /** Remove the specified asset from the attribute state cache so it is reloaded on next use. */
+  protected void invalidateAttributeState(String assetId) {
+    if (assetStateCache != null && assetId != null) {
+      assetStateCache.invalidate(assetId);
+      uncommittedAttributeState.remove(assetId);
+    }
+  }
+
   /**
    * @param loadComplete If the whole asset data (including path and attributes) should be loaded.
    * @param access The required access permissions of the asset data.
@@ -936,7 +1043,17 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                   return updatedAsset;
                 });
 
-    return assetId == null ? assetSupplier.get() : withAssetLock(assetId, assetSupplier);
+    return assetId == null
+        ? assetSupplier.get()
+        : withAssetLock(
+            assetId,
+            () -> {
+              try {
+                return assetSupplier.get();
+              } finally {
+                invalidateAttributeState(assetId);
+              }
+            });
   }
 
   /**
@@ -1028,6 +1145,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         return false;
       } finally {
         // Release all of the locks
+        ids.forEach(this::invalidateAttributeState);
         ids.forEach(assetLocks::unlock);
       }
     }
@@ -1435,6 +1553,29 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     }
   }
 
+  /**
+   * Acquire the asset lock without releasing it; unlike {@link #withAssetLock} the lock can be
+   * released by another thread using {@link #unlockAsset} which allows it to be held until the
+   * values of attribute events have been committed by the group commit stage.
+   */
+  protected void lockAsset(String assetId) {
+    assetLocks.lock(assetId);
+  }
+
+  /**
+   * Release the asset lock acquired using {@link #lockAsset}; cached state with uncommitted values
+   * is no longer kept once this is called.
+   */
+  protected void unlockAsset(String assetId) {
+    uncommittedAttributeState.remove(assetId);
+    assetLocks.unlock(assetId);
+  }
+
+  /** @return <code>true</code> if other threads are waiting to acquire the asset lock. */
+  protected boolean isAssetLockContended(String assetId) {
+    return assetLocks.hasQueuedThreads(assetId);
+  }
+
   protected void createUserAssetLinks(EntityManager em, List<UserAssetLink> userAssets) {
 
     em.unwrap(Session.class)
@@ -1632,15 +1773,6 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         event.getTimestamp() > 0 ? event.getTimestamp() : timerService.getCurrentTimeMillis();
 
     try {
-      PGobject valueTimestampJSON = new PGobject();
-      valueTimestampJSON.setType("jsonb");
-      valueTimestampJSON.setValue(
-          "{\"value\":"
-              + ValueUtil.asJSON(event.getValue().orElse(null)).orElse(ValueUtil.NULL_LITERAL)
-              + ",\"timestamp\":"
-              + timestamp
-              + "}");
-
       // TODO: Use jsonb type directly to optimise over wire data (couldn't get this to work even
       // after seeing
       // https://stackoverflow.com/questions/53847917/postgresql-throws-column-is-of-type-jsonb-but-expression-is-of-type-bytea-with)
@@ -1650,19 +1782,15 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
               .setParameter(1, event.getName())
               .setParameter(2, event.getName())
               .setParameter(
-                  3,
-                  "{\"value\":"
-                      + ValueUtil.asJSON(event.getValue().orElse(null))
-                          .orElse(ValueUtil.NULL_LITERAL)
-                      + ",\"timestamp\":"
-                      + timestamp
-                      + "}")
+                  3, "{\"value\":" + event.getValueJSON() + ",\"timestamp\":" + timestamp + "}")
               .setParameter(4, event.getId());
 
       int affectedRows = query.executeUpdate();
       boolean success = affectedRows == 1;
 
       if (success) {
+        updateAttributeState(event, timestamp);
+
         if (LOG.isLoggable(Level.FINEST)) {
           LOG.finest(
               "Updated attribute value assetID="
@@ -1692,8 +1820,112 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     }
   }
 
+  /**
+   * @return <code>true</code> if attribute values are written by the group commit stage using
+   *     {@link #updateAttributeValue(AttributeEvent)} rather than in the attribute event
+   *     transaction.
+   */
+  protected boolean isAttributeValueBatchingEnabled() {
+    return attributeValueBatcher != null;
+  }
+
+  /**
+   * Submit the attribute value to the group commit stage; the value is written through to the
+   * attribute state cache straight away so later events of the asset see it before the batch
+   * containing it has been committed and the cached state is invalidated if the write fails. The
+   * asset lock must be held (see {@link #lockAsset}) until the returned future completes and no
+   * transaction should be open.
+   */
+  protected CompletableFuture<Boolean> updateAttributeValue(AttributeEvent event) {
+    long timestamp =
+        event.getTimestamp() > 0 ? event.getTimestamp() : timerService.getCurrentTimeMillis();
+
+    CompletableFuture<Boolean> stored =
+        attributeValueBatcher.submit(
+            event.getId(),
+            event.getName(),
+            "{\"value\":" + event.getValueJSON() + ",\"timestamp\":" + timestamp + "}");
+
+    updateAttributeState(event, timestamp);
+    Asset<?> cachedAsset = assetStateCache.getIfPresent(event.getId());
+    if (cachedAsset != null) {
+      uncommittedAttributeState.put(event.getId(), cachedAsset);
+    }
+
+    return stored.whenComplete(
+        (success, e) -> {
+          if (!Boolean.TRUE.equals(success)) {
+            // Cached value was never committed
+            invalidateAttributeState(event.getId());
+            if (LOG.isLoggable(Level.FINE)) {
+              LOG.fine(
+                  "Failed to update attribute value assetID="
+                      + event.getId()
+                      + ", attributeName="
+                      + event.getName()
+                      + ", timestamp="
+                      + timestamp);
+            }
+          }
+        });
+  }
+
+  /**
+   * Write through a stored attribute value to the attribute state cache; mutable values are copied
+   * as the event value is shared with the subscribers of the event.
+   */
+  protected void updateAttributeState(AttributeEvent event, long timestamp) {
+    Asset<?> cachedAsset =
+        assetStateCache != null ? assetStateCache.getIfPresent(event.getId()) : null;
+    if (cachedAsset != null) {
+      Object value = event.getValue().orElse(null);
+      Object cachedValue = isImmutableValue(value) ? value : ValueUtil.clone(value);
+      if (value != null && cachedValue == null) {
+        // Couldn't be copied so reload instead
+        invalidateAttributeState(event.getId());
+        return;
+      }
+      cachedAsset
+          .<Object>getAttribute(event.getName())
+          .ifPresent(attribute -> attribute.setValue(cachedValue, timestamp));
+    }
+  }
+
+  protected static boolean isImmutableValue(Object value) {
+    return value == null
+        || value instanceof String
+        || value instanceof Boolean
+        || value instanceof Integer
+        || value instanceof Long
+        || value instanceof Double
+        || value instanceof Float
+        || value instanceof Short
+        || value instanceof Byte
+        || value instanceof BigDecimal
+        || value instanceof BigInteger
+        || value instanceof Enum<?>
+        || value instanceof Temporal;
+  }
+
   protected void publishModificationEvents(PersistenceEvent<Asset<?>> persistenceEvent) {
     Asset<?> asset = persistenceEvent.getEntity();
+
+    // Cached state is no longer valid (merges and deletes also invalidate whilst holding the lock)
+    invalidateAttributeState(asset.getId());
+
+    if (persistenceEvent.getCause() == PersistenceEvent.Cause.UPDATE
+        && persistenceEvent.hasPropertyChanged("parentId")
+        && assetStateCache != null) {
+      // Descendant paths are updated in the DB so any cached descendants are also stale
+      assetStateCache
+          .asMap()
+          .values()
+          .removeIf(
+              cachedAsset ->
+                  cachedAsset.getPath() != null
+                      && Arrays.asList(cachedAsset.getPath()).contains(asset.getId()));
+    }
+
     switch (persistenceEvent.getCause()) {
       case CREATE -> {
         // Fully load the asset
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.asset;
+
+import static org.openremote.model.attribute.AttributeWriteFailure.QUEUE_FULL;
+
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Limits the rate at which each {@link org.openremote.model.attribute.AttributeEvent} source can
+ * submit events and how much of a processing lane queue each source can occupy; events that are not
+ * admitted are rejected with {@link
+ * org.openremote.model.attribute.AttributeWriteFailure#QUEUE_FULL}.
+ *
+ * <p>Limits are configured as a comma separated list of <code>
+ * source:eventsPerSecond[:queueQuotaPercent]</code> entries where an events per second of 0 means
+ * unlimited and the source <code>*</code> applies to all sources without their own entry. A source
+ * with a lower queue quota is shed before those with a higher quota as a lane fills, which keeps
+ * headroom for sensor and client traffic when e.g. a rule loop floods the lanes.
+ *
+ * <p>Events that are not admitted are counted and logged as a warning at most once per {@link
+ * #WARNING_INTERVAL_MILLIS} per source.
+ */
+public class AttributeEventAdmissionController {
+
+  public record SourceLimit(String source, double eventsPerSecond, int queueQuotaPercent) {}
+
+  public static final String ANY_SOURCE = "*";
+  public static final String NO_SOURCE = "none";
+  public static final long WARNING_INTERVAL_MILLIS = 60000;
+  private static final Logger LOG =
+      Logger.getLogger(AttributeEventAdmissionController.class.getName());
+  protected final Map<String, SourceLimit> limits = new HashMap<>();
+  protected final Map<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+  protected final MeterRegistry meterRegistry;
+  // Rejections since the last warning and the time of the last warning per source
+  protected final Map<String, long[]> rejections = new ConcurrentHashMap<>();
+
+  public AttributeEventAdmissionController(
+      Collection<SourceLimit> limits, MeterRegistry meterRegistry) {
+    limits.forEach(limit -> this.limits.put(limit.source(), limit));
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Parse source limits in the format described in the class documentation.
+   *
+   * @throws IllegalArgumentException if the limits are not valid.
+   */
+  public static List<SourceLimit> parse(String limitsStr) throws IllegalArgumentException {
+    List<SourceLimit> limits = new ArrayList<>();
+    if (limitsStr == null || limitsStr.isBlank()) {
+      return limits;
+    }
+
+    for (String limitStr : limitsStr.split(",")) {
+      String[] parts = limitStr.trim().split(":");
+      if (parts.length < 2 || parts.length > 3 || parts[0].isBlank()) {
+        throw new IllegalArgumentException("Invalid attribute event source limit: " + limitStr);
+      }
+      try {
+        double eventsPerSecond = Double.parseDouble(parts[1].trim());
+        int queueQuotaPercent = parts.length == 3 ? Integer.parseInt(parts[2].trim()) : 100;
+        if (eventsPerSecond < 0 || queueQuotaPercent <= 0 || queueQuotaPercent > 100) {
+          throw new IllegalArgumentException("Invalid attribute event source limit: " + limitStr);
+        }
+        limits.add(new SourceLimit(parts[0].trim(), eventsPerSecond, queueQuotaPercent));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid attribute event source limit: " + limitStr, e);
+      }
+    }
+    return limits;
+  }
+
+  /**
+   * Check whether an event from the specified source can be queued on a lane that currently has
+   * the specified number of queued events.
+   *
+   * @throws AssetProcessingException with {@link
+   *     org.openremote.model.attribute.AttributeWriteFailure#QUEUE_FULL} if the event is not
+   *     admitted.
+   */
+  public void admit(String source, int queueSize, int queueCapacity)
+      throws AssetProcessingException {
+    String sourceStr = source == null ? NO_SOURCE : source;
+    SourceLimit limit = getLimit(sourceStr);
+    if (limit == null) {
+      return;
+    }
+
+    if (limit.queueQuotaPercent() < 100
+        && (long) queueSize * 100 >= (long) queueCapacity * limit.queueQuotaPercent()) {
+      reject(sourceStr, "quota");
+      throw new AssetProcessingException(
+          QUEUE_FULL, "Queue quota exceeded for source '" + sourceStr + "'");
+    }
+
+    if (limit.eventsPerSecond() > 0
+        && !rateLimiters
+            .computeIfAbsent(sourceStr, s -> RateLimiter.create(limit.eventsPerSecond()))
+            .tryAcquire()) {
+      reject(sourceStr, "rate");
+      throw new AssetProcessingException(
+          QUEUE_FULL, "Rate limit exceeded for source '" + sourceStr + "'");
+    }
+  }
+
+  public boolean isEmpty() {
+    return limits.isEmpty();
+  }
+
+  protected SourceLimit getLimit(String source) {
+    SourceLimit limit = limits.get(source);
+    return limit != null ? limit : limits.get(ANY_SOURCE);
+  }
+
+  protected void reject(String source, String reason) {
+    long[] sourceRejections = rejections.computeIfAbsent(source, s -> new long[2]);
+    long count = 0;
+    synchronized (sourceRejections) {
+      sourceRejections[0]++;
+      long now = System.currentTimeMillis();
+      if (now - sourceRejections[1] >= WARNING_INTERVAL_MILLIS) {
+        count = sourceRejections[0];
+        sourceRejections[0] = 0;
+        sourceRejections[1] = now;
+      }
+    }
+    if (count > 0) {
+      LOG.warning(
+          "Attribute events not admitted, these are rejected with QUEUE_FULL: source="
+              + source
+              + ", reason="
+              + reason
+              + ", count="
+              + count
+              + " (since the last warning)");
+    } else {
+      LOG.finest(() -> "Attribute event not admitted: source=" + source + ", reason=" + reason);
+    }
+    if (meterRegistry != null) {
+      meterRegistry
+          .counter("or.attributes.rejected", Tags.of("source", source, "reason", reason))
+          .increment();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" + "limits=" + limits.values() + '}';
+  }
+}
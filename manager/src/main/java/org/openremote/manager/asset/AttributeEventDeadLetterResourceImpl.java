@@ -0,0 +1,74 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.asset;
+
+import static jakarta.ws.rs.core.Response.Status.FORBIDDEN;
+
+import jakarta.ws.rs.WebApplicationException;
+import org.openremote.container.timer.TimerService;
+import org.openremote.manager.security.ManagerIdentityService;
+import org.openremote.manager.web.ManagerWebResource;
+import org.openremote.model.attribute.AttributeEventDeadLetter;
+import org.openremote.model.attribute.AttributeEventDeadLetterResource;
+import org.openremote.model.http.RequestParams;
+
+public class AttributeEventDeadLetterResourceImpl extends ManagerWebResource
+    implements AttributeEventDeadLetterResource {
+
+  protected final AssetProcessingService assetProcessingService;
+
+  public AttributeEventDeadLetterResourceImpl(
+      TimerService timerService,
+      ManagerIdentityService identityService,
+      AssetProcessingService assetProcessingService) {
+    super(timerService, identityService);
+    this.assetProcessingService = assetProcessingService;
+  }
+
+  @Override
+  public AttributeEventDeadLetter[] getDeadLetters(RequestParams requestParams) {
+    // Dead letters are not filtered by realm
+    if (!isSuperUser()) {
+      throw new WebApplicationException(FORBIDDEN);
+    }
+    AttributeEventDeadLetterStore deadLetterStore = assetProcessingService.getDeadLetterStore();
+    return deadLetterStore != null
+        ? deadLetterStore.getDeadLetters().toArray(new AttributeEventDeadLetter[0])
+        : new AttributeEventDeadLetter[0];
+  }
+
+  @Override
+  public int replayDeadLetters(RequestParams requestParams) {
+    if (!isSuperUser()) {
+      throw new WebApplicationException(FORBIDDEN);
+    }
+    return assetProcessingService.replayDeadLetters();
+  }
+
+  @Override
+  public void clearDeadLetters(RequestParams requestParams) {
+    if (!isSuperUser()) {
+      throw new WebApplicationException(FORBIDDEN);
+    }
+    AttributeEventDeadLetterStore deadLetterStore = assetProcessingService.getDeadLetterStore();
+    if (deadLetterStore != null) {
+      deadLetterStore.clear();
+    }
+  }
+}
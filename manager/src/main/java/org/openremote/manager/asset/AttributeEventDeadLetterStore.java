@@ -0,0 +1,434 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.asset;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.attribute.AttributeEventDeadLetter;
+import org.openremote.model.attribute.AttributeWriteFailure;
+import org.openremote.model.util.UniqueIdentifierGenerator;
+import org.openremote.model.util.ValueUtil;
+
+/**
+ * Bounded store of {@link AttributeEvent}s that failed to be processed for a transient reason; on
+ * each {@link #tick} the dead letters that are due are marked in flight and passed to the retry
+ * handler, which must call {@link #remove} or {@link #retryFailed} once the retry is done. A dead
+ * letter is only removed from the store once its retry succeeded (or it cannot be retried). The
+ * delay between attempts doubles on each attempt up to {@link #MAX_BACKOFF_MILLIS} and once {@link
+ * #maxAttempts} is reached the dead letter is parked until {@link #replay} is called.
+ *
+ * <p>Added dead letters are appended to a journal file by the {@link #journalExecutor}, which
+ * writes those added in the meantime in one go through a writer that is kept open, so adding never
+ * waits for the disk. The whole store is written to a JSON file (replacing the journal) on each
+ * {@link #tick} when changed, so dead letters survive a restart; those that were in flight are
+ * retried again after a restart. Once the store is full the oldest dead letter is dropped.
+ */
+public class AttributeEventDeadLetterStore {
+
+  public static final long MAX_BACKOFF_MILLIS = 300000;
+  private static final Logger LOG = Logger.getLogger(AttributeEventDeadLetterStore.class.getName());
+  protected final Path file;
+  protected final Path journalFile;
+  protected final int maxSize;
+  protected final int maxAttempts;
+  protected final long backoffMillis;
+  protected final Consumer<AttributeEventDeadLetter> retryHandler;
+  protected final Executor journalExecutor;
+  protected final MeterRegistry meterRegistry;
+  // Dead letters by ID in the order they were added
+  protected final LinkedHashMap<String, AttributeEventDeadLetter> deadLetters =
+      new LinkedHashMap<>();
+  protected final Set<String> inFlight = new HashSet<>();
+  protected boolean dirty;
+  // Journal lines of added dead letters waiting for the journal executor
+  protected List<String> pendingJournal = new ArrayList<>();
+  protected boolean journalFlushScheduled;
+  // Held whilst writing the journal or the file; the store monitor is never held during I/O
+  protected final Object fileLock = new Object();
+  protected BufferedWriter journalWriter;
+
+  public AttributeEventDeadLetterStore(
+      Path file,
+      int maxSize,
+      int maxAttempts,
+      long backoffMillis,
+      Consumer<AttributeEventDeadLetter> retryHandler,
+      Executor journalExecutor,
+      MeterRegistry meterRegistry) {
+    this.file = file;
+    this.journalFile = file.resolveSibling(file.getFileName() + ".journal");
+    this.maxSize = maxSize;
+    this.maxAttempts = maxAttempts;
+    this.backoffMillis = backoffMillis;
+    this.retryHandler = retryHandler;
+    this.journalExecutor = journalExecutor;
+    this.meterRegistry = meterRegistry;
+
+    if (meterRegistry != null) {
+      meterRegistry.gauge(
+          "or.attributes.deadletter.size", Tags.empty(), this, AttributeEventDeadLetterStore::size);
+    }
+  }
+
+  /** Load any dead letters written by a previous instance. */
+  public void load() {
+    int count = 0;
+    synchronized (this) {
+      try {
+        if (Files.isRegularFile(file)) {
+          AttributeEventDeadLetter[] loaded =
+              ValueUtil.JSON.readValue(
+                  Files.readString(file, StandardCharsets.UTF_8), AttributeEventDeadLetter[].class);
+          for (AttributeEventDeadLetter deadLetter : loaded) {
+            offer(deadLetter);
+          }
+          count += loaded.length;
+        }
+        if (Files.isRegularFile(journalFile)) {
+          try (BufferedReader reader =
+              Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+              if (line.isBlank()) {
+                continue;
+              }
+              try {
+                offer(ValueUtil.JSON.readValue(line, AttributeEventDeadLetter.class));
+                count++;
+              } catch (IOException e) {
+                // The last line is incomplete if the previous instance stopped while appending
+                LOG.log(Level.WARNING, "Skipping invalid attribute event dead letter: " + line, e);
+              }
+            }
+          }
+        }
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Failed to load attribute event dead letters: file=" + file, e);
+      }
+    }
+    if (count > 0) {
+      LOG.info("Loaded attribute event dead letters: count=" + count + ", file=" + file);
+    }
+    write();
+  }
+
+  public void add(AttributeEvent event, AttributeWriteFailure reason) {
+    AttributeEventDeadLetter deadLetter =
+        new AttributeEventDeadLetter(
+            UniqueIdentifierGenerator.generateId(),
+            event.getId(),
+            event.getName(),
+            event.getValue().orElse(null),
+            event.getTimestamp(),
+            event.getSource(),
+            reason,
+            0,
+            System.currentTimeMillis() + backoffMillis);
+    LOG.fine(() -> "Adding attribute event dead letter: reason=" + reason + ", event=" + event);
+    increment("stored", reason);
+
+    String journalLine = null;
+    try {
+      journalLine = ValueUtil.JSON.writeValueAsString(deadLetter);
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Failed to serialise attribute event dead letter: " + deadLetter, e);
+    }
+
+    boolean scheduleFlush = false;
+    synchronized (this) {
+      offer(deadLetter);
+      if (journalLine != null) {
+        pendingJournal.add(journalLine);
+        scheduleFlush = !journalFlushScheduled;
+        journalFlushScheduled = true;
+      }
+    }
+
+    if (scheduleFlush) {
+      try {
+        journalExecutor.execute(this::flushJournal);
+      } catch (RejectedExecutionException e) {
+        // Still written to the file on the next tick
+        LOG.log(Level.FINE, "Attribute event dead letter journal flush rejected", e);
+      }
+    }
+  }
+
+  /** Remove a dead letter that has been retried successfully (or cannot be retried). */
+  public synchronized void remove(AttributeEventDeadLetter deadLetter) {
+    inFlight.remove(deadLetter.getId());
+    if (deadLetters.remove(deadLetter.getId()) != null) {
+      dirty = true;
+    }
+  }
+
+  /**
+   * Schedule the next attempt of a dead letter that failed to be retried, unless it has been
+   * removed from the store in the meantime.
+   */
+  public void retryFailed(AttributeEventDeadLetter deadLetter, AttributeWriteFailure reason) {
+    int attempts = deadLetter.getAttempts() + 1;
+    long delay = Math.min(backoffMillis << Math.min(attempts, 30), MAX_BACKOFF_MILLIS);
+
+    synchronized (this) {
+      inFlight.remove(deadLetter.getId());
+      if (!deadLetters.containsKey(deadLetter.getId())) {
+        return;
+      }
+      deadLetters.put(
+          deadLetter.getId(),
+          deadLetter.withAttempt(reason, attempts, System.currentTimeMillis() + delay));
+      dirty = true;
+    }
+
+    if (attempts >= maxAttempts) {
+      LOG.warning(
+          "Attribute event retry attempts exhausted, parking until replayed: reason="
+              + reason
+              + ", ref="
+              + deadLetter.getAssetId()
+              + ":"
+              + deadLetter.getAttributeName());
+      increment("parked", reason);
+    }
+  }
+
+  /** Make all parked dead letters due for retry again. */
+  public synchronized int replay() {
+    int count = 0;
+    for (Map.Entry<String, AttributeEventDeadLetter> entry : deadLetters.entrySet()) {
+      AttributeEventDeadLetter deadLetter = entry.getValue();
+      if (deadLetter.getAttempts() >= maxAttempts) {
+        count++;
+        entry.setValue(deadLetter.withAttempt(deadLetter.getReason(), 0, 0));
+      }
+    }
+    if (count > 0) {
+      dirty = true;
+    }
+    return count;
+  }
+
+  public synchronized List<AttributeEventDeadLetter> getDeadLetters() {
+    return new ArrayList<>(deadLetters.values());
+  }
+
+  public synchronized int size() {
+    return deadLetters.size();
+  }
+
+  /** Remove all dead letters; retries in flight are not returned to the store. */
+  public synchronized void clear() {
+    deadLetters.clear();
+    dirty = true;
+  }
+
+  /** Pass due dead letters to the retry handler and then write the store if it has changed. */
+  public void tick() {
+    List<AttributeEventDeadLetter> due = new ArrayList<>();
+    long now = System.currentTimeMillis();
+
+    synchronized (this) {
+      for (AttributeEventDeadLetter deadLetter : deadLetters.values()) {
+        if (deadLetter.getAttempts() < maxAttempts
+            && deadLetter.getNextAttemptMillis() <= now
+            && inFlight.add(deadLetter.getId())) {
+          due.add(deadLetter);
+        }
+      }
+    }
+
+    due.forEach(
+        deadLetter -> {
+          increment("retried", deadLetter.getReason());
+          try {
+            retryHandler.accept(deadLetter);
+          } catch (Exception e) {
+            LOG.log(Level.WARNING, "Attribute event retry handler failed", e);
+            retryFailed(deadLetter, deadLetter.getReason());
+          }
+        });
+
+    write();
+  }
+
+  /**
+   * Write the dead letters to the file if they have changed since the last write, which replaces
+   * the journal.
+   */
+  public void write() {
+    synchronized (fileLock) {
+      List<AttributeEventDeadLetter> snapshot;
+
+      synchronized (this) {
+        if (!dirty) {
+          return;
+        }
+        dirty = false;
+        // Included in the snapshot so no longer needed in the journal
+        pendingJournal = new ArrayList<>();
+        snapshot = new ArrayList<>(deadLetters.values());
+      }
+
+      try {
+        closeJournal();
+        if (snapshot.isEmpty()) {
+          Files.deleteIfExists(file);
+        } else {
+          Files.createDirectories(file.getParent());
+          Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+          Files.writeString(
+              tmpFile, ValueUtil.JSON.writeValueAsString(snapshot), StandardCharsets.UTF_8);
+          Files.move(
+              tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.deleteIfExists(journalFile);
+      } catch (IOException e) {
+        synchronized (this) {
+          dirty = true;
+        }
+        LOG.log(Level.WARNING, "Failed to write attribute event dead letters: file=" + file, e);
+      }
+    }
+  }
+
+  /**
+   * Append the dead letters added since the last call to the journal so they are not lost before
+   * the next {@link #write}.
+   */
+  protected void flushJournal() {
+    synchronized (fileLock) {
+      List<String> lines;
+
+      synchronized (this) {
+        journalFlushScheduled = false;
+        if (pendingJournal.isEmpty()) {
+          return;
+        }
+        lines = pendingJournal;
+        pendingJournal = new ArrayList<>();
+      }
+
+      try {
+        if (journalWriter == null) {
+          Files.createDirectories(journalFile.getParent());
+          journalWriter =
+              Files.newBufferedWriter(
+                  journalFile,
+                  StandardCharsets.UTF_8,
+                  StandardOpenOption.CREATE,
+                  StandardOpenOption.APPEND);
+        }
+        for (String line : lines) {
+          journalWriter.write(line);
+          journalWriter.write('\n');
+        }
+        journalWriter.flush();
+      } catch (IOException e) {
+        LOG.log(
+            Level.WARNING,
+            "Failed to append attribute event dead letters to journal: count="
+                + lines.size()
+                + ", file="
+                + journalFile,
+            e);
+        closeJournal();
+      }
+    }
+  }
+
+  protected void closeJournal() {
+    if (journalWriter != null) {
+      try {
+        journalWriter.close();
+      } catch (IOException e) {
+        LOG.log(Level.FINE, "Failed to close attribute event dead letter journal", e);
+      }
+      journalWriter = null;
+    }
+  }
+
+  protected void offer(AttributeEventDeadLetter deadLetter) {
+    if (deadLetter.getId() == null) {
+      // Written by a version without dead letter IDs
+      deadLetter =
+          new AttributeEventDeadLetter(
+              UniqueIdentifierGenerator.generateId(),
+              deadLetter.getAssetId(),
+              deadLetter.getAttributeName(),
+              deadLetter.getValue(),
+              deadLetter.getTimestamp(),
+              deadLetter.getSource(),
+              deadLetter.getReason(),
+              deadLetter.getAttempts(),
+              deadLetter.getNextAttemptMillis());
+    }
+    if (!deadLetters.containsKey(deadLetter.getId()) && deadLetters.size() >= maxSize) {
+      Iterator<AttributeEventDeadLetter> it = deadLetters.values().iterator();
+      AttributeEventDeadLetter dropped = it.next();
+      it.remove();
+      LOG.warning(
+          "Attribute event dead letter store is full, dropping oldest: ref="
+              + dropped.getAssetId()
+              + ":"
+              + dropped.getAttributeName());
+      increment("dropped", dropped.getReason());
+    }
+    deadLetters.put(deadLetter.getId(), deadLetter);
+    dirty = true;
+  }
+
+  protected void increment(String outcome, AttributeWriteFailure reason) {
+    if (meterRegistry != null) {
+      meterRegistry
+          .counter("or.attributes.deadletter", Tags.of("outcome", outcome, "reason", reason.name()))
+          .increment();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{"
+        + "file="
+        + file
+        + ", maxSize="
+        + maxSize
+        + ", maxAttempts="
+        + maxAttempts
+        + ", backoffMillis="
+        + backoffMillis
+        + '}';
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.asset;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.openremote.model.attribute.AttributeEvent;
+
+/**
+ * Records how long each stage of {@link AttributeEvent} processing takes as an <code>
+ * or.attributes.stage</code> Micrometer timer (tagged with the stage and, for the interceptor
+ * stage, the interceptor name otherwise <code>none</code>) and as a JFR {@link Stage} event so
+ * latency can be attributed to e.g. lock contention, the database or a slow {@link
+ * org.openremote.manager.event.AttributeEventInterceptor}.
+ *
+ * <p>Usage is {@link #start} before the stage and {@link #stop} in a <code>finally</code> block,
+ * calling {@link Stage#succeeded} once the stage has completed; the timer and event are tagged with
+ * an outcome of <code>success</code> or <code>failure</code> so stages that fail with an exception
+ * are still recorded.
+ */
+public class AttributeEventStageMetrics {
+
+  public static final String STAGE_AUTHORIZATION = "authorization";
+  public static final String STAGE_LOCK_WAIT = "lockWait";
+  public static final String STAGE_ASSET_LOAD = "assetLoad";
+  public static final String STAGE_COERCION = "coercion";
+  public static final String STAGE_VALIDATION = "validation";
+  public static final String STAGE_INTERCEPTOR = "interceptor";
+  public static final String STAGE_DB_UPDATE = "dbUpdate";
+  public static final String STAGE_PUBLISH = "publish";
+  public static final String OUTCOME_SUCCESS = "success";
+  public static final String OUTCOME_FAILURE = "failure";
+
+  /** JFR event for a single stage of attribute event processing. */
+  @Name("org.openremote.AttributeEventStage")
+  @Label("Attribute Event Stage")
+  @Description("A stage of attribute event processing")
+  @Category({"OpenRemote", "Attribute Events"})
+  @StackTrace(false)
+  public static class Stage extends jdk.jfr.Event {
+
+    @Label("Stage")
+    protected String stage;
+
+    @Label("Interceptor")
+    protected String interceptor;
+
+    @Label("Asset ID")
+    protected String assetId;
+
+    @Label("Attribute Name")
+    protected String attributeName;
+
+    @Label("Outcome")
+    protected String outcome;
+
+    protected transient long startNanos;
+    protected transient boolean success;
+    protected transient boolean stopped;
+
+    /** Mark the stage as having completed successfully, must be called before it is stopped. */
+    public void succeeded() {
+      success = true;
+    }
+  }
+
+  protected final MeterRegistry meterRegistry;
+  protected final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+  public AttributeEventStageMetrics(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  public Stage start(String stage, AttributeEvent event) {
+    Stage jfrEvent = new Stage();
+    jfrEvent.stage = stage;
+    if (event != null) {
+      jfrEvent.assetId = event.getId();
+      jfrEvent.attributeName = event.getName();
+    }
+    jfrEvent.startNanos = System.nanoTime();
+    jfrEvent.begin();
+    return jfrEvent;
+  }
+
+  public void stop(Stage stage) {
+    stop(stage, null);
+  }
+
+  /**
+   * Stop the stage, the interceptor name is only used for the interceptor stage; stopping a stage
+   * that has already been stopped does nothing.
+   */
+  public void stop(Stage stage, String interceptor) {
+    if (stage.stopped) {
+      return;
+    }
+    stage.stopped = true;
+    long durationNanos = System.nanoTime() - stage.startNanos;
+    String outcome = stage.success ? OUTCOME_SUCCESS : OUTCOME_FAILURE;
+    stage.end();
+    if (stage.shouldCommit()) {
+      stage.interceptor = interceptor;
+      stage.outcome = outcome;
+      stage.commit();
+    }
+    if (meterRegistry != null) {
+      getTimer(stage.stage, interceptor, outcome).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  protected Timer getTimer(String stage, String interceptor, String outcome) {
+    String interceptorStr = interceptor != null ? interceptor : "none";
+    return timers.computeIfAbsent(
+        stage + ":" + interceptorStr + ":" + outcome,
+        key ->
+            meterRegistry.timer(
+                "or.attributes.stage",
+                Tags.of("stage", stage, "interceptor", interceptorStr, "outcome", outcome)));
+  }
+}
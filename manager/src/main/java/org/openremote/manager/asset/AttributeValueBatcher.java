@@ -0,0 +1,216 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.asset;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.hibernate.Session;
+import org.openremote.container.persistence.PersistenceService;
+
+/**
+ * Group commit stage for attribute value updates; updates submitted within {@link #windowMillis} of
+ * the first pending update (across all assets) are written in a single transaction using a
+ * multi-row <code>UPDATE</code> statement and then the {@link CompletableFuture} of each update is
+ * completed with whether or not the row was updated.
+ *
+ * <p>Callers don't wait for the future so a batch can contain several updates for the same asset;
+ * these are written by consecutive statements in submission order within the same transaction.
+ * Batches are written one at a time and futures are completed in submission order so callbacks
+ * registered on them run in the same order as the updates were submitted.
+ */
+public class AttributeValueBatcher {
+
+  protected record PendingUpdate(
+      String assetId, String attributeName, String json, CompletableFuture<Boolean> future) {}
+
+  private static final Logger LOG = Logger.getLogger(AttributeValueBatcher.class.getName());
+  protected final PersistenceService persistenceService;
+  protected final ScheduledExecutorService scheduledExecutorService;
+  protected final long windowMillis;
+  protected final int maxBatchSize;
+  // Held whilst writing a batch so batches are committed in submission order
+  protected final Object flushLock = new Object();
+  protected List<PendingUpdate> pendingUpdates = new ArrayList<>();
+  protected boolean flushScheduled;
+
+  public AttributeValueBatcher(
+      PersistenceService persistenceService,
+      ScheduledExecutorService scheduledExecutorService,
+      long windowMillis,
+      int maxBatchSize) {
+    this.persistenceService = persistenceService;
+    this.scheduledExecutorService = scheduledExecutorService;
+    this.windowMillis = windowMillis;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Queue an update of the specified attribute where the JSON is the <code>value</code> and <code>
+   * timestamp</code> object to merge into the existing attribute JSON.
+   */
+  public CompletableFuture<Boolean> submit(String assetId, String attributeName, String json) {
+    CompletableFuture<Boolean> future = new CompletableFuture<>();
+    boolean flushNow = false;
+
+    synchronized (this) {
+      pendingUpdates.add(new PendingUpdate(assetId, attributeName, json, future));
+
+      if (pendingUpdates.size() >= maxBatchSize) {
+        flushNow = true;
+      } else if (!flushScheduled) {
+        flushScheduled = true;
+        scheduledExecutorService.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    if (flushNow) {
+      scheduledExecutorService.execute(this::flush);
+    }
+    return future;
+  }
+
+  /** Write all pending updates; this is called automatically but can be used to drain on stop. */
+  public void flush() {
+    synchronized (flushLock) {
+      List<PendingUpdate> batch;
+
+      synchronized (this) {
+        flushScheduled = false;
+        if (pendingUpdates.isEmpty()) {
+          return;
+        }
+        batch = pendingUpdates;
+        pendingUpdates = new ArrayList<>();
+      }
+
+      Set<PendingUpdate> updated;
+      try {
+        updated = write(batch);
+      } catch (Exception e) {
+        LOG.log(Level.WARNING, "Failed to store attribute values: count=" + batch.size(), e);
+        updated = Set.of();
+      }
+      for (PendingUpdate update : batch) {
+        update.future().complete(updated.contains(update));
+      }
+    }
+  }
+
+  protected Set<PendingUpdate> write(List<PendingUpdate> batch) {
+    long startMillis = System.currentTimeMillis();
+    Set<PendingUpdate> updated = new HashSet<>(batch.size());
+
+    persistenceService.doTransaction(
+        em ->
+            em.unwrap(Session.class)
+                .doWork(
+                    connection -> {
+                      for (List<PendingUpdate> statementUpdates : splitByAsset(batch)) {
+                        try (PreparedStatement st =
+                            connection.prepareStatement(
+                                getUpdateStatement(statementUpdates.size()))) {
+                          int index = 1;
+                          for (PendingUpdate update : statementUpdates) {
+                            st.setString(index++, update.assetId());
+                            st.setString(index++, update.attributeName());
+                            st.setString(index++, update.json());
+                          }
+
+                          try (ResultSet rs = st.executeQuery()) {
+                            Map<String, PendingUpdate> updatesByAsset = new HashMap<>();
+                            statementUpdates.forEach(
+                                update -> updatesByAsset.put(update.assetId(), update));
+                            while (rs.next()) {
+                              updated.add(updatesByAsset.get(rs.getString(1)));
+                            }
+                          }
+                        }
+                      }
+                    }));
+
+    LOG.finest(
+        () ->
+            "Stored attribute values: count="
+                + batch.size()
+                + ", updated="
+                + updated.size()
+                + ", duration="
+                + (System.currentTimeMillis() - startMillis)
+                + "ms");
+    return updated;
+  }
+
+  /**
+   * Split the batch into lists where each asset appears at most once so an update statement never
+   * has to apply more than one change to the same row.
+   */
+  protected static List<List<PendingUpdate>> splitByAsset(List<PendingUpdate> batch) {
+    List<List<PendingUpdate>> statements = new ArrayList<>();
+    List<Set<String>> statementAssetIds = new ArrayList<>();
+
+    for (PendingUpdate update : batch) {
+      int i = 0;
+      // Must go after the last statement containing this asset to retain submission order
+      for (int j = statements.size() - 1; j >= 0; j--) {
+        if (statementAssetIds.get(j).contains(update.assetId())) {
+          i = j + 1;
+          break;
+        }
+      }
+      if (i == statements.size()) {
+        statements.add(new ArrayList<>());
+        statementAssetIds.add(new HashSet<>());
+      }
+      statements.get(i).add(update);
+      statementAssetIds.get(i).add(update.assetId());
+    }
+    return statements;
+  }
+
+  protected static String getUpdateStatement(int rows) {
+    StringBuilder sb =
+        new StringBuilder(
+            "UPDATE asset a SET attributes[v.name] = a.attributes[v.name] || v.value FROM (VALUES ");
+    for (int i = 0; i < rows; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append("(?, ?, ?::jsonb)");
+    }
+    sb.append(") AS v(id, name, value) WHERE a.id = v.id RETURNING a.id");
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{"
+        + "windowMillis="
+        + windowMillis
+        + ", maxBatchSize="
+        + maxBatchSize
+        + '}';
+  }
+}
@@ -443,13 +443,9 @@ public class ForecastService extends RouteBuilder implements ContainerService {
                                     forecastTimestamps.get(i), forecastValues.get(i).get()))
                         .collect(Collectors.toList());
 
-                assetPredictedDatapointService.purgeValues(attr.getId(), attr.getName());
-
-                if (datapoints.size() > 0) {
-                  LOG.fine("Updating forecast values for attribute: " + attr.getAttributeRef());
-                  assetPredictedDatapointService.updateValues(
-                      attr.getId(), attr.getName(), datapoints);
-                }
+                LOG.fine("Replacing forecast values for attribute: " + attr.getAttributeRef());
+                assetPredictedDatapointService.replaceAllValues(
+                    attr.getId(), attr.getName(), datapoints);
               }
             });
 
@@ -25,15 +25,21 @@ import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import jakarta.validation.constraints.NotNull;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.logging.Level;
@@ -43,15 +49,18 @@ import org.hibernate.jdbc.AbstractReturningWork;
 import org.openremote.container.persistence.PersistenceService;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.manager.datapoint.DatapointWriter.PendingDatapoint;
 import org.openremote.model.Container;
 import org.openremote.model.ContainerService;
 import org.openremote.model.asset.Asset;
 import org.openremote.model.attribute.Attribute;
 import org.openremote.model.attribute.AttributeRef;
 import org.openremote.model.datapoint.Datapoint;
+import org.openremote.model.datapoint.DatapointImportFormat;
 import org.openremote.model.datapoint.DatapointPeriod;
 import org.openremote.model.datapoint.DatapointQueryTooLargeException;
 import org.openremote.model.datapoint.ValueDatapoint;
+import org.openremote.model.datapoint.query.AssetDatapointIntervalQuery;
 import org.openremote.model.datapoint.query.AssetDatapointQuery;
 import org.openremote.model.util.TextUtil;
 import org.openremote.model.util.ValueUtil;
@@ -63,14 +72,46 @@ import org.postgresql.util.PGobject;
  */
 public abstract class AbstractDatapointService<T extends Datapoint> implements ContainerService {
 
+  /** A continuous aggregate of the datapoint table with buckets of the given unit. */
+  protected record DatapointRollup(ChronoUnit unit, String tableName) {}
+
   public static final String OR_DATA_POINTS_QUERY_LIMIT = "OR_DATA_POINTS_QUERY_LIMIT";
+
+  /**
+   * Number of series of a query of several attributes that are queried in parallel, each on its own
+   * connection; see {@link #queryDatapoints(Map, AssetDatapointQuery)}.
+   */
+  public static final String OR_DATA_POINTS_BATCH_QUERY_PARALLELISM =
+      "OR_DATA_POINTS_BATCH_QUERY_PARALLELISM";
+
+  public static final int OR_DATA_POINTS_BATCH_QUERY_PARALLELISM_DEFAULT = 4;
+
+  /**
+   * Number of late datapoints for a single chunk in the columnstore from which the chunk is
+   * converted to the rowstore and back once for the write instead of merging the datapoints into
+   * the compressed chunk; a value of 0 always merges.
+   */
+  public static final String OR_DATA_POINTS_LATE_WRITE_DECOMPRESS_THRESHOLD =
+      "OR_DATA_POINTS_LATE_WRITE_DECOMPRESS_THRESHOLD";
+
+  public static final int OR_DATA_POINTS_LATE_WRITE_DECOMPRESS_THRESHOLD_DEFAULT = 10000;
+
+  /** Number of datapoints of an import that are ordered by timestamp and written together. */
+  public static final String OR_DATA_POINTS_IMPORT_BATCH_SIZE = "OR_DATA_POINTS_IMPORT_BATCH_SIZE";
+
+  public static final int OR_DATA_POINTS_IMPORT_BATCH_SIZE_DEFAULT = 50000;
   public static final int PRIORITY = AssetStorageService.PRIORITY + 100;
+  protected static final int QUERY_FETCH_SIZE = 10000;
   protected PersistenceService persistenceService;
   protected AssetStorageService assetStorageService;
   protected TimerService timerService;
   protected ScheduledExecutorService scheduledExecutorService;
+  protected ExecutorService executorService;
   protected ScheduledFuture<?> dataPointsPurgeScheduledFuture;
   protected int maxAmountOfQueryPoints;
+  protected int batchQueryParallelism;
+  protected CompressedChunkWriter compressedChunkWriter;
+  protected DatapointImporter datapointImporter;
 
   @Override
   public int getPriority() {
@@ -83,7 +124,33 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
     assetStorageService = container.getService(AssetStorageService.class);
     timerService = container.getService(TimerService.class);
     scheduledExecutorService = container.getScheduledExecutor();
+    executorService = container.getExecutor();
     maxAmountOfQueryPoints = getInteger(container.getConfig(), OR_DATA_POINTS_QUERY_LIMIT, 100000);
+    batchQueryParallelism =
+        Math.max(
+            1,
+            getInteger(
+                container.getConfig(),
+                OR_DATA_POINTS_BATCH_QUERY_PARALLELISM,
+                OR_DATA_POINTS_BATCH_QUERY_PARALLELISM_DEFAULT));
+    compressedChunkWriter =
+        new CompressedChunkWriter(
+            this,
+            getInteger(
+                container.getConfig(),
+                OR_DATA_POINTS_LATE_WRITE_DECOMPRESS_THRESHOLD,
+                OR_DATA_POINTS_LATE_WRITE_DECOMPRESS_THRESHOLD_DEFAULT),
+            container.getMeterRegistry());
+    datapointImporter =
+        new DatapointImporter(
+            this,
+            Math.max(
+                1,
+                getInteger(
+                    container.getConfig(),
+                    OR_DATA_POINTS_IMPORT_BATCH_SIZE,
+                    OR_DATA_POINTS_IMPORT_BATCH_SIZE_DEFAULT)),
+            container.getMeterRegistry());
   }
 
   @Override
@@ -105,6 +172,14 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
 
   public void upsertValue(String assetId, String attributeName, Object value, long timestamp)
       throws IllegalStateException {
+    upsertValueJSON(
+        assetId, attributeName, ValueUtil.asJSON(value).orElse(ValueUtil.NULL_LITERAL), timestamp);
+  }
+
+  /** Same as {@link #upsertValue} but for a value that has already been serialized to JSON. */
+  public void upsertValueJSON(
+      String assetId, String attributeName, String valueJSON, long timestamp)
+      throws IllegalStateException {
     persistenceService.doTransaction(
         em ->
             em.unwrap(Session.class)
@@ -121,12 +196,12 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
                                       + ", timestamp="
                                       + timestamp
                                       + ", value="
-                                      + value);
+                                      + valueJSON);
                       PreparedStatement st;
 
                       try {
                         st = getUpsertPreparedStatement(connection);
-                        setUpsertValues(st, assetId, attributeName, value, timestamp);
+                        setUpsertJSONValues(st, assetId, attributeName, valueJSON, timestamp);
                         st.executeUpdate();
                       } catch (Exception e) {
                         String msg = "Failed to insert/update data point: ";
@@ -136,9 +211,45 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
                     }));
   }
 
+  /**
+   * Store the datapoints of an attribute in a single batch; datapoints that belong in a chunk that
+   * is already in the columnstore are written separately by the {@link CompressedChunkWriter}.
+   */
   public void upsertValues(
       String assetId, String attributeName, List<ValueDatapoint<?>> valuesAndTimestamps)
       throws IllegalStateException {
+    Collection<PendingDatapoint> datapoints =
+        valuesAndTimestamps.stream()
+            .map(
+                valueAndTimestamp ->
+                    new PendingDatapoint(
+                        assetId,
+                        attributeName,
+                        ValueUtil.asJSON(valueAndTimestamp.getValue())
+                            .orElse(ValueUtil.NULL_LITERAL),
+                        valueAndTimestamp.getTimestamp()))
+            .toList();
+
+    if (compressedChunkWriter != null) {
+      try {
+        datapoints = compressedChunkWriter.write(datapoints);
+      } catch (Exception e) {
+        String msg =
+            "Failed to insert/update late data points: "
+                + assetId
+                + ", name="
+                + attributeName
+                + ", count="
+                + valuesAndTimestamps.size();
+        getLogger().log(Level.WARNING, msg, e);
+        throw new IllegalStateException(msg, e);
+      }
+      if (datapoints.isEmpty()) {
+        return;
+      }
+    }
+
+    Collection<PendingDatapoint> recentDatapoints = datapoints;
     persistenceService.doTransaction(
         em ->
             em.unwrap(Session.class)
@@ -151,19 +262,19 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
                                   + ", name="
                                   + attributeName
                                   + ", count="
-                                  + valuesAndTimestamps.size());
+                                  + recentDatapoints.size());
                       PreparedStatement st;
 
                       try {
                         st = getUpsertPreparedStatement(connection);
 
-                        for (ValueDatapoint<?> valueAndTimestamp : valuesAndTimestamps) {
-                          setUpsertValues(
+                        for (PendingDatapoint datapoint : recentDatapoints) {
+                          setUpsertJSONValues(
                               st,
                               assetId,
                               attributeName,
-                              valueAndTimestamp.getValue(),
-                              valueAndTimestamp.getTimestamp());
+                              datapoint.valueJSON(),
+                              datapoint.timestamp());
                           st.addBatch();
                         }
                         st.executeBatch();
@@ -174,13 +285,39 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
                                 + ", name="
                                 + attributeName
                                 + ", count="
-                                + valuesAndTimestamps.size();
+                                + recentDatapoints.size();
                         getLogger().log(Level.WARNING, msg, e);
                         throw new IllegalStateException(msg, e);
                       }
                     }));
   }
 
+  /**
+   * Import historical datapoints of an attribute from a stream, see {@link DatapointImporter}.
+   *
+   * @param valueType The value type of the attribute that values are coerced to.
+   * @return the number of imported datapoints.
+   * @throws IllegalArgumentException if a line of the stream cannot be parsed or its value is
+   *     missing or not of the value type.
+   */
+  public long importDatapoints(
+      String assetId,
+      String attributeName,
+      Class<?> valueType,
+      DatapointImportFormat format,
+      InputStream inputStream)
+      throws IllegalArgumentException, IOException {
+    return datapointImporter.importDatapoints(
+        assetId, attributeName, valueType, format, inputStream);
+  }
+
+  /**
+   * Called after datapoints of an attribute in the inclusive range have been written by the {@link
+   * DatapointWriter} or {@link DatapointImporter}, does nothing by default.
+   */
+  protected void onDatapointsWritten(
+      AttributeRef attributeRef, long fromTimestamp, long toTimestamp) {}
+
   public List<ValueDatapoint> getDatapoints(AttributeRef attributeRef) {
     return persistenceService.doReturningTransaction(
         entityManager ->
@@ -242,26 +379,40 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
       String assetId, Attribute<?> attribute, @NotNull AssetDatapointQuery datapointQuery) {
 
     AttributeRef attributeRef = new AttributeRef(assetId, attribute.getName());
-    Map<Integer, Object> parameters = datapointQuery.getSQLParameters(attributeRef);
+    List<ValueDatapoint<?>> recentDatapoints =
+        queryRecentDatapoints(attributeRef, attribute, datapointQuery);
+    if (recentDatapoints != null) {
+      getLogger().finest("Using recent datapoints for: " + attributeRef);
+      return recentDatapoints;
+    }
+
+    Map<Integer, Object> parameters;
 
     // Gather the query based on the AssetDatapointQuery type
     String query;
     try {
-      query = datapointQuery.getSQLQuery(getDatapointTableName(), attribute.getTypeClass());
+      DatapointRollup rollup = getRollup(datapointQuery, attribute);
+      if (rollup != null) {
+        getLogger().finest("Using rollup '" + rollup.tableName() + "' for: " + attributeRef);
+        AssetDatapointIntervalQuery intervalQuery = (AssetDatapointIntervalQuery) datapointQuery;
+        query = intervalQuery.getRollupSQLQuery(getDatapointTableName(), rollup.tableName());
+        parameters = intervalQuery.getRollupSQLParameters(attributeRef, rollup.unit());
+      } else {
+        query = datapointQuery.getSQLQuery(getDatapointTableName(), attribute.getTypeClass());
+        parameters = datapointQuery.getSQLParameters(attributeRef);
+      }
     } catch (IllegalStateException ise) {
       getLogger().log(Level.WARNING, ise.getMessage());
       throw ise;
     }
 
-    // Verify the query is 'legal' and can be executed
     try {
-      if (canQueryDatapoints(query, parameters, maxAmountOfQueryPoints)) {
-        getLogger().finest("Querying datapoints for: " + attributeRef);
-
-        return doQueryDatapoints(assetId, attribute, query, parameters);
+      if (TextUtil.isNullOrEmpty(query)) {
+        throw new IllegalArgumentException("Query is null or empty");
       }
+      getLogger().finest("Querying datapoints for: " + attributeRef);
 
-      return Collections.emptyList();
+      return doQueryDatapoints(assetId, attribute, query, parameters, maxAmountOfQueryPoints);
     } catch (DatapointQueryTooLargeException dex) {
       String msg =
           "Could not query data points for "
@@ -277,6 +428,70 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
     }
   }
 
+  /**
+   * Query the datapoints of several attributes with the same query; the series are queried in
+   * parallel on the executor, at most {@link #batchQueryParallelism} at a time, and returned in the
+   * iteration order of the supplied map. If any series fails then no further series are queried and
+   * the whole query fails with the same exception as {@link #queryDatapoints(String, Attribute,
+   * AssetDatapointQuery)}.
+   */
+  public Map<AttributeRef, List<ValueDatapoint<?>>> queryDatapoints(
+      Map<AttributeRef, Attribute<?>> attributes, @NotNull AssetDatapointQuery datapointQuery) {
+    List<Map.Entry<AttributeRef, Attribute<?>>> series = new ArrayList<>(attributes.entrySet());
+    List<CompletableFuture<List<ValueDatapoint<?>>>> futures = new ArrayList<>(series.size());
+    Map<AttributeRef, List<ValueDatapoint<?>>> result = new LinkedHashMap<>();
+
+    for (int i = 0; i < series.size(); i++) {
+      while (futures.size() < series.size() && futures.size() < i + batchQueryParallelism) {
+        Map.Entry<AttributeRef, Attribute<?>> entry = series.get(futures.size());
+        futures.add(
+            CompletableFuture.supplyAsync(
+                () -> queryDatapoints(entry.getKey().getId(), entry.getValue(), datapointQuery),
+                executorService));
+      }
+      try {
+        result.put(series.get(i).getKey(), futures.get(i).join());
+      } catch (CompletionException e) {
+        // Series still in flight complete on their own, the rest are never submitted
+        if (e.getCause() instanceof RuntimeException runtimeException) {
+          throw runtimeException;
+        }
+        throw e;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Answer the query without going to the database if possible.
+   *
+   * @return <code>null</code> if the query has to be answered by the database, which is always the
+   *     case by default.
+   */
+  protected List<ValueDatapoint<?>> queryRecentDatapoints(
+      AttributeRef attributeRef, Attribute<?> attribute, AssetDatapointQuery datapointQuery) {
+    return null;
+  }
+
+  /**
+   * Get the coarsest rollup that can be used for the query, interval queries whose interval is a
+   * multiple of a rollup bucket don't need to aggregate the raw datapoints.
+   */
+  protected DatapointRollup getRollup(AssetDatapointQuery datapointQuery, Attribute<?> attribute) {
+    if (!(datapointQuery instanceof AssetDatapointIntervalQuery intervalQuery)) {
+      return null;
+    }
+    return getRollups().stream()
+        .filter(rollup -> intervalQuery.canUseRollup(rollup.unit(), attribute.getTypeClass()))
+        .findFirst()
+        .orElse(null);
+  }
+
+  /** Rollups of the datapoint table ordered from coarsest to finest, none by default. */
+  protected List<DatapointRollup> getRollups() {
+    return Collections.emptyList();
+  }
+
   protected boolean canQueryDatapoints(
       String query, Map<Integer, Object> parameters, int datapointLimit) {
     if (TextUtil.isNullOrEmpty(query)) {
@@ -304,8 +519,17 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
     return true;
   }
 
+  /**
+   * Executes the query using a cursor so rows are streamed from the database rather than loaded at
+   * once; a {@link DatapointQueryTooLargeException} is thrown as soon as more than the datapoint
+   * limit rows have been read (a limit of 0 or less disables the limit).
+   */
   protected List<ValueDatapoint<?>> doQueryDatapoints(
-      String assetId, Attribute<?> attribute, String query, Map<Integer, Object> parameters) {
+      String assetId,
+      Attribute<?> attribute,
+      String query,
+      Map<Integer, Object> parameters,
+      int datapointLimit) {
     return persistenceService.doReturningTransaction(
         entityManager ->
             entityManager
@@ -336,28 +560,37 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
                             }
                           }
 
+                          st.setFetchSize(QUERY_FETCH_SIZE);
+                          if (datapointLimit > 0) {
+                            // One more than the limit so exceeding it can be detected
+                            st.setMaxRows(datapointLimit + 1);
+                          }
+
                           try (ResultSet rs = st.executeQuery()) {
                             List<ValueDatapoint<?>> result = new ArrayList<>();
                             while (rs.next()) {
-                              Object value = null;
-                              if (rs.getObject(2) != null) {
-                                if (isNumber || isBoolean) {
+                              if (datapointLimit > 0 && result.size() >= datapointLimit) {
+                                throw new DatapointQueryTooLargeException();
+                              }
+                              long timestamp = rs.getTimestamp(1).getTime();
+                              Object value = rs.getObject(2);
+                              if (isNumber || isBoolean) {
+                                // Only fall back to value coercion for unexpected column types
+                                if (value instanceof Number number) {
+                                  value = number.doubleValue();
+                                } else if (value instanceof Boolean bool) {
+                                  value = bool ? 1d : 0d;
+                                } else if (value != null) {
                                   value =
-                                      ValueUtil.getValueCoerced(rs.getObject(2), Double.class)
-                                          .orElse(null);
-                                } else {
-                                  if (rs.getObject(2) instanceof PGobject) {
-                                    value =
-                                        ValueUtil.parse(((PGobject) rs.getObject(2)).getValue())
-                                            .orElse(null);
-                                  } else {
-                                    value =
-                                        ValueUtil.getValueCoerced(rs.getObject(2), JsonNode.class)
-                                            .orElse(null);
-                                  }
+                                      ValueUtil.getValueCoerced(value, Double.class).orElse(null);
                                 }
+                              } else if (value instanceof PGobject pgValue) {
+                                value = ValueUtil.parse(pgValue.getValue()).orElse(null);
+                              } else if (value != null) {
+                                value =
+                                    ValueUtil.getValueCoerced(value, JsonNode.class).orElse(null);
                               }
-                              result.add(new ValueDatapoint<>(rs.getTimestamp(1).getTime(), value));
+                              result.add(new ValueDatapoint<>(timestamp, value));
                             }
                             return result;
                           }
@@ -418,23 +651,67 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
     return connection.prepareStatement(
         "INSERT INTO "
             + getDatapointTableName()
-            + " (entity_id, attribute_name, value, timestamp) "
-            + "VALUES (?, ?, ?, ?) "
+            + " (entity_id, attribute_name, value, numeric_value, timestamp) "
+            + "VALUES (?, ?, ?, ?, ?) "
             + "ON CONFLICT (entity_id, attribute_name, timestamp) DO UPDATE "
-            + "SET value = excluded.value");
+            + "SET value = excluded.value, numeric_value = excluded.numeric_value");
   }
 
   protected void setUpsertValues(
       PreparedStatement st, String assetId, String attributeName, Object value, long timestamp)
       throws Exception {
+    setUpsertJSONValues(
+        st,
+        assetId,
+        attributeName,
+        ValueUtil.asJSON(value).orElse(ValueUtil.NULL_LITERAL),
+        timestamp);
+  }
+
+  protected void setUpsertJSONValues(
+      PreparedStatement st, String assetId, String attributeName, String valueJSON, long timestamp)
+      throws Exception {
     PGobject pgJsonValue = new PGobject();
     pgJsonValue.setType("jsonb");
-    pgJsonValue.setValue(ValueUtil.asJSON(value).orElse("null"));
+    pgJsonValue.setValue(valueJSON);
     st.setString(1, assetId);
     st.setString(2, attributeName);
     st.setObject(3, pgJsonValue);
+    Double numericValue = getNumericValue(valueJSON);
+    if (numericValue != null) {
+      st.setDouble(4, numericValue);
+    } else {
+      st.setNull(4, Types.DOUBLE);
+    }
     st.setObject(
-        4, Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDateTime());
+        5, Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDateTime());
+  }
+
+  /**
+   * Get the value to store in the <code>numeric_value</code> column for the JSON value of a
+   * datapoint; numbers are stored as is and booleans as 1 or 0, anything else (including numbers
+   * too large for a double) is stored as <code>null</code>.
+   */
+  public static Double getNumericValue(String valueJSON) {
+    if (valueJSON == null || valueJSON.isEmpty()) {
+      return null;
+    }
+    if ("true".equals(valueJSON)) {
+      return 1d;
+    }
+    if ("false".equals(valueJSON)) {
+      return 0d;
+    }
+    char first = valueJSON.charAt(0);
+    if (first != '-' && (first < '0' || first > '9')) {
+      return null;
+    }
+    try {
+      double value = Double.parseDouble(valueJSON);
+      return Double.isInfinite(value) ? null : value;
+    } catch (NumberFormatException e) {
+      return null;
+    }
   }
 
   protected abstract Class<T> getDatapointClass();
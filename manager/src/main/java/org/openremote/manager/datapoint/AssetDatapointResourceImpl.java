@@ -27,17 +27,17 @@ import jakarta.ws.rs.BeanParam;
 import jakarta.ws.rs.NotSupportedException;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.container.AsyncResponse;
-import jakarta.ws.rs.container.ConnectionCallback;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
-import org.apache.commons.io.IOUtils;
+import java.util.stream.Collectors;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetStorageService;
 import org.openremote.manager.security.ManagerIdentityService;
@@ -49,9 +49,9 @@ import org.openremote.model.attribute.AttributeRef;
 import org.openremote.model.datapoint.*;
 import org.openremote.model.datapoint.query.AssetDatapointQuery;
 import org.openremote.model.http.RequestParams;
+import org.openremote.model.query.AssetQuery;
 import org.openremote.model.security.ClientRole;
 import org.openremote.model.syslog.SyslogCategory;
-import org.openremote.model.util.UniqueIdentifierGenerator;
 import org.openremote.model.value.MetaItemType;
 
 public class AssetDatapointResourceImpl extends ManagerWebResource
@@ -59,6 +59,7 @@ public class AssetDatapointResourceImpl extends ManagerWebResource
 
   private static final Logger DATA_EXPORT_LOG =
       SyslogCategory.getLogger(DATA, AssetDatapointResourceImpl.class);
+  protected static final int MAX_BATCH_ATTRIBUTE_REFS = 100;
 
   protected final AssetStorageService assetStorageService;
   protected final AssetDatapointService assetDatapointService;
@@ -147,6 +148,144 @@ public class AssetDatapointResourceImpl extends ManagerWebResource
     }
   }
 
+  @Override
+  public AssetDatapointSeries[] getDatapointsBatch(
+      RequestParams requestParams, AssetDatapointBatchQuery batchQuery) {
+    if (batchQuery == null
+        || batchQuery.query == null
+        || batchQuery.attributeRefs == null
+        || batchQuery.attributeRefs.length == 0
+        || batchQuery.attributeRefs.length > MAX_BATCH_ATTRIBUTE_REFS) {
+      throw new WebApplicationException(Response.Status.BAD_REQUEST);
+    }
+
+    try {
+      List<String> assetIds =
+          Arrays.stream(batchQuery.attributeRefs).map(AttributeRef::getId).distinct().toList();
+
+      if (isRestrictedUser() && !assetStorageService.isUserAssets(getUserId(), assetIds)) {
+        throw new WebApplicationException(Response.Status.FORBIDDEN);
+      }
+
+      // If logged in, user should have READ ASSETS role
+      if (isAuthenticated()
+          && !hasResourceRole(ClientRole.READ_ASSETS.getValue(), Constants.KEYCLOAK_CLIENT_ID)) {
+        throw new WebApplicationException(Response.Status.FORBIDDEN);
+      }
+
+      // Load all assets with just the requested attributes in a single query
+      String[] attributeNames =
+          Arrays.stream(batchQuery.attributeRefs)
+              .map(AttributeRef::getName)
+              .distinct()
+              .toArray(String[]::new);
+      Map<String, Asset<?>> assets =
+          assetStorageService
+              .findAll(
+                  new AssetQuery()
+                      .ids(assetIds.toArray(String[]::new))
+                      .select(new AssetQuery.Select().attributes(attributeNames)))
+              .stream()
+              .collect(Collectors.toMap(Asset::getId, asset -> asset));
+
+      Map<AttributeRef, Attribute<?>> attributes = new LinkedHashMap<>();
+      for (AttributeRef attributeRef : batchQuery.attributeRefs) {
+        Asset<?> asset = assets.get(attributeRef.getId());
+
+        if (asset == null) {
+          throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+
+        if (!isRealmActiveAndAccessible(asset.getRealm())) {
+          throw new WebApplicationException(Response.Status.FORBIDDEN);
+        }
+
+        if (!isAuthenticated() && !asset.isAccessPublicRead()) {
+          throw new WebApplicationException(Response.Status.FORBIDDEN);
+        }
+
+        Attribute<?> attribute =
+            asset
+                .getAttribute(attributeRef.getName())
+                .orElseThrow(() -> new WebApplicationException(Response.Status.NOT_FOUND));
+
+        checkRestrictedAttributeRead(attribute);
+
+        if (!isAuthenticated()
+            && !attribute.getMeta().getValue(MetaItemType.ACCESS_PUBLIC_READ).orElse(false)) {
+          throw new WebApplicationException(Response.Status.FORBIDDEN);
+        }
+
+        attributes.put(attributeRef, attribute);
+      }
+
+      return assetDatapointService.queryDatapoints(attributes, batchQuery.query).entrySet().stream()
+          .map(
+              series ->
+                  new AssetDatapointSeries(
+                      series.getKey(), series.getValue().toArray(ValueDatapoint[]::new)))
+          .toArray(AssetDatapointSeries[]::new);
+    } catch (IllegalStateException | IllegalArgumentException ex) {
+      throw new BadRequestException(ex);
+    } catch (DatapointQueryTooLargeException dqex) {
+      throw new WebApplicationException(dqex, Response.Status.REQUEST_ENTITY_TOO_LARGE);
+    } catch (UnsupportedOperationException ex) {
+      throw new NotSupportedException(ex);
+    }
+  }
+
+  @Override
+  public void importDatapoints(
+      RequestParams requestParams, String assetId, String attributeName, InputStream datapoints) {
+    DatapointImportFormat format =
+        DatapointImportFormat.fromMediaType(httpHeaders.getMediaType())
+            .orElseThrow(NotSupportedException::new);
+
+    if (isRestrictedUser() && !assetStorageService.isUserAsset(getUserId(), assetId)) {
+      throw new WebApplicationException(Response.Status.FORBIDDEN);
+    }
+
+    Asset<?> asset = assetStorageService.find(assetId, true);
+
+    if (asset == null) {
+      throw new WebApplicationException(Response.Status.NOT_FOUND);
+    }
+
+    if (!isRealmActiveAndAccessible(asset.getRealm())) {
+      throw new WebApplicationException(Response.Status.FORBIDDEN);
+    }
+
+    Attribute<?> attribute =
+        asset
+            .getAttribute(attributeName)
+            .orElseThrow(() -> new WebApplicationException(Response.Status.NOT_FOUND));
+
+    if (isRestrictedUser()
+        && !attribute.getMeta().getValue(MetaItemType.ACCESS_RESTRICTED_WRITE).orElse(false)) {
+      throw new WebApplicationException(Response.Status.FORBIDDEN);
+    }
+
+    try {
+      long count =
+          assetDatapointService.importDatapoints(
+              assetId, attributeName, attribute.getTypeClass(), format, datapoints);
+      DATA_EXPORT_LOG.info(
+          "User '"
+              + getUsername()
+              + "' imported "
+              + count
+              + " datapoints for "
+              + new AttributeRef(assetId, attributeName)
+              + " in format "
+              + format);
+    } catch (IllegalArgumentException ex) {
+      throw new BadRequestException(ex);
+    } catch (IOException ex) {
+      DATA_EXPORT_LOG.log(Level.WARNING, "Failed to read datapoint import: " + assetId, ex);
+      throw new BadRequestException(ex);
+    }
+  }
+
   @Override
   public DatapointPeriod getDatapointPeriod(
       RequestParams requestParams, String assetId, String attributeName) {
@@ -186,9 +325,10 @@ public class AssetDatapointResourceImpl extends ManagerWebResource
       String attributeRefsString,
       long fromTimestamp,
       long toTimestamp,
-      DatapointExportFormat format) {
+      DatapointExportFormat format,
+      DatapointExportCompression compression) {
     try {
-      if (format == null) {
+      if (format == null || compression == null) {
         throw new WebApplicationException(Response.Status.BAD_REQUEST);
       }
 
@@ -232,38 +372,30 @@ public class AssetDatapointResourceImpl extends ManagerWebResource
               + " to "
               + toTimestamp
               + " in format "
-              + format);
-
-      PipedInputStream pipedInputStream =
-          assetDatapointService.exportDatapoints(attributeRefs, fromTimestamp, toTimestamp, format);
-
-      asyncResponse.register(
-          (ConnectionCallback)
-              disconnected -> {
-                try {
-                  pipedInputStream.close();
-                } catch (IOException e) {
-                  DATA_EXPORT_LOG.log(Level.SEVERE, "Could not close input stream: ", e);
-                  throw new RuntimeException(e);
-                }
-              });
-
-      try (InputStream fin = pipedInputStream;
-          ZipOutputStream zipOut = new ZipOutputStream(response.getOutputStream())) {
-
-        String fileName = UniqueIdentifierGenerator.generateId() + ".csv";
-        ZipEntry zipEntry = new ZipEntry(fileName);
-        zipOut.putNextEntry(zipEntry);
-        IOUtils.copy(fin, zipOut);
-        zipOut.closeEntry();
-      } catch (IOException ex) {
-        asyncResponse.resume(new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR));
-        DATA_EXPORT_LOG.log(Level.SEVERE, "Zip exception: ", ex);
+              + format
+              + " with compression "
+              + compression);
+
+      // Checked before the headers are set so a too large export is rejected
+      assetDatapointService.checkExportLimit(attributeRefs, fromTimestamp, toTimestamp);
+
+      if (compression == DatapointExportCompression.GZIP) {
+        response.setContentType("application/gzip");
+        response.setHeader(
+            HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"dataexport.csv.gz\"");
+      } else {
+        response.setContentType("application/zip");
+        response.setHeader(
+            HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"dataexport.zip\"");
       }
 
-      response.setContentType("application/zip");
-      response.setHeader(
-          HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"dataexport.zip\"");
+      assetDatapointService.exportDatapoints(
+          attributeRefs,
+          fromTimestamp,
+          toTimestamp,
+          format,
+          compression,
+          response.getOutputStream());
 
       asyncResponse.resume(response);
     } catch (JsonProcessingException ex) {
@@ -273,7 +405,7 @@ public class AssetDatapointResourceImpl extends ManagerWebResource
           new WebApplicationException(dqex, Response.Status.REQUEST_ENTITY_TOO_LARGE));
     } catch (IOException ex) {
       asyncResponse.resume(new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR));
-      DATA_EXPORT_LOG.log(Level.SEVERE, "Failed to create piped output stream: ", ex);
+      DATA_EXPORT_LOG.log(Level.SEVERE, "Failed to write data export: ", ex);
     }
   }
 
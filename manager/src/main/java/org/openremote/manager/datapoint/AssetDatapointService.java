@@ -19,25 +19,45 @@
 package org.openremote.manager.datapoint;
 
 import static org.openremote.model.syslog.SyslogCategory.DATA;
+import static org.openremote.model.util.MapAccess.getBoolean;
 import static org.openremote.model.util.MapAccess.getInteger;
 import static org.openremote.model.value.MetaItemType.STORE_DATA_POINTS;
 
+import jakarta.persistence.EntityManager;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.hibernate.Session;
 import org.openremote.agent.protocol.ProtocolDatapointService;
 import org.openremote.container.timer.TimerService;
@@ -49,22 +69,35 @@ import org.openremote.manager.security.ManagerIdentityService;
 import org.openremote.manager.web.ManagerWebService;
 import org.openremote.model.Container;
 import org.openremote.model.asset.Asset;
+import org.openremote.model.attribute.Attribute;
 import org.openremote.model.attribute.AttributeEvent;
 import org.openremote.model.attribute.AttributeRef;
 import org.openremote.model.attribute.AttributeWriteFailure;
 import org.openremote.model.datapoint.AssetDatapoint;
+import org.openremote.model.datapoint.DatapointExportCompression;
 import org.openremote.model.datapoint.DatapointExportFormat;
+import org.openremote.model.datapoint.DatapointImportFormat;
 import org.openremote.model.datapoint.DatapointQueryTooLargeException;
+import org.openremote.model.datapoint.ValueDatapoint;
+import org.openremote.model.datapoint.query.AssetDatapointAllQuery;
+import org.openremote.model.datapoint.query.AssetDatapointNearestQuery;
+import org.openremote.model.datapoint.query.AssetDatapointQuery;
 import org.openremote.model.syslog.SyslogCategory;
+import org.openremote.model.util.UniqueIdentifierGenerator;
+import org.openremote.model.util.ValueUtil;
 import org.openremote.model.value.MetaHolder;
 import org.openremote.model.value.MetaItemType;
 import org.postgresql.PGConnection;
-import org.postgresql.copy.CopyManager;
 
 /**
  * Store and retrieve datapoints for asset attributes and periodically purge data points using
  * TimescaleDB's {@code drop_chunks()} with week-based retention aligned to 7-day chunk intervals.
  * Retention defaults to inifinite.
+ *
+ * <p>The raw datapoints and each of the continuous aggregates (rollups) have their own retention so
+ * the raw datapoints can be dropped long before the downsampled datapoints; the refresh window of
+ * each rollup is limited to the retention of the table it is built on so dropped datapoints are
+ * never removed from the rollup by a refresh.
  */
 public class AssetDatapointService extends AbstractDatapointService<AssetDatapoint>
     implements ProtocolDatapointService {
@@ -80,11 +113,137 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
 
   public static final String OR_DATA_POINTS_EXPORT_LIMIT = "OR_DATA_POINTS_EXPORT_LIMIT";
   public static final int OR_DATA_POINTS_EXPORT_LIMIT_DEFAULT = 1000000;
+
+  /**
+   * Number of time slices of an export that are queried in parallel, each on its own connection;
+   * see {@link #writeExport}.
+   */
+  public static final String OR_DATA_POINTS_EXPORT_PARALLELISM =
+      "OR_DATA_POINTS_EXPORT_PARALLELISM";
+
+  public static final int OR_DATA_POINTS_EXPORT_PARALLELISM_DEFAULT = 4;
+
+  /**
+   * Interval in milliseconds at which data points of attribute events are written in batches by a
+   * {@link DatapointWriter}; a value of 0 disables batching and each data point is written in its
+   * own transaction.
+   */
+  public static final String OR_DATA_POINTS_WRITE_FLUSH_MILLIS =
+      "OR_DATA_POINTS_WRITE_FLUSH_MILLIS";
+
+  public static final int OR_DATA_POINTS_WRITE_FLUSH_MILLIS_DEFAULT = 0;
+
+  /** Number of waiting data points that triggers a batch write before the flush interval. */
+  public static final String OR_DATA_POINTS_WRITE_BATCH_SIZE = "OR_DATA_POINTS_WRITE_BATCH_SIZE";
+
+  public static final int OR_DATA_POINTS_WRITE_BATCH_SIZE_DEFAULT = 1000;
+
+  /**
+   * Maximum number of data points waiting to be written, once reached attribute event processing
+   * waits for space.
+   */
+  public static final String OR_DATA_POINTS_WRITE_BUFFER_SIZE = "OR_DATA_POINTS_WRITE_BUFFER_SIZE";
+
+  public static final int OR_DATA_POINTS_WRITE_BUFFER_SIZE_DEFAULT = 10000;
+
+  /**
+   * Whether interval queries use the continuous aggregates of the datapoint table when the
+   * requested interval allows it.
+   */
+  public static final String OR_DATA_POINTS_QUERY_ROLLUPS = "OR_DATA_POINTS_QUERY_ROLLUPS";
+
+  public static final boolean OR_DATA_POINTS_QUERY_ROLLUPS_DEFAULT = true;
+
+  /**
+   * Retention of the 1 minute, 1 hour and 1 day rollups in weeks; the rollups are kept forever when
+   * not set.
+   */
+  public static final String OR_DATA_POINTS_1M_MAX_AGE_WEEKS = "OR_DATA_POINTS_1M_MAX_AGE_WEEKS";
+
+  public static final String OR_DATA_POINTS_1H_MAX_AGE_WEEKS = "OR_DATA_POINTS_1H_MAX_AGE_WEEKS";
+  public static final String OR_DATA_POINTS_1D_MAX_AGE_WEEKS = "OR_DATA_POINTS_1D_MAX_AGE_WEEKS";
+
+  /**
+   * Whether the {@link MetaItemType#DATA_POINTS_MAX_AGE_DAYS} of number and boolean attributes is
+   * applied to the 1 day rollup instead of the raw datapoints; otherwise a custom max age keeps the
+   * raw datapoints of all attributes.
+   */
+  public static final String OR_DATA_POINTS_DOWNSAMPLE_CUSTOM_MAX_AGE =
+      "OR_DATA_POINTS_DOWNSAMPLE_CUSTOM_MAX_AGE";
+
+  public static final boolean OR_DATA_POINTS_DOWNSAMPLE_CUSTOM_MAX_AGE_DEFAULT = false;
+
+  /**
+   * Memory budget in megabytes of the {@link RecentDatapointCache} which answers queries of recent
+   * number and boolean datapoints without going to the database; a value of 0 disables the cache.
+   */
+  public static final String OR_DATA_POINTS_RECENT_CACHE_MAX_MB =
+      "OR_DATA_POINTS_RECENT_CACHE_MAX_MB";
+
+  public static final int OR_DATA_POINTS_RECENT_CACHE_MAX_MB_DEFAULT = 0;
+
+  /** Maximum number of recent datapoints kept in memory per attribute. */
+  public static final String OR_DATA_POINTS_RECENT_CACHE_SIZE = "OR_DATA_POINTS_RECENT_CACHE_SIZE";
+
+  public static final int OR_DATA_POINTS_RECENT_CACHE_SIZE_DEFAULT = 3600;
+
+  /**
+   * Maximum number of datapoints held by the {@link DatapointQueryCache} which caches the closed
+   * buckets of interval and LTTB queries; a value of 0 disables the cache.
+   */
+  public static final String OR_DATA_POINTS_QUERY_CACHE_SIZE = "OR_DATA_POINTS_QUERY_CACHE_SIZE";
+
+  public static final int OR_DATA_POINTS_QUERY_CACHE_SIZE_DEFAULT = 0;
+
+  /** Seconds after which the closed buckets cached by the {@link DatapointQueryCache} expire. */
+  public static final String OR_DATA_POINTS_QUERY_CACHE_TTL_SECONDS =
+      "OR_DATA_POINTS_QUERY_CACHE_TTL_SECONDS";
+
+  public static final int OR_DATA_POINTS_QUERY_CACHE_TTL_SECONDS_DEFAULT = 600;
+
+  /**
+   * Upper bound of the time until datapoints written before the real-time watermark of the rollups
+   * are included in them, the sum of the schedule intervals of the refresh policies of the 1
+   * minute, 1 hour and 1 day rollups.
+   */
+  protected static final Duration ROLLUP_REFRESH_LAG = Duration.ofMinutes(1 + 10 + 60);
+
+  /**
+   * End offset of the refresh policy of the 1 minute rollup; datapoints older than this may be
+   * below the watermark up to which the rollups are materialized.
+   */
+  protected static final Duration ROLLUP_WATERMARK_LAG = Duration.ofMinutes(1);
+
+  /** Delay before refreshing the rollups after a late write so close writes are refreshed once. */
+  protected static final long ROLLUP_REFRESH_DELAY_MILLIS = 1000;
+
+  /** A table with its own retention, built on the source table. */
+  protected record RetentionTier(String tableName, String sourceTableName, int maxAgeWeeks) {}
+
+  /** Length of the time slices of an export, the same as the chunk interval of the datapoints. */
+  protected static final int EXPORT_SLICE_DAYS = 7;
+
+  protected static final List<DatapointRollup> ROLLUPS =
+      List.of(
+          new DatapointRollup(ChronoUnit.DAYS, "asset_datapoint_1d"),
+          new DatapointRollup(ChronoUnit.HOURS, "asset_datapoint_1h"),
+          new DatapointRollup(ChronoUnit.MINUTES, "asset_datapoint_1m"));
   private static final Logger LOG = Logger.getLogger(AssetDatapointService.class.getName());
   private static final Logger DATA_EXPORT_LOG =
       SyslogCategory.getLogger(DATA, AssetDatapointResourceImpl.class);
   protected int maxDatapointAgeWeeks = -1;
   protected int datapointExportLimit;
+  protected int datapointExportParallelism;
+  protected DatapointWriter datapointWriter;
+  protected boolean rollupsEnabled;
+  protected List<RetentionTier> rollupRetentionTiers;
+  protected boolean downsampleCustomMaxAge;
+  protected RecentDatapointCache recentDatapointCache;
+  protected DatapointQueryCache datapointQueryCache;
+  protected DatapointNumericValueBackfill numericValueBackfill;
+  // Inclusive ranges of late datapoints per attribute that are not refreshed in the rollups yet
+  protected final Map<AttributeRef, long[]> pendingRollupRefreshes = new HashMap<>();
+  protected ScheduledFuture<?> rollupRefreshFuture;
 
   @Override
   public void init(Container container) throws Exception {
@@ -98,6 +257,7 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
                 container.getService(ManagerIdentityService.class),
                 container.getService(AssetStorageService.class),
                 this));
+    container.getService(ManagerWebService.class).addApiSingleton(new DatapointBinaryWriter());
 
     if (container.getConfig().containsKey(OR_DATA_POINTS_MAX_AGE_WEEKS)) {
       maxDatapointAgeWeeks = getInteger(container.getConfig(), OR_DATA_POINTS_MAX_AGE_WEEKS, -1);
@@ -123,6 +283,38 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
       LOG.log(Level.INFO, "Data point purge retention = " + maxDatapointAgeWeeks + " weeks");
     }
 
+    // Finest first, each rollup is built on the previous table
+    rollupRetentionTiers =
+        List.of(
+            new RetentionTier(
+                "asset_datapoint_1m",
+                AssetDatapoint.TABLE_NAME,
+                getInteger(container.getConfig(), OR_DATA_POINTS_1M_MAX_AGE_WEEKS, -1)),
+            new RetentionTier(
+                "asset_datapoint_1h",
+                "asset_datapoint_1m",
+                getInteger(container.getConfig(), OR_DATA_POINTS_1H_MAX_AGE_WEEKS, -1)),
+            new RetentionTier(
+                "asset_datapoint_1d",
+                "asset_datapoint_1h",
+                getInteger(container.getConfig(), OR_DATA_POINTS_1D_MAX_AGE_WEEKS, -1)));
+    rollupRetentionTiers.stream()
+        .filter(tier -> tier.maxAgeWeeks() > 0)
+        .forEach(
+            tier ->
+                LOG.info(
+                    "Data point purge retention of "
+                        + tier.tableName()
+                        + " = "
+                        + tier.maxAgeWeeks()
+                        + " weeks"));
+
+    downsampleCustomMaxAge =
+        getBoolean(
+            container.getConfig(),
+            OR_DATA_POINTS_DOWNSAMPLE_CUSTOM_MAX_AGE,
+            OR_DATA_POINTS_DOWNSAMPLE_CUSTOM_MAX_AGE_DEFAULT);
+
     datapointExportLimit =
         getInteger(
             container.getConfig(),
@@ -136,11 +328,98 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
     } else {
       LOG.log(Level.INFO, "Data point export limit = " + datapointExportLimit);
     }
+
+    datapointExportParallelism =
+        Math.max(
+            1,
+            getInteger(
+                container.getConfig(),
+                OR_DATA_POINTS_EXPORT_PARALLELISM,
+                OR_DATA_POINTS_EXPORT_PARALLELISM_DEFAULT));
+
+    rollupsEnabled =
+        getBoolean(
+            container.getConfig(),
+            OR_DATA_POINTS_QUERY_ROLLUPS,
+            OR_DATA_POINTS_QUERY_ROLLUPS_DEFAULT);
+
+    int writeFlushMillis =
+        getInteger(
+            container.getConfig(),
+            OR_DATA_POINTS_WRITE_FLUSH_MILLIS,
+            OR_DATA_POINTS_WRITE_FLUSH_MILLIS_DEFAULT);
+    if (writeFlushMillis > 0) {
+      datapointWriter =
+          new DatapointWriter(
+              this,
+              scheduledExecutorService,
+              getInteger(
+                  container.getConfig(),
+                  OR_DATA_POINTS_WRITE_BATCH_SIZE,
+                  OR_DATA_POINTS_WRITE_BATCH_SIZE_DEFAULT),
+              getInteger(
+                  container.getConfig(),
+                  OR_DATA_POINTS_WRITE_BUFFER_SIZE,
+                  OR_DATA_POINTS_WRITE_BUFFER_SIZE_DEFAULT),
+              writeFlushMillis,
+              container.getMeterRegistry());
+      LOG.info("Data point batch writing enabled: " + datapointWriter);
+    }
+
+    int recentCacheMaxMb =
+        getInteger(
+            container.getConfig(),
+            OR_DATA_POINTS_RECENT_CACHE_MAX_MB,
+            OR_DATA_POINTS_RECENT_CACHE_MAX_MB_DEFAULT);
+    if (recentCacheMaxMb > 0) {
+      recentDatapointCache =
+          new RecentDatapointCache(
+              getInteger(
+                  container.getConfig(),
+                  OR_DATA_POINTS_RECENT_CACHE_SIZE,
+                  OR_DATA_POINTS_RECENT_CACHE_SIZE_DEFAULT),
+              recentCacheMaxMb * 1024L * 1024L,
+              container.getMeterRegistry());
+      LOG.info("Recent data point cache enabled: " + recentDatapointCache);
+    }
+
+    int queryCacheSize =
+        getInteger(
+            container.getConfig(),
+            OR_DATA_POINTS_QUERY_CACHE_SIZE,
+            OR_DATA_POINTS_QUERY_CACHE_SIZE_DEFAULT);
+    if (queryCacheSize > 0) {
+      // Buckets are only cached once buffered writes are flushed and the rollups are refreshed
+      long settleMillis =
+          Math.max(0, writeFlushMillis) + (rollupsEnabled ? ROLLUP_REFRESH_LAG.toMillis() : 0);
+      datapointQueryCache =
+          new DatapointQueryCache(
+              queryCacheSize,
+              settleMillis,
+              getInteger(
+                      container.getConfig(),
+                      OR_DATA_POINTS_QUERY_CACHE_TTL_SECONDS,
+                      OR_DATA_POINTS_QUERY_CACHE_TTL_SECONDS_DEFAULT)
+                  * 1000L,
+              () -> timerService.getCurrentTimeMillis(),
+              container.getMeterRegistry());
+      LOG.info("Data point query cache enabled: " + datapointQueryCache);
+    }
   }
 
   @Override
   public void start(Container container) throws Exception {
-    if (maxDatapointAgeWeeks > 0) {
+    if (datapointWriter != null) {
+      datapointWriter.start();
+    }
+
+    configureRollupRefreshWindows();
+
+    numericValueBackfill = new DatapointNumericValueBackfill(persistenceService);
+    executorService.execute(numericValueBackfill::run);
+
+    if (maxDatapointAgeWeeks > 0
+        || rollupRetentionTiers.stream().anyMatch(tier -> tier.maxAgeWeeks() > 0)) {
       dataPointsPurgeScheduledFuture =
           scheduledExecutorService.scheduleAtFixedRate(
               this::purgeDataPoints,
@@ -155,6 +434,23 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
         OutdatedAttributeEvent.class, null, this::onOutdatedAttributeEvent);
   }
 
+  @Override
+  public void stop(Container container) throws Exception {
+    super.stop(container);
+    if (datapointWriter != null) {
+      datapointWriter.stop();
+    }
+    if (numericValueBackfill != null) {
+      numericValueBackfill.stop();
+    }
+    synchronized (pendingRollupRefreshes) {
+      if (rollupRefreshFuture != null) {
+        rollupRefreshFuture.cancel(false);
+        rollupRefreshFuture = null;
+      }
+    }
+  }
+
   public static boolean attributeIsStoreDatapoint(MetaHolder attributeInfo) {
     return attributeInfo
         .getMetaValue(STORE_DATA_POINTS)
@@ -165,13 +461,33 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
     if (attributeIsStoreDatapoint(attributeEvent)
         && attributeEvent.getValue().isPresent()) { // Don't store datapoints with null value
       try {
-        upsertValue(
-            attributeEvent.getId(),
-            attributeEvent.getName(),
-            attributeEvent.getValue().orElse(null),
-            Instant.ofEpochMilli(attributeEvent.getTimestamp())
-                .atZone(ZoneId.systemDefault())
-                .toLocalDateTime());
+        if (datapointWriter != null) {
+          datapointWriter.add(
+              attributeEvent.getId(),
+              attributeEvent.getName(),
+              attributeEvent.getValueJSON(),
+              attributeEvent.getTimestamp());
+        } else {
+          super.upsertValueJSON(
+              attributeEvent.getId(),
+              attributeEvent.getName(),
+              attributeEvent.getValueJSON(),
+              attributeEvent.getTimestamp());
+          onDatapointsWritten(
+              attributeEvent.getRef(),
+              attributeEvent.getTimestamp(),
+              attributeEvent.getTimestamp());
+        }
+        if (recentDatapointCache != null) {
+          if (isRecentCacheType(attributeEvent.getTypeClass())) {
+            recentDatapointCache.add(
+                attributeEvent.getRef(),
+                attributeEvent.getTimestamp(),
+                getNumericValue(attributeEvent.getValueJSON()));
+          } else {
+            recentDatapointCache.invalidate(attributeEvent.getRef());
+          }
+        }
       } catch (Exception e) {
         throw new AssetProcessingException(
             AttributeWriteFailure.STATE_STORAGE_FAILED,
@@ -186,6 +502,140 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
     onAttributeEvent(outdatedAttributeEvent.getEvent());
   }
 
+  /**
+   * Datapoints written other than by an attribute event are not in the recent data point cache so
+   * the cached datapoints of the attribute are discarded, as are the cached queries of their range.
+   */
+  @Override
+  public void upsertValueJSON(
+      String assetId, String attributeName, String valueJSON, long timestamp)
+      throws IllegalStateException {
+    super.upsertValueJSON(assetId, attributeName, valueJSON, timestamp);
+    invalidateRecentDatapoints(assetId, attributeName);
+    onDatapointsWritten(new AttributeRef(assetId, attributeName), timestamp, timestamp);
+  }
+
+  @Override
+  public void upsertValues(
+      String assetId, String attributeName, List<ValueDatapoint<?>> valuesAndTimestamps)
+      throws IllegalStateException {
+    super.upsertValues(assetId, attributeName, valuesAndTimestamps);
+    invalidateRecentDatapoints(assetId, attributeName);
+    if (!valuesAndTimestamps.isEmpty()) {
+      LongSummaryStatistics timestamps =
+          valuesAndTimestamps.stream().mapToLong(ValueDatapoint::getTimestamp).summaryStatistics();
+      onDatapointsWritten(
+          new AttributeRef(assetId, attributeName), timestamps.getMin(), timestamps.getMax());
+    }
+  }
+
+  @Override
+  public long importDatapoints(
+      String assetId,
+      String attributeName,
+      Class<?> valueType,
+      DatapointImportFormat format,
+      InputStream inputStream)
+      throws IllegalArgumentException, IOException {
+    try {
+      return super.importDatapoints(assetId, attributeName, valueType, format, inputStream);
+    } finally {
+      invalidateRecentDatapoints(assetId, attributeName);
+    }
+  }
+
+  /**
+   * Only late datapoints fall into the closed buckets of cached queries or below the watermark of
+   * the rollups, see {@link #scheduleRollupRefresh}.
+   */
+  @Override
+  protected void onDatapointsWritten(
+      AttributeRef attributeRef, long fromTimestamp, long toTimestamp) {
+    invalidateQueryCache(attributeRef, fromTimestamp, toTimestamp);
+    scheduleRollupRefresh(attributeRef, fromTimestamp, toTimestamp);
+  }
+
+  protected void invalidateRecentDatapoints(String assetId, String attributeName) {
+    if (recentDatapointCache != null) {
+      recentDatapointCache.invalidate(new AttributeRef(assetId, attributeName));
+    }
+  }
+
+  protected void invalidateQueryCache(
+      AttributeRef attributeRef, long fromTimestamp, long toTimestamp) {
+    if (datapointQueryCache != null) {
+      datapointQueryCache.invalidate(attributeRef, fromTimestamp, toTimestamp);
+    }
+  }
+
+  /**
+   * Answer interval and LTTB queries of number and boolean attributes using the closed buckets in
+   * the data point query cache, only the uncached parts of the range are queried.
+   */
+  @Override
+  public List<ValueDatapoint<?>> queryDatapoints(
+      String assetId, Attribute<?> attribute, AssetDatapointQuery datapointQuery) {
+    if (datapointQueryCache != null && isRecentCacheType(attribute.getTypeClass())) {
+      List<ValueDatapoint<?>> datapoints =
+          datapointQueryCache.query(
+              new AttributeRef(assetId, attribute.getName()),
+              datapointQuery,
+              query -> super.queryDatapoints(assetId, attribute, query));
+      if (datapoints != null) {
+        return datapoints;
+      }
+    }
+    return super.queryDatapoints(assetId, attribute, datapointQuery);
+  }
+
+  protected static boolean isRecentCacheType(Class<?> attributeType) {
+    return Number.class.isAssignableFrom(attributeType)
+        || Boolean.class.isAssignableFrom(attributeType);
+  }
+
+  /**
+   * Answer <code>all</code> queries of number and boolean attributes and <code>nearest</code>
+   * queries of number attributes from the recent data point cache when it covers the query.
+   */
+  @Override
+  protected List<ValueDatapoint<?>> queryRecentDatapoints(
+      AttributeRef attributeRef, Attribute<?> attribute, AssetDatapointQuery datapointQuery) {
+    if (recentDatapointCache == null || !isRecentCacheType(attribute.getTypeClass())) {
+      return null;
+    }
+
+    if (datapointQuery instanceof AssetDatapointAllQuery) {
+      List<ValueDatapoint<?>> datapoints =
+          recentDatapointCache.getDatapoints(
+              attributeRef,
+              toMillis(datapointQuery.fromTime, datapointQuery.fromTimestamp),
+              toMillis(datapointQuery.toTime, datapointQuery.toTimestamp));
+      if (datapoints != null
+          && maxAmountOfQueryPoints > 0
+          && datapoints.size() > maxAmountOfQueryPoints) {
+        throw new DatapointQueryTooLargeException();
+      }
+      return datapoints;
+    }
+
+    if (datapointQuery instanceof AssetDatapointNearestQuery
+        && Number.class.isAssignableFrom(attribute.getTypeClass())) {
+      // The timestamp of a nearest query is in seconds
+      ValueDatapoint<?> datapoint =
+          recentDatapointCache.getNearestDatapoint(
+              attributeRef, datapointQuery.fromTimestamp * 1000);
+      return datapoint != null ? List.of(datapoint) : null;
+    }
+
+    return null;
+  }
+
+  protected static long toMillis(LocalDateTime time, long timestamp) {
+    return time != null
+        ? time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+        : timestamp;
+  }
+
   @Override
   protected Class<AssetDatapoint> getDatapointClass() {
     return AssetDatapoint.class;
@@ -201,52 +651,73 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
     return LOG;
   }
 
+  @Override
+  protected List<DatapointRollup> getRollups() {
+    return rollupsEnabled ? ROLLUPS : Collections.emptyList();
+  }
+
   protected void purgeDataPoints() {
     LOG.info("Running data points purge task");
 
     try {
       persistenceService.doTransaction(
           em -> {
-            // Get the schema-qualified hypertable name
+            // Get the schema of the hypertable
             @SuppressWarnings("unchecked")
-            List<String> hypertables =
+            List<String> schemas =
                 em.createNativeQuery(
-                        "SELECT hypertable_schema || '.' || hypertable_name "
+                        "SELECT hypertable_schema "
                             + "FROM timescaledb_information.hypertables "
                             + "WHERE hypertable_name = 'asset_datapoint'",
                         String.class)
                     .getResultList();
 
-            if (hypertables.isEmpty()) {
+            if (schemas.isEmpty()) {
               LOG.warning(
                   "asset_datapoint is not a TimescaleDB hypertable, skipping purge. "
                       + "TimescaleDB with hypercore is required for data point storage.");
               return;
             }
 
-            String qualifiedTableName = hypertables.getFirst();
-
-            // Find the maximum custom retention across all attributes with DATA_POINTS_MAX_AGE_DAYS
-            // meta
+            String schemaName = schemas.getFirst();
             int effectiveRetentionWeeks = maxDatapointAgeWeeks;
-            Number maxCustomDays =
-                (Number)
-                    em.createNativeQuery(
-                            "SELECT MAX((attr_val->'meta'->>'dataPointsMaxAgeDays')::integer) "
-                                + "FROM asset, jsonb_each(asset.attributes) AS a(attr_key, attr_val) "
-                                + "WHERE jsonb_exists(attr_val->'meta', 'dataPointsMaxAgeDays')")
-                        .getSingleResult();
-
-            if (maxCustomDays != null) {
+            int coarsestRollupRetentionWeeks = rollupRetentionTiers.getLast().maxAgeWeeks();
+
+            // Find the maximum custom retention of each attribute type with
+            // DATA_POINTS_MAX_AGE_DAYS meta, number and boolean attributes can be kept in the
+            // rollups instead
+            @SuppressWarnings("unchecked")
+            List<Object[]> customRetentions =
+                em.createNativeQuery(
+                        "SELECT attr_val->>'type', MAX((attr_val->'meta'->>'dataPointsMaxAgeDays')::integer) "
+                            + "FROM asset, jsonb_each(asset.attributes) AS a(attr_key, attr_val) "
+                            + "WHERE jsonb_exists(attr_val->'meta', 'dataPointsMaxAgeDays') "
+                            + "GROUP BY 1")
+                    .getResultList();
+
+            for (Object[] customRetention : customRetentions) {
+              String valueType = (String) customRetention[0];
+              Number maxCustomDays = (Number) customRetention[1];
+              if (maxCustomDays == null) {
+                continue;
+              }
               int customRetentionWeeks = (int) Math.ceil(maxCustomDays.intValue() / 7.0);
-              effectiveRetentionWeeks = Math.max(effectiveRetentionWeeks, customRetentionWeeks);
-              if (customRetentionWeeks > maxDatapointAgeWeeks) {
+
+              if (downsampleCustomMaxAge && isRollupValueType(valueType)) {
+                if (coarsestRollupRetentionWeeks > 0
+                    && customRetentionWeeks > coarsestRollupRetentionWeeks) {
+                  coarsestRollupRetentionWeeks = customRetentionWeeks;
+                }
+              } else if (customRetentionWeeks > effectiveRetentionWeeks) {
+                effectiveRetentionWeeks = customRetentionWeeks;
                 LOG.info(
                     "Custom attribute retention ("
                         + maxCustomDays.intValue()
                         + " days / "
                         + customRetentionWeeks
-                        + " weeks) exceeds system default ("
+                        + " weeks) of "
+                        + valueType
+                        + " attributes exceeds system default ("
                         + maxDatapointAgeWeeks
                         + " weeks), using "
                         + effectiveRetentionWeeks
@@ -254,33 +725,173 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
               }
             }
 
-            // Compute cutoff from effective retention
-            Instant cutoff =
-                timerService.getNow().minus(Duration.ofDays((long) effectiveRetentionWeeks * 7));
-            Timestamp cutoffTimestamp = Timestamp.from(cutoff);
-
-            LOG.info(
-                "Dropping chunks older than "
-                    + cutoffTimestamp
-                    + " ("
-                    + effectiveRetentionWeeks
-                    + " weeks retention)");
-
-            Number dropped =
-                (Number)
-                    em.createNativeQuery(
-                            "SELECT count(*) FROM public.drop_chunks(CAST(:hypertable AS regclass), older_than => CAST(:cutoff AS timestamp))")
-                        .setParameter("hypertable", qualifiedTableName)
-                        .setParameter("cutoff", cutoffTimestamp)
-                        .getSingleResult();
-
-            LOG.info("Successfully purged data points using drop_chunks, drop count = " + dropped);
+            if (maxDatapointAgeWeeks > 0) {
+              dropChunks(em, schemaName + "." + AssetDatapoint.TABLE_NAME, effectiveRetentionWeeks);
+            }
+
+            for (RetentionTier tier : rollupRetentionTiers) {
+              int retentionWeeks =
+                  tier == rollupRetentionTiers.getLast()
+                      ? coarsestRollupRetentionWeeks
+                      : tier.maxAgeWeeks();
+              if (retentionWeeks > 0) {
+                dropChunks(em, schemaName + "." + tier.tableName(), retentionWeeks);
+              }
+            }
           });
     } catch (Exception e) {
       LOG.log(Level.SEVERE, "Failed to run data points purge", e);
     }
   }
 
+  protected void dropChunks(EntityManager em, String qualifiedTableName, int retentionWeeks) {
+    // Compute cutoff from retention
+    Instant cutoff = timerService.getNow().minus(Duration.ofDays((long) retentionWeeks * 7));
+    Timestamp cutoffTimestamp = Timestamp.from(cutoff);
+
+    LOG.info(
+        "Dropping chunks of "
+            + qualifiedTableName
+            + " older than "
+            + cutoffTimestamp
+            + " ("
+            + retentionWeeks
+            + " weeks retention)");
+
+    Number dropped =
+        (Number)
+            em.createNativeQuery(
+                    "SELECT count(*) FROM public.drop_chunks(CAST(:hypertable AS regclass), older_than => CAST(:cutoff AS timestamp))")
+                .setParameter("hypertable", qualifiedTableName)
+                .setParameter("cutoff", cutoffTimestamp)
+                .getSingleResult();
+
+    if (datapointQueryCache != null) {
+      datapointQueryCache.invalidateBefore(cutoff.toEpochMilli());
+    }
+
+    LOG.info(
+        "Successfully purged data points of "
+            + qualifiedTableName
+            + " using drop_chunks, drop count = "
+            + dropped);
+  }
+
+  /** Only number and boolean values are stored as a numeric value and included in the rollups. */
+  protected static boolean isRollupValueType(String valueType) {
+    return ValueUtil.getValueDescriptor(valueType)
+        .map(
+            valueDescriptor ->
+                Number.class.isAssignableFrom(valueDescriptor.getType())
+                    || Boolean.class.isAssignableFrom(valueDescriptor.getType()))
+        .orElse(false);
+  }
+
+  /**
+   * Limit the refresh window of each rollup to the retention of the table it is built on; a refresh
+   * of a range whose source chunks have been dropped would otherwise remove the rollup buckets.
+   */
+  protected void configureRollupRefreshWindows() {
+    try {
+      persistenceService.doTransaction(
+          em -> {
+            int sourceRetentionWeeks = maxDatapointAgeWeeks;
+            for (RetentionTier tier : rollupRetentionTiers) {
+              em.createNativeQuery(
+                      "SELECT count(*) FROM (SELECT public.alter_job(j.job_id, config => jsonb_set(j.config, '{start_offset}', "
+                          + "CASE WHEN CAST(:weeks AS integer) > 0 THEN to_jsonb(CAST(:weeks AS integer) * 7 || ' days') ELSE 'null'::jsonb END)) "
+                          + "FROM timescaledb_information.jobs j "
+                          + "JOIN timescaledb_information.continuous_aggregates c "
+                          + "ON j.hypertable_schema = c.materialization_hypertable_schema "
+                          + "AND j.hypertable_name = c.materialization_hypertable_name "
+                          + "WHERE j.proc_name = 'policy_refresh_continuous_aggregate' AND c.view_name = :view) AS altered")
+                  .setParameter("weeks", sourceRetentionWeeks)
+                  .setParameter("view", tier.tableName())
+                  .getSingleResult();
+              sourceRetentionWeeks = tier.maxAgeWeeks();
+            }
+          });
+    } catch (Exception e) {
+      LOG.log(Level.WARNING, "Failed to configure the refresh window of the data point rollups", e);
+    }
+  }
+
+  /**
+   * Datapoints written below the watermark of the rollups are only included in them once the
+   * refresh policies run, which takes up to {@link #ROLLUP_REFRESH_LAG}; the range of such late
+   * datapoints is refreshed shortly after the write instead.
+   */
+  protected void scheduleRollupRefresh(
+      AttributeRef attributeRef, long fromTimestamp, long toTimestamp) {
+    if (fromTimestamp >= timerService.getCurrentTimeMillis() - ROLLUP_WATERMARK_LAG.toMillis()) {
+      return;
+    }
+    synchronized (pendingRollupRefreshes) {
+      pendingRollupRefreshes.merge(
+          attributeRef,
+          new long[] {fromTimestamp, toTimestamp},
+          (range, added) ->
+              new long[] {Math.min(range[0], added[0]), Math.max(range[1], added[1])});
+      if (rollupRefreshFuture == null) {
+        rollupRefreshFuture =
+            scheduledExecutorService.schedule(
+                this::refreshRollups, ROLLUP_REFRESH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  protected void refreshRollups() {
+    Map<AttributeRef, long[]> refreshes;
+    synchronized (pendingRollupRefreshes) {
+      refreshes = new HashMap<>(pendingRollupRefreshes);
+      pendingRollupRefreshes.clear();
+      rollupRefreshFuture = null;
+    }
+    if (refreshes.isEmpty()) {
+      return;
+    }
+    LocalDateTime from =
+        toDatapointLocalDateTime(
+            refreshes.values().stream().mapToLong(range -> range[0]).min().orElseThrow());
+    LocalDateTime to =
+        toDatapointLocalDateTime(
+            refreshes.values().stream().mapToLong(range -> range[1]).max().orElseThrow());
+
+    try {
+      // Refresh procedures commit internally so cannot run inside a transaction
+      persistenceService.doAutoCommitWork(
+          connection -> {
+            // Coarser rollups are built on the finer ones so are refreshed after them
+            for (DatapointRollup rollup : ROLLUPS.reversed()) {
+              try (PreparedStatement st =
+                  connection.prepareStatement(
+                      "CALL public.refresh_continuous_aggregate(CAST(? AS regclass), CAST(? AS timestamp), CAST(? AS timestamp))")) {
+                st.setString(1, rollup.tableName());
+                st.setObject(2, from.truncatedTo(rollup.unit()));
+                st.setObject(3, to.truncatedTo(rollup.unit()).plus(1, rollup.unit()));
+                st.execute();
+              }
+            }
+          });
+      LOG.fine(
+          () ->
+              "Refreshed data point rollups for late data points: attributes="
+                  + refreshes.size()
+                  + ", from="
+                  + from
+                  + ", to="
+                  + to);
+    } catch (Exception e) {
+      LOG.log(
+          Level.WARNING,
+          "Failed to refresh the data point rollups, they are refreshed by their policies instead",
+          e);
+    }
+    // Queries may have cached buckets of the rollups before they were refreshed
+    refreshes.forEach(
+        (attributeRef, range) -> invalidateQueryCache(attributeRef, range[0], range[1]));
+  }
+
   /**
    * Exports datapoints as CSV using SQL; the export path used in the SQL query must also be mapped
    * into the manager container so it can be accessed by this process. Backwards compatible overload
@@ -301,15 +912,49 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
       long toTimestamp,
       DatapointExportFormat format)
       throws IOException {
+    checkExportLimit(attributeRefs, fromTimestamp, toTimestamp);
+    return doExportDatapoints(attributeRefs, fromTimestamp, toTimestamp, format);
+  }
+
+  /**
+   * Exports datapoints as CSV compressed as specified to the output stream on the calling thread;
+   * the data is only compressed once: GZIP slices are compressed as they are queried and written
+   * as consecutive gzip members and ZIP slices are stored uncompressed and deflated by the single
+   * ZIP entry. The size of the export must have been checked using {@link #checkExportLimit}.
+   */
+  public void exportDatapoints(
+      AttributeRef[] attributeRefs,
+      long fromTimestamp,
+      long toTimestamp,
+      DatapointExportFormat format,
+      DatapointExportCompression compression,
+      OutputStream out)
+      throws IOException {
+    if (compression == DatapointExportCompression.GZIP) {
+      writeExport(attributeRefs, fromTimestamp, toTimestamp, format, true, out);
+      out.flush();
+    } else {
+      ZipOutputStream zipOut = new ZipOutputStream(out);
+      zipOut.putNextEntry(new ZipEntry(UniqueIdentifierGenerator.generateId() + ".csv"));
+      writeExport(attributeRefs, fromTimestamp, toTimestamp, format, false, zipOut);
+      zipOut.closeEntry();
+      zipOut.finish();
+      zipOut.flush();
+    }
+  }
+
+  /**
+   * @throws DatapointQueryTooLargeException If the export exceeds {@link
+   *     #OR_DATA_POINTS_EXPORT_LIMIT}.
+   */
+  public void checkExportLimit(AttributeRef[] attributeRefs, long fromTimestamp, long toTimestamp) {
     try {
       ExportQuery exportQuery = getSelectExportQuery(attributeRefs, fromTimestamp, toTimestamp);
 
       // Verify the query is 'legal' and can be executed
-      if (canQueryDatapoints(exportQuery.query, exportQuery.parameters, datapointExportLimit)) {
-        return doExportDatapoints(attributeRefs, fromTimestamp, toTimestamp, format);
+      if (!canQueryDatapoints(exportQuery.query, exportQuery.parameters, datapointExportLimit)) {
+        throw new RuntimeException("Could not export datapoints.");
       }
-      throw new RuntimeException("Could not export datapoints.");
-
     } catch (DatapointQueryTooLargeException dqex) {
       String msg =
           "Could not export data points. It exceeds the data limit of "
@@ -320,6 +965,7 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
     }
   }
 
+  /** Streams the uncompressed export through a pipe; see {@link #writeExport}. */
   protected PipedInputStream doExportDatapoints(
       AttributeRef[] attributeRefs,
       long fromTimestamp,
@@ -335,81 +981,8 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
         () -> {
           boolean success = false;
           try {
-            persistenceService.doTransaction(
-                em ->
-                    em.unwrap(Session.class)
-                        .doWork(
-                            connection -> {
-                              String tempTableName = "tmp_export_attributes";
-                              String tempBoundsTableName = "tmp_export_bounds";
-                              List<ExportColumn> exportColumns = getExportColumns(attributeRefs);
-
-                              // Create temp tables and insert parameters safely via
-                              // PreparedStatement
-                              // to prevent SQL injection (instead of string-interpolating IDs into
-                              // the query).
-                              try (Statement statement = connection.createStatement()) {
-                                // We have 2 different tables because for attribute_name, we have
-                                // one entry per exported attribute
-                                statement.execute(
-                                    "create temp table "
-                                        + tempTableName
-                                        + " (ordinal integer, entity_id text, attribute_name text, column_key text) on commit drop");
-                                // but for timestamps, we always have only one row, as the export
-                                // period is the same for all attributes
-                                statement.execute(
-                                    "create temp table "
-                                        + tempBoundsTableName
-                                        + " (from_timestamp timestamp, to_timestamp timestamp) on commit drop");
-                              }
-
-                              try (PreparedStatement insertStatement =
-                                  connection.prepareStatement(
-                                      "insert into "
-                                          + tempTableName
-                                          + " (ordinal, entity_id, attribute_name, column_key) values (?, ?, ?, ?)")) {
-                                for (ExportColumn exportColumn : exportColumns) {
-                                  AttributeRef attributeRef = exportColumn.attributeRef();
-                                  insertStatement.setInt(1, exportColumn.ordinal());
-                                  insertStatement.setString(
-                                      2, validateAssetId(attributeRef.getId()));
-                                  insertStatement.setString(3, attributeRef.getName());
-                                  insertStatement.setString(4, exportColumn.columnKey());
-                                  insertStatement.addBatch();
-                                }
-                                insertStatement.executeBatch();
-                              }
-
-                              try (PreparedStatement boundsStatement =
-                                  connection.prepareStatement(
-                                      "insert into "
-                                          + tempBoundsTableName
-                                          + " (from_timestamp, to_timestamp) values (?, ?)")) {
-                                boundsStatement.setObject(
-                                    1, toDatapointLocalDateTime(fromTimestamp));
-                                boundsStatement.setObject(2, toDatapointLocalDateTime(toTimestamp));
-                                boundsStatement.executeUpdate();
-                              }
-
-                              // Build the COPY ... TO STDOUT query based on format
-                              String copyQuery =
-                                  buildCopyToStdoutQuery(
-                                      tempTableName, tempBoundsTableName, format, exportColumns);
-
-                              try {
-                                PGConnection pgConnection = connection.unwrap(PGConnection.class);
-                                CopyManager copyManager = pgConnection.getCopyAPI();
-                                if (isCrosstabFormat(format)) {
-                                  out.write(
-                                      buildCrosstabCsvHeader(exportColumns)
-                                          .getBytes(StandardCharsets.UTF_8));
-                                }
-                                copyManager.copyOut(copyQuery, out);
-                                out.flush();
-                              } catch (IOException e) {
-                                throw new RuntimeException("Failed to export datapoints", e);
-                              }
-                            }));
+            writeExport(attributeRefs, fromTimestamp, toTimestamp, format, false, out);
+            out.flush();
             success = true;
           } catch (Exception e) {
             DATA_EXPORT_LOG.log(Level.SEVERE, "Datapoint export failed", e);
@@ -435,75 +1008,291 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
   }
 
   /**
-   * Builds a COPY ... TO STDOUT query for streaming CSV data based on the export format. Uses a
-   * temporary table for safe attribute filtering (SQL injection prevention).
+   * Writes the export to the output stream; the range is split into {@link #EXPORT_SLICE_DAYS} day
+   * time slices (aligned to local midnight so minute buckets never cross slices) which are queried
+   * in parallel on the executor, at most {@link #datapointExportParallelism} at a time. Each slice
+   * is written to a temporary file so its connection is released as soon as the query is done
+   * rather than when the client has read the data; the files are then copied to the output as is
+   * in order and deleted, so at most {@link #datapointExportParallelism} files exist at a time.
+   * When <code>gzip</code> is set the header and each slice are separate gzip members, which
+   * together are a valid gzip stream. Crosstab formats are pivoted while reading the slice rather
+   * than with the SQL <code>crosstab</code> function so the query doesn't grow with the number of
+   * attributes.
    */
-  private String buildCopyToStdoutQuery(
-      String tempTableName,
-      String tempBoundsTableName,
+  protected void writeExport(
+      AttributeRef[] attributeRefs,
+      long fromTimestamp,
+      long toTimestamp,
       DatapointExportFormat format,
-      List<ExportColumn> exportColumns) {
-    final String TO_STDOUT_WITH_CSV_HEADER_FORMAT =
-        ") TO STDOUT WITH (FORMAT CSV, HEADER, DELIMITER ',');";
-    final String TO_STDOUT_WITH_CSV_FORMAT = ") TO STDOUT WITH (FORMAT CSV, DELIMITER ',');";
-
-    if (isCrosstabFormat(format)) {
-      String categoryQuery = "select column_key from " + tempTableName + " order by ordinal";
-
-      // Column definitions for crosstab result use generated identifiers only.
-      String attributeColumns =
-          exportColumns.stream()
-              .map(exportColumn -> exportColumn.columnKey() + " text")
-              .collect(Collectors.joining(", "));
-
-      // Inner SELECT query for crosstab (uses escaped quotes since it's inside a string argument)
-      String innerQuery;
-      if (format == DatapointExportFormat.CSV_CROSSTAB_MINUTE) {
-        innerQuery =
-            String.format(
-                "select public.time_bucket(''1 minute'', ad.timestamp) as bucket_timestamp, "
-                    + "t.column_key as category, "
-                    + "CASE "
-                    + "  WHEN jsonb_typeof((array_agg(ad.value))[1]) = ''number'' THEN "
-                    + "    round(avg((ad.value#>>''{}'')::numeric) FILTER (WHERE jsonb_typeof(ad.value) = ''number''), 3)::text "
-                    + "  ELSE (array_agg(ad.value ORDER BY ad.timestamp DESC) FILTER (WHERE jsonb_typeof(ad.value) != ''number''))[1]#>>''{}''"
-                    + "END as value "
-                    + "from asset_datapoint ad "
-                    + "join %s t on ad.entity_id = t.entity_id and ad.attribute_name = t.attribute_name "
-                    + "cross join %s b "
-                    + "where ad.timestamp >= b.from_timestamp and ad.timestamp <= b.to_timestamp "
-                    + "group by bucket_timestamp, category "
-                    + "order by bucket_timestamp, category",
-                tempTableName, tempBoundsTableName);
+      boolean gzip,
+      OutputStream out)
+      throws IOException {
+    List<CompletableFuture<Path>> sliceFiles = new ArrayList<>();
+    int writtenSlices = 0;
+    try {
+      List<ExportColumn> exportColumns = getExportColumns(attributeRefs);
+      List<ExportSlice> slices = getExportSlices(fromTimestamp, toTimestamp);
+      if (!isCrosstabFormat(format)) {
+        // Plain CSV is ordered newest first
+        Collections.reverse(slices);
+      }
+
+      byte[] header =
+          (isCrosstabFormat(format)
+                  ? buildCrosstabCsvHeader(exportColumns)
+                  : "timestamp,name,attribute_name,value\n")
+              .getBytes(StandardCharsets.UTF_8);
+      if (gzip) {
+        GZIPOutputStream headerOut = new GZIPOutputStream(out);
+        headerOut.write(header);
+        // Ends the member without closing the output
+        headerOut.finish();
       } else {
-        innerQuery =
-            String.format(
-                "select ad.timestamp, t.column_key as category, ad.value "
-                    + "from asset_datapoint ad "
-                    + "join %s t on ad.entity_id = t.entity_id and ad.attribute_name = t.attribute_name "
-                    + "cross join %s b "
-                    + "where ad.timestamp >= b.from_timestamp and ad.timestamp <= b.to_timestamp "
-                    + "order by ad.timestamp, category",
-                tempTableName, tempBoundsTableName);
+        out.write(header);
       }
 
+      for (int i = 0; i < slices.size(); i++) {
+        while (sliceFiles.size() < slices.size()
+            && sliceFiles.size() < i + datapointExportParallelism) {
+          ExportSlice slice = slices.get(sliceFiles.size());
+          sliceFiles.add(
+              CompletableFuture.supplyAsync(
+                  () -> exportSlice(exportColumns, slice, format, gzip), executorService));
+        }
+
+        Path sliceFile = sliceFiles.get(i).join();
+        writtenSlices++;
+        try {
+          Files.copy(sliceFile, out);
+        } finally {
+          Files.deleteIfExists(sliceFile);
+        }
+      }
+    } finally {
+      // Remove the files of slices that have not been written (client disconnected)
+      sliceFiles.stream()
+          .skip(writtenSlices)
+          .forEach(
+              sliceFile ->
+                  sliceFile.thenAccept(
+                      path -> {
+                        try {
+                          Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                          DATA_EXPORT_LOG.log(
+                              Level.WARNING, "Failed to delete export file: " + path, e);
+                        }
+                      }));
+    }
+  }
+
+  /**
+   * Split the inclusive export range into slices of at most {@link #EXPORT_SLICE_DAYS} days with an
+   * exclusive upper bound, in the local time representation of the datapoint timestamps which are
+   * stored with millisecond precision.
+   */
+  protected static List<ExportSlice> getExportSlices(long fromTimestamp, long toTimestamp) {
+    LocalDateTime from = toDatapointLocalDateTime(fromTimestamp);
+    LocalDateTime to = toDatapointLocalDateTime(toTimestamp).plus(1, ChronoUnit.MILLIS);
+    List<ExportSlice> slices = new ArrayList<>();
+    while (from.isBefore(to)) {
+      LocalDateTime sliceTo = from.toLocalDate().plusDays(EXPORT_SLICE_DAYS).atStartOfDay();
+      if (sliceTo.isAfter(to)) {
+        sliceTo = to;
+      }
+      slices.add(new ExportSlice(from, sliceTo));
+      from = sliceTo;
+    }
+    return slices;
+  }
+
+  /** Write the CSV rows of the slice to a temporary file, optionally as a gzip member. */
+  protected Path exportSlice(
+      List<ExportColumn> exportColumns,
+      ExportSlice slice,
+      DatapointExportFormat format,
+      boolean gzip) {
+    Path sliceFile = null;
+    try {
+      sliceFile = Files.createTempFile("datapoint-export-", gzip ? ".csv.gz" : ".csv");
+      OutputStream fileOut = new BufferedOutputStream(Files.newOutputStream(sliceFile), 65536);
+      try (OutputStream sliceOut = gzip ? new GZIPOutputStream(fileOut, 65536) : fileOut) {
+        persistenceService.doTransaction(
+            em ->
+                em.unwrap(Session.class)
+                    .doWork(
+                        connection -> {
+                          String tempTableName = "tmp_export_attributes";
+                          String tempBoundsTableName = "tmp_export_bounds";
+
+                          // Create temp tables and insert parameters safely via PreparedStatement
+                          // to prevent SQL injection (instead of string-interpolating IDs into the
+                          // query).
+                          try (Statement statement = connection.createStatement()) {
+                            // We have 2 different tables because for attribute_name, we have one
+                            // entry per exported attribute
+                            statement.execute(
+                                "create temp table "
+                                    + tempTableName
+                                    + " (ordinal integer, entity_id text, attribute_name text, column_key text) on commit drop");
+                            // but for timestamps, we always have only one row, as the slice is the
+                            // same for all attributes
+                            statement.execute(
+                                "create temp table "
+                                    + tempBoundsTableName
+                                    + " (from_timestamp timestamp, to_timestamp timestamp) on commit drop");
+                          }
+
+                          try (PreparedStatement insertStatement =
+                              connection.prepareStatement(
+                                  "insert into "
+                                      + tempTableName
+                                      + " (ordinal, entity_id, attribute_name, column_key) values (?, ?, ?, ?)")) {
+                            for (ExportColumn exportColumn : exportColumns) {
+                              AttributeRef attributeRef = exportColumn.attributeRef();
+                              insertStatement.setInt(1, exportColumn.ordinal());
+                              insertStatement.setString(2, validateAssetId(attributeRef.getId()));
+                              insertStatement.setString(3, attributeRef.getName());
+                              insertStatement.setString(4, exportColumn.columnKey());
+                              insertStatement.addBatch();
+                            }
+                            insertStatement.executeBatch();
+                          }
+
+                          try (PreparedStatement boundsStatement =
+                              connection.prepareStatement(
+                                  "insert into "
+                                      + tempBoundsTableName
+                                      + " (from_timestamp, to_timestamp) values (?, ?)")) {
+                            boundsStatement.setObject(1, slice.from());
+                            boundsStatement.setObject(2, slice.to());
+                            boundsStatement.executeUpdate();
+                          }
+
+                          try {
+                            if (isCrosstabFormat(format)) {
+                              writeCrosstabRows(
+                                  connection,
+                                  buildCrosstabSelectQuery(
+                                      tempTableName, tempBoundsTableName, format),
+                                  exportColumns.size(),
+                                  sliceOut);
+                            } else {
+                              connection
+                                  .unwrap(PGConnection.class)
+                                  .getCopyAPI()
+                                  .copyOut(
+                                      buildCopyToStdoutQuery(tempTableName, tempBoundsTableName),
+                                      sliceOut);
+                            }
+                          } catch (IOException e) {
+                            throw new UncheckedIOException("Failed to export datapoints", e);
+                          }
+                        }));
+      }
+      return sliceFile;
+    } catch (Exception e) {
+      if (sliceFile != null) {
+        try {
+          Files.deleteIfExists(sliceFile);
+        } catch (IOException ex) {
+          DATA_EXPORT_LOG.log(Level.WARNING, "Failed to delete export file: " + sliceFile, ex);
+        }
+      }
+      throw e instanceof RuntimeException runtimeException
+          ? runtimeException
+          : new IllegalStateException("Failed to export datapoints", e);
+    }
+  }
+
+  /**
+   * Builds a COPY ... TO STDOUT query for streaming the plain CSV rows of a slice. Uses a temporary
+   * table for safe attribute filtering (SQL injection prevention).
+   */
+  private static String buildCopyToStdoutQuery(String tempTableName, String tempBoundsTableName) {
+    String innerQuery =
+        String.format(
+            "select ad.timestamp, a.name, ad.attribute_name, value "
+                + "from asset_datapoint ad "
+                + "join asset a on ad.entity_id = a.id "
+                + "join %s t on ad.entity_id = t.entity_id and ad.attribute_name = t.attribute_name "
+                + "cross join %s b "
+                + "where ad.timestamp >= b.from_timestamp and ad.timestamp < b.to_timestamp "
+                + "order by ad.timestamp desc",
+            tempTableName, tempBoundsTableName);
+    return "copy (" + innerQuery + ") TO STDOUT WITH (FORMAT CSV, DELIMITER ',');";
+  }
+
+  /**
+   * Builds the query for the rows of a crosstab slice: the timestamp (or minute bucket) as text,
+   * the column ordinal and the value as text, ordered by timestamp so each crosstab row is
+   * consecutive.
+   */
+  private static String buildCrosstabSelectQuery(
+      String tempTableName, String tempBoundsTableName, DatapointExportFormat format) {
+    if (format == DatapointExportFormat.CSV_CROSSTAB_MINUTE) {
       return String.format(
-          "copy (select * from crosstab('%s', '%s') as ct(timestamp timestamp, %s)%s",
-          innerQuery, categoryQuery, attributeColumns, TO_STDOUT_WITH_CSV_FORMAT);
-    } else {
-      // Plain CSV format using temp table join
-      String innerQuery =
-          String.format(
-              "select ad.timestamp, a.name, ad.attribute_name, value "
-                  + "from asset_datapoint ad "
-                  + "join asset a on ad.entity_id = a.id "
-                  + "join %s t on ad.entity_id = t.entity_id and ad.attribute_name = t.attribute_name "
-                  + "cross join %s b "
-                  + "where ad.timestamp >= b.from_timestamp and ad.timestamp <= b.to_timestamp "
-                  + "order by ad.timestamp desc",
-              tempTableName, tempBoundsTableName);
-      return "copy (" + innerQuery + TO_STDOUT_WITH_CSV_HEADER_FORMAT;
+          "select bucket_timestamp::text, ordinal, value from ("
+              + "select public.time_bucket('1 minute', ad.timestamp) as bucket_timestamp, "
+              + "t.ordinal, "
+              + "CASE "
+              + "  WHEN jsonb_typeof((array_agg(ad.value))[1]) = 'number' THEN "
+              + "    round(avg((ad.value#>>'{}')::numeric) FILTER (WHERE jsonb_typeof(ad.value) = 'number'), 3)::text "
+              + "  ELSE (array_agg(ad.value ORDER BY ad.timestamp DESC) FILTER (WHERE jsonb_typeof(ad.value) != 'number'))[1]#>>'{}'"
+              + "END as value "
+              + "from asset_datapoint ad "
+              + "join %s t on ad.entity_id = t.entity_id and ad.attribute_name = t.attribute_name "
+              + "cross join %s b "
+              + "where ad.timestamp >= b.from_timestamp and ad.timestamp < b.to_timestamp "
+              + "group by bucket_timestamp, t.ordinal) buckets "
+              + "order by bucket_timestamp, ordinal",
+          tempTableName, tempBoundsTableName);
     }
+    return String.format(
+        "select ad.timestamp::text, t.ordinal, ad.value::text "
+            + "from asset_datapoint ad "
+            + "join %s t on ad.entity_id = t.entity_id and ad.attribute_name = t.attribute_name "
+            + "cross join %s b "
+            + "where ad.timestamp >= b.from_timestamp and ad.timestamp < b.to_timestamp "
+            + "order by ad.timestamp, t.ordinal",
+        tempTableName, tempBoundsTableName);
+  }
+
+  /** Pivot the rows of a crosstab query into a CSV line per timestamp with a column per ordinal. */
+  private static void writeCrosstabRows(
+      Connection connection, String query, int columnCount, OutputStream out)
+      throws SQLException, IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    try (PreparedStatement st = connection.prepareStatement(query)) {
+      st.setFetchSize(QUERY_FETCH_SIZE);
+      try (ResultSet rs = st.executeQuery()) {
+        String rowTimestamp = null;
+        String[] values = new String[columnCount];
+        while (rs.next()) {
+          String timestamp = rs.getString(1);
+          if (rowTimestamp != null && !rowTimestamp.equals(timestamp)) {
+            writeCrosstabRow(writer, rowTimestamp, values);
+            Arrays.fill(values, null);
+          }
+          rowTimestamp = timestamp;
+          values[rs.getInt(2)] = rs.getString(3);
+        }
+        if (rowTimestamp != null) {
+          writeCrosstabRow(writer, rowTimestamp, values);
+        }
+      }
+    }
+    writer.flush();
+  }
+
+  private static void writeCrosstabRow(Writer writer, String timestamp, String[] values)
+      throws IOException {
+    writer.write(escapeCsvField(timestamp));
+    for (String value : values) {
+      writer.write(',');
+      writer.write(escapeCsvField(value));
+    }
+    writer.write('\n');
   }
 
   /**
@@ -600,7 +1389,10 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
 
   protected record ExportQuery(String query, Map<Integer, Object> parameters) {}
 
-  private record ExportColumn(
+  /** A time slice of an export with an inclusive lower and exclusive upper bound. */
+  protected record ExportSlice(LocalDateTime from, LocalDateTime to) {}
+
+  protected record ExportColumn(
       int ordinal, AttributeRef attributeRef, String displayHeader, String columnKey) {}
 
   private static String validateAssetId(String assetId) {
@@ -20,18 +20,28 @@ package org.openremote.manager.datapoint;
 
 import static java.time.temporal.ChronoUnit.HOURS;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import java.sql.PreparedStatement;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.LongSummaryStatistics;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.hibernate.Session;
 import org.openremote.agent.protocol.ProtocolPredictedDatapointService;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.manager.datapoint.DatapointWriter.PendingDatapoint;
 import org.openremote.manager.event.ClientEventService;
 import org.openremote.manager.security.ManagerIdentityService;
 import org.openremote.manager.web.ManagerWebService;
@@ -46,6 +56,7 @@ import org.openremote.model.datapoint.ValueDatapoint;
 import org.openremote.model.event.shared.EventFilter;
 import org.openremote.model.event.shared.EventSubscription;
 import org.openremote.model.security.ClientRole;
+import org.openremote.model.util.ValueUtil;
 import org.openremote.model.value.MetaItemType;
 
 public class AssetPredictedDatapointService
@@ -57,6 +68,9 @@ public class AssetPredictedDatapointService
   protected ClientEventService clientEventService;
   protected ManagerIdentityService identityService;
   protected AssetStorageService assetStorageService;
+  protected Timer replaceTimer;
+  protected Counter replaceDeletedCounter;
+  protected Counter replaceWrittenCounter;
 
   @Override
   public int getPriority() {
@@ -70,6 +84,16 @@ public class AssetPredictedDatapointService
     identityService = container.getService(ManagerIdentityService.class);
     assetStorageService = container.getService(AssetStorageService.class);
 
+    MeterRegistry meterRegistry = container.getMeterRegistry();
+    if (meterRegistry != null) {
+      Tags tags = Tags.of("table", getDatapointTableName());
+      replaceTimer = meterRegistry.timer("or.datapoints.replace", tags);
+      replaceDeletedCounter =
+          meterRegistry.counter("or.datapoints.replace.rows", tags.and("operation", "delete"));
+      replaceWrittenCounter =
+          meterRegistry.counter("or.datapoints.replace.rows", tags.and("operation", "write"));
+    }
+
     clientEventService.addSubscriptionAuthorizer(
         (requestedRealm, auth, subscription) -> {
           if (!subscription.isEventType(AssetPredictedDatapointEvent.class) || auth == null) {
@@ -161,6 +185,135 @@ public class AssetPredictedDatapointService
     publishPredictedDatapointsEvent(assetId, attributeName);
   }
 
+  /**
+   * Replace the predicted datapoints of the attribute from the first to the last timestamp of the
+   * given datapoints, e.g. with a new forecast; see {@link #doReplaceValues}.
+   */
+  public void replaceValues(
+      String assetId, String attributeName, List<ValueDatapoint<?>> valuesAndTimestamps) {
+    if (valuesAndTimestamps == null || valuesAndTimestamps.isEmpty()) {
+      return;
+    }
+
+    LongSummaryStatistics range =
+        valuesAndTimestamps.stream().mapToLong(ValueDatapoint::getTimestamp).summaryStatistics();
+    doReplaceValues(assetId, attributeName, valuesAndTimestamps, range.getMin(), range.getMax());
+  }
+
+  /**
+   * Replace all predicted datapoints of the attribute with the given datapoints, which may be
+   * empty; see {@link #doReplaceValues}.
+   */
+  public void replaceAllValues(
+      String assetId, String attributeName, List<ValueDatapoint<?>> valuesAndTimestamps) {
+    doReplaceValues(
+        assetId,
+        attributeName,
+        valuesAndTimestamps != null ? valuesAndTimestamps : List.of(),
+        null,
+        null);
+  }
+
+  /**
+   * Delete the predicted datapoints of the attribute in the inclusive range (or all of them when
+   * the range is <code>null</code>) with a single <code>DELETE</code> and write the given
+   * datapoints, which must be in that range, with a single <code>COPY</code> in the same
+   * transaction; readers never see a partially replaced forecast.
+   */
+  protected void doReplaceValues(
+      String assetId,
+      String attributeName,
+      List<ValueDatapoint<?>> valuesAndTimestamps,
+      Long fromTimestamp,
+      Long toTimestamp)
+      throws IllegalStateException {
+    long startNanos = System.nanoTime();
+    Collection<PendingDatapoint> datapoints =
+        DatapointWriter.deduplicate(
+            valuesAndTimestamps.stream()
+                .map(
+                    valueAndTimestamp ->
+                        new PendingDatapoint(
+                            assetId,
+                            attributeName,
+                            ValueUtil.asJSON(valueAndTimestamp.getValue())
+                                .orElse(ValueUtil.NULL_LITERAL),
+                            valueAndTimestamp.getTimestamp()))
+                .toList());
+
+    int deleted;
+    try {
+      deleted =
+          persistenceService.doReturningTransaction(
+              em ->
+                  em.unwrap(Session.class)
+                      .doReturningWork(
+                          connection -> {
+                            int deletedCount;
+                            try (PreparedStatement st =
+                                connection.prepareStatement(
+                                    "DELETE FROM "
+                                        + getDatapointTableName()
+                                        + " WHERE entity_id = ? AND attribute_name = ?"
+                                        + (fromTimestamp != null
+                                            ? " AND timestamp BETWEEN ? AND ?"
+                                            : ""))) {
+                              st.setString(1, assetId);
+                              st.setString(2, attributeName);
+                              if (fromTimestamp != null) {
+                                st.setObject(3, toLocalDateTime(fromTimestamp));
+                                st.setObject(4, toLocalDateTime(toTimestamp));
+                              }
+                              deletedCount = st.executeUpdate();
+                            }
+
+                            if (!datapoints.isEmpty()) {
+                              DatapointWriter.copy(
+                                  connection, getDatapointTableName(), datapoints);
+                            }
+                            return deletedCount;
+                          }));
+    } catch (Exception e) {
+      String msg =
+          "Failed to replace predicted data points: "
+              + assetId
+              + ", name="
+              + attributeName
+              + ", count="
+              + datapoints.size();
+      LOG.log(Level.WARNING, msg, e);
+      throw new IllegalStateException(msg, e);
+    }
+
+    long durationNanos = System.nanoTime() - startNanos;
+    if (replaceTimer != null) {
+      replaceTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+      replaceDeletedCounter.increment(deleted);
+      replaceWrittenCounter.increment(datapoints.size());
+    }
+    LOG.finest(
+        () ->
+            "Replaced predicted datapoints for: id="
+                + assetId
+                + ", name="
+                + attributeName
+                + ", deleted="
+                + deleted
+                + ", written="
+                + datapoints.size()
+                + ", duration="
+                + TimeUnit.NANOSECONDS.toMillis(durationNanos)
+                + "ms");
+
+    if (deleted > 0 || !datapoints.isEmpty()) {
+      publishPredictedDatapointsEvent(assetId, attributeName);
+    }
+  }
+
+  protected static LocalDateTime toLocalDateTime(long timestamp) {
+    return Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDateTime();
+  }
+
   public void purgeValues(String assetId, String attributeName) {
     int deleted =
         persistenceService.doReturningTransaction(
@@ -230,7 +383,17 @@ public class AssetPredictedDatapointService
     try {
       // Purge data points not in the above list using default duration
       LOG.finest("Purging predicted data points older than now");
-      doPurge("where dp.timestamp < :dt", Date.from(timerService.getNow().truncatedTo(HOURS)));
+      Date purgeDate = Date.from(timerService.getNow().truncatedTo(HOURS));
+      // Drop whole chunks first so rows are only deleted from the latest chunk, never from a chunk
+      // in the columnstore
+      persistenceService.doTransaction(
+          em ->
+              em.createNativeQuery(
+                      "SELECT count(*) FROM public.drop_chunks(CAST(:hypertable AS regclass), older_than => CAST(:cutoff AS timestamp))")
+                  .setParameter("hypertable", getDatapointTableName())
+                  .setParameter("cutoff", new Timestamp(purgeDate.getTime()))
+                  .getSingleResult());
+      doPurge("where dp.timestamp < :dt", purgeDate);
     } catch (Exception e) {
       LOG.log(Level.WARNING, "Failed to run data points purge", e);
     }
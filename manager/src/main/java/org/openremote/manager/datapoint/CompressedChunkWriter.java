@@ -0,0 +1,248 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.datapoint;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.hibernate.Session;
+import org.openremote.manager.datapoint.DatapointWriter.PendingDatapoint;
+
+/**
+ * Writes datapoints whose timestamp falls into a chunk that is already in the columnstore; such
+ * late datapoints (gateway catch up, protocol buffers, historian backfills) are grouped by chunk
+ * and each group is merged with a single set based <code>INSERT ... ON CONFLICT</code> so the
+ * affected compressed batches are only decompressed once. When a group has at least {@link
+ * #decompressThreshold} datapoints the whole chunk is converted to the rowstore before the merge
+ * and back to the columnstore afterwards, otherwise the chunk is left partially compressed until
+ * the columnstore policy runs again.
+ *
+ * <p>Also publishes the number of chunks in the rowstore and columnstore and their size as
+ * metrics.
+ */
+public class CompressedChunkWriter {
+
+  protected record CompressedChunk(String chunkName, long rangeStart, long rangeEnd) {}
+
+  /** Chunks are moved to the columnstore once they are this old, see the columnstore policies. */
+  public static final Duration COLUMNSTORE_AFTER = Duration.ofDays(7);
+
+  protected static final long CHUNK_METRICS_MAX_AGE_MILLIS = 60000;
+  private static final Logger LOG = Logger.getLogger(CompressedChunkWriter.class.getName());
+  protected final AbstractDatapointService<?> datapointService;
+  protected final int decompressThreshold;
+  protected final Counter mergedCounter;
+  protected final Counter recompressedCounter;
+  // Compressed chunks, uncompressed chunks, bytes before compression, bytes after compression
+  protected final long[] chunkMetrics = new long[4];
+  protected long chunkMetricsTimestamp;
+
+  public CompressedChunkWriter(
+      AbstractDatapointService<?> datapointService,
+      int decompressThreshold,
+      MeterRegistry meterRegistry) {
+    this.datapointService = datapointService;
+    this.decompressThreshold = decompressThreshold;
+
+    if (meterRegistry != null) {
+      Tags tags = Tags.of("table", datapointService.getDatapointTableName());
+      mergedCounter = meterRegistry.counter("or.datapoints.late", tags.and("write", "merge"));
+      recompressedCounter =
+          meterRegistry.counter("or.datapoints.late", tags.and("write", "recompress"));
+      meterRegistry.gauge(
+          "or.datapoints.chunks", tags.and("state", "columnstore"), this, w -> w.getChunkMetric(0));
+      meterRegistry.gauge(
+          "or.datapoints.chunks", tags.and("state", "rowstore"), this, w -> w.getChunkMetric(1));
+      meterRegistry.gauge(
+          "or.datapoints.columnstore.bytes",
+          tags.and("compression", "before"),
+          this,
+          w -> w.getChunkMetric(2));
+      meterRegistry.gauge(
+          "or.datapoints.columnstore.bytes",
+          tags.and("compression", "after"),
+          this,
+          w -> w.getChunkMetric(3));
+    } else {
+      mergedCounter = null;
+      recompressedCounter = null;
+    }
+  }
+
+  /** Whether the timestamp is old enough to possibly be in a chunk in the columnstore. */
+  public boolean isLate(long timestamp) {
+    return timestamp
+        < datapointService.timerService.getNow().minus(COLUMNSTORE_AFTER).toEpochMilli();
+  }
+
+  /**
+   * Write the datapoints that belong in a chunk in the columnstore, each chunk in its own
+   * transaction.
+   *
+   * @return the datapoints that have not been written as they don't belong in such a chunk.
+   */
+  public Collection<PendingDatapoint> write(Collection<PendingDatapoint> datapoints) {
+    if (datapoints.stream().noneMatch(datapoint -> isLate(datapoint.timestamp()))) {
+      return datapoints;
+    }
+
+    List<CompressedChunk> chunks = getCompressedChunks();
+    if (chunks.isEmpty()) {
+      return datapoints;
+    }
+
+    List<PendingDatapoint> remaining = new ArrayList<>();
+    Map<CompressedChunk, List<PendingDatapoint>> chunkDatapoints = new LinkedHashMap<>();
+    for (PendingDatapoint datapoint : datapoints) {
+      CompressedChunk chunk = isLate(datapoint.timestamp()) ? getChunk(chunks, datapoint) : null;
+      if (chunk != null) {
+        chunkDatapoints.computeIfAbsent(chunk, c -> new ArrayList<>()).add(datapoint);
+      } else {
+        remaining.add(datapoint);
+      }
+    }
+
+    chunkDatapoints.forEach(this::writeChunk);
+    return remaining;
+  }
+
+  protected void writeChunk(CompressedChunk chunk, List<PendingDatapoint> datapoints) {
+    long startMillis = System.currentTimeMillis();
+    Collection<PendingDatapoint> deduplicated = DatapointWriter.deduplicate(datapoints);
+    boolean recompress = decompressThreshold > 0 && deduplicated.size() >= decompressThreshold;
+
+    datapointService.persistenceService.doTransaction(
+        em ->
+            em.unwrap(Session.class)
+                .doWork(
+                    connection -> {
+                      if (recompress) {
+                        try (PreparedStatement st =
+                            connection.prepareStatement(
+                                "SELECT public.decompress_chunk(CAST(? AS regclass), if_compressed => true)")) {
+                          st.setString(1, chunk.chunkName());
+                          st.execute();
+                        }
+                      }
+
+                      DatapointWriter.merge(
+                          connection, datapointService.getDatapointTableName(), deduplicated);
+
+                      if (recompress) {
+                        try (PreparedStatement st =
+                            connection.prepareStatement(
+                                "SELECT public.compress_chunk(CAST(? AS regclass), if_not_compressed => true)")) {
+                          st.setString(1, chunk.chunkName());
+                          st.execute();
+                        }
+                      }
+                    }));
+
+    Counter counter = recompress ? recompressedCounter : mergedCounter;
+    if (counter != null) {
+      counter.increment(deduplicated.size());
+    }
+    LOG.fine(
+        () ->
+            "Stored late datapoints: chunk="
+                + chunk.chunkName()
+                + ", count="
+                + deduplicated.size()
+                + ", recompressed="
+                + recompress
+                + ", duration="
+                + (System.currentTimeMillis() - startMillis)
+                + "ms");
+  }
+
+  protected List<CompressedChunk> getCompressedChunks() {
+    return datapointService.persistenceService.doReturningTransaction(
+        em ->
+            em.unwrap(Session.class)
+                .doReturningWork(
+                    connection -> {
+                      List<CompressedChunk> chunks = new ArrayList<>();
+                      // The range of a timestamp dimension is returned in the session time zone
+                      // which is the same zone the datapoint timestamps are stored in
+                      try (PreparedStatement st =
+                          connection.prepareStatement(
+                              "SELECT format('%I.%I', chunk_schema, chunk_name), range_start, range_end "
+                                  + "FROM timescaledb_information.chunks "
+                                  + "WHERE hypertable_name = ? AND is_compressed "
+                                  + "ORDER BY range_start")) {
+                        st.setString(1, datapointService.getDatapointTableName());
+                        try (ResultSet rs = st.executeQuery()) {
+                          while (rs.next()) {
+                            chunks.add(
+                                new CompressedChunk(
+                                    rs.getString(1),
+                                    rs.getTimestamp(2).getTime(),
+                                    rs.getTimestamp(3).getTime()));
+                          }
+                        }
+                      }
+                      return chunks;
+                    }));
+  }
+
+  protected static CompressedChunk getChunk(
+      List<CompressedChunk> chunks, PendingDatapoint datapoint) {
+    for (CompressedChunk chunk : chunks) {
+      if (datapoint.timestamp() < chunk.rangeStart()) {
+        return null;
+      }
+      if (datapoint.timestamp() < chunk.rangeEnd()) {
+        return chunk;
+      }
+    }
+    return null;
+  }
+
+  protected synchronized double getChunkMetric(int index) {
+    if (System.currentTimeMillis() - chunkMetricsTimestamp > CHUNK_METRICS_MAX_AGE_MILLIS) {
+      chunkMetricsTimestamp = System.currentTimeMillis();
+      try {
+        Object[] result =
+            datapointService.persistenceService.doReturningTransaction(
+                em ->
+                    (Object[])
+                        em.createNativeQuery(
+                                "SELECT "
+                                    + "(SELECT count(*) FROM timescaledb_information.chunks WHERE hypertable_name = :table AND is_compressed), "
+                                    + "(SELECT count(*) FROM timescaledb_information.chunks WHERE hypertable_name = :table AND NOT is_compressed), "
+                                    + "(SELECT coalesce(sum(before_compression_total_bytes), 0) FROM public.hypertable_compression_stats(CAST(:table AS regclass))), "
+                                    + "(SELECT coalesce(sum(after_compression_total_bytes), 0) FROM public.hypertable_compression_stats(CAST(:table AS regclass)))")
+                            .setParameter("table", datapointService.getDatapointTableName())
+                            .getSingleResult());
+        for (int i = 0; i < chunkMetrics.length; i++) {
+          chunkMetrics[i] = ((Number) result[i]).longValue();
+        }
+      } catch (Exception e) {
+        LOG.log(Level.FINE, "Failed to get chunk metrics", e);
+      }
+    }
+    return chunkMetrics[index];
+  }
+}
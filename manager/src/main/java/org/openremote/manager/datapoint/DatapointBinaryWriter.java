@@ -0,0 +1,68 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.datapoint;
+
+import jakarta.ws.rs.NotAcceptableException;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import org.openremote.model.datapoint.DatapointBinaryEncoding;
+import org.openremote.model.datapoint.ValueDatapoint;
+
+/**
+ * Writes {@link ValueDatapoint} arrays using the {@link DatapointBinaryEncoding} when a client
+ * accepts {@link DatapointBinaryEncoding#MEDIA_TYPE}; the datapoints are encoded straight to the
+ * response stream. Series with values other than numbers and booleans are rejected with a 406.
+ */
+@Provider
+@Produces(DatapointBinaryEncoding.MEDIA_TYPE)
+public class DatapointBinaryWriter implements MessageBodyWriter<ValueDatapoint<?>[]> {
+
+  public static final MediaType MEDIA_TYPE = MediaType.valueOf(DatapointBinaryEncoding.MEDIA_TYPE);
+
+  @Override
+  public boolean isWriteable(
+      Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+    return ValueDatapoint[].class.isAssignableFrom(type) && MEDIA_TYPE.isCompatible(mediaType);
+  }
+
+  @Override
+  public void writeTo(
+      ValueDatapoint<?>[] datapoints,
+      Class<?> type,
+      Type genericType,
+      Annotation[] annotations,
+      MediaType mediaType,
+      MultivaluedMap<String, Object> httpHeaders,
+      OutputStream entityStream)
+      throws IOException {
+    if (!DatapointBinaryEncoding.isEncodable(datapoints)) {
+      throw new NotAcceptableException(
+          "Only number and boolean datapoints can be encoded as "
+              + DatapointBinaryEncoding.MEDIA_TYPE);
+    }
+    DatapointBinaryEncoding.encode(datapoints, entityStream);
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.datapoint;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.logging.Logger;
+import org.hibernate.Session;
+import org.openremote.manager.datapoint.DatapointWriter.PendingDatapoint;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.datapoint.DatapointImportFormat;
+import org.openremote.model.util.ValueUtil;
+
+/**
+ * Imports historical datapoints of an attribute from a {@link DatapointImportFormat} stream; the
+ * stream is read in batches of {@link #batchSize} datapoints which are ordered by timestamp and
+ * written with the Postgres <code>COPY</code> protocol into a staging table and merged into the
+ * datapoint table, so a batch only touches a few chunks one after the other. Datapoints that belong
+ * in a chunk that is already in the columnstore are written per chunk by the {@link
+ * CompressedChunkWriter} of the datapoint service.
+ *
+ * <p>Values must be present and coercible to the value type of the attribute, they are stored as
+ * the coerced value. A first CSV line whose timestamp is neither an epoch millisecond number nor
+ * ISO-8601 is treated as a header.
+ *
+ * <p>Each batch is written in its own transaction so when a line cannot be parsed the batches
+ * before it have already been stored; as existing datapoints are replaced the import can simply be
+ * repeated once the stream has been fixed.
+ */
+public class DatapointImporter {
+
+  protected static final ObjectReader VALUE_READER =
+      ValueUtil.JSON.reader().with(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+  private static final Logger LOG = Logger.getLogger(DatapointImporter.class.getName());
+  protected final AbstractDatapointService<?> datapointService;
+  protected final int batchSize;
+  protected final Counter importedCounter;
+
+  public DatapointImporter(
+      AbstractDatapointService<?> datapointService, int batchSize, MeterRegistry meterRegistry) {
+    this.datapointService = datapointService;
+    this.batchSize = batchSize;
+    this.importedCounter =
+        meterRegistry != null
+            ? meterRegistry.counter(
+                "or.datapoints.imported",
+                Tags.of("table", datapointService.getDatapointTableName()))
+            : null;
+  }
+
+  /**
+   * Import the datapoints of the attribute in the stream, replacing stored datapoints with the same
+   * timestamp.
+   *
+   * @param valueType The value type of the attribute that values are coerced to.
+   * @return the number of imported datapoints.
+   * @throws IllegalArgumentException if a line of the stream cannot be parsed or its value is
+   *     missing or not of the value type.
+   */
+  public long importDatapoints(
+      String assetId,
+      String attributeName,
+      Class<?> valueType,
+      DatapointImportFormat format,
+      InputStream inputStream)
+      throws IllegalArgumentException, IOException {
+    long startMillis = System.currentTimeMillis();
+    long count = 0;
+    List<PendingDatapoint> batch = new ArrayList<>(Math.min(batchSize, 10000));
+
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+      String line;
+      long lineNumber = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.isBlank()) {
+          continue;
+        }
+
+        PendingDatapoint datapoint;
+        try {
+          datapoint =
+              format == DatapointImportFormat.NDJSON
+                  ? parseNdjsonLine(assetId, attributeName, valueType, line)
+                  : parseCsvLine(assetId, attributeName, valueType, line);
+        } catch (Exception e) {
+          if (format == DatapointImportFormat.CSV && lineNumber == 1 && isCsvHeader(line)) {
+            continue;
+          }
+          throw new IllegalArgumentException(
+              "Invalid datapoint on line " + lineNumber + ": " + e.getMessage(), e);
+        }
+
+        batch.add(datapoint);
+        if (batch.size() >= batchSize) {
+          count += write(batch);
+          batch.clear();
+        }
+      }
+    }
+
+    if (!batch.isEmpty()) {
+      count += write(batch);
+    }
+
+    long importedCount = count;
+    LOG.fine(
+        () ->
+            "Imported datapoints: id="
+                + assetId
+                + ", name="
+                + attributeName
+                + ", count="
+                + importedCount
+                + ", duration="
+                + (System.currentTimeMillis() - startMillis)
+                + "ms");
+    return count;
+  }
+
+  /**
+   * @return the number of written datapoints.
+   */
+  protected int write(List<PendingDatapoint> batch) {
+    batch.sort(Comparator.comparingLong(PendingDatapoint::timestamp));
+    Collection<PendingDatapoint> datapoints = DatapointWriter.deduplicate(batch);
+    int count = datapoints.size();
+
+    try {
+      if (datapointService.compressedChunkWriter != null) {
+        datapoints = datapointService.compressedChunkWriter.write(datapoints);
+      }
+      if (!datapoints.isEmpty()) {
+        Collection<PendingDatapoint> recentDatapoints = datapoints;
+        datapointService.persistenceService.doTransaction(
+            em ->
+                em.unwrap(Session.class)
+                    .doWork(
+                        connection ->
+                            DatapointWriter.merge(
+                                connection,
+                                datapointService.getDatapointTableName(),
+                                recentDatapoints)));
+      }
+    } finally {
+      // Late chunks may have been written even if the batch failed
+      PendingDatapoint first = batch.getFirst();
+      datapointService.onDatapointsWritten(
+          new AttributeRef(first.assetId(), first.attributeName()),
+          first.timestamp(),
+          batch.getLast().timestamp());
+    }
+
+    if (importedCounter != null) {
+      importedCounter.increment(count);
+    }
+    return count;
+  }
+
+  protected static PendingDatapoint parseCsvLine(
+      String assetId, String attributeName, Class<?> valueType, String line) {
+    int separator = line.indexOf(',');
+    if (separator < 0) {
+      throw new IllegalArgumentException("expected timestamp,value");
+    }
+
+    String value = line.substring(separator + 1).trim();
+    if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+      value = value.substring(1, value.length() - 1).replace("\"\"", "\"");
+    }
+    if (value.isEmpty()) {
+      throw new IllegalArgumentException("missing value");
+    }
+    return new PendingDatapoint(
+        assetId,
+        attributeName,
+        toValueJSON(toValueNode(value), valueType),
+        parseTimestamp(line.substring(0, separator).trim()));
+  }
+
+  protected static PendingDatapoint parseNdjsonLine(
+      String assetId, String attributeName, Class<?> valueType, String line)
+      throws JsonProcessingException {
+    JsonNode node = VALUE_READER.readTree(line);
+    JsonNode timestamp = node.get("x");
+    if (timestamp == null || !(timestamp.canConvertToLong() || timestamp.isTextual())) {
+      throw new IllegalArgumentException("expected an object with an x timestamp");
+    }
+
+    return new PendingDatapoint(
+        assetId,
+        attributeName,
+        toValueJSON(node.get("y"), valueType),
+        timestamp.isTextual() ? parseTimestamp(timestamp.textValue()) : timestamp.longValue());
+  }
+
+  protected static long parseTimestamp(String timestamp) {
+    try {
+      return Long.parseLong(timestamp);
+    } catch (NumberFormatException e) {
+      return Instant.parse(timestamp).toEpochMilli();
+    }
+  }
+
+  /** A first CSV line is a header when its timestamp is neither a number nor ISO-8601. */
+  protected static boolean isCsvHeader(String line) {
+    int separator = line.indexOf(',');
+    try {
+      parseTimestamp((separator < 0 ? line : line.substring(0, separator)).trim());
+      return false;
+    } catch (RuntimeException e) {
+      return true;
+    }
+  }
+
+  /** The CSV value as JSON, a value that isn't valid JSON is a string. */
+  protected static JsonNode toValueNode(String value) {
+    try {
+      return VALUE_READER.readTree(value);
+    } catch (JsonProcessingException e) {
+      return ValueUtil.JSON.getNodeFactory().textNode(value);
+    }
+  }
+
+  /**
+   * The value coerced to the value type as JSON, normalized so it is accepted by jsonb.
+   *
+   * @throws IllegalArgumentException if the value is missing or cannot be coerced.
+   */
+  protected static String toValueJSON(JsonNode value, Class<?> valueType)
+      throws JsonProcessingException {
+    if (value == null || value.isNull()) {
+      throw new IllegalArgumentException("missing value");
+    }
+    if (valueType == null) {
+      return ValueUtil.JSON.writeValueAsString(value);
+    }
+    Object coerced =
+        ValueUtil.getValueCoerced(ValueUtil.JSON.treeToValue(value, Object.class), valueType)
+            .orElseThrow(
+                () ->
+                    new IllegalArgumentException(
+                        "value " + value + " is not a valid " + valueType.getSimpleName()));
+    return ValueUtil.JSON.writeValueAsString(coerced);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{"
+        + "table="
+        + datapointService.getDatapointTableName()
+        + ", batchSize="
+        + batchSize
+        + '}';
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.datapoint;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.hibernate.Session;
+import org.openremote.container.persistence.PersistenceService;
+
+/**
+ * Backfills the <code>numeric_value</code> column of the datapoints stored before it existed; the
+ * tables and chunks to backfill are queued in the <code>datapoint_numeric_value_backfill</code>
+ * table by the migration that added the column. Each table or chunk is updated (and removed from
+ * the queue) in its own transaction, chunks in the columnstore are converted to the rowstore for
+ * the update and back again afterwards so only a single chunk is ever decompressed. Queries convert
+ * the jsonb value of datapoints without a numeric value until the backfill is done.
+ */
+public class DatapointNumericValueBackfill {
+
+  protected static final String QUEUE_TABLE_NAME = "datapoint_numeric_value_backfill";
+  private static final Logger LOG = Logger.getLogger(DatapointNumericValueBackfill.class.getName());
+  protected final PersistenceService persistenceService;
+  protected volatile boolean stopped;
+
+  public DatapointNumericValueBackfill(PersistenceService persistenceService) {
+    this.persistenceService = persistenceService;
+  }
+
+  /** Backfill the queued tables and chunks until the queue is empty or {@link #stop} is called. */
+  public void run() {
+    long startMillis = System.currentTimeMillis();
+    int count = 0;
+    try {
+      while (!stopped && backfillNext()) {
+        count++;
+      }
+    } catch (Exception e) {
+      LOG.log(
+          Level.WARNING,
+          "Failed to backfill the numeric value of data points, will continue on next start",
+          e);
+    }
+    if (count > 0) {
+      LOG.info(
+          "Backfilled the numeric value of data points: chunks="
+              + count
+              + ", duration="
+              + (System.currentTimeMillis() - startMillis)
+              + "ms");
+    }
+  }
+
+  public void stop() {
+    stopped = true;
+  }
+
+  /**
+   * Backfill the next queued table or chunk.
+   *
+   * @return whether there was anything queued.
+   */
+  protected boolean backfillNext() {
+    return persistenceService.doReturningTransaction(
+        em ->
+            em.unwrap(Session.class)
+                .doReturningWork(
+                    connection -> {
+                      String relation = null;
+                      // Another manager sharing the database skips the chunks that are locked
+                      try (PreparedStatement st =
+                              connection.prepareStatement(
+                                  "SELECT relation FROM "
+                                      + QUEUE_TABLE_NAME
+                                      + " ORDER BY range_start DESC NULLS FIRST LIMIT 1"
+                                      + " FOR UPDATE SKIP LOCKED");
+                          ResultSet rs = st.executeQuery()) {
+                        if (rs.next()) {
+                          relation = rs.getString(1);
+                        }
+                      }
+                      if (relation == null) {
+                        return false;
+                      }
+                      // Chunks dropped since the migration are not backfilled
+                      if (exists(connection, relation)) {
+                        backfill(connection, relation);
+                      }
+                      try (PreparedStatement st =
+                          connection.prepareStatement(
+                              "DELETE FROM " + QUEUE_TABLE_NAME + " WHERE relation = ?")) {
+                        st.setString(1, relation);
+                        st.executeUpdate();
+                      }
+                      return true;
+                    }));
+  }
+
+  protected static boolean exists(Connection connection, String relation) throws SQLException {
+    try (PreparedStatement st =
+        connection.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+      st.setString(1, relation);
+      try (ResultSet rs = st.executeQuery()) {
+        return rs.next() && rs.getBoolean(1);
+      }
+    }
+  }
+
+  protected static void backfill(Connection connection, String relation) throws SQLException {
+    long startMillis = System.currentTimeMillis();
+    boolean compressed;
+    try (PreparedStatement st =
+        connection.prepareStatement(
+            "SELECT EXISTS (SELECT 1 FROM timescaledb_information.chunks"
+                + " WHERE format('%I.%I', chunk_schema, chunk_name) = ? AND is_compressed)")) {
+      st.setString(1, relation);
+      try (ResultSet rs = st.executeQuery()) {
+        compressed = rs.next() && rs.getBoolean(1);
+      }
+    }
+
+    if (compressed) {
+      try (PreparedStatement st =
+          connection.prepareStatement(
+              "SELECT public.decompress_chunk(CAST(? AS regclass), if_compressed => true)")) {
+        st.setString(1, relation);
+        st.execute();
+      }
+    }
+
+    int updated;
+    // The relation is a quoted identifier from the queue table
+    try (PreparedStatement st =
+        connection.prepareStatement(
+            "UPDATE "
+                + relation
+                + " SET numeric_value = datapoint_numeric_value(value)"
+                + " WHERE numeric_value IS NULL AND jsonb_typeof(value) IN ('number', 'boolean')")) {
+      updated = st.executeUpdate();
+    }
+
+    if (compressed) {
+      try (PreparedStatement st =
+          connection.prepareStatement(
+              "SELECT public.compress_chunk(CAST(? AS regclass), if_not_compressed => true)")) {
+        st.setString(1, relation);
+        st.execute();
+      }
+    }
+
+    LOG.fine(
+        "Backfilled the numeric value of data points: relation="
+            + relation
+            + ", count="
+            + updated
+            + ", recompressed="
+            + compressed
+            + ", duration="
+            + (System.currentTimeMillis() - startMillis)
+            + "ms");
+  }
+}
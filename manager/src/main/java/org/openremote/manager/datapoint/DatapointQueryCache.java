@@ -0,0 +1,393 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.datapoint;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.datapoint.ValueDatapoint;
+import org.openremote.model.datapoint.query.AssetDatapointIntervalQuery;
+import org.openremote.model.datapoint.query.AssetDatapointLTTBQuery;
+import org.openremote.model.datapoint.query.AssetDatapointQuery;
+
+/**
+ * Caches the results of interval and LTTB queries for the closed buckets of the query range, these
+ * are the buckets that end before the current time (or the end of the range) so their datapoints
+ * are not expected to change anymore. Cache entries are keyed on the attribute, query type, the
+ * bucket aligned range of the closed buckets and the interval and formula (or amount of points) so
+ * the same dashboard opened by many users is only queried once per bucket. The partial bucket at
+ * the start of the range and the open-ended tail are queried on each request and merged with the
+ * cached buckets.
+ *
+ * <p>The buckets of an interval query are aligned the same way as <code>time_bucket</code>, only
+ * intervals of a single amount of a unit and formulas other than <code>DIFFERENCE</code> (which
+ * depends on the previous bucket) are cached. An LTTB query is split into buckets of the width of
+ * an LTTB bucket (rounded up to a second), the closed buckets are downsampled on their own and the
+ * partial bucket at the start and the tail each get {@link #LTTB_PARTIAL_POINTS} points; this may
+ * select slightly different points than downsampling the whole range at once.
+ *
+ * <p>Datapoints written into the range of an entry other than in timestamp order must {@link
+ * #invalidate} the entries of the attribute. A write may not be visible to a query that is already
+ * running so the result of a query is only cached if no datapoints of the attribute (or rather of
+ * its stripe of {@link #INVALIDATION_STRIPES}) were invalidated while it ran. Buckets that end
+ * within {@link #settleMillis} of the current time are not cached at all as datapoints written
+ * there may not be visible to queries yet (buffered writes or rollups that are not refreshed yet),
+ * and entries expire after {@link #ttlMillis}. The least recently used entries are evicted once all
+ * entries together hold more than {@link #maxDatapoints} datapoints.
+ */
+public class DatapointQueryCache {
+
+  protected record Key(
+      AttributeRef attributeRef,
+      Class<?> queryType,
+      LocalDateTime from,
+      LocalDateTime to,
+      String interval,
+      AssetDatapointIntervalQuery.Formula formula,
+      boolean gapFill,
+      int amountOfPoints) {}
+
+  protected record CachedBuckets(List<ValueDatapoint<?>> datapoints, long expiresMillis) {}
+
+  /** Creates a query of the same type for a part of the range of the original query. */
+  @FunctionalInterface
+  protected interface RangeQueryFactory {
+    AssetDatapointQuery create(LocalDateTime from, LocalDateTime to);
+  }
+
+  /** Points of the partial first bucket and the tail of an LTTB query. */
+  protected static final int LTTB_PARTIAL_POINTS = 3;
+
+  /** Smaller LTTB queries are not worth splitting. */
+  protected static final int LTTB_MIN_POINTS = 4 * LTTB_PARTIAL_POINTS;
+
+  protected static final int INVALIDATION_STRIPES = 1024;
+
+  protected final long maxDatapoints;
+  protected final long settleMillis;
+  protected final long ttlMillis;
+  protected final LongSupplier clock;
+  protected final LinkedHashMap<Key, CachedBuckets> entries = new LinkedHashMap<>(16, 0.75f, true);
+  protected final Map<AttributeRef, Set<Key>> attributeKeys = new HashMap<>();
+  // Incremented on every invalidation of an attribute in the stripe, or of all attributes
+  protected final long[] invalidations = new long[INVALIDATION_STRIPES];
+  protected long purges;
+  protected final Counter hitCounter;
+  protected final Counter missCounter;
+  protected long datapoints;
+
+  /**
+   * @param clock the current time in milliseconds.
+   */
+  public DatapointQueryCache(
+      long maxDatapoints,
+      long settleMillis,
+      long ttlMillis,
+      LongSupplier clock,
+      MeterRegistry meterRegistry) {
+    this.maxDatapoints = maxDatapoints;
+    this.settleMillis = settleMillis;
+    this.ttlMillis = ttlMillis;
+    this.clock = clock;
+
+    if (meterRegistry != null) {
+      hitCounter = meterRegistry.counter("or.datapoints.query.cache", Tags.of("result", "hit"));
+      missCounter = meterRegistry.counter("or.datapoints.query.cache", Tags.of("result", "miss"));
+      meterRegistry.gauge(
+          "or.datapoints.query.cache.size",
+          Tags.empty(),
+          this,
+          DatapointQueryCache::getDatapoints);
+    } else {
+      hitCounter = null;
+      missCounter = null;
+    }
+  }
+
+  /**
+   * Answer the query using the cached closed buckets, the uncached parts of the range are queried
+   * with the query function.
+   *
+   * @return <code>null</code> if the query cannot be cached and must be answered as a whole.
+   */
+  public List<ValueDatapoint<?>> query(
+      AttributeRef attributeRef,
+      AssetDatapointQuery datapointQuery,
+      Function<AssetDatapointQuery, List<ValueDatapoint<?>>> queryFunction) {
+    // Buckets are only closed once they have settled
+    LocalDateTime now = toLocalDateTime(null, clock.getAsLong() - settleMillis);
+    if (datapointQuery instanceof AssetDatapointIntervalQuery intervalQuery) {
+      return queryInterval(attributeRef, intervalQuery, now, queryFunction);
+    }
+    if (datapointQuery instanceof AssetDatapointLTTBQuery lttbQuery) {
+      return queryLTTB(attributeRef, lttbQuery, now, queryFunction);
+    }
+    return null;
+  }
+
+  protected List<ValueDatapoint<?>> queryInterval(
+      AttributeRef attributeRef,
+      AssetDatapointIntervalQuery intervalQuery,
+      LocalDateTime now,
+      Function<AssetDatapointQuery, List<ValueDatapoint<?>>> queryFunction) {
+    if (intervalQuery.formula == null
+        || intervalQuery.formula == AssetDatapointIntervalQuery.Formula.DIFFERENCE) {
+      return null;
+    }
+    LocalDateTime from = toLocalDateTime(intervalQuery.fromTime, intervalQuery.fromTimestamp);
+    LocalDateTime to = toLocalDateTime(intervalQuery.toTime, intervalQuery.toTimestamp);
+    LocalDateTime closedFrom = intervalQuery.ceilToBucket(from);
+    LocalDateTime closedTo = intervalQuery.truncateToBucket(to.isBefore(now) ? to : now);
+    if (closedFrom == null || closedTo == null || !closedFrom.isBefore(closedTo)) {
+      return null;
+    }
+
+    Key key =
+        new Key(
+            attributeRef,
+            AssetDatapointIntervalQuery.class,
+            closedFrom,
+            closedTo,
+            intervalQuery.interval,
+            intervalQuery.formula,
+            intervalQuery.gapFill,
+            0);
+    RangeQueryFactory queryFactory =
+        (rangeFrom, rangeTo) ->
+            new AssetDatapointIntervalQuery(
+                rangeFrom,
+                rangeTo,
+                intervalQuery.interval,
+                intervalQuery.formula,
+                intervalQuery.gapFill);
+    return query(key, from, to, queryFactory, queryFactory, queryFunction);
+  }
+
+  protected List<ValueDatapoint<?>> queryLTTB(
+      AttributeRef attributeRef,
+      AssetDatapointLTTBQuery lttbQuery,
+      LocalDateTime now,
+      Function<AssetDatapointQuery, List<ValueDatapoint<?>>> queryFunction) {
+    if (lttbQuery.amountOfPoints < LTTB_MIN_POINTS) {
+      return null;
+    }
+    LocalDateTime from = toLocalDateTime(lttbQuery.fromTime, lttbQuery.fromTimestamp);
+    LocalDateTime to = toLocalDateTime(lttbQuery.toTime, lttbQuery.toTimestamp);
+    long bucketSeconds =
+        Math.ceilDiv(ChronoUnit.MILLIS.between(from, to), lttbQuery.amountOfPoints * 1000L);
+    if (bucketSeconds <= 0) {
+      return null;
+    }
+    LocalDateTime closedFrom = truncate(from, bucketSeconds);
+    if (closedFrom.isBefore(from)) {
+      closedFrom = closedFrom.plusSeconds(bucketSeconds);
+    }
+    LocalDateTime closedTo = truncate(to.isBefore(now) ? to : now, bucketSeconds);
+    if (!closedFrom.isBefore(closedTo)) {
+      return null;
+    }
+
+    int closedPoints = lttbQuery.amountOfPoints - 2 * LTTB_PARTIAL_POINTS;
+    Key key =
+        new Key(
+            attributeRef,
+            AssetDatapointLTTBQuery.class,
+            closedFrom,
+            closedTo,
+            null,
+            null,
+            false,
+            closedPoints);
+    return query(
+        key,
+        from,
+        to,
+        (rangeFrom, rangeTo) ->
+            new AssetDatapointLTTBQuery(rangeFrom, rangeTo, LTTB_PARTIAL_POINTS),
+        (rangeFrom, rangeTo) -> new AssetDatapointLTTBQuery(rangeFrom, rangeTo, closedPoints),
+        queryFunction);
+  }
+
+  /**
+   * Query the partial bucket before the closed buckets, get the closed buckets from the cache (or
+   * query and cache them) and query the tail after the closed buckets; the upper bound of a query
+   * is inclusive so the ranges before the closed buckets end just before them.
+   */
+  protected List<ValueDatapoint<?>> query(
+      Key key,
+      LocalDateTime from,
+      LocalDateTime to,
+      RangeQueryFactory partialQueryFactory,
+      RangeQueryFactory closedQueryFactory,
+      Function<AssetDatapointQuery, List<ValueDatapoint<?>>> queryFunction) {
+    List<ValueDatapoint<?>> result = new ArrayList<>();
+    if (from.isBefore(key.from())) {
+      result.addAll(
+          queryFunction.apply(
+              partialQueryFactory.create(from, key.from().minus(1, ChronoUnit.MICROS))));
+    }
+
+    List<ValueDatapoint<?>> closed = get(key);
+    if (closed == null) {
+      long invalidation = getInvalidation(key.attributeRef());
+      closed =
+          List.copyOf(
+              queryFunction.apply(
+                  closedQueryFactory.create(key.from(), key.to().minus(1, ChronoUnit.MICROS))));
+      put(key, closed, invalidation);
+    }
+    result.addAll(closed);
+
+    result.addAll(queryFunction.apply(partialQueryFactory.create(key.to(), to)));
+    return result;
+  }
+
+  protected synchronized List<ValueDatapoint<?>> get(Key key) {
+    CachedBuckets cached = entries.get(key);
+    if (cached != null && cached.expiresMillis() <= clock.getAsLong()) {
+      remove(key);
+      cached = null;
+    }
+    Counter counter = cached != null ? hitCounter : missCounter;
+    if (counter != null) {
+      counter.increment();
+    }
+    return cached != null ? cached.datapoints() : null;
+  }
+
+  /**
+   * Cache the closed buckets unless the attribute has been invalidated since the given invalidation
+   * count was taken, the buckets may then miss datapoints written while they were queried.
+   */
+  protected synchronized void put(Key key, List<ValueDatapoint<?>> closed, long invalidation) {
+    if (closed.size() > maxDatapoints || invalidation != getInvalidation(key.attributeRef())) {
+      return;
+    }
+    CachedBuckets previous =
+        entries.put(key, new CachedBuckets(closed, clock.getAsLong() + ttlMillis));
+    if (previous != null) {
+      datapoints -= previous.datapoints().size();
+    }
+    datapoints += closed.size();
+    attributeKeys.computeIfAbsent(key.attributeRef(), ref -> new HashSet<>()).add(key);
+
+    Iterator<Map.Entry<Key, CachedBuckets>> iterator = entries.entrySet().iterator();
+    while (datapoints > maxDatapoints && iterator.hasNext()) {
+      Map.Entry<Key, CachedBuckets> eldest = iterator.next();
+      iterator.remove();
+      removed(eldest.getKey(), eldest.getValue());
+    }
+  }
+
+  protected synchronized long getInvalidation(AttributeRef attributeRef) {
+    return invalidations[getStripe(attributeRef)] + purges;
+  }
+
+  protected static int getStripe(AttributeRef attributeRef) {
+    return Math.floorMod(attributeRef.hashCode(), INVALIDATION_STRIPES);
+  }
+
+  /**
+   * Evict the entries of an attribute that overlap the inclusive range; datapoints that are not
+   * settled yet cannot be in any entry (or a query that is running) and are ignored.
+   */
+  public synchronized void invalidate(
+      AttributeRef attributeRef, long fromTimestamp, long toTimestamp) {
+    if (fromTimestamp >= clock.getAsLong() - settleMillis) {
+      return;
+    }
+    invalidations[getStripe(attributeRef)]++;
+    Set<Key> keys = attributeKeys.get(attributeRef);
+    if (keys == null) {
+      return;
+    }
+    LocalDateTime from = toLocalDateTime(null, fromTimestamp);
+    LocalDateTime to = toLocalDateTime(null, toTimestamp);
+    keys.stream()
+        .filter(key -> !key.from().isAfter(to) && key.to().isAfter(from))
+        .toList()
+        .forEach(this::remove);
+  }
+
+  /** Evict the entries of all attributes with buckets before the timestamp. */
+  public synchronized void invalidateBefore(long timestamp) {
+    purges++;
+    LocalDateTime before = toLocalDateTime(null, timestamp);
+    entries.keySet().stream()
+        .filter(key -> key.from().isBefore(before))
+        .toList()
+        .forEach(this::remove);
+  }
+
+  protected void remove(Key key) {
+    CachedBuckets removed = entries.remove(key);
+    if (removed != null) {
+      removed(key, removed);
+    }
+  }
+
+  protected void removed(Key key, CachedBuckets removed) {
+    datapoints -= removed.datapoints().size();
+    Set<Key> keys = attributeKeys.get(key.attributeRef());
+    if (keys != null && keys.remove(key) && keys.isEmpty()) {
+      attributeKeys.remove(key.attributeRef());
+    }
+  }
+
+  public synchronized long getDatapoints() {
+    return datapoints;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  protected static LocalDateTime toLocalDateTime(LocalDateTime time, long timestamp) {
+    return time != null
+        ? time
+        : Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDateTime();
+  }
+
+  protected static LocalDateTime truncate(LocalDateTime time, long seconds) {
+    return LocalDateTime.ofEpochSecond(
+        Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), seconds) * seconds, 0, ZoneOffset.UTC);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{"
+        + "maxDatapoints="
+        + maxDatapoints
+        + ", settleMillis="
+        + settleMillis
+        + ", ttlMillis="
+        + ttlMillis
+        + '}';
+  }
+}
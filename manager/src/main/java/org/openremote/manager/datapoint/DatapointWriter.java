@@ -0,0 +1,323 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.datapoint;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.hibernate.Session;
+import org.openremote.model.attribute.AttributeRef;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * Buffers datapoints in memory and writes them in batches using the Postgres <code>COPY</code>
+ * protocol into a temporary staging table which is then merged into the datapoint table with an
+ * <code>INSERT ... ON CONFLICT</code>; a batch is written every {@link #flushMillis} or as soon as
+ * {@link #batchSize} datapoints are waiting. Datapoints that belong in a chunk that is already in
+ * the columnstore are written by the {@link CompressedChunkWriter} of the datapoint service.
+ *
+ * <p>The buffer is bounded, once it is full {@link #add} blocks the caller until there is space (so
+ * attribute event processing is slowed down rather than datapoints being lost) and fails after
+ * {@link #ADD_TIMEOUT_MILLIS}. If a batch cannot be written then each datapoint is written
+ * individually so a single invalid datapoint doesn't cause the whole batch to be lost.
+ */
+public class DatapointWriter {
+
+  protected record PendingDatapoint(
+      String assetId, String attributeName, String valueJSON, long timestamp) {}
+
+  protected record DatapointKey(String assetId, String attributeName, long timestamp) {}
+
+  public static final long ADD_TIMEOUT_MILLIS = 30000;
+  private static final Logger LOG = Logger.getLogger(DatapointWriter.class.getName());
+  protected final AbstractDatapointService<?> datapointService;
+  protected final ScheduledExecutorService scheduledExecutorService;
+  protected final int batchSize;
+  protected final int bufferSize;
+  protected final long flushMillis;
+  protected final BlockingQueue<PendingDatapoint> buffer;
+  protected final AtomicBoolean flushRequested = new AtomicBoolean();
+  protected final Object flushLock = new Object();
+  protected ScheduledFuture<?> flushFuture;
+
+  public DatapointWriter(
+      AbstractDatapointService<?> datapointService,
+      ScheduledExecutorService scheduledExecutorService,
+      int batchSize,
+      int bufferSize,
+      long flushMillis,
+      MeterRegistry meterRegistry) {
+    this.datapointService = datapointService;
+    this.scheduledExecutorService = scheduledExecutorService;
+    this.batchSize = batchSize;
+    this.bufferSize = bufferSize;
+    this.flushMillis = flushMillis;
+    this.buffer = new ArrayBlockingQueue<>(bufferSize);
+
+    if (meterRegistry != null) {
+      meterRegistry.gauge(
+          "or.datapoints.buffer.size",
+          Tags.of("table", datapointService.getDatapointTableName()),
+          buffer,
+          BlockingQueue::size);
+    }
+  }
+
+  public void start() {
+    flushFuture =
+        scheduledExecutorService.scheduleWithFixedDelay(
+            this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** Stop the periodic flush and write all buffered datapoints. */
+  public void stop() {
+    if (flushFuture != null) {
+      flushFuture.cancel(false);
+      flushFuture = null;
+    }
+    flush();
+  }
+
+  /**
+   * Add a datapoint to the buffer, waiting for space if the buffer is full.
+   *
+   * @throws IllegalStateException if there is no space in the buffer within {@link
+   *     #ADD_TIMEOUT_MILLIS} or the calling thread is interrupted.
+   */
+  public void add(String assetId, String attributeName, String valueJSON, long timestamp)
+      throws IllegalStateException {
+    PendingDatapoint datapoint = new PendingDatapoint(assetId, attributeName, valueJSON, timestamp);
+
+    try {
+      if (!buffer.offer(datapoint)) {
+        LOG.fine("Datapoint buffer is full, waiting for space");
+        requestFlush();
+        if (!buffer.offer(datapoint, ADD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+          throw new IllegalStateException("Timed out waiting for space in datapoint buffer");
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for space in datapoint buffer", e);
+    }
+
+    if (buffer.size() >= batchSize) {
+      requestFlush();
+    }
+  }
+
+  public int size() {
+    return buffer.size();
+  }
+
+  /** Write all buffered datapoints in batches of at most {@link #batchSize}. */
+  public void flush() {
+    synchronized (flushLock) {
+      flushRequested.set(false);
+      List<PendingDatapoint> batch = new ArrayList<>(Math.min(batchSize, bufferSize));
+      while (buffer.drainTo(batch, batchSize) > 0) {
+        write(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  protected void requestFlush() {
+    if (flushRequested.compareAndSet(false, true)) {
+      scheduledExecutorService.execute(this::flush);
+    }
+  }
+
+  protected void write(List<PendingDatapoint> batch) {
+    long startMillis = System.currentTimeMillis();
+    Collection<PendingDatapoint> datapoints = deduplicate(batch);
+
+    try {
+      Collection<PendingDatapoint> recentDatapoints =
+          datapointService.compressedChunkWriter != null
+              ? datapointService.compressedChunkWriter.write(datapoints)
+              : datapoints;
+      if (!recentDatapoints.isEmpty()) {
+        datapointService.persistenceService.doTransaction(
+            em ->
+                em.unwrap(Session.class)
+                    .doWork(
+                        connection ->
+                            merge(
+                                connection,
+                                datapointService.getDatapointTableName(),
+                                recentDatapoints)));
+      }
+      datapoints.forEach(
+          datapoint ->
+              datapointService.onDatapointsWritten(
+                  new AttributeRef(datapoint.assetId(), datapoint.attributeName()),
+                  datapoint.timestamp(),
+                  datapoint.timestamp()));
+      LOG.finest(
+          () ->
+              "Stored datapoints: count="
+                  + datapoints.size()
+                  + ", duration="
+                  + (System.currentTimeMillis() - startMillis)
+                  + "ms");
+    } catch (Exception e) {
+      LOG.log(
+          Level.WARNING,
+          "Failed to store datapoint batch, storing individually: count=" + datapoints.size(),
+          e);
+      datapoints.forEach(
+          datapoint -> {
+            try {
+              datapointService.upsertValueJSON(
+                  datapoint.assetId(),
+                  datapoint.attributeName(),
+                  datapoint.valueJSON(),
+                  datapoint.timestamp());
+            } catch (Exception ex) {
+              LOG.log(Level.WARNING, "Failed to store datapoint, discarding: " + datapoint, ex);
+            }
+          });
+    }
+  }
+
+  /**
+   * Copy the datapoints into a temporary staging table and merge them into the given table with a
+   * single <code>INSERT ... ON CONFLICT</code>; the datapoints must not contain duplicates.
+   */
+  protected static void merge(
+      Connection connection, String tableName, Collection<PendingDatapoint> datapoints)
+      throws SQLException {
+    String stagingTableName = tableName + "_staging";
+
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(
+          "CREATE TEMP TABLE IF NOT EXISTS "
+              + stagingTableName
+              + " (LIKE "
+              + tableName
+              + ") ON COMMIT DELETE ROWS");
+    }
+
+    copy(connection, stagingTableName, datapoints);
+
+    try (Statement statement = connection.createStatement()) {
+      statement.executeUpdate(
+          "INSERT INTO "
+              + tableName
+              + " (entity_id, attribute_name, value, numeric_value, timestamp)"
+              + " SELECT entity_id, attribute_name, value, numeric_value, timestamp FROM "
+              + stagingTableName
+              + " ON CONFLICT (entity_id, attribute_name, timestamp) DO UPDATE"
+              + " SET value = excluded.value, numeric_value = excluded.numeric_value");
+    }
+  }
+
+  /**
+   * Copy the datapoints straight into the given table; the datapoints must not contain duplicates
+   * or datapoints that are already in the table.
+   */
+  protected static void copy(
+      Connection connection, String tableName, Collection<PendingDatapoint> datapoints)
+      throws SQLException {
+    StringBuilder csv = new StringBuilder(datapoints.size() * 128);
+    datapoints.forEach(datapoint -> appendCsvRow(csv, datapoint));
+
+    CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+    try {
+      copyManager.copyIn(
+          "COPY "
+              + tableName
+              + " (entity_id, attribute_name, value, numeric_value, timestamp)"
+              + " FROM STDIN WITH (FORMAT csv)",
+          new StringReader(csv.toString()));
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to copy datapoints", e);
+    }
+  }
+
+  /**
+   * Only keep the last datapoint for each attribute and timestamp as a single insert cannot update
+   * the same row twice.
+   */
+  protected static Collection<PendingDatapoint> deduplicate(
+      Collection<PendingDatapoint> batch) {
+    Map<DatapointKey, PendingDatapoint> datapoints = new LinkedHashMap<>(batch.size());
+    batch.forEach(
+        datapoint ->
+            datapoints.put(
+                new DatapointKey(
+                    datapoint.assetId(), datapoint.attributeName(), datapoint.timestamp()),
+                datapoint));
+    return datapoints.values();
+  }
+
+  protected static void appendCsvRow(StringBuilder csv, PendingDatapoint datapoint) {
+    appendCsvField(csv, datapoint.assetId()).append(',');
+    appendCsvField(csv, datapoint.attributeName()).append(',');
+    appendCsvField(csv, datapoint.valueJSON()).append(',');
+    // An empty unquoted field is null
+    Double numericValue = AbstractDatapointService.getNumericValue(datapoint.valueJSON());
+    if (numericValue != null) {
+      csv.append(numericValue);
+    }
+    csv.append(',');
+    // Same JVM local conversion as the single row upsert
+    csv.append(
+            Instant.ofEpochMilli(datapoint.timestamp())
+                .atZone(ZoneId.systemDefault())
+                .toLocalDateTime())
+        .append('\n');
+  }
+
+  protected static StringBuilder appendCsvField(StringBuilder csv, String field) {
+    return csv.append('"').append(field.replace("\"", "\"\"")).append('"');
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{"
+        + "table="
+        + datapointService.getDatapointTableName()
+        + ", batchSize="
+        + batchSize
+        + ", bufferSize="
+        + bufferSize
+        + ", flushMillis="
+        + flushMillis
+        + '}';
+  }
+}
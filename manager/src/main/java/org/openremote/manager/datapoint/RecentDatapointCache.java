@@ -0,0 +1,230 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.datapoint;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.util.*;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.datapoint.ValueDatapoint;
+
+/**
+ * Keeps the most recent numeric datapoints of each attribute in a ring buffer of primitive arrays
+ * (timestamp and value) so queries of a short and recent range don't have to go to the database.
+ *
+ * <p>A buffer only covers the datapoints from the first datapoint it received onwards (or from the
+ * oldest datapoint still in the buffer once it is full) and only as long as every datapoint of the
+ * attribute is added to it in timestamp order; datapoints written by other means must {@link
+ * #invalidate} the buffer. Queries of a range that starts before the covered range return <code>
+ * null</code> and must be answered by the database. Buffers grow up to {@link #maxDatapoints} and
+ * the least recently used buffers are evicted once all buffers together exceed {@link #maxBytes}.
+ */
+public class RecentDatapointCache {
+
+  protected static final int INITIAL_CAPACITY = 64;
+  protected static final int BYTES_PER_DATAPOINT = Long.BYTES + Double.BYTES;
+
+  protected static class RingBuffer {
+    protected long[] timestamps = new long[INITIAL_CAPACITY];
+    protected double[] values = new double[INITIAL_CAPACITY];
+    protected int start;
+    protected int size;
+    // Every datapoint with a timestamp at or after this is in the buffer
+    protected long coveredFrom;
+
+    protected RingBuffer(long coveredFrom) {
+      this.coveredFrom = coveredFrom;
+    }
+
+    protected long getTimestamp(int i) {
+      return timestamps[(start + i) % timestamps.length];
+    }
+
+    protected double getValue(int i) {
+      return values[(start + i) % values.length];
+    }
+
+    /**
+     * @return the number of bytes the buffer grew by.
+     */
+    protected long add(long timestamp, double value, int maxDatapoints) {
+      if (size > 0) {
+        long lastTimestamp = getTimestamp(size - 1);
+        if (timestamp == lastTimestamp) {
+          values[(start + size - 1) % values.length] = value;
+          return 0;
+        }
+        if (timestamp < lastTimestamp) {
+          // Out of order so the buffer doesn't know the datapoints around it anymore
+          coveredFrom = Math.max(coveredFrom, timestamp + 1);
+          return 0;
+        }
+      }
+
+      long grownBytes = 0;
+      if (size == timestamps.length) {
+        if (timestamps.length < maxDatapoints) {
+          grownBytes = grow(Math.min(timestamps.length * 2, maxDatapoints));
+        } else {
+          coveredFrom = Math.max(coveredFrom, getTimestamp(0) + 1);
+          start = (start + 1) % timestamps.length;
+          size--;
+        }
+      }
+
+      int index = (start + size) % timestamps.length;
+      timestamps[index] = timestamp;
+      values[index] = value;
+      size++;
+      return grownBytes;
+    }
+
+    protected long grow(int capacity) {
+      long[] newTimestamps = new long[capacity];
+      double[] newValues = new double[capacity];
+      for (int i = 0; i < size; i++) {
+        newTimestamps[i] = getTimestamp(i);
+        newValues[i] = getValue(i);
+      }
+      long grownBytes = (long) (capacity - timestamps.length) * BYTES_PER_DATAPOINT;
+      timestamps = newTimestamps;
+      values = newValues;
+      start = 0;
+      return grownBytes;
+    }
+
+    protected long getBytes() {
+      return (long) timestamps.length * BYTES_PER_DATAPOINT;
+    }
+  }
+
+  protected final int maxDatapoints;
+  protected final long maxBytes;
+  protected final LinkedHashMap<AttributeRef, RingBuffer> buffers =
+      new LinkedHashMap<>(16, 0.75f, true);
+  protected long bytes;
+
+  public RecentDatapointCache(int maxDatapoints, long maxBytes, MeterRegistry meterRegistry) {
+    this.maxDatapoints = Math.max(maxDatapoints, INITIAL_CAPACITY);
+    this.maxBytes = maxBytes;
+
+    if (meterRegistry != null) {
+      meterRegistry.gauge(
+          "or.datapoints.recent.bytes", Tags.empty(), this, RecentDatapointCache::getBytes);
+    }
+  }
+
+  /** Add the datapoint of an attribute; a <code>null</code> value is stored as NaN. */
+  public synchronized void add(AttributeRef attributeRef, long timestamp, Double value) {
+    RingBuffer buffer = buffers.get(attributeRef);
+    if (buffer == null) {
+      buffer = new RingBuffer(timestamp);
+      buffers.put(attributeRef, buffer);
+      bytes += buffer.getBytes();
+    }
+    bytes += buffer.add(timestamp, value != null ? value : Double.NaN, maxDatapoints);
+
+    Iterator<RingBuffer> iterator = buffers.values().iterator();
+    while (bytes > maxBytes && buffers.size() > 1) {
+      RingBuffer eldest = iterator.next();
+      bytes -= eldest.getBytes();
+      iterator.remove();
+    }
+  }
+
+  /** Forget the datapoints of an attribute, needed when they are written by other means. */
+  public synchronized void invalidate(AttributeRef attributeRef) {
+    RingBuffer buffer = buffers.remove(attributeRef);
+    if (buffer != null) {
+      bytes -= buffer.getBytes();
+    }
+  }
+
+  /**
+   * Get the datapoints of an attribute in the inclusive range ordered from newest to oldest.
+   *
+   * @return <code>null</code> when the range isn't covered by the buffer of the attribute.
+   */
+  public synchronized List<ValueDatapoint<?>> getDatapoints(
+      AttributeRef attributeRef, long fromTimestamp, long toTimestamp) {
+    RingBuffer buffer = buffers.get(attributeRef);
+    if (buffer == null || fromTimestamp < buffer.coveredFrom) {
+      return null;
+    }
+
+    List<ValueDatapoint<?>> datapoints = new ArrayList<>();
+    for (int i = buffer.size - 1; i >= 0; i--) {
+      long timestamp = buffer.getTimestamp(i);
+      if (timestamp < fromTimestamp) {
+        break;
+      }
+      if (timestamp <= toTimestamp) {
+        datapoints.add(new ValueDatapoint<>(timestamp, toValue(buffer.getValue(i))));
+      }
+    }
+    return datapoints;
+  }
+
+  /**
+   * Get the datapoint of an attribute at or before the timestamp.
+   *
+   * @return <code>null</code> when the buffer of the attribute doesn't cover that datapoint.
+   */
+  public synchronized ValueDatapoint<?> getNearestDatapoint(
+      AttributeRef attributeRef, long timestamp) {
+    RingBuffer buffer = buffers.get(attributeRef);
+    if (buffer == null) {
+      return null;
+    }
+
+    for (int i = buffer.size - 1; i >= 0; i--) {
+      long datapointTimestamp = buffer.getTimestamp(i);
+      if (datapointTimestamp < buffer.coveredFrom) {
+        return null;
+      }
+      if (datapointTimestamp <= timestamp) {
+        return new ValueDatapoint<>(datapointTimestamp, toValue(buffer.getValue(i)));
+      }
+    }
+    return null;
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public synchronized int size() {
+    return buffers.size();
+  }
+
+  protected static Double toValue(double value) {
+    return Double.isNaN(value) ? null : value;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{"
+        + "maxDatapoints="
+        + maxDatapoints
+        + ", maxBytes="
+        + maxBytes
+        + '}';
+  }
+}
@@ -61,7 +61,6 @@ import org.openremote.model.event.shared.*;
 import org.openremote.model.http.RequestParams;
 import org.openremote.model.security.User;
 import org.openremote.model.syslog.SyslogEvent;
-import org.openremote.model.util.Pair;
 import org.openremote.model.util.TextUtil;
 
 /**
@@ -136,8 +135,7 @@ public class ClientEventService extends RouteBuilder implements ContainerService
   protected final Collection<EventSubscriptionAuthorizer> eventSubscriptionAuthorizers =
       new CopyOnWriteArraySet<>();
   protected final Collection<EventAuthorizer> eventAuthorizers = new CopyOnWriteArraySet<>();
-  protected final Set<Pair<EventSubscription<? extends Event>, Consumer<? extends Event>>>
-      eventSubscriptions = new CopyOnWriteArraySet<>();
+  protected final EventSubscriptionIndex eventSubscriptions = new EventSubscriptionIndex();
   protected final Map<String, WebSocketChannel> sessionChannels = new ConcurrentHashMap<>();
   protected final Map<String, Map<String, Consumer<? extends Event>>>
       websocketSessionSubscriptionConsumers = new ConcurrentHashMap<>();
@@ -647,32 +645,34 @@ public class ClientEventService extends RouteBuilder implements ContainerService
     }
   }
 
+  /**
+   * Only the candidate subscriptions of the {@link EventSubscriptionIndex} are matched against the
+   * event.
+   */
   @SuppressWarnings("unchecked")
   protected <T extends Event> void sendToSubscribers(T event) {
-    eventSubscriptions.forEach(
-        eventSubscriptionConsumerPair -> {
-          EventSubscription<?> subscription = eventSubscriptionConsumerPair.getKey();
-
-          if (!subscription.getEventType().equals(event.getEventType())) {
-            return;
-          }
-
-          T filteredEvent =
-              subscription.getFilter() == null
-                  ? event
-                  : ((EventSubscription<T>) subscription).getFilter().apply(event);
-
-          if (filteredEvent == null) {
-            return;
-          }
+    eventSubscriptions
+        .getCandidates(event)
+        .forEach(
+            entry -> {
+              EventSubscription<?> subscription = entry.getSubscription();
+
+              T filteredEvent =
+                  subscription.getFilter() == null
+                      ? event
+                      : ((EventSubscription<T>) subscription).getFilter().apply(event);
+
+              if (filteredEvent == null) {
+                return;
+              }
 
-          Consumer<T> consumer = (Consumer<T>) eventSubscriptionConsumerPair.getValue();
-          try {
-            consumer.accept(filteredEvent);
-          } catch (Exception e) {
-            LOG.log(WARNING, "Event subscriber has thrown an exception: " + consumer, e);
-          }
-        });
+              Consumer<T> consumer = (Consumer<T>) entry.getConsumer();
+              try {
+                consumer.accept(filteredEvent);
+              } catch (Exception e) {
+                LOG.log(WARNING, "Event subscriber has thrown an exception: " + consumer, e);
+              }
+            });
   }
 
   /**
@@ -682,7 +682,7 @@ public class ClientEventService extends RouteBuilder implements ContainerService
   public void addSubscription(
       EventSubscription<? extends Event> eventSubscription, Consumer<? extends Event> consumer)
       throws IllegalStateException {
-    eventSubscriptions.add(new Pair<>(eventSubscription, consumer));
+    eventSubscriptions.add(eventSubscription, consumer);
   }
 
   public <T extends Event> void addSubscription(Class<T> eventClass, Consumer<T> consumer)
@@ -697,8 +697,7 @@ public class ClientEventService extends RouteBuilder implements ContainerService
   }
 
   public void removeSubscription(Consumer<? extends Event> consumer) {
-    eventSubscriptions.removeIf(
-        subscriptionConsumerPair -> subscriptionConsumerPair.value == consumer);
+    eventSubscriptions.remove(consumer);
   }
 
   @Override
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.event;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.openremote.model.asset.AssetFilter;
+import org.openremote.model.asset.AssetInfo;
+import org.openremote.model.event.Event;
+import org.openremote.model.event.shared.EventSubscription;
+import org.openremote.model.util.TextUtil;
+
+/**
+ * Index of event subscriptions so an event is only matched against the filters of the
+ * subscriptions that can possibly accept it instead of every subscription. Subscriptions are
+ * indexed by event type and, when they have an {@link AssetFilter}, by each of its asset IDs and
+ * attribute names or otherwise by its realm; subscriptions with any other or no filter are general
+ * and are candidates for every event of their type. Events that are not {@link AssetInfo} are
+ * matched against all subscriptions of their type.
+ *
+ * <p>The index is updated incrementally when subscriptions are added or removed and can be read
+ * concurrently; candidates are returned in the order the subscriptions were added. The filter of a
+ * subscription must not be changed once it is added.
+ */
+public class EventSubscriptionIndex {
+
+  public static final class Entry {
+    protected final long sequence;
+    protected final EventSubscription<? extends Event> subscription;
+    protected final Consumer<? extends Event> consumer;
+
+    protected Entry(
+        long sequence,
+        EventSubscription<? extends Event> subscription,
+        Consumer<? extends Event> consumer) {
+      this.sequence = sequence;
+      this.subscription = subscription;
+      this.consumer = consumer;
+    }
+
+    public EventSubscription<? extends Event> getSubscription() {
+      return subscription;
+    }
+
+    public Consumer<? extends Event> getConsumer() {
+      return consumer;
+    }
+  }
+
+  /** Subscriptions of one event type. */
+  protected static class TypeIndex {
+    protected final Set<Entry> all = newEntrySet();
+    protected final Set<Entry> general = newEntrySet();
+    protected final Map<String, Set<Entry>> realms = new ConcurrentHashMap<>();
+    // Asset ID to attribute name (or ANY_ATTRIBUTE) to subscriptions
+    protected final Map<String, Map<String, Set<Entry>>> assets = new ConcurrentHashMap<>();
+  }
+
+  protected static final Comparator<Entry> SEQUENCE_ORDER =
+      Comparator.comparingLong(entry -> entry.sequence);
+  protected static final String ANY_ATTRIBUTE = "";
+
+  protected final Map<String, TypeIndex> types = new ConcurrentHashMap<>();
+  // Guarded by this
+  protected final Map<Consumer<? extends Event>, List<Entry>> consumerEntries =
+      new IdentityHashMap<>();
+  protected long sequence;
+  protected volatile int size;
+
+  public synchronized void add(
+      EventSubscription<? extends Event> subscription, Consumer<? extends Event> consumer) {
+    Entry entry = new Entry(sequence++, subscription, consumer);
+    TypeIndex typeIndex =
+        types.computeIfAbsent(subscription.getEventType(), eventType -> new TypeIndex());
+    typeIndex.all.add(entry);
+    forEachKey(
+        subscription,
+        (assetId, attributeName) ->
+            typeIndex
+                .assets
+                .computeIfAbsent(assetId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(attributeName, name -> newEntrySet())
+                .add(entry),
+        realm -> typeIndex.realms.computeIfAbsent(realm, r -> newEntrySet()).add(entry),
+        () -> typeIndex.general.add(entry));
+    consumerEntries.computeIfAbsent(consumer, c -> new ArrayList<>()).add(entry);
+    size++;
+  }
+
+  /** Remove all subscriptions of the consumer. */
+  public synchronized void remove(Consumer<? extends Event> consumer) {
+    List<Entry> entries = consumerEntries.remove(consumer);
+    if (entries == null) {
+      return;
+    }
+    for (Entry entry : entries) {
+      String eventType = entry.subscription.getEventType();
+      TypeIndex typeIndex = types.get(eventType);
+      typeIndex.all.remove(entry);
+      forEachKey(
+          entry.subscription,
+          (assetId, attributeName) -> {
+            Map<String, Set<Entry>> attributes = typeIndex.assets.get(assetId);
+            if (attributes != null) {
+              removeEntry(attributes, attributeName, entry);
+              if (attributes.isEmpty()) {
+                typeIndex.assets.remove(assetId);
+              }
+            }
+          },
+          realm -> removeEntry(typeIndex.realms, realm, entry),
+          () -> typeIndex.general.remove(entry));
+      if (typeIndex.all.isEmpty()) {
+        types.remove(eventType);
+      }
+      size--;
+    }
+  }
+
+  /**
+   * Get the subscriptions that may accept the event in the order they were added, their filter
+   * must still be applied.
+   */
+  public Collection<Entry> getCandidates(Event event) {
+    TypeIndex typeIndex = types.get(event.getEventType());
+    if (typeIndex == null) {
+      return Collections.emptyList();
+    }
+    if (!(event instanceof AssetInfo assetInfo)) {
+      return typeIndex.all;
+    }
+
+    List<Set<Entry>> candidateSets = new ArrayList<>();
+    addIfNotEmpty(candidateSets, typeIndex.general);
+    if (assetInfo.getRealm() != null) {
+      addIfNotEmpty(candidateSets, typeIndex.realms.get(assetInfo.getRealm()));
+    }
+    Map<String, Set<Entry>> attributes =
+        assetInfo.getId() != null ? typeIndex.assets.get(assetInfo.getId()) : null;
+    if (attributes != null) {
+      addIfNotEmpty(candidateSets, attributes.get(ANY_ATTRIBUTE));
+      String[] attributeNames = assetInfo.getAttributeNames();
+      if (attributeNames != null) {
+        for (String attributeName : attributeNames) {
+          if (attributeName != null) {
+            addIfNotEmpty(candidateSets, attributes.get(attributeName));
+          }
+        }
+      }
+    }
+
+    if (candidateSets.isEmpty()) {
+      return Collections.emptyList();
+    }
+    if (candidateSets.size() == 1) {
+      return candidateSets.getFirst();
+    }
+    // Subscriptions of several asset IDs or attribute names are in several sets
+    Set<Entry> candidates = new TreeSet<>(SEQUENCE_ORDER);
+    candidateSets.forEach(candidates::addAll);
+    return candidates;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Call the consumer matching how the subscription is indexed: for each asset ID and attribute
+   * name (or {@link #ANY_ATTRIBUTE}) of an asset filter with asset IDs, for the realm of an asset
+   * filter with only a realm or otherwise as a general subscription.
+   */
+  protected static void forEachKey(
+      EventSubscription<? extends Event> subscription,
+      BiConsumer<String, String> assetConsumer,
+      Consumer<String> realmConsumer,
+      Runnable generalConsumer) {
+    if (subscription.getFilter() instanceof AssetFilter<?> assetFilter) {
+      String[] assetIds = assetFilter.getAssetIds();
+      if (assetIds != null && assetIds.length > 0) {
+        String[] attributeNames = assetFilter.getAttributeNames();
+        for (String assetId : assetIds) {
+          if (assetId == null) {
+            continue;
+          }
+          if (attributeNames == null || attributeNames.length == 0) {
+            assetConsumer.accept(assetId, ANY_ATTRIBUTE);
+          } else {
+            for (String attributeName : attributeNames) {
+              assetConsumer.accept(assetId, attributeName != null ? attributeName : ANY_ATTRIBUTE);
+            }
+          }
+        }
+        return;
+      }
+      if (!TextUtil.isNullOrEmpty(assetFilter.getRealm())) {
+        realmConsumer.accept(assetFilter.getRealm());
+        return;
+      }
+    }
+    generalConsumer.run();
+  }
+
+  protected static void removeEntry(Map<String, Set<Entry>> map, String key, Entry entry) {
+    Set<Entry> entries = map.get(key);
+    if (entries != null && entries.remove(entry) && entries.isEmpty()) {
+      map.remove(key);
+    }
+  }
+
+  protected static void addIfNotEmpty(List<Set<Entry>> candidateSets, Set<Entry> entries) {
+    if (entries != null && !entries.isEmpty()) {
+      candidateSets.add(entries);
+    }
+  }
+
+  protected static Set<Entry> newEntrySet() {
+    return new ConcurrentSkipListSet<>(SEQUENCE_ORDER);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" + "size=" + size + ", eventTypes=" + types.size() + '}';
+  }
+}
@@ -642,8 +642,7 @@ public class DefaultMQTTHandler extends MQTTHandler {
       } else {
         if (ev instanceof AttributeEvent attributeEvent) {
           if (isValueSubscription) {
-            publishMessage(
-                topicExpander.apply(ev), attributeEvent.getValue().orElse(null), mqttQoS);
+            publishJSONMessage(topicExpander.apply(ev), attributeEvent.getValueJSON(), mqttQoS);
           } else {
             publishMessage(topicExpander.apply(ev), ev, mqttQoS);
           }
@@ -324,21 +324,29 @@ public abstract class MQTTHandler {
   public void onUserAssetLinksChanged(
       RemotingConnection connection, List<PersistenceEvent<UserAssetLink>> changes) {}
 
-  @SuppressWarnings("SynchronizeOnNonFinalField")
   public void publishMessage(String topic, Object data, MqttQoS qoS) {
+    Optional<String> json = ValueUtil.asJSON(data);
+    if (json.isEmpty()) {
+      getLogger()
+          .warning(
+              "Couldn't publish to MQTT client, failed to convert payload to JSON string: topic="
+                  + topic);
+      return;
+    }
+    publishJSONMessage(topic, json.get(), qoS);
+  }
+
+  /** Publish a payload that has already been serialized to JSON. */
+  @SuppressWarnings("SynchronizeOnNonFinalField")
+  public void publishJSONMessage(String topic, String json, MqttQoS qoS) {
     try {
       if (clientSession != null) {
+        byte[] payload = json.getBytes();
         // Artemis' sessions are not threadsafe
         synchronized (clientSession) {
           ClientMessage message = clientSession.createMessage(false);
           message.putIntProperty(MQTT_QOS_LEVEL_KEY, qoS.value());
-          message.writeBodyBufferBytes(
-              ValueUtil.asJSON(data)
-                  .map(String::getBytes)
-                  .orElseThrow(
-                      () ->
-                          new IllegalStateException(
-                              "Failed to convert payload to JSON string: " + data)));
+          message.writeBodyBufferBytes(payload);
           producer.send(
               MQTTUtil.getCoreAddressFromMqttTopic(
                   topic, mqttBrokerService.getWildcardConfiguration()),
@@ -0,0 +1,37 @@
+-- Store numeric and boolean (as 1 or 0) datapoint values as double precision alongside the jsonb value so
+-- aggregation queries don't have to cast the jsonb value of every row they read.
+ALTER TABLE ${schemaName}.asset_datapoint ADD COLUMN IF NOT EXISTS numeric_value DOUBLE PRECISION;
+ALTER TABLE ${schemaName}.asset_predicted_datapoint ADD COLUMN IF NOT EXISTS numeric_value DOUBLE PRECISION;
+
+-- The numeric value of a jsonb datapoint value, the same as stored by the manager; numbers too large for double
+-- precision are null and numbers too small are 0 instead of failing the cast.
+CREATE OR REPLACE FUNCTION ${schemaName}.datapoint_numeric_value(value JSONB) RETURNS DOUBLE PRECISION
+    LANGUAGE sql IMMUTABLE PARALLEL SAFE AS
+$$
+SELECT CASE jsonb_typeof(value)
+           WHEN 'boolean' THEN CASE WHEN (value #>> '{}')::BOOLEAN THEN 1 ELSE 0 END
+           WHEN 'number' THEN CASE
+                                  WHEN abs((value #>> '{}')::NUMERIC) > 1.7976931348623157e308 THEN NULL
+                                  WHEN abs((value #>> '{}')::NUMERIC) < 1e-307 THEN 0
+                                  ELSE (value #>> '{}')::DOUBLE PRECISION END
+           END
+$$;
+
+-- BACKFILL QUEUE
+-- The existing datapoints are backfilled in the background by the manager, one table or chunk per transaction
+-- and the most recent chunks first, instead of in this migration; queries fall back to the jsonb value while
+-- the numeric value is null.
+CREATE TABLE ${schemaName}.datapoint_numeric_value_backfill
+(
+    relation    TEXT PRIMARY KEY,
+    range_start TIMESTAMPTZ
+);
+
+INSERT INTO ${schemaName}.datapoint_numeric_value_backfill (relation, range_start)
+VALUES (format('%I.%I', '${schemaName}', 'asset_predicted_datapoint'), NULL);
+
+INSERT INTO ${schemaName}.datapoint_numeric_value_backfill (relation, range_start)
+SELECT format('%I.%I', chunk_schema, chunk_name), range_start
+FROM timescaledb_information.chunks
+WHERE hypertable_schema = '${schemaName}'
+  AND hypertable_name = 'asset_datapoint';
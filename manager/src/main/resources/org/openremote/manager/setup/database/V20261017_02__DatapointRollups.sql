@@ -0,0 +1,57 @@
+-- Continuous aggregates of numeric (and boolean) datapoints at 1 minute, 1 hour and 1 day resolution; interval
+-- queries use the coarsest rollup that fits the requested interval instead of bucketing the raw datapoints. The
+-- hour and day rollups are built on top of the finer rollup. Real time aggregation is enabled so the latest
+-- datapoints that are not materialized yet are still included. Datapoints stored before the numeric_value column
+-- existed are converted from their jsonb value until they are backfilled.
+CREATE MATERIALIZED VIEW ${schemaName}.asset_datapoint_1m
+    WITH (timescaledb.continuous, timescaledb.materialized_only = false) AS
+SELECT public.time_bucket(INTERVAL '1 minute', timestamp) AS bucket,
+       entity_id,
+       attribute_name,
+       min(coalesce(numeric_value, ${schemaName}.datapoint_numeric_value(value))) AS min_value,
+       max(coalesce(numeric_value, ${schemaName}.datapoint_numeric_value(value))) AS max_value,
+       sum(coalesce(numeric_value, ${schemaName}.datapoint_numeric_value(value))) AS sum_value,
+       count(*) AS count_value,
+       public.last(coalesce(numeric_value, ${schemaName}.datapoint_numeric_value(value)), timestamp) AS last_value
+FROM ${schemaName}.asset_datapoint
+WHERE coalesce(numeric_value, ${schemaName}.datapoint_numeric_value(value)) IS NOT NULL
+GROUP BY bucket, entity_id, attribute_name
+WITH NO DATA;
+
+CREATE MATERIALIZED VIEW ${schemaName}.asset_datapoint_1h
+    WITH (timescaledb.continuous, timescaledb.materialized_only = false) AS
+SELECT public.time_bucket(INTERVAL '1 hour', bucket) AS bucket,
+       entity_id,
+       attribute_name,
+       min(min_value) AS min_value,
+       max(max_value) AS max_value,
+       sum(sum_value) AS sum_value,
+       sum(count_value)::BIGINT AS count_value,
+       public.last(last_value, bucket) AS last_value
+FROM ${schemaName}.asset_datapoint_1m
+GROUP BY 1, entity_id, attribute_name
+WITH NO DATA;
+
+CREATE MATERIALIZED VIEW ${schemaName}.asset_datapoint_1d
+    WITH (timescaledb.continuous, timescaledb.materialized_only = false) AS
+SELECT public.time_bucket(INTERVAL '1 day', bucket) AS bucket,
+       entity_id,
+       attribute_name,
+       min(min_value) AS min_value,
+       max(max_value) AS max_value,
+       sum(sum_value) AS sum_value,
+       sum(count_value)::BIGINT AS count_value,
+       public.last(last_value, bucket) AS last_value
+FROM ${schemaName}.asset_datapoint_1h
+GROUP BY 1, entity_id, attribute_name
+WITH NO DATA;
+
+-- REFRESH POLICIES
+-- No start offset so late writes and purged datapoints are also reflected in the rollups, only invalidated
+-- ranges are re-materialized. The first run materializes the existing datapoints.
+SELECT public.add_continuous_aggregate_policy('${schemaName}.asset_datapoint_1m',
+    start_offset => NULL, end_offset => INTERVAL '1 minute', schedule_interval => INTERVAL '1 minute');
+SELECT public.add_continuous_aggregate_policy('${schemaName}.asset_datapoint_1h',
+    start_offset => NULL, end_offset => INTERVAL '1 hour', schedule_interval => INTERVAL '10 minutes');
+SELECT public.add_continuous_aggregate_policy('${schemaName}.asset_datapoint_1d',
+    start_offset => NULL, end_offset => INTERVAL '1 day', schedule_interval => INTERVAL '1 hour');
@@ -0,0 +1,10 @@
+-- Put predicted datapoint chunks into the columnstore with the same settings as the datapoints; predicted datapoints
+-- are purged once they are in the past so normally only chunks that the purge has not reached yet are compressed.
+ALTER TABLE ${schemaName}.asset_predicted_datapoint SET (
+    timescaledb.enable_columnstore = true,
+    timescaledb.orderby = 'timestamp DESC',
+    timescaledb.segmentby = 'entity_id,attribute_name',
+    timescaledb.chunk_interval = '7 days');
+
+-- ACTIVATE THE AUTOMATED POLICY
+CALL public.add_columnstore_policy('${schemaName}.asset_predicted_datapoint', after => INTERVAL '7 days');
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.manager.event
+
+import org.openremote.model.asset.AssetFilter
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.event.shared.EventSubscription
+import org.openremote.model.syslog.SyslogEvent
+import spock.lang.Specification
+
+import java.util.function.Consumer
+
+class EventSubscriptionIndexTest extends Specification {
+
+    def "only candidate subscriptions are returned in the order they were added"() {
+        given:
+        def index = new EventSubscriptionIndex()
+        Consumer general = {}
+        Consumer realm = {}
+        Consumer asset = {}
+        Consumer attribute = {}
+        Consumer otherAsset = {}
+        Consumer syslog = {}
+
+        and:
+        index.add(new EventSubscription<>(AttributeEvent.class, null), general)
+        index.add(new EventSubscription<>(AttributeEvent.class, new AssetFilter<AttributeEvent>().setRealm("master")), realm)
+        index.add(new EventSubscription<>(AttributeEvent.class, new AssetFilter<AttributeEvent>("asset1")), asset)
+        index.add(new EventSubscription<>(AttributeEvent.class, new AssetFilter<AttributeEvent>("asset1", "asset2").setAttributeNames("power", "energy")), attribute)
+        index.add(new EventSubscription<>(AttributeEvent.class, new AssetFilter<AttributeEvent>("asset3")), otherAsset)
+        index.add(new EventSubscription<>(SyslogEvent.class, null), syslog)
+
+        expect:
+        index.size() == 6
+        candidates(index, new AttributeEvent("asset1", "power", 1).setRealm("master")) == [general, realm, asset, attribute]
+        candidates(index, new AttributeEvent("asset2", "energy", 1).setRealm("other")) == [general, attribute]
+        candidates(index, new AttributeEvent("asset2", "temperature", 1).setRealm("other")) == [general]
+        candidates(index, new AttributeEvent("asset3", "power", 1)) == [general, otherAsset]
+
+        when: "subscriptions are removed"
+        index.remove(general)
+        index.remove(attribute)
+
+        then:
+        index.size() == 4
+        candidates(index, new AttributeEvent("asset1", "power", 1).setRealm("master")) == [realm, asset]
+        candidates(index, new AttributeEvent("asset2", "energy", 1)).isEmpty()
+        !index.types[AttributeEvent.getEventType(AttributeEvent.class)].assets.containsKey("asset2")
+
+        when: "the remaining subscriptions of a type are removed"
+        index.remove(syslog)
+
+        then:
+        index.types.size() == 1
+        index.size() == 3
+    }
+
+    private static List<Consumer> candidates(EventSubscriptionIndex index, AttributeEvent event) {
+        index.getCandidates(event).collect { it.consumer }
+    }
+}
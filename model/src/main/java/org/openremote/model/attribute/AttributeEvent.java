@@ -21,8 +21,20 @@ package org.openremote.model.attribute;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import jakarta.annotation.Nonnull;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.time.Instant;
 import java.util.Objects;
 import java.util.Optional;
@@ -84,6 +96,76 @@ public class AttributeEvent extends SharedEvent implements AttributeInfo {
 
   @JsonIgnore protected MetaMap meta;
 
+  // JSON encodings that are computed once and reused by every consumer of this event
+  @JsonIgnore protected transient String valueJSON;
+  @JsonIgnore protected transient String json;
+
+  /**
+   * Serializes the event using the standard bean serializer but caches the output written with the
+   * default {@link Basic} view so the event is only serialized once however many subscribers it is
+   * sent to; output for any other view is not cached.
+   */
+  public static class AttributeEventSerializer extends StdSerializer<AttributeEvent>
+      implements ContextualSerializer, ResolvableSerializer {
+
+    protected final JsonSerializer<Object> serializer;
+
+    public AttributeEventSerializer(JsonSerializer<Object> serializer) {
+      super(AttributeEvent.class);
+      this.serializer = serializer;
+    }
+
+    @Override
+    public void resolve(SerializerProvider provider) throws JsonMappingException {
+      if (serializer instanceof ResolvableSerializer resolvableSerializer) {
+        resolvableSerializer.resolve(provider);
+      }
+    }
+
+    @Override
+    public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property)
+        throws JsonMappingException {
+      if (!(serializer instanceof ContextualSerializer contextualSerializer)) {
+        return this;
+      }
+      JsonSerializer<?> contextual = contextualSerializer.createContextual(provider, property);
+      return contextual == serializer
+          ? this
+          : new AttributeEventSerializer((JsonSerializer<Object>) contextual);
+    }
+
+    @Override
+    public void serialize(AttributeEvent event, JsonGenerator gen, SerializerProvider provider)
+        throws IOException {
+      serializer.serialize(event, gen, provider);
+    }
+
+    @Override
+    public void serializeWithType(
+        AttributeEvent event,
+        JsonGenerator gen,
+        SerializerProvider provider,
+        TypeSerializer typeSer)
+        throws IOException {
+      // Raw values can't be converted into other objects so only use the cache for JSON output
+      if (provider.getActiveView() != Basic.class || gen instanceof TokenBuffer) {
+        serializer.serializeWithType(event, gen, provider, typeSer);
+        return;
+      }
+
+      String eventJSON = event.json;
+      if (eventJSON == null) {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator jsonGen = ValueUtil.JSON.getFactory().createGenerator(writer)) {
+          serializer.serializeWithType(event, jsonGen, provider, typeSer);
+        }
+        eventJSON = writer.toString();
+        event.json = eventJSON;
+      }
+      gen.writeRawValue(eventJSON);
+    }
+  }
+
   public <T> AttributeEvent(String assetId, AttributeDescriptor<T> attributeDescriptor, T value) {
     this(assetId, attributeDescriptor.getName(), value);
   }
@@ -166,7 +248,8 @@ public class AttributeEvent extends SharedEvent implements AttributeInfo {
     this.source = source;
 
     this.valueType = attribute.getType();
-    this.meta = attribute.getMeta();
+    // Own copy as interceptors modify the meta and the attribute may be shared cached state
+    this.meta = new MetaMap(attribute.getMeta());
 
     this.path = asset.getPath();
     this.createdOn = asset.getCreatedOn();
@@ -216,6 +299,7 @@ public class AttributeEvent extends SharedEvent implements AttributeInfo {
 
   public AttributeEvent setRealm(String realm) {
     this.realm = realm;
+    this.json = null;
     return this;
   }
 
@@ -239,6 +323,7 @@ public class AttributeEvent extends SharedEvent implements AttributeInfo {
 
   public AttributeEvent setParentId(String parentId) {
     this.parentId = parentId;
+    this.json = null;
     return this;
   }
 
@@ -286,6 +371,8 @@ public class AttributeEvent extends SharedEvent implements AttributeInfo {
 
   public AttributeEvent setValue(Object value) {
     this.value = value;
+    this.valueJSON = null;
+    this.json = null;
     return this;
   }
 
@@ -294,6 +381,33 @@ public class AttributeEvent extends SharedEvent implements AttributeInfo {
     return Optional.ofNullable(value);
   }
 
+  /**
+   * Get the value encoded as JSON; this is computed on first use and then reused until the value is
+   * changed so consumers storing or forwarding the value should use this rather than serializing
+   * the value themselves.
+   */
+  @JsonIgnore
+  public String getValueJSON() {
+    String valueJSON = this.valueJSON;
+    if (valueJSON == null) {
+      valueJSON = ValueUtil.asJSON(value).orElse(ValueUtil.NULL_LITERAL);
+      this.valueJSON = valueJSON;
+    }
+    return valueJSON;
+  }
+
+  @Override
+  public void setTimestamp(long timestamp) {
+    super.setTimestamp(timestamp);
+    this.json = null;
+  }
+
+  @Override
+  public void setMessageID(String messageID) {
+    super.setMessageID(messageID);
+    this.json = null;
+  }
+
   @Override
   public <U> Optional<U> getValue(@Nonnull Class<U> valueType) {
     return ValueUtil.getValueCoerced(value, valueType);
@@ -322,6 +436,7 @@ public class AttributeEvent extends SharedEvent implements AttributeInfo {
 
   public AttributeEvent setDeleted(boolean deleted) {
     this.deleted = deleted;
+    this.json = null;
     return this;
   }
 
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.model.attribute;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * An {@link AttributeEvent} that failed to be processed for a transient reason and is waiting to be
+ * retried; once the retry attempts are exhausted it is parked until replayed.
+ */
+public class AttributeEventDeadLetter {
+
+  protected String id;
+  protected String assetId;
+  protected String attributeName;
+  protected Object value;
+  protected long timestamp;
+  protected String source;
+  protected AttributeWriteFailure reason;
+  protected int attempts;
+  protected long nextAttemptMillis;
+
+  @JsonCreator
+  public AttributeEventDeadLetter(
+      @JsonProperty("id") String id,
+      @JsonProperty("assetId") String assetId,
+      @JsonProperty("attributeName") String attributeName,
+      @JsonProperty("value") Object value,
+      @JsonProperty("timestamp") long timestamp,
+      @JsonProperty("source") String source,
+      @JsonProperty("reason") AttributeWriteFailure reason,
+      @JsonProperty("attempts") int attempts,
+      @JsonProperty("nextAttemptMillis") long nextAttemptMillis) {
+    this.id = id;
+    this.assetId = assetId;
+    this.attributeName = attributeName;
+    this.value = value;
+    this.timestamp = timestamp;
+    this.source = source;
+    this.reason = reason;
+    this.attempts = attempts;
+    this.nextAttemptMillis = nextAttemptMillis;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getAssetId() {
+    return assetId;
+  }
+
+  public String getAttributeName() {
+    return attributeName;
+  }
+
+  public Object getValue() {
+    return value;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public String getSource() {
+    return source;
+  }
+
+  public AttributeWriteFailure getReason() {
+    return reason;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public long getNextAttemptMillis() {
+    return nextAttemptMillis;
+  }
+
+  /** Get a copy of this dead letter for its next attempt. */
+  public AttributeEventDeadLetter withAttempt(
+      AttributeWriteFailure reason, int attempts, long nextAttemptMillis) {
+    return new AttributeEventDeadLetter(
+        id, assetId, attributeName, value, timestamp, source, reason, attempts, nextAttemptMillis);
+  }
+
+  public AttributeEvent toEvent() {
+    AttributeEvent event = new AttributeEvent(assetId, attributeName, value, timestamp);
+    event.setSource(source);
+    return event;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{"
+        + "id='"
+        + id
+        + '\''
+        + ", ref="
+        + assetId
+        + ":"
+        + attributeName
+        + ", timestamp="
+        + timestamp
+        + ", reason="
+        + reason
+        + ", attempts="
+        + attempts
+        + '}';
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.model.attribute;
+
+import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.ws.rs.*;
+import org.openremote.model.Constants;
+import org.openremote.model.http.OpenApiResponses;
+import org.openremote.model.http.RequestParams;
+
+@Tag(
+    name = "Attribute Event Dead Letter",
+    description =
+        "List, replay and clear attribute events that failed to be processed and are retried")
+@Path("attributeEvent/deadLetter")
+@OpenApiResponses.Authenticated
+public interface AttributeEventDeadLetterResource {
+
+  @GET
+  @Produces(APPLICATION_JSON)
+  @RolesAllowed({Constants.READ_ADMIN_ROLE})
+  @Operation(
+      operationId = "getDeadLetters",
+      summary = "Retrieve the attribute event dead letters",
+      description =
+          "Returns the attribute events of all realms that are waiting to be retried or are parked after exhausting their retry attempts; only available to super users.")
+  @ApiResponse(
+      responseCode = "200",
+      description = "The attribute event dead letters in the order they were added",
+      content =
+          @Content(
+              mediaType = APPLICATION_JSON,
+              array =
+                  @ArraySchema(schema = @Schema(implementation = AttributeEventDeadLetter.class))))
+  @OpenApiResponses.Forbidden
+  AttributeEventDeadLetter[] getDeadLetters(@BeanParam RequestParams requestParams);
+
+  @POST
+  @Path("replay")
+  @Produces(APPLICATION_JSON)
+  @RolesAllowed({Constants.WRITE_ADMIN_ROLE})
+  @Operation(
+      operationId = "replayDeadLetters",
+      summary = "Replay the parked attribute event dead letters",
+      description =
+          "Makes the dead letters that exhausted their retry attempts due for retry again and returns how many were replayed; only available to super users.")
+  @OpenApiResponses.Ok
+  @OpenApiResponses.Forbidden
+  int replayDeadLetters(@BeanParam RequestParams requestParams);
+
+  @DELETE
+  @RolesAllowed({Constants.WRITE_ADMIN_ROLE})
+  @Operation(
+      operationId = "clearDeadLetters",
+      summary = "Clear the attribute event dead letters",
+      description =
+          "Permanently removes all attribute event dead letters so they are not retried; only available to super users.")
+  @OpenApiResponses.NoContent
+  @OpenApiResponses.Forbidden
+  void clearDeadLetters(@BeanParam RequestParams requestParams);
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.model.datapoint;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.datapoint.query.AssetDatapointQuery;
+
+@Schema(
+    description =
+        "Queries the historical datapoints of several asset attributes with the same query, for "
+            + "example all series of a chart.")
+public class AssetDatapointBatchQuery {
+
+  @Schema(
+      description = "Attributes to query; the series are returned in the same order.",
+      requiredMode = Schema.RequiredMode.REQUIRED)
+  public AttributeRef[] attributeRefs;
+
+  @Schema(
+      description = "Polymorphic datapoint query applied to every attribute.",
+      requiredMode = Schema.RequiredMode.REQUIRED)
+  public AssetDatapointQuery query;
+
+  public AssetDatapointBatchQuery() {}
+
+  public AssetDatapointBatchQuery(AttributeRef[] attributeRefs, AssetDatapointQuery query) {
+    this.attributeRefs = attributeRefs;
+    this.query = query;
+  }
+}
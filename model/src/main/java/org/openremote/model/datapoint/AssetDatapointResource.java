@@ -35,10 +35,12 @@ import jakarta.annotation.security.RolesAllowed;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.container.AsyncResponse;
 import jakarta.ws.rs.container.Suspended;
+import java.io.InputStream;
 import org.openremote.model.Constants;
 import org.openremote.model.datapoint.query.AssetDatapointAllQuery;
 import org.openremote.model.datapoint.query.AssetDatapointIntervalQuery;
 import org.openremote.model.datapoint.query.AssetDatapointLTTBQuery;
+import org.openremote.model.datapoint.query.AssetDatapointM4Query;
 import org.openremote.model.datapoint.query.AssetDatapointNearestQuery;
 import org.openremote.model.datapoint.query.AssetDatapointQuery;
 import org.openremote.model.http.OpenApiResponses;
@@ -55,12 +57,14 @@ public interface AssetDatapointResource {
    * in their authenticated realm, the superuser can access assets in other (all) realms. A 403
    * status is returned if a regular user tries to access an asset in a realm different than its
    * authenticated realm, or if the user is restricted and the asset is not linked to the user. A
-   * 400 status is returned if the asset attribute does not have datapoint storage enabled.
+   * 400 status is returned if the asset attribute does not have datapoint storage enabled. The
+   * datapoints of number and boolean attributes can also be retrieved in the compact {@link
+   * DatapointBinaryEncoding} by accepting its media type.
    */
   @POST
   @Path("{assetId}/{attributeName}")
   @Consumes(APPLICATION_JSON)
-  @Produces(APPLICATION_JSON)
+  @Produces({APPLICATION_JSON, DatapointBinaryEncoding.MEDIA_TYPE})
   @Operation(
       operationId = "getDatapoints",
       summary = "Retrieve the historical datapoints of an asset attribute",
@@ -80,7 +84,7 @@ public interface AssetDatapointResource {
           String attributeName,
       @RequestBody(
               description =
-                  "Optional polymorphic datapoint query. Set type to all, interval, lttb, or nearest. Omit the body to return the available stored series.",
+                  "Optional polymorphic datapoint query. Set type to all, interval, lttb, m4, or nearest. Omit the body to return the available stored series.",
               content =
                   @Content(
                       mediaType = APPLICATION_JSON,
@@ -90,6 +94,7 @@ public interface AssetDatapointResource {
                                 AssetDatapointAllQuery.class,
                                 AssetDatapointIntervalQuery.class,
                                 AssetDatapointLTTBQuery.class,
+                                AssetDatapointM4Query.class,
                                 AssetDatapointNearestQuery.class
                               }),
                       examples = {
@@ -105,6 +110,11 @@ public interface AssetDatapointResource {
                             name = "LTTB downsampling",
                             summary = "Downsample one day to at most 500 representative points",
                             value = DATAPOINT_LTTB_QUERY),
+                        @ExampleObject(
+                            name = "M4 downsampling",
+                            summary =
+                                "Return the first, last, minimum and maximum of one day in 1000 buckets",
+                            value = DATAPOINT_M4_QUERY),
                         @ExampleObject(
                             name = "Nearest value",
                             summary =
@@ -113,6 +123,80 @@ public interface AssetDatapointResource {
                       }))
           AssetDatapointQuery query);
 
+  /**
+   * Retrieve the historical datapoints of several asset attributes with the same query in a single
+   * request; the same access rules as {@link #getDatapoints} apply to every attribute and the
+   * request fails if any attribute is not accessible.
+   */
+  @POST
+  @Path("batch")
+  @Consumes(APPLICATION_JSON)
+  @Produces(APPLICATION_JSON)
+  @Operation(
+      operationId = "getDatapointsBatch",
+      summary = "Retrieve the historical datapoints of several asset attributes",
+      description =
+          "Returns one series per attribute reference, in request order, for the same polymorphic query. Anonymous access requires public-read access on every asset and attribute.")
+  @OpenApiResponses.Ok
+  @OpenApiResponses.BadRequest
+  @OpenApiResponses.Forbidden
+  @OpenApiResponses.NotFound
+  @OpenApiResponses.PayloadTooLarge
+  AssetDatapointSeries[] getDatapointsBatch(
+      @BeanParam RequestParams requestParams,
+      @RequestBody(description = "Attribute references and the query to apply to each of them")
+          AssetDatapointBatchQuery batchQuery);
+
+  /**
+   * Import historical datapoints of an asset attribute from a CSV or NDJSON stream (see {@link
+   * DatapointImportFormat}), replacing stored datapoints with the same timestamp; meant for
+   * backfilling the history of an attribute from another system. The user must be able to write
+   * the attribute, a 400 status is returned if a line of the stream cannot be parsed in which case
+   * the datapoints before it may already have been imported.
+   */
+  @POST
+  @Path("{assetId}/{attributeName}/import")
+  @Consumes({DatapointImportFormat.CSV_MEDIA_TYPE, DatapointImportFormat.NDJSON_MEDIA_TYPE})
+  @RolesAllowed({Constants.WRITE_ATTRIBUTES_ROLE})
+  @Operation(
+      operationId = "importDatapoints",
+      summary = "Import historical datapoints of an asset attribute",
+      description =
+          "Bulk loads historical values for one attribute from a text/csv (timestamp,value per line) or application/x-ndjson ({\"x\": timestamp, \"y\": value} per line) stream. Timestamps are Unix time in milliseconds or ISO-8601 instants. Existing datapoints with the same timestamp are replaced; the stream is written in batches so a failed import can be repeated.")
+  @OpenApiResponses.NoContent
+  @OpenApiResponses.Authenticated
+  @OpenApiResponses.BadRequest
+  @OpenApiResponses.Forbidden
+  @OpenApiResponses.NotFound
+  void importDatapoints(
+      @BeanParam RequestParams requestParams,
+      @Parameter(description = ASSET_ID, example = EXAMPLE_ASSET_ID) @PathParam("assetId")
+          String assetId,
+      @Parameter(description = ATTRIBUTE_NAME, example = EXAMPLE_ATTRIBUTE_NAME)
+          @PathParam("attributeName")
+          String attributeName,
+      @RequestBody(
+              required = true,
+              description = "One datapoint per line in the format of the content type.",
+              content = {
+                @Content(
+                    mediaType = DatapointImportFormat.CSV_MEDIA_TYPE,
+                    schema = @Schema(type = "string"),
+                    examples =
+                        @ExampleObject(
+                            name = "CSV",
+                            value = "timestamp,value\n1767225600000,21.5\n2026-01-01T00:15:00Z,21.7")),
+                @Content(
+                    mediaType = DatapointImportFormat.NDJSON_MEDIA_TYPE,
+                    schema = @Schema(type = "string"),
+                    examples =
+                        @ExampleObject(
+                            name = "NDJSON",
+                            value =
+                                "{\"x\": 1767225600000, \"y\": 21.5}\n{\"x\": 1767226500000, \"y\": 21.7}"))
+              })
+          InputStream datapoints);
+
   @GET
   @Path("periods")
   @Produces(APPLICATION_JSON)
@@ -137,26 +221,30 @@ public interface AssetDatapointResource {
 
   @GET
   @Path("export")
-  @Produces("application/zip")
+  @Produces({"application/zip", "application/gzip"})
   @RolesAllowed({Constants.READ_ASSETS_ROLE})
   @Operation(
       operationId = "getDatapointExport",
       summary = "Export historical datapoints",
       description =
-          "Streams a ZIP archive containing exported datapoints for one or more attribute references over the requested inclusive time range. attributeRefs is a JSON-encoded array of objects with id and name fields.")
+          "Streams a ZIP archive (or a gzip compressed CSV file) containing exported datapoints for one or more attribute references over the requested inclusive time range. attributeRefs is a JSON-encoded array of objects with id and name fields.")
   @ApiResponse(
       responseCode = "200",
-      description = "A ZIP archive containing the exported data",
+      description = "A ZIP archive or gzip compressed CSV file containing the exported data",
       headers =
           @Header(
               name = "Content-Disposition",
-              description = "Attachment filename for the ZIP archive",
+              description = "Attachment filename for the ZIP archive or gzip file",
               schema =
                   @Schema(type = "string", example = "attachment; filename=\"dataexport.zip\"")),
-      content =
-          @Content(
-              mediaType = "application/zip",
-              schema = @Schema(type = "string", format = "binary")))
+      content = {
+        @Content(
+            mediaType = "application/zip",
+            schema = @Schema(type = "string", format = "binary")),
+        @Content(
+            mediaType = "application/gzip",
+            schema = @Schema(type = "string", format = "binary"))
+      })
   @OpenApiResponses.Authenticated
   @OpenApiResponses.BadRequest
   @OpenApiResponses.NotFound
@@ -185,5 +273,9 @@ public interface AssetDatapointResource {
       @Parameter(description = "Export file format.", example = "CSV")
           @QueryParam("format")
           @DefaultValue("CSV")
-          DatapointExportFormat format);
+          DatapointExportFormat format,
+      @Parameter(description = "Export file compression.", example = "ZIP")
+          @QueryParam("compression")
+          @DefaultValue("ZIP")
+          DatapointExportCompression compression);
 }
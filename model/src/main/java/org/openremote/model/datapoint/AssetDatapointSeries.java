@@ -0,0 +1,47 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.model.datapoint;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.openremote.model.attribute.AttributeRef;
+
+/** The datapoints of a single attribute returned by an {@link AssetDatapointBatchQuery}. */
+public class AssetDatapointSeries {
+
+  protected AttributeRef attributeRef;
+
+  protected ValueDatapoint<?>[] datapoints;
+
+  @JsonCreator
+  public AssetDatapointSeries(
+      @JsonProperty("attributeRef") AttributeRef attributeRef,
+      @JsonProperty("datapoints") ValueDatapoint<?>[] datapoints) {
+    this.attributeRef = attributeRef;
+    this.datapoints = datapoints;
+  }
+
+  public AttributeRef getAttributeRef() {
+    return attributeRef;
+  }
+
+  public ValueDatapoint<?>[] getDatapoints() {
+    return datapoints;
+  }
+}
@@ -45,7 +45,7 @@ public interface AssetPredictedDatapointResource {
   @POST
   @Path("{assetId}/{attributeName}")
   @Consumes(APPLICATION_JSON)
-  @Produces(APPLICATION_JSON)
+  @Produces({APPLICATION_JSON, DatapointBinaryEncoding.MEDIA_TYPE})
   @Operation(
       operationId = "getPredictedDatapoints",
       summary = "Retrieve the predicted datapoints of an asset attribute",
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.model.datapoint;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of numeric {@link ValueDatapoint} series based on the Gorilla time series
+ * compression; timestamps are encoded as the delta of the delta to the previous timestamp and
+ * values as the XOR with the previous value so regular series of slowly changing values only take
+ * a few bits per datapoint.
+ *
+ * <p>The encoding is a bit stream (most significant bit first, padded to a whole byte) of:
+ *
+ * <ul>
+ *   <li>the number of datapoints (32 bits)
+ *   <li>the first timestamp in milliseconds and the first value as IEEE 754 double (64 bits each)
+ *   <li>for every following datapoint the timestamp delta of delta as <code>0</code> (no change),
+ *       <code>10</code> + 7 bits, <code>110</code> + 9 bits, <code>1110</code> + 12 bits or <code>
+ *       1111</code> + 64 bits followed by the value XOR as <code>0</code> (same value), <code>10
+ *       </code> + the meaningful bits using the previous leading and trailing zero counts or <code>
+ *       11</code> + 5 bits leading zeros + 6 bits meaningful bit count minus one + the meaningful
+ *       bits
+ * </ul>
+ *
+ * Only number and boolean values can be encoded; booleans are encoded as 1 or 0 and <code>null
+ * </code> values as NaN (which is decoded as <code>null</code>).
+ */
+public class DatapointBinaryEncoding {
+
+  public static final String MEDIA_TYPE = "application/vnd.openremote.datapoints+gorilla";
+
+  protected static final int BUFFER_SIZE = 8192;
+
+  protected DatapointBinaryEncoding() {}
+
+  /** Indicates whether all values of the datapoints are numbers, booleans or null. */
+  public static boolean isEncodable(ValueDatapoint<?>[] datapoints) {
+    for (ValueDatapoint<?> datapoint : datapoints) {
+      Object value = datapoint.getValue();
+      if (value != null && !(value instanceof Number) && !(value instanceof Boolean)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Write the encoded datapoints to the output stream.
+   *
+   * @throws IllegalArgumentException if a value is not a number, boolean or null.
+   */
+  public static void encode(ValueDatapoint<?>[] datapoints, OutputStream outputStream)
+      throws IOException, IllegalArgumentException {
+    BitWriter writer = new BitWriter(outputStream);
+    writer.writeBits(datapoints.length, 32);
+
+    long previousTimestamp = 0;
+    long previousDelta = 0;
+    long previousValue = 0;
+    int previousLeading = -1;
+    int previousTrailing = 0;
+
+    for (int i = 0; i < datapoints.length; i++) {
+      long timestamp = datapoints[i].getTimestamp();
+      long value = Double.doubleToLongBits(toDouble(datapoints[i].getValue()));
+
+      if (i == 0) {
+        writer.writeBits(timestamp, 64);
+        writer.writeBits(value, 64);
+        previousTimestamp = timestamp;
+        previousValue = value;
+        continue;
+      }
+
+      long delta = timestamp - previousTimestamp;
+      long deltaOfDelta = delta - previousDelta;
+      if (deltaOfDelta == 0) {
+        writer.writeBits(0b0, 1);
+      } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+        writer.writeBits(0b10, 2);
+        writer.writeBits(deltaOfDelta + 63, 7);
+      } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+        writer.writeBits(0b110, 3);
+        writer.writeBits(deltaOfDelta + 255, 9);
+      } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+        writer.writeBits(0b1110, 4);
+        writer.writeBits(deltaOfDelta + 2047, 12);
+      } else {
+        writer.writeBits(0b1111, 4);
+        writer.writeBits(deltaOfDelta, 64);
+      }
+      previousTimestamp = timestamp;
+      previousDelta = delta;
+
+      long xor = value ^ previousValue;
+      if (xor == 0) {
+        writer.writeBits(0b0, 1);
+      } else {
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+          writer.writeBits(0b10, 2);
+          writer.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+        } else {
+          int meaningful = 64 - leading - trailing;
+          writer.writeBits(0b11, 2);
+          writer.writeBits(leading, 5);
+          writer.writeBits(meaningful - 1, 6);
+          writer.writeBits(xor >>> trailing, meaningful);
+          previousLeading = leading;
+          previousTrailing = trailing;
+        }
+      }
+      previousValue = value;
+    }
+
+    writer.flush();
+  }
+
+  /** Read encoded datapoints from the input stream. */
+  public static List<ValueDatapoint<Double>> decode(InputStream inputStream) throws IOException {
+    BitReader reader = new BitReader(inputStream);
+    int count = (int) reader.readBits(32);
+    List<ValueDatapoint<Double>> datapoints = new ArrayList<>(count);
+
+    long timestamp = 0;
+    long delta = 0;
+    long value = 0;
+    int leading = 0;
+    int trailing = 0;
+
+    for (int i = 0; i < count; i++) {
+      if (i == 0) {
+        timestamp = reader.readBits(64);
+        value = reader.readBits(64);
+      } else {
+        long deltaOfDelta;
+        if (reader.readBits(1) == 0) {
+          deltaOfDelta = 0;
+        } else if (reader.readBits(1) == 0) {
+          deltaOfDelta = reader.readBits(7) - 63;
+        } else if (reader.readBits(1) == 0) {
+          deltaOfDelta = reader.readBits(9) - 255;
+        } else if (reader.readBits(1) == 0) {
+          deltaOfDelta = reader.readBits(12) - 2047;
+        } else {
+          deltaOfDelta = reader.readBits(64);
+        }
+        delta += deltaOfDelta;
+        timestamp += delta;
+
+        if (reader.readBits(1) == 1) {
+          if (reader.readBits(1) == 1) {
+            leading = (int) reader.readBits(5);
+            int meaningful = (int) reader.readBits(6) + 1;
+            trailing = 64 - leading - meaningful;
+          }
+          value ^= reader.readBits(64 - leading - trailing) << trailing;
+        }
+      }
+
+      double doubleValue = Double.longBitsToDouble(value);
+      datapoints.add(
+          new ValueDatapoint<>(timestamp, Double.isNaN(doubleValue) ? null : doubleValue));
+    }
+
+    return datapoints;
+  }
+
+  protected static double toDouble(Object value) throws IllegalArgumentException {
+    if (value == null) {
+      return Double.NaN;
+    }
+    if (value instanceof Number number) {
+      return number.doubleValue();
+    }
+    if (value instanceof Boolean bool) {
+      return bool ? 1d : 0d;
+    }
+    throw new IllegalArgumentException("Datapoint value is not a number or boolean: " + value);
+  }
+
+  protected static class BitWriter {
+    protected final OutputStream outputStream;
+    protected final byte[] buffer = new byte[BUFFER_SIZE];
+    protected int bufferPosition;
+    protected int currentByte;
+    protected int currentBits;
+
+    protected BitWriter(OutputStream outputStream) {
+      this.outputStream = outputStream;
+    }
+
+    /** Write the lowest number of bits of the value, most significant bit first. */
+    protected void writeBits(long value, int bits) throws IOException {
+      while (bits > 0) {
+        int count = Math.min(8 - currentBits, bits);
+        bits -= count;
+        currentByte = (currentByte << count) | (int) ((value >>> bits) & ((1 << count) - 1));
+        currentBits += count;
+        if (currentBits == 8) {
+          writeByte();
+        }
+      }
+    }
+
+    protected void writeByte() throws IOException {
+      if (bufferPosition == buffer.length) {
+        outputStream.write(buffer, 0, bufferPosition);
+        bufferPosition = 0;
+      }
+      buffer[bufferPosition++] = (byte) currentByte;
+      currentByte = 0;
+      currentBits = 0;
+    }
+
+    protected void flush() throws IOException {
+      if (currentBits > 0) {
+        currentByte <<= 8 - currentBits;
+        writeByte();
+      }
+      outputStream.write(buffer, 0, bufferPosition);
+      bufferPosition = 0;
+      outputStream.flush();
+    }
+  }
+
+  protected static class BitReader {
+    protected final InputStream inputStream;
+    protected int currentByte;
+    protected int currentBits;
+
+    protected BitReader(InputStream inputStream) {
+      this.inputStream = inputStream;
+    }
+
+    protected long readBits(int bits) throws IOException {
+      long value = 0;
+      while (bits > 0) {
+        if (currentBits == 0) {
+          currentByte = inputStream.read();
+          if (currentByte < 0) {
+            throw new EOFException("Unexpected end of encoded datapoints");
+          }
+          currentBits = 8;
+        }
+        int count = Math.min(currentBits, bits);
+        currentBits -= count;
+        bits -= count;
+        value = (value << count) | ((currentByte >>> currentBits) & ((1 << count) - 1));
+      }
+      return value;
+    }
+  }
+}
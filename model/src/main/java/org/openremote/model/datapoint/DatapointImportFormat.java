@@ -0,0 +1,63 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.model.datapoint;
+
+import jakarta.ws.rs.core.MediaType;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Formats of a historical datapoint import, one datapoint per line:
+ *
+ * <ul>
+ *   <li>{@link #CSV}: <code>timestamp,value</code> where the timestamp is Unix time in milliseconds
+ *       or an ISO-8601 instant and the value is JSON (a value that isn't valid JSON is imported as
+ *       a string); the value may be quoted as a CSV field and an optional header line is skipped.
+ *   <li>{@link #NDJSON}: a JSON object per line in the same format as a {@link ValueDatapoint},
+ *       e.g. <code>{"x": 1767225600000, "y": 21.5}</code>.
+ * </ul>
+ *
+ * <p>Every datapoint must have a value that can be coerced to the value type of the attribute.
+ */
+public enum DatapointImportFormat {
+  CSV(DatapointImportFormat.CSV_MEDIA_TYPE),
+  NDJSON(DatapointImportFormat.NDJSON_MEDIA_TYPE);
+
+  public static final String CSV_MEDIA_TYPE = "text/csv";
+  public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+  private final String mediaType;
+
+  DatapointImportFormat(String mediaType) {
+    this.mediaType = mediaType;
+  }
+
+  public String getMediaType() {
+    return mediaType;
+  }
+
+  public static Optional<DatapointImportFormat> fromMediaType(MediaType mediaType) {
+    if (mediaType == null) {
+      return Optional.empty();
+    }
+    return Arrays.stream(values())
+        .filter(format -> MediaType.valueOf(format.mediaType).isCompatible(mediaType))
+        .findFirst();
+  }
+}
@@ -49,12 +49,11 @@ public class AssetDatapointAllQuery extends AssetDatapointQuery {
     boolean isBoolean = Boolean.class.isAssignableFrom(attributeType);
     String conditionSuffix =
         " where ENTITY_ID = ? and ATTRIBUTE_NAME = ? and TIMESTAMP >= ? and TIMESTAMP <= ? order by timestamp desc";
-    if (isNumber) {
-      return "select timestamp as X, cast(value as numeric) as Y from "
-          + tableName
-          + conditionSuffix;
-    } else if (isBoolean) {
-      return "select timestamp as X, (case when cast(cast(value as text) as boolean) is true then 1 else 0 end) as Y from "
+    if (isNumber || isBoolean) {
+      // Booleans are stored as 1 or 0 in the numeric value column
+      return "select timestamp as X, "
+          + NUMERIC_VALUE
+          + " as Y from "
           + tableName
           + conditionSuffix;
     } else {
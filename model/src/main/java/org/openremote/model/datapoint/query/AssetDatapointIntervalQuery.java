@@ -22,11 +22,21 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.openremote.model.attribute.AttributeRef;
 import org.openremote.model.datapoint.DatapointInterval;
 
+/**
+ * Numeric and boolean datapoints are aggregated using the <code>numeric_value</code> column of the
+ * datapoint table which holds the value as a double precision (1 or 0 for booleans), so no JSON
+ * casts are needed per row.
+ */
 @Schema(
     description =
         "Aggregates numeric or boolean datapoints from the inclusive range into aligned time "
@@ -61,6 +71,15 @@ public class AssetDatapointIntervalQuery extends AssetDatapointQuery {
       requiredMode = Schema.RequiredMode.REQUIRED)
   public Formula formula;
 
+  protected static final Pattern INTERVAL_PATTERN =
+      Pattern.compile("^\\s*(\\d+)\\s*([a-zA-Z]+)\\s*$");
+
+  /** Origin of <code>time_bucket</code> for intervals without months. */
+  protected static final LocalDateTime BUCKET_ORIGIN = LocalDateTime.of(2000, 1, 3, 0, 0);
+
+  /** Origin of <code>time_bucket</code> for intervals of months or years. */
+  protected static final LocalDateTime MONTH_BUCKET_ORIGIN = LocalDateTime.of(2000, 1, 1, 0, 0);
+
   public enum Formula {
     MIN,
     AVG,
@@ -117,12 +136,15 @@ public class AssetDatapointIntervalQuery extends AssetDatapointQuery {
         return "WITH interval_data AS ("
             + "SELECT "
             + function
-            + "(cast(? as interval), timestamp) AS x, public.locf(public.last(value::DOUBLE PRECISION, timestamp)) AS numeric_value "
+            + "(cast(? as interval), timestamp) AS x, public.locf(public.last("
+            + NUMERIC_VALUE
+            + ", timestamp)) AS last_value "
             + "FROM "
             + tableName
             + " "
             + "WHERE ENTITY_ID = ? AND ATTRIBUTE_NAME = ? AND TIMESTAMP >= ? AND TIMESTAMP <= ? GROUP BY x )"
-            + "SELECT x, COALESCE(numeric_value - LAG(numeric_value, 1, numeric_value) OVER (ORDER BY x), numeric_value) AS delta FROM interval_data ORDER BY x ASC";
+            + "SELECT x, COALESCE(last_value - LAG(last_value, 1, last_value) OVER (ORDER BY x),"
+            + " last_value) AS delta FROM interval_data ORDER BY x ASC";
       case COUNT:
         return "SELECT "
             + function
@@ -137,7 +159,9 @@ public class AssetDatapointIntervalQuery extends AssetDatapointQuery {
         return "SELECT "
             + function
             + "(cast(? as interval), timestamp) AS x, "
-            + "SUM(cast(value as numeric)) AS total_sum "
+            + "SUM("
+            + NUMERIC_VALUE
+            + ") AS total_sum "
             + "FROM "
             + tableName
             + " "
@@ -148,7 +172,9 @@ public class AssetDatapointIntervalQuery extends AssetDatapointQuery {
             + "  SELECT "
             + function
             + "(cast(? as interval), timestamp) AS x, "
-            + "         cast(value as numeric) AS num_value "
+            + "         "
+            + NUMERIC_VALUE
+            + " AS num_value "
             + "  FROM "
             + tableName
             + " "
@@ -170,7 +196,9 @@ public class AssetDatapointIntervalQuery extends AssetDatapointQuery {
         return "SELECT "
             + function
             + "(cast(? as interval), timestamp) AS x, "
-            + "PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY cast(value as numeric)) as median_value "
+            + "PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY "
+            + NUMERIC_VALUE
+            + ") as median_value "
             + "FROM "
             + tableName
             + " "
@@ -181,7 +209,9 @@ public class AssetDatapointIntervalQuery extends AssetDatapointQuery {
             + function
             + "(cast(? as interval), timestamp) AS x, "
             + this.formula.toString().toLowerCase()
-            + "(cast(value as numeric)) FROM "
+            + "("
+            + NUMERIC_VALUE
+            + ") FROM "
             + tableName
             + " WHERE ENTITY_ID = ? and ATTRIBUTE_NAME = ? and TIMESTAMP >= ? and TIMESTAMP <= ? GROUP BY x ORDER by x ASC";
     }
@@ -206,7 +236,9 @@ public class AssetDatapointIntervalQuery extends AssetDatapointQuery {
         return "SELECT "
             + function
             + "(cast(? as interval), timestamp) AS x, "
-            + "SUM(CASE WHEN cast(value as text)::boolean THEN 1 ELSE 0 END) AS true_count_sum "
+            + "SUM("
+            + NUMERIC_VALUE
+            + ") AS true_count_sum "
             + "FROM "
             + tableName
             + " "
@@ -217,7 +249,9 @@ public class AssetDatapointIntervalQuery extends AssetDatapointQuery {
             + "   SELECT "
             + function
             + "(cast(? as interval), timestamp) AS x, "
-            + "          cast(value as text)::boolean AS bool_value "
+            + "          "
+            + NUMERIC_VALUE
+            + " = 1 AS bool_value "
             + "   FROM "
             + tableName
             + " "
@@ -239,7 +273,9 @@ public class AssetDatapointIntervalQuery extends AssetDatapointQuery {
         return "SELECT "
             + function
             + "(cast(? as interval), timestamp) AS x, "
-            + "CASE WHEN PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY (CASE WHEN cast(value as text)::boolean THEN 1 ELSE 0 END)) >= 0.5 "
+            + "CASE WHEN PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY "
+            + NUMERIC_VALUE
+            + ") >= 0.5 "
             + "THEN true ELSE false END AS median_value "
             + "FROM "
             + tableName
@@ -251,12 +287,235 @@ public class AssetDatapointIntervalQuery extends AssetDatapointQuery {
             + function
             + "(cast(? as interval), timestamp) AS x, "
             + this.formula.toString().toLowerCase()
-            + "(case when cast(cast(value as text) as boolean) is true then 1 else 0 end) FROM "
+            + "("
+            + NUMERIC_VALUE
+            + ") FROM "
             + tableName
             + " WHERE ENTITY_ID = ? and ATTRIBUTE_NAME = ? and TIMESTAMP >= ? and TIMESTAMP <= ? GROUP BY x ORDER by x ASC";
     }
   }
 
+  /**
+   * Indicates whether this query can be answered from a rollup of the datapoint table with buckets
+   * of the given unit (see {@link #getRollupSQLQuery}); this requires the formula to be computable
+   * from the min, max, sum, count and last value of each rollup bucket, the interval to be a
+   * multiple of the rollup unit and at least one whole rollup bucket in the query range.
+   */
+  public boolean canUseRollup(ChronoUnit rollupUnit, Class<?> attributeType) {
+    boolean isNumber = Number.class.isAssignableFrom(attributeType);
+    boolean isBoolean = Boolean.class.isAssignableFrom(attributeType);
+    if ((!isNumber && !isBoolean)
+        || formula == null
+        || formula == Formula.MODE
+        || formula == Formula.MEDIAN
+        || (formula == Formula.DIFFERENCE && isBoolean)) {
+      return false;
+    }
+    return isIntervalMultipleOf(rollupUnit)
+        && ceil(getFromLocalDateTime(), rollupUnit)
+            .isBefore(getToLocalDateTime().truncatedTo(rollupUnit));
+  }
+
+  /**
+   * Get the SQL query that reads whole buckets from the rollup table and only the datapoints
+   * before the first and after the last whole rollup bucket from the datapoint table; use {@link
+   * #getRollupSQLParameters} for the parameters.
+   */
+  public String getRollupSQLQuery(String tableName, String rollupTableName) {
+    String source =
+        "WITH source AS ("
+            + "SELECT bucket AS timestamp, min_value, max_value, sum_value, count_value,"
+            + " last_value FROM "
+            + rollupTableName
+            + " WHERE ENTITY_ID = ? and ATTRIBUTE_NAME = ? and BUCKET >= ? and BUCKET < ? "
+            + "UNION ALL "
+            + "SELECT timestamp, "
+            + NUMERIC_VALUE
+            + ", "
+            + NUMERIC_VALUE
+            + ", "
+            + NUMERIC_VALUE
+            + ", 1,"
+            + " "
+            + NUMERIC_VALUE
+            + " FROM "
+            + tableName
+            + " WHERE ENTITY_ID = ? and ATTRIBUTE_NAME = ? and "
+            + NUMERIC_VALUE
+            + " is not null"
+            + " and ((TIMESTAMP >= ? and TIMESTAMP < ?) or (TIMESTAMP >= ? and TIMESTAMP <= ?))) ";
+    // The gap fill range cannot be inferred from the where clause of the source
+    String bucket =
+        gapFill
+            ? "public.time_bucket_gapfill(cast(? as interval), timestamp, ?, ?) AS x"
+            : "public.time_bucket(cast(? as interval), timestamp) AS x";
+
+    if (formula == Formula.DIFFERENCE) {
+      return source
+          + ", interval_data AS (SELECT "
+          + bucket
+          + ", public.locf(public.last(last_value, timestamp)) AS last_value "
+          + "FROM source GROUP BY x) "
+          + "SELECT x, COALESCE(last_value - LAG(last_value, 1, last_value) OVER (ORDER BY x),"
+          + " last_value) AS delta FROM interval_data ORDER BY x ASC";
+    }
+
+    String aggregate =
+        switch (formula) {
+          case MIN -> "min(min_value)";
+          case MAX -> "max(max_value)";
+          case AVG -> "sum(sum_value) / sum(count_value)";
+          case COUNT -> "sum(count_value)";
+          case SUM -> "sum(sum_value)";
+          default ->
+              throw new IllegalStateException("Query of type " + formula + " cannot use a rollup");
+        };
+    return source
+        + "SELECT "
+        + bucket
+        + ", "
+        + aggregate
+        + " FROM source GROUP BY x ORDER BY x ASC";
+  }
+
+  public HashMap<Integer, Object> getRollupSQLParameters(
+      AttributeRef attributeRef, ChronoUnit rollupUnit) {
+    LocalDateTime fromTimestamp = getFromLocalDateTime();
+    LocalDateTime toTimestamp = getToLocalDateTime();
+    LocalDateTime rollupFrom = ceil(fromTimestamp, rollupUnit);
+    LocalDateTime rollupTo = toTimestamp.truncatedTo(rollupUnit);
+    HashMap<Integer, Object> parameters = new HashMap<>();
+    parameters.put(1, attributeRef.getId());
+    parameters.put(2, attributeRef.getName());
+    parameters.put(3, rollupFrom);
+    parameters.put(4, rollupTo);
+    parameters.put(5, attributeRef.getId());
+    parameters.put(6, attributeRef.getName());
+    parameters.put(7, fromTimestamp);
+    parameters.put(8, rollupFrom);
+    parameters.put(9, rollupTo);
+    parameters.put(10, toTimestamp);
+    parameters.put(11, this.interval);
+    if (gapFill) {
+      parameters.put(12, fromTimestamp);
+      parameters.put(13, toTimestamp);
+    }
+    return parameters;
+  }
+
+  /**
+   * Months and years are always a multiple of a day and time buckets of these intervals are aligned
+   * the same way as the minute, hour and day buckets of the rollups.
+   */
+  protected boolean isIntervalMultipleOf(ChronoUnit unit) {
+    if (getIntervalMonths() > 0) {
+      return unit.compareTo(ChronoUnit.DAYS) <= 0;
+    }
+    long seconds = getIntervalSeconds();
+    return seconds > 0 && seconds % unit.getDuration().getSeconds() == 0;
+  }
+
+  /**
+   * Get the start of the time bucket the time falls in, buckets are aligned the same way as by
+   * <code>time_bucket</code>.
+   *
+   * @return <code>null</code> if the interval is not a single amount of a unit of at least a
+   *     second.
+   */
+  public LocalDateTime truncateToBucket(LocalDateTime time) {
+    return getBucketStart(time, 0);
+  }
+
+  /** Get the start of the first time bucket at or after the time, see {@link #truncateToBucket}. */
+  public LocalDateTime ceilToBucket(LocalDateTime time) {
+    LocalDateTime bucketStart = getBucketStart(time, 0);
+    return bucketStart == null || bucketStart.equals(time)
+        ? bucketStart
+        : getBucketStart(time, 1);
+  }
+
+  protected LocalDateTime getBucketStart(LocalDateTime time, int offset) {
+    long months = getIntervalMonths();
+    if (months > 0) {
+      long elapsedMonths =
+          (time.getYear() - MONTH_BUCKET_ORIGIN.getYear()) * 12L + time.getMonthValue() - 1;
+      return MONTH_BUCKET_ORIGIN.plusMonths(
+          (Math.floorDiv(elapsedMonths, months) + offset) * months);
+    }
+    long seconds = getIntervalSeconds();
+    if (seconds <= 0) {
+      return null;
+    }
+    long elapsedSeconds =
+        time.toEpochSecond(ZoneOffset.UTC) - BUCKET_ORIGIN.toEpochSecond(ZoneOffset.UTC);
+    return BUCKET_ORIGIN.plusSeconds((Math.floorDiv(elapsedSeconds, seconds) + offset) * seconds);
+  }
+
+  /**
+   * @return the number of months of an interval of months or years, otherwise 0.
+   */
+  protected long getIntervalMonths() {
+    Matcher matcher = interval != null ? INTERVAL_PATTERN.matcher(interval) : null;
+    if (matcher == null || !matcher.matches()) {
+      return 0;
+    }
+    long amount = Long.parseLong(matcher.group(1));
+    String intervalUnit = matcher.group(2).toLowerCase(Locale.ROOT);
+    if (intervalUnit.startsWith("mon")) {
+      return amount;
+    } else if (intervalUnit.startsWith("y")) {
+      return amount * 12;
+    }
+    return 0;
+  }
+
+  /**
+   * @return the number of seconds of an interval of seconds up to weeks, otherwise 0.
+   */
+  protected long getIntervalSeconds() {
+    Matcher matcher = interval != null ? INTERVAL_PATTERN.matcher(interval) : null;
+    if (matcher == null || !matcher.matches()) {
+      return 0;
+    }
+    long amount = Long.parseLong(matcher.group(1));
+    String intervalUnit = matcher.group(2).toLowerCase(Locale.ROOT);
+    if (intervalUnit.equals("ms")
+        || intervalUnit.equals("us")
+        || intervalUnit.startsWith("mil")
+        || intervalUnit.startsWith("mic")
+        || intervalUnit.startsWith("mon")) {
+      return 0;
+    } else if (intervalUnit.startsWith("m")) {
+      return amount * 60;
+    } else if (intervalUnit.startsWith("s")) {
+      return amount;
+    } else if (intervalUnit.startsWith("h")) {
+      return amount * 3600;
+    } else if (intervalUnit.startsWith("d")) {
+      return amount * 86400;
+    } else if (intervalUnit.startsWith("w")) {
+      return amount * 604800;
+    }
+    return 0;
+  }
+
+  protected LocalDateTime getFromLocalDateTime() {
+    return (this.fromTime != null)
+        ? this.fromTime
+        : Instant.ofEpochMilli(this.fromTimestamp).atZone(ZoneId.systemDefault()).toLocalDateTime();
+  }
+
+  protected LocalDateTime getToLocalDateTime() {
+    return (this.toTime != null)
+        ? this.toTime
+        : Instant.ofEpochMilli(this.toTimestamp).atZone(ZoneId.systemDefault()).toLocalDateTime();
+  }
+
+  protected static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+    LocalDateTime truncated = time.truncatedTo(unit);
+    return truncated.equals(time) ? time : truncated.plus(1, unit);
+  }
+
   @Override
   public HashMap<Integer, Object> getSQLParameters(AttributeRef attributeRef) {
     HashMap<Integer, Object> parameters = new HashMap<>();
@@ -59,18 +59,20 @@ public final class AssetDatapointLTTBQuery extends AssetDatapointQuery {
   public String getSQLQuery(String tableName, Class<?> attributeType) throws IllegalStateException {
     boolean isNumber = Number.class.isAssignableFrom(attributeType);
     boolean isBoolean = Boolean.class.isAssignableFrom(attributeType);
-    if (isNumber) {
-      return "select * from public.unnest((select public.lttb(cast(timestamp as timestamptz), cast(value as double precision), ?) from "
-          + tableName
-          + " where ENTITY_ID = ? and ATTRIBUTE_NAME = ? and TIMESTAMP >= ? and TIMESTAMP <= ?))";
-    } else if (isBoolean) {
-      return "select * from public.unnest((select public.lttb(cast(timestamp as timestamptz), (case when cast(cast(value as text) as boolean) is true then 1 else 0 end), ?) from "
-          + tableName
-          + " where ENTITY_ID = ? and ATTRIBUTE_NAME = ? and TIMESTAMP >= ? and TIMESTAMP <= ?))";
-    } else {
+    if (!isNumber && !isBoolean) {
       throw new IllegalStateException(
           "Query of type LTTB requires either a number or a boolean attribute.");
     }
+    // Booleans are stored as 1 or 0 in the numeric value column
+    return "select * from public.unnest((select"
+        + " public.lttb(cast(timestamp as timestamptz), "
+        + NUMERIC_VALUE
+        + ", ?) from "
+        + tableName
+        + " where ENTITY_ID = ? and ATTRIBUTE_NAME = ? and TIMESTAMP >= ? and TIMESTAMP <= ?"
+        + " and "
+        + NUMERIC_VALUE
+        + " is not null))";
   }
 
   @Override
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.model.datapoint.query;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import org.openremote.model.attribute.AttributeRef;
+
+/**
+ * M4 aggregation divides the range into {@link #amountOfBuckets} buckets of equal width (usually
+ * one per pixel of the chart) and returns the first, last, minimum and maximum datapoint of each
+ * bucket; a line drawn through these datapoints is the same as a line drawn through all datapoints
+ * at that resolution. The aggregation is a single <code>time_bucket</code> GROUP BY so at most four
+ * datapoints per bucket are returned whatever the size of the range.
+ */
+@Schema(
+    description =
+        "Downsamples numeric or boolean datapoints from the inclusive range with M4 aggregation: the range is "
+            + "divided into equally wide buckets and the first, last, minimum and maximum datapoint of each bucket "
+            + "are returned so peaks are always preserved. Use this to draw a series with one bucket per pixel. "
+            + "Results are chronological; boolean values are processed as 1 for true and 0 for false. Other "
+            + "attribute value types are rejected.")
+public class AssetDatapointM4Query extends AssetDatapointQuery {
+
+  @Schema(
+      description =
+          "Number of buckets to divide the range into, usually the width of the chart in pixels. At most four "
+              + "datapoints are returned per bucket.",
+      example = "1000",
+      requiredMode = Schema.RequiredMode.REQUIRED)
+  public int amountOfBuckets;
+
+  public AssetDatapointM4Query() {}
+
+  public AssetDatapointM4Query(long fromTimestamp, long toTimestamp, int amountOfBuckets) {
+    this.fromTimestamp = fromTimestamp;
+    this.toTimestamp = toTimestamp;
+    this.amountOfBuckets = amountOfBuckets;
+  }
+
+  public AssetDatapointM4Query(LocalDateTime fromTime, LocalDateTime toTime, int amountOfBuckets) {
+    this.fromTime = fromTime;
+    this.toTime = toTime;
+    this.amountOfBuckets = amountOfBuckets;
+  }
+
+  @Override
+  public String getSQLQuery(String tableName, Class<?> attributeType) throws IllegalStateException {
+    boolean isNumber = Number.class.isAssignableFrom(attributeType);
+    boolean isBoolean = Boolean.class.isAssignableFrom(attributeType);
+    if (!isNumber && !isBoolean) {
+      throw new IllegalStateException(
+          "Query of type M4 requires either a number or a boolean attribute.");
+    }
+    if (amountOfBuckets <= 0) {
+      throw new IllegalStateException("Query of type M4 requires a positive amount of buckets.");
+    }
+    // Booleans are stored as 1 or 0 in the numeric value column; the timestamp of the minimum and
+    // maximum is the first timestamp ordered by value and the last timestamp ordered by value
+    return "WITH buckets AS ("
+        + "SELECT public.time_bucket(cast(? as interval), timestamp, cast(? as timestamp)) AS bucket,"
+        + " public.first(timestamp, timestamp) AS first_time,"
+        + " public.first("
+        + NUMERIC_VALUE
+        + ", timestamp) AS first_value,"
+        + " public.first(timestamp, "
+        + NUMERIC_VALUE
+        + ") AS min_time, min("
+        + NUMERIC_VALUE
+        + ") AS min_value,"
+        + " public.last(timestamp, "
+        + NUMERIC_VALUE
+        + ") AS max_time, max("
+        + NUMERIC_VALUE
+        + ") AS max_value,"
+        + " public.last(timestamp, timestamp) AS last_time,"
+        + " public.last("
+        + NUMERIC_VALUE
+        + ", timestamp) AS last_value"
+        + " FROM "
+        + tableName
+        + " WHERE ENTITY_ID = ? and ATTRIBUTE_NAME = ? and TIMESTAMP >= ? and TIMESTAMP <= ?"
+        + " and "
+        + NUMERIC_VALUE
+        + " is not null GROUP BY bucket) "
+        + "SELECT DISTINCT ON (x) x, y FROM ("
+        + "SELECT first_time AS x, first_value AS y FROM buckets"
+        + " UNION ALL SELECT min_time, min_value FROM buckets"
+        + " UNION ALL SELECT max_time, max_value FROM buckets"
+        + " UNION ALL SELECT last_time, last_value FROM buckets"
+        + ") AS points ORDER BY x ASC";
+  }
+
+  @Override
+  public HashMap<Integer, Object> getSQLParameters(AttributeRef attributeRef) {
+    LocalDateTime fromTimestamp =
+        (this.fromTime != null)
+            ? this.fromTime
+            : Instant.ofEpochMilli(this.fromTimestamp)
+                .atZone(ZoneId.systemDefault())
+                .toLocalDateTime();
+    LocalDateTime toTimestamp =
+        (this.toTime != null)
+            ? this.toTime
+            : Instant.ofEpochMilli(this.toTimestamp)
+                .atZone(ZoneId.systemDefault())
+                .toLocalDateTime();
+    HashMap<Integer, Object> parameters = new HashMap<>();
+    parameters.put(1, getBucketMillis(fromTimestamp, toTimestamp) + " milliseconds");
+    parameters.put(2, fromTimestamp);
+    parameters.put(3, attributeRef.getId());
+    parameters.put(4, attributeRef.getName());
+    parameters.put(5, fromTimestamp);
+    parameters.put(6, toTimestamp);
+    return parameters;
+  }
+
+  /** The width of a bucket so the inclusive range is covered by the amount of buckets. */
+  protected long getBucketMillis(LocalDateTime fromTimestamp, LocalDateTime toTimestamp) {
+    long rangeMillis = Duration.between(fromTimestamp, toTimestamp).toMillis() + 1;
+    return Math.max(1, (rangeMillis + amountOfBuckets - 1) / Math.max(1, amountOfBuckets));
+  }
+}
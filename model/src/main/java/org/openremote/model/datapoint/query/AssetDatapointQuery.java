@@ -31,6 +31,7 @@ import org.openremote.model.attribute.AttributeRef;
 @JsonSubTypes({
   @JsonSubTypes.Type(value = AssetDatapointAllQuery.class, name = "all"),
   @JsonSubTypes.Type(value = AssetDatapointLTTBQuery.class, name = "lttb"),
+  @JsonSubTypes.Type(value = AssetDatapointM4Query.class, name = "m4"),
   @JsonSubTypes.Type(value = AssetDatapointIntervalQuery.class, name = "interval"),
   @JsonSubTypes.Type(value = AssetDatapointNearestQuery.class, name = "nearest")
 })
@@ -41,21 +42,30 @@ import org.openremote.model.attribute.AttributeRef;
 @Schema(
     description =
         "Polymorphic historical-datapoint query. Select `all` to return every value, "
-            + "`interval` to aggregate values into time buckets, `lttb` to downsample a numeric "
-            + "or boolean series, or `nearest` to retrieve the last value at or before a time.",
+            + "`interval` to aggregate values into time buckets, `lttb` or `m4` to downsample a "
+            + "numeric or boolean series, or `nearest` to retrieve the last value at or before a time.",
     discriminatorProperty = "type",
     discriminatorMapping = {
       @DiscriminatorMapping(value = "all", schema = AssetDatapointAllQuery.class),
       @DiscriminatorMapping(value = "interval", schema = AssetDatapointIntervalQuery.class),
       @DiscriminatorMapping(value = "lttb", schema = AssetDatapointLTTBQuery.class),
+      @DiscriminatorMapping(value = "m4", schema = AssetDatapointM4Query.class),
       @DiscriminatorMapping(value = "nearest", schema = AssetDatapointNearestQuery.class)
     })
 public abstract class AssetDatapointQuery implements Serializable {
 
+  /**
+   * The numeric (or boolean as 1 or 0) value of a datapoint; the <code>numeric_value</code> column
+   * of datapoints stored before it existed is backfilled in the background so the jsonb value is
+   * converted instead while it is null.
+   */
+  protected static final String NUMERIC_VALUE =
+      "coalesce(numeric_value, datapoint_numeric_value(value))";
+
   @Schema(
       description =
           "Inclusive lower range bound as Unix time in milliseconds for `all`, `interval`, "
-              + "and `lttb`; ignored when `fromTime` is supplied. For `nearest` this is instead the requested "
+              + "`lttb`, and `m4`; ignored when `fromTime` is supplied. For `nearest` this is instead the requested "
               + "time in Unix seconds and is the only time field used.",
       example = "1767225600000")
   public long fromTimestamp;
@@ -63,14 +73,14 @@ public abstract class AssetDatapointQuery implements Serializable {
   @Schema(
       description =
           "Inclusive upper range bound as Unix time in milliseconds for `all`, `interval`, "
-              + "and `lttb`; ignored when `toTime` is supplied and not used by `nearest`.",
+              + "`lttb`, and `m4`; ignored when `toTime` is supplied and not used by `nearest`.",
       example = "1767312000000")
   public long toTimestamp;
 
   @JsonDeserialize(using = AssetDatapointQueryLocalDateTimeDeserializer.class)
   @Schema(
       description =
-          "Inclusive lower range bound for `all`, `interval`, and `lttb` as an ISO local or "
+          "Inclusive lower range bound for `all`, `interval`, `lttb`, and `m4` as an ISO local or "
               + "offset date-time. A local value is interpreted in the server time zone; an offset value is "
               + "converted to the server time zone. Takes precedence over `fromTimestamp` and is ignored by "
               + "`nearest`.",
@@ -80,7 +90,7 @@ public abstract class AssetDatapointQuery implements Serializable {
   @JsonDeserialize(using = AssetDatapointQueryLocalDateTimeDeserializer.class)
   @Schema(
       description =
-          "Inclusive upper range bound for `all`, `interval`, and `lttb` as an ISO local or "
+          "Inclusive upper range bound for `all`, `interval`, `lttb`, and `m4` as an ISO local or "
               + "offset date-time. A local value is interpreted in the server time zone; an offset value is "
               + "converted to the server time zone. Takes precedence over `toTimestamp` and is ignored by "
               + "`nearest`.",
@@ -150,6 +150,16 @@ public final class OpenApiExamples {
         }
         """;
 
+  public static final String DATAPOINT_M4_QUERY =
+      """
+        {
+          "type": "m4",
+          "fromTimestamp": 1767225600000,
+          "toTimestamp": 1767312000000,
+          "amountOfBuckets": 1000
+        }
+        """;
+
   public static final String DATAPOINT_NEAREST_QUERY =
       """
         {
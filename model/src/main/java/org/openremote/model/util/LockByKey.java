@@ -87,4 +87,10 @@ public class LockByKey {
           });
     }
   }
+
+  /** @return <code>true</code> if any threads are waiting to acquire the lock for the key. */
+  public boolean hasQueuedThreads(String key) {
+    LockWrapper lockWrapper = locks.get(key);
+    return lockWrapper != null && lockWrapper.lock.hasQueuedThreads();
+  }
 }
@@ -28,6 +28,7 @@ import com.fasterxml.jackson.databind.jsontype.NamedType;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -54,6 +55,7 @@ import org.openremote.model.asset.agent.AgentLink;
 import org.openremote.model.asset.agent.Protocol;
 import org.openremote.model.asset.impl.UnknownAsset;
 import org.openremote.model.attribute.Attribute;
+import org.openremote.model.attribute.AttributeEvent;
 import org.openremote.model.syslog.SyslogCategory;
 import org.openremote.model.value.*;
 import org.reflections.Reflections;
@@ -213,6 +215,14 @@ public class ValueUtil {
                         return new ValueDescriptor.ValueDescriptorDeserializer((JsonDeserializer<ValueDescriptor<?>>) deserializer);
                     }
                     return deserializer;
+                }})
+                .setSerializerModifier(new BeanSerializerModifier() {
+                @Override
+                public JsonSerializer<?> modifySerializer(SerializationConfig config, BeanDescription beanDesc, JsonSerializer<?> serializer) {
+                    if (beanDesc.getBeanClass() == AttributeEvent.class) {
+                        return new AttributeEvent.AttributeEventSerializer((JsonSerializer<Object>) serializer);
+                    }
+                    return serializer;
                 }}));
 
         objectMapper.configOverride(Map.class)
@@ -1007,8 +1017,10 @@ public class ValueUtil {
      * centric but here the type (e.g. {@link Attribute} or {@link org.openremote.model.attribute.AttributeInfo}) is fixed
      * but the constraints to be applied are dynamic, would be nice if there was a solution to this problem but this
      * works for now.
+     * <p>
+     * Use {@link org.openremote.model.validation.AttributeValueValidator} to compile the constraints once when the
+     * same combination is validated repeatedly.
      */
-    // TODO: Implement some sort of caching if performance warrants it
     public static boolean validateValue(AttributeDescriptor<?> attributeDescriptor, ValueDescriptor<?> valueDescriptor, MetaHolder metaHolder, Instant now, ConstraintValidatorContext context, ConstraintViolationPathProvider constraintBuilderProvider, Object value) {
         boolean valid = true;
 
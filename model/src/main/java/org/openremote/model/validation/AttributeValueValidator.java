@@ -0,0 +1,169 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.model.validation;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import org.openremote.model.util.TsIgnore;
+import org.openremote.model.value.AttributeDescriptor;
+import org.openremote.model.value.MetaHolder;
+import org.openremote.model.value.MetaItemType;
+import org.openremote.model.value.ValueConstraint;
+import org.openremote.model.value.ValueDescriptor;
+import org.openremote.model.value.ValueHolder;
+
+/**
+ * Validates attribute values against the {@link ValueConstraint}s extracted once from an {@link
+ * AttributeDescriptor}, {@link ValueDescriptor} and {@link MetaItemType#CONSTRAINTS} meta
+ * combination; the checks are the same as those done by {@link
+ * AssetValidator#validateNameValueMetaHolder} but without going through JSR-380 so an instance can
+ * be cached and reused for every value written to attributes with the same combination. Use {@link
+ * #isEmpty} to skip validation entirely for attributes without constraints.
+ *
+ * <p>Values must already have been coerced to the attribute value type (see {@link
+ * org.openremote.model.util.ValueUtil#getValueCoerced}).
+ */
+@TsIgnore
+public class AttributeValueValidator {
+
+  public static final AttributeValueValidator NONE =
+      new AttributeValueValidator(false, new ValueConstraint[0], 0, new ValueConstraint[0]);
+
+  protected final boolean typeMismatch;
+  protected final ValueConstraint[] elementConstraints;
+  protected final int arrayDimensions;
+  protected final ValueConstraint[] valueConstraints;
+
+  protected AttributeValueValidator(
+      boolean typeMismatch,
+      ValueConstraint[] elementConstraints,
+      int arrayDimensions,
+      ValueConstraint[] valueConstraints) {
+    this.typeMismatch = typeMismatch;
+    this.elementConstraints = elementConstraints;
+    this.arrayDimensions = arrayDimensions;
+    this.valueConstraints = valueConstraints;
+  }
+
+  /**
+   * Compile a validator for an attribute with the specified type and meta, the descriptor can be
+   * null if the attribute is not defined by the asset type.
+   */
+  public static AttributeValueValidator compile(
+      AttributeDescriptor<?> attributeDescriptor,
+      ValueDescriptor<?> valueDescriptor,
+      MetaHolder metaHolder) {
+    boolean typeMismatch = false;
+    List<ValueConstraint> elementConstraints = new ArrayList<>();
+    List<ValueConstraint> valueConstraints = new ArrayList<>();
+
+    if (attributeDescriptor != null) {
+      typeMismatch = !Objects.equals(valueDescriptor, attributeDescriptor.getType());
+      if (attributeDescriptor.getConstraints() != null) {
+        elementConstraints.addAll(Arrays.asList(attributeDescriptor.getConstraints()));
+      }
+      if (attributeDescriptor.getMeta() != null) {
+        attributeDescriptor
+            .getMeta()
+            .get(MetaItemType.CONSTRAINTS)
+            .flatMap(ValueHolder::getValue)
+            .ifPresent(constraints -> valueConstraints.addAll(Arrays.asList(constraints)));
+      }
+    }
+    if (valueDescriptor != null && valueDescriptor.getConstraints() != null) {
+      elementConstraints.addAll(0, Arrays.asList(valueDescriptor.getConstraints()));
+    }
+    getMetaConstraints(metaHolder)
+        .ifPresent(constraints -> valueConstraints.addAll(Arrays.asList(constraints)));
+
+    if (!typeMismatch && elementConstraints.isEmpty() && valueConstraints.isEmpty()) {
+      return NONE;
+    }
+
+    Integer arrayDimensions = valueDescriptor != null ? valueDescriptor.getArrayDimensions() : null;
+    return new AttributeValueValidator(
+        typeMismatch,
+        elementConstraints.toArray(new ValueConstraint[0]),
+        arrayDimensions != null ? arrayDimensions : 0,
+        valueConstraints.toArray(new ValueConstraint[0]));
+  }
+
+  /** Get the {@link MetaItemType#CONSTRAINTS} of the specified meta holder if it has any. */
+  public static Optional<ValueConstraint[]> getMetaConstraints(MetaHolder metaHolder) {
+    if (metaHolder == null || metaHolder.getMeta() == null) {
+      return Optional.empty();
+    }
+    return metaHolder.getMeta().get(MetaItemType.CONSTRAINTS).flatMap(ValueHolder::getValue);
+  }
+
+  /** Returns true if this validator accepts any value so validation can be skipped. */
+  public boolean isEmpty() {
+    return this == NONE;
+  }
+
+  public boolean isValid(Object value, Instant now) {
+    if (isEmpty()) {
+      return true;
+    }
+    if (typeMismatch) {
+      return false;
+    }
+    if (!isValid(elementConstraints, arrayDimensions, value, now)) {
+      return false;
+    }
+    return isValid(valueConstraints, 0, value, now);
+  }
+
+  protected static boolean isValid(
+      ValueConstraint[] constraints, int dimensions, Object value, Instant now) {
+    if (dimensions == 0 || !(value instanceof Object[] values)) {
+      for (ValueConstraint constraint : constraints) {
+        if (!constraint.evaluate(value, now)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    for (Object element : values) {
+      if (!isValid(constraints, dimensions - 1, element, now)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{"
+        + "typeMismatch="
+        + typeMismatch
+        + ", elementConstraints="
+        + Arrays.toString(elementConstraints)
+        + ", arrayDimensions="
+        + arrayDimensions
+        + ", valueConstraints="
+        + Arrays.toString(valueConstraints)
+        + '}';
+  }
+}
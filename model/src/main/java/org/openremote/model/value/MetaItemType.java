@@ -86,6 +86,23 @@ public final class MetaItemType {
   public static final MetaItemDescriptor<Boolean> READ_ONLY =
       new MetaItemDescriptor<>("readOnly", ValueType.BOOLEAN);
 
+  /**
+   * Can be set to true for attributes that update at a high rate where only the latest value
+   * matters; when a newer event for the attribute is already waiting to be processed an older event
+   * is dropped without being applied, stored or published, so data points will be a sample of the
+   * events received unless {@link #COALESCE_EVENTS_STORE_DATA_POINTS} is also set.
+   */
+  public static final MetaItemDescriptor<Boolean> COALESCE_EVENTS =
+      new MetaItemDescriptor<>("coalesceEvents", ValueType.BOOLEAN);
+
+  /**
+   * Can be set to true for attributes with {@link #COALESCE_EVENTS} so the values of dropped events
+   * are still stored as data points; they are coerced and validated but not applied, intercepted or
+   * published.
+   */
+  public static final MetaItemDescriptor<Boolean> COALESCE_EVENTS_STORE_DATA_POINTS =
+      new MetaItemDescriptor<>("coalesceEventsStoreDataPoints", ValueType.BOOLEAN);
+
   /* DATA POINT META */
 
   /**
@@ -102,8 +119,9 @@ public final class MetaItemType {
    *
    * @deprecated Per-attribute retention is no longer supported. Purging now uses TimescaleDB
    *     drop_chunks with a global week-based retention period configured via
-   *     OR_DATA_POINTS_MAX_AGE_WEEKS. This meta item is retained for backward compatibility but has
-   *     no effect.
+   *     OR_DATA_POINTS_MAX_AGE_WEEKS. This meta item is retained for backward compatibility and
+   *     only extends the retention of all raw data points, or of the 1 day rollup for number and
+   *     boolean attributes when OR_DATA_POINTS_DOWNSAMPLE_CUSTOM_MAX_AGE is enabled.
    */
   @Deprecated
   public static final MetaItemDescriptor<Integer> DATA_POINTS_MAX_AGE_DAYS =
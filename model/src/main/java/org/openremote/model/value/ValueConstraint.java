@@ -316,6 +316,9 @@ public abstract class ValueConstraint implements Serializable {
         java.util.regex.Pattern.compile("([\\\\{}$])");
     protected String regexp;
     protected jakarta.validation.constraints.Pattern.Flag[] flags;
+    // Compiled on first evaluation and reused by later evaluations of this constraint
+    @JsonIgnore protected transient java.util.regex.Pattern compiledPattern;
+    @JsonIgnore protected transient boolean invalidRegexp;
 
     @JsonCreator
     public Pattern(String regexp, jakarta.validation.constraints.Pattern.Flag[] flags) {
@@ -352,7 +355,6 @@ public abstract class ValueConstraint implements Serializable {
       return Map.of("value", escapedRegexp);
     }
 
-    @SuppressWarnings("MagicConstant")
     @Override
     public boolean evaluate(Object value, Instant now) {
       if (value == null) {
@@ -362,6 +364,20 @@ public abstract class ValueConstraint implements Serializable {
       Class<?> clazz = value.getClass();
 
       if (CharSequence.class.isAssignableFrom(clazz)) {
+        java.util.regex.Pattern pattern = getCompiledPattern();
+        return pattern != null && pattern.matcher((CharSequence) value).matches();
+      }
+
+      return false;
+    }
+
+    /**
+     * Returns the compiled {@link #regexp} or null if it is not a valid regular expression; the
+     * regular expression is only compiled once.
+     */
+    @SuppressWarnings("MagicConstant")
+    protected java.util.regex.Pattern getCompiledPattern() {
+      if (compiledPattern == null && !invalidRegexp) {
         int intFlag = 0;
         if (flags != null) {
           for (jakarta.validation.constraints.Pattern.Flag flag : flags) {
@@ -370,14 +386,12 @@ public abstract class ValueConstraint implements Serializable {
         }
 
         try {
-          java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(regexp, intFlag);
-          Matcher m = pattern.matcher((CharSequence) value);
-          return m.matches();
+          compiledPattern = java.util.regex.Pattern.compile(regexp, intFlag);
         } catch (PatternSyntaxException ignored) {
+          invalidRegexp = true;
         }
       }
-
-      return false;
+      return compiledPattern;
     }
   }
 
@@ -28,6 +28,7 @@ import org.openremote.manager.web.ManagerWebService
 import org.openremote.model.asset.impl.LightAsset
 import org.openremote.model.attribute.Attribute
 import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.datapoint.DatapointExportCompression
 import org.openremote.model.datapoint.DatapointExportFormat
 import org.openremote.model.datapoint.DatapointQueryTooLargeException
 import org.openremote.model.datapoint.ValueDatapoint
@@ -42,6 +43,8 @@ import spock.util.concurrent.PollingConditions
 import java.nio.charset.StandardCharsets
 import java.time.LocalDateTime
 import java.time.ZoneId
+import java.util.zip.GZIPInputStream
+import java.util.zip.ZipInputStream
 
 import static org.openremote.model.Constants.KEYCLOAK_CLIENT_ID
 import static org.openremote.model.value.ValueType.NUMBER
@@ -201,6 +204,103 @@ class AssetDatapointExportTest extends Specification implements ManagerContainer
         }
     }
 
+    def "Exports spanning several time slices should be streamed in order"() {
+
+        given: "the container is started with two slices exported in parallel"
+        def container = startContainer(defaultConfig() << [
+                (AssetDatapointService.OR_DATA_POINTS_EXPORT_PARALLELISM): "2"
+        ], defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+        assetDatapointService.datapointExportLimit = 10000
+
+        and: "ensure there are no datapoints"
+        assetDatapointService.purgeDataPoints()
+
+        and: "a datapoint every week for five weeks"
+        def asset = assetStorageService.find(
+                new AssetQuery()
+                        .types(LightAsset.class)
+                        .realm(new RealmPredicate(keycloakTestSetup.realmCity.name))
+                        .names("Light 1")
+        )
+        def attributeName = "brightness"
+        def dateTime = LocalDateTime.now()
+        assetDatapointService.upsertValues(asset.getId(), attributeName, (0..4).collect { week ->
+            new ValueDatapoint<>(dateTime.minusWeeks(week).minusHours(1).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), (week + 1) * 10d)
+        })
+        def fromTimestamp = dateTime.minusWeeks(5).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+        def toTimestamp = dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+
+        when: "the datapoints are exported as CSV"
+        def csvExportLines = assetDatapointService.exportDatapoints(
+                [new AttributeRef(asset.id, attributeName)] as AttributeRef[], fromTimestamp, toTimestamp
+        ).readLines()
+
+        then: "every datapoint should be exported once from newest to oldest"
+        csvExportLines.size() == 6
+        csvExportLines[0] == "timestamp,name,attribute_name,value"
+        csvExportLines[1..5].collect { it.split(",").last() } == ["10.0", "20.0", "30.0", "40.0", "50.0"]
+
+        when: "the datapoints are exported as crosstab CSV"
+        def crosstabExportLines = assetDatapointService.exportDatapoints(
+                [new AttributeRef(asset.id, attributeName)] as AttributeRef[], fromTimestamp, toTimestamp, DatapointExportFormat.CSV_CROSSTAB
+        ).readLines()
+
+        then: "every datapoint should be exported once from oldest to newest"
+        crosstabExportLines.size() == 6
+        crosstabExportLines[1..5].collect { it.split(",").last() } == ["50.0", "40.0", "30.0", "20.0", "10.0"]
+
+        when: "the datapoints are exported gzip compressed through the REST API"
+        def accessToken = authenticate(
+                container,
+                keycloakTestSetup.realmCity.name,
+                KEYCLOAK_CLIENT_ID,
+                "smartcity",
+                "smartcity"
+        )
+        def attributeRefsJson = "[{\"id\":\"${asset.id}\",\"name\":\"${attributeName}\"}]"
+        def encodedAttributeRefs = URLEncoder.encode(attributeRefsJson, StandardCharsets.UTF_8.toString()).replace("+", "%20")
+        def baseUri = serverUri(serverPort).clone()
+                .replacePath(ManagerWebService.API_PATH)
+                .path(keycloakTestSetup.realmCity.name)
+                .path("asset")
+                .path("datapoint")
+                .path("export")
+                .build()
+        def url = new URL("${baseUri}?attributeRefs=${encodedAttributeRefs}&fromTimestamp=${fromTimestamp}&toTimestamp=${toTimestamp}&compression=GZIP")
+        def response = (HttpURLConnection) url.openConnection()
+        response.setRequestMethod("GET")
+        response.setRequestProperty("Authorization", "Bearer ${accessToken}")
+        response.setRequestProperty("Accept", "application/gzip")
+        response.connect()
+
+        then: "the response should be the gzip compressed CSV file"
+        response.responseCode == 200
+        response.contentType == "application/gzip"
+        new GZIPInputStream(response.inputStream).readLines() == csvExportLines
+
+        when: "the datapoints are exported zip compressed"
+        def zipOut = new ByteArrayOutputStream()
+        assetDatapointService.exportDatapoints(
+                [new AttributeRef(asset.id, attributeName)] as AttributeRef[], fromTimestamp, toTimestamp, DatapointExportFormat.CSV, DatapointExportCompression.ZIP, zipOut
+        )
+        def zipIn = new ZipInputStream(new ByteArrayInputStream(zipOut.toByteArray()))
+
+        then: "the single zip entry should be the CSV file"
+        zipIn.nextEntry.name.endsWith(".csv")
+        zipIn.readLines() == csvExportLines
+
+        cleanup: "Remove the limit on datapoint exporting"
+        if (response != null) {
+            response.disconnect()
+        }
+        if (assetDatapointService != null) {
+            assetDatapointService.datapointExportLimit = assetDatapointService.OR_DATA_POINTS_EXPORT_LIMIT_DEFAULT
+        }
+    }
+
     def "Export query is not vulnerable to SQL injection via attributeRefs"() {
 
         given: "expected conditions"
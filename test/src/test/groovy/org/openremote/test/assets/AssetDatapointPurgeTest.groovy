@@ -26,6 +26,7 @@ import org.openremote.manager.setup.SetupService
 import org.openremote.model.asset.impl.ThingAsset
 import org.openremote.model.attribute.Attribute
 import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.MetaItem
 import org.openremote.model.datapoint.ValueDatapoint
 import org.openremote.model.value.ValueType
 import org.openremote.setup.integration.KeycloakTestSetup
@@ -37,7 +38,11 @@ import java.time.Instant
 import java.time.temporal.ChronoUnit
 import java.util.concurrent.TimeUnit
 
+import static org.openremote.manager.datapoint.AbstractDatapointService.OR_DATA_POINTS_LATE_WRITE_DECOMPRESS_THRESHOLD
+import static org.openremote.manager.datapoint.AssetDatapointService.OR_DATA_POINTS_1M_MAX_AGE_WEEKS
+import static org.openremote.manager.datapoint.AssetDatapointService.OR_DATA_POINTS_DOWNSAMPLE_CUSTOM_MAX_AGE
 import static org.openremote.manager.datapoint.AssetDatapointService.OR_DATA_POINTS_MAX_AGE_WEEKS
+import static org.openremote.model.value.MetaItemType.DATA_POINTS_MAX_AGE_DAYS
 
 class AssetDatapointPurgeTest extends Specification implements ManagerContainerTrait {
 
@@ -298,6 +303,162 @@ class AssetDatapointPurgeTest extends Specification implements ManagerContainerT
         }
     }
 
+    def "Raw datapoints and rollups should be purged with their own retention"() {
+
+        given: "the container is started with a 1-week raw retention, a 4-week 1 minute rollup retention and downsampled custom retention"
+        def container = startContainer(defaultConfig() << [
+                (OR_DATA_POINTS_MAX_AGE_WEEKS): "1",
+                (OR_DATA_POINTS_1M_MAX_AGE_WEEKS): "4",
+                (OR_DATA_POINTS_DOWNSAMPLE_CUSTOM_MAX_AGE): "true"
+        ], defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+        def persistenceService = container.getService(PersistenceService.class)
+
+        and: "an asset with a number attribute kept for 10 years and a text attribute kept for 2 weeks"
+        def asset = new ThingAsset("Retention Tier Test Asset").setRealm(keycloakTestSetup.realmMaster.name)
+        asset.addOrReplaceAttributes(
+                new Attribute<>("power", ValueType.NUMBER).addMeta(new MetaItem<>(DATA_POINTS_MAX_AGE_DAYS, 3650)),
+                new Attribute<>("status", ValueType.TEXT).addMeta(new MetaItem<>(DATA_POINTS_MAX_AGE_DAYS, 14))
+        )
+        asset = assetStorageService.merge(asset)
+
+        when: "datapoints from a year ago and from yesterday are stored"
+        def now = Instant.ofEpochMilli(getClockTimeOf(container))
+        def cutoff = now.minus(30, ChronoUnit.DAYS)
+        [now.minus(365, ChronoUnit.DAYS), now.minus(1, ChronoUnit.DAYS)].each { start ->
+            assetDatapointService.upsertValues(asset.id, "power", (0..<120).collect { new ValueDatapoint<>(start.plus(it, ChronoUnit.MINUTES).toEpochMilli(), it * 1d) })
+            assetDatapointService.upsertValues(asset.id, "status", (0..<120).collect { new ValueDatapoint<>(start.plus(it, ChronoUnit.MINUTES).toEpochMilli(), "status${it}") })
+        }
+
+        and: "the rollups are refreshed"
+        ["asset_datapoint_1m", "asset_datapoint_1h", "asset_datapoint_1d"].each {
+            executeOutsideTransaction(persistenceService, "CALL public.refresh_continuous_aggregate('${it}', NULL, NULL)")
+        }
+
+        then: "the old datapoints should be in the raw table and every rollup"
+        countOlderThan(persistenceService, "asset_datapoint", "timestamp", asset.id, "power", cutoff) == 120
+        countOlderThan(persistenceService, "asset_datapoint", "timestamp", asset.id, "status", cutoff) == 120
+        countOlderThan(persistenceService, "asset_datapoint_1m", "bucket", asset.id, "power", cutoff) == 120
+        countOlderThan(persistenceService, "asset_datapoint_1h", "bucket", asset.id, "power", cutoff) > 0
+
+        and: "the refresh window of the 1 minute rollup should be limited to the raw retention"
+        persistenceService.doReturningTransaction { em ->
+            em.createNativeQuery("""
+                SELECT j.config->>'start_offset'
+                FROM timescaledb_information.jobs j
+                JOIN timescaledb_information.continuous_aggregates c
+                  ON j.hypertable_schema = c.materialization_hypertable_schema
+                 AND j.hypertable_name = c.materialization_hypertable_name
+                WHERE j.proc_name = 'policy_refresh_continuous_aggregate' AND c.view_name = 'asset_datapoint_1m'
+            """).getSingleResult()
+        } == "7 days"
+
+        when: "the purge routine is executed"
+        assetDatapointService.purgeDataPoints()
+
+        then: "the old raw datapoints of both attributes should be dropped as only the text attribute retention applies to the raw datapoints"
+        countOlderThan(persistenceService, "asset_datapoint", "timestamp", asset.id, "power", cutoff) == 0
+        countOlderThan(persistenceService, "asset_datapoint", "timestamp", asset.id, "status", cutoff) == 0
+        assetDatapointService.getDatapoints(new AttributeRef(asset.id, "power")).size() == 120
+        assetDatapointService.getDatapoints(new AttributeRef(asset.id, "status")).size() == 120
+
+        and: "the old 1 minute rollup buckets should be dropped"
+        countOlderThan(persistenceService, "asset_datapoint_1m", "bucket", asset.id, "power", cutoff) == 0
+
+        and: "the old 1 hour and 1 day rollup buckets should be kept"
+        countOlderThan(persistenceService, "asset_datapoint_1h", "bucket", asset.id, "power", cutoff) > 0
+        countOlderThan(persistenceService, "asset_datapoint_1d", "bucket", asset.id, "power", cutoff) > 0
+    }
+
+    def "Late datapoints should be written into chunks in the columnstore"() {
+
+        given: "the container is started with a late write decompress threshold of 50 datapoints"
+        def container = startContainer(defaultConfig() << [(OR_DATA_POINTS_LATE_WRITE_DECOMPRESS_THRESHOLD): "50"], defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+        def persistenceService = container.getService(PersistenceService.class)
+
+        and: "an asset with a number attribute"
+        def asset = new ThingAsset("Late Write Test Asset").setRealm(keycloakTestSetup.realmMaster.name)
+        asset.addOrReplaceAttributes(new Attribute<>("power", ValueType.NUMBER))
+        asset = assetStorageService.merge(asset)
+        def attributeRef = new AttributeRef(asset.id, "power")
+
+        when: "100 datapoints from a month ago are stored and their chunk is moved to the columnstore"
+        def start = Instant.ofEpochMilli(getClockTimeOf(container)).minus(30, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS)
+        assetDatapointService.upsertValues(asset.id, "power", (0..<100).collect { new ValueDatapoint<>(start.plus(it, ChronoUnit.MINUTES).toEpochMilli(), it * 1d) })
+        def compressBefore = java.time.LocalDateTime.ofInstant(start.plus(7, ChronoUnit.DAYS), java.time.ZoneId.systemDefault())
+        executeOutsideTransaction(persistenceService, "SELECT public.compress_chunk(c, if_not_compressed => true) FROM public.show_chunks('asset_datapoint', older_than => '${compressBefore}'::timestamp) c")
+
+        then: "the chunk should be in the columnstore"
+        isChunkCompressed(persistenceService, start)
+        assetDatapointService.getDatapoints(attributeRef).size() == 100
+
+        when: "10 of the datapoints are updated which is below the decompress threshold"
+        assetDatapointService.upsertValues(asset.id, "power", (0..<10).collect { new ValueDatapoint<>(start.plus(it, ChronoUnit.MINUTES).toEpochMilli(), 1000d + it) })
+
+        then: "the datapoints should be updated"
+        def datapoints = assetDatapointService.getDatapoints(attributeRef)
+        datapoints.size() == 100
+        datapoints.find { it.timestamp == start.toEpochMilli() }.value == 1000d
+        datapoints.find { it.timestamp == start.plus(9, ChronoUnit.MINUTES).toEpochMilli() }.value == 1009d
+        datapoints.find { it.timestamp == start.plus(10, ChronoUnit.MINUTES).toEpochMilli() }.value == 10d
+
+        when: "60 new datapoints are stored in the same chunk which reaches the decompress threshold together with a recent datapoint"
+        def late = (0..<60).collect { new ValueDatapoint<>(start.plus(it, ChronoUnit.MINUTES).plusSeconds(30).toEpochMilli(), -1d * it) }
+        def recentTimestamp = getClockTimeOf(container)
+        assetDatapointService.upsertValues(asset.id, "power", late + [new ValueDatapoint<>(recentTimestamp, 5d)])
+
+        then: "all datapoints should be stored and the chunk should be back in the columnstore"
+        def allDatapoints = assetDatapointService.getDatapoints(attributeRef)
+        allDatapoints.size() == 161
+        allDatapoints.find { it.timestamp == start.plus(59, ChronoUnit.MINUTES).plusSeconds(30).toEpochMilli() }.value == -59d
+        allDatapoints.find { it.timestamp == recentTimestamp }.value == 5d
+        isChunkCompressed(persistenceService, start)
+    }
+
+    private static boolean isChunkCompressed(PersistenceService persistenceService, Instant timestamp) {
+        return persistenceService.doReturningTransaction { em ->
+            def query = em.createNativeQuery("""
+                SELECT bool_and(is_compressed)
+                FROM timescaledb_information.chunks
+                WHERE hypertable_name = 'asset_datapoint'
+                  AND range_start <= CAST(:timestamp AS timestamp) AND range_end > CAST(:timestamp AS timestamp)
+            """)
+            query.setParameter("timestamp", java.sql.Timestamp.from(timestamp))
+            return query.getSingleResult() as Boolean
+        }
+    }
+
+    private static long countOlderThan(PersistenceService persistenceService, String tableName, String timestampColumn, String assetId, String attributeName, Instant cutoff) {
+        return persistenceService.doReturningTransaction { em ->
+            def query = em.createNativeQuery("""
+                SELECT count(*)
+                FROM ${tableName}
+                WHERE entity_id = :assetId AND attribute_name = :attributeName AND ${timestampColumn} < CAST(:cutoff AS timestamp)
+            """)
+            query.setParameter("assetId", assetId)
+            query.setParameter("attributeName", attributeName)
+            query.setParameter("cutoff", java.sql.Timestamp.from(cutoff))
+            return (query.getSingleResult() as Number).longValue()
+        }
+    }
+
+    // Procedures such as refresh_continuous_aggregate cannot run inside a transaction
+    private static void executeOutsideTransaction(PersistenceService persistenceService, String sql) {
+        def dataSource = persistenceService.persistenceUnitProperties.get(AvailableSettings.DATASOURCE) as javax.sql.DataSource
+        def connection = dataSource.getConnection()
+        try {
+            connection.setAutoCommit(true)
+            connection.createStatement().withCloseable { it.execute(sql) }
+        } finally {
+            connection.close()
+        }
+    }
+
     private static Attribute<?>[] numberAttributes(List<String> attributeNames) {
         return attributeNames.collect { new Attribute<>(it, ValueType.NUMBER) } as Attribute<?>[]
     }
@@ -18,24 +18,33 @@
  */
 package org.openremote.test.assets
 
+import org.openremote.container.persistence.PersistenceService
 import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.datapoint.AbstractDatapointService
 import org.openremote.manager.datapoint.AssetDatapointService
+import org.openremote.manager.datapoint.DatapointNumericValueBackfill
 import org.openremote.manager.setup.SetupService
+import org.openremote.manager.web.ManagerWebService
 import org.openremote.model.asset.impl.LightAsset
 import org.openremote.model.asset.impl.ThingAsset
 import org.openremote.model.attribute.Attribute
 import org.openremote.model.attribute.AttributeRef
 import org.openremote.model.attribute.MetaItem
 import org.openremote.model.datapoint.AssetDatapoint
+import org.openremote.model.datapoint.AssetDatapointBatchQuery
+import org.openremote.model.datapoint.AssetDatapointSeries
+import org.openremote.model.datapoint.DatapointBinaryEncoding
 import org.openremote.model.datapoint.DatapointQueryTooLargeException
 import org.openremote.model.datapoint.ValueDatapoint
 import org.openremote.model.datapoint.query.AssetDatapointAllQuery
 import org.openremote.model.datapoint.query.AssetDatapointIntervalQuery
 import org.openremote.model.datapoint.query.AssetDatapointLTTBQuery
+import org.openremote.model.datapoint.query.AssetDatapointM4Query
 import org.openremote.model.geo.GeoJSONPoint
 import org.openremote.model.query.AssetQuery
 import org.openremote.model.query.filter.RealmPredicate
 import org.openremote.model.util.UniqueIdentifierGenerator
+import org.openremote.model.util.ValueUtil
 import org.openremote.model.value.MetaItemType
 import org.openremote.model.value.ValueType
 import org.openremote.setup.integration.KeycloakTestSetup
@@ -48,6 +57,8 @@ import java.time.Month
 import java.time.ZoneId
 import java.time.temporal.ChronoUnit
 
+import static org.openremote.model.Constants.KEYCLOAK_CLIENT_ID
+
 class AssetDatapointQueryTest extends Specification implements ManagerContainerTrait {
 
     def "Test lttb datapoint query"() {
@@ -531,6 +542,18 @@ class AssetDatapointQueryTest extends Specification implements ManagerContainerT
 
         /* ------------------------- */
 
+        when: "the OR_DATA_POINTS_QUERY_LIMIT environment variable is updated to the amount of datapoints"
+        assetDatapointService.maxAmountOfQueryPoints = 5
+
+        then: "all datapoints should still be returned"
+        assetDatapointService.queryDatapoints(
+                asset.getId(),
+                asset.getAttribute(attributeName).orElseThrow({ new RuntimeException("Missing attribute") }),
+                new AssetDatapointAllQuery(dateTime.minusMinutes(30), dateTime)
+        ).size() == 5
+
+        /* ------------------------- */
+
         when: "the OR_DATA_POINTS_QUERY_LIMIT environment variable is updated to 2"
         assetDatapointService.maxAmountOfQueryPoints = 2
 
@@ -547,4 +570,333 @@ class AssetDatapointQueryTest extends Specification implements ManagerContainerT
         cleanup: "Remove the limit on datapoint querying"
         assetDatapointService.maxAmountOfQueryPoints = 0
     }
+
+    def "Interval queries should return the same results with and without rollups"() {
+
+        given: "the container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+
+        and: "an asset with a number attribute"
+        def asset = assetStorageService.merge(new ThingAsset("Rollup Test")
+                .setRealm(keycloakTestSetup.realmMaster.name)
+                .addAttributes(new Attribute<>("rollupTest", ValueType.NUMBER)))
+        def attribute = asset.getAttribute("rollupTest").orElseThrow()
+
+        and: "datapoints every 7 minutes over 3 days"
+        def start = LocalDateTime.of(2025, Month.AUGUST, 1, 0, 0)
+        def datapoints = (0..<(3 * 24 * 60).intdiv(7)).collect { i ->
+            new ValueDatapoint<>(start.plusMinutes(i * 7).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), (i % 50) as Double)
+        }
+        assetDatapointService.upsertValues(asset.id, "rollupTest", datapoints)
+
+        expect: "interval queries with unaligned ranges to return the same results with and without rollups"
+        [
+                ["1 hour", AssetDatapointIntervalQuery.Formula.AVG, false],
+                ["1 day", AssetDatapointIntervalQuery.Formula.MIN, false],
+                ["6 hours", AssetDatapointIntervalQuery.Formula.MAX, true],
+                ["30 minutes", AssetDatapointIntervalQuery.Formula.SUM, false],
+                ["1 hour", AssetDatapointIntervalQuery.Formula.COUNT, false],
+                ["1 hour", AssetDatapointIntervalQuery.Formula.DIFFERENCE, false],
+        ].each { interval, formula, gapFill ->
+            def query = new AssetDatapointIntervalQuery(start.plusMinutes(13), start.plusDays(2).plusMinutes(47), interval, formula, gapFill)
+            assetDatapointService.rollupsEnabled = true
+            assert assetDatapointService.getRollup(query, attribute) != null
+            def rollupResult = assetDatapointService.queryDatapoints(asset.id, attribute, query)
+            assetDatapointService.rollupsEnabled = false
+            def rawResult = assetDatapointService.queryDatapoints(asset.id, attribute, query)
+            assert rollupResult.size() == rawResult.size()
+            rollupResult.eachWithIndex { dp, i ->
+                assert dp.timestamp == rawResult[i].timestamp
+                assert dp.value == null ? rawResult[i].value == null : Math.abs((dp.value as Double) - (rawResult[i].value as Double)) < 0.0001
+            }
+        }
+
+        and: "queries that cannot use a rollup to not use one"
+        assetDatapointService.rollupsEnabled = true
+        assetDatapointService.getRollup(new AssetDatapointIntervalQuery(start, start.plusDays(1), "1 hour", AssetDatapointIntervalQuery.Formula.MEDIAN, false), attribute) == null
+        assetDatapointService.getRollup(new AssetDatapointIntervalQuery(start, start.plusDays(1), "90 seconds", AssetDatapointIntervalQuery.Formula.AVG, false), attribute) == null
+        assetDatapointService.getRollup(new AssetDatapointIntervalQuery(start.plusSeconds(10), start.plusSeconds(50), "1 minute", AssetDatapointIntervalQuery.Formula.AVG, false), attribute) == null
+        assetDatapointService.getRollup(new AssetDatapointIntervalQuery(start, start.plusDays(3), "1 day", AssetDatapointIntervalQuery.Formula.AVG, false), attribute).tableName() == "asset_datapoint_1d"
+        assetDatapointService.getRollup(new AssetDatapointIntervalQuery(start, start.plusDays(3), "90 minutes", AssetDatapointIntervalQuery.Formula.AVG, false), attribute).tableName() == "asset_datapoint_1m"
+    }
+
+    def "Interval queries of rollups should include late datapoints written below the refreshed range"() {
+
+        given: "the container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+        def persistenceService = container.getService(PersistenceService.class)
+        def conditions = new PollingConditions(timeout: 10, delay: 0.5)
+
+        and: "an asset with a number attribute"
+        def asset = assetStorageService.merge(new ThingAsset("Rollup Late Test")
+                .setRealm(keycloakTestSetup.realmMaster.name)
+                .addAttributes(new Attribute<>("rollupLateTest", ValueType.NUMBER)))
+        def attribute = asset.getAttribute("rollupLateTest").orElseThrow()
+        def start = LocalDateTime.of(2025, Month.SEPTEMBER, 1, 0, 0)
+        def toMillis = { LocalDateTime time -> time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() }
+
+        and: "datapoints every 7 minutes over 2 days that are materialized in the rollups"
+        assetDatapointService.upsertValues(asset.id, "rollupLateTest", (0..<(2 * 24 * 60).intdiv(7)).collect { i ->
+            new ValueDatapoint<>(toMillis(start.plusMinutes(i * 7)), (i % 50) as Double)
+        })
+        persistenceService.doAutoCommitWork { connection ->
+            ["asset_datapoint_1m", "asset_datapoint_1h", "asset_datapoint_1d"].each {
+                connection.createStatement().withCloseable { st -> st.execute("CALL public.refresh_continuous_aggregate('${it}', NULL, NULL)") }
+            }
+        }
+
+        when: "late datapoints are written into the materialized range"
+        assetDatapointService.upsertValues(asset.id, "rollupLateTest", (0..<12).collect { i ->
+            new ValueDatapoint<>(toMillis(start.plusHours(20 + i).plusMinutes(3)), 1000d + i)
+        })
+
+        then: "interval queries of the rollups should return the same results as of the raw datapoints"
+        conditions.eventually {
+            [
+                    ["1 hour", AssetDatapointIntervalQuery.Formula.AVG],
+                    ["1 day", AssetDatapointIntervalQuery.Formula.MAX],
+                    ["1 hour", AssetDatapointIntervalQuery.Formula.COUNT],
+            ].each { interval, formula ->
+                def query = new AssetDatapointIntervalQuery(start, start.plusDays(2), interval, formula, false)
+                assetDatapointService.rollupsEnabled = true
+                assert assetDatapointService.getRollup(query, attribute) != null
+                def rollupResult = assetDatapointService.queryDatapoints(asset.id, attribute, query)
+                assetDatapointService.rollupsEnabled = false
+                def rawResult = assetDatapointService.queryDatapoints(asset.id, attribute, query)
+                assert rollupResult.size() == rawResult.size()
+                rollupResult.eachWithIndex { dp, i ->
+                    assert dp.timestamp == rawResult[i].timestamp
+                    assert Math.abs((dp.value as Double) - (rawResult[i].value as Double)) < 0.0001
+                }
+            }
+        }
+
+        cleanup: "rollups are enabled again"
+        assetDatapointService.rollupsEnabled = true
+    }
+
+    def "M4 query should return the first, last, minimum and maximum datapoint of each bucket"() {
+
+        given: "the container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+
+        and: "an asset with a number and a text attribute"
+        def asset = assetStorageService.merge(new ThingAsset("M4 Test")
+                .setRealm(keycloakTestSetup.realmMaster.name)
+                .addAttributes(new Attribute<>("m4Test", ValueType.NUMBER), new Attribute<>("m4Text", ValueType.TEXT)))
+        def attribute = asset.getAttribute("m4Test").orElseThrow()
+
+        and: "datapoints every 5 minutes over an hour with a peak and a dip in each half hour"
+        def end = LocalDateTime.of(2025, Month.AUGUST, 1, 12, 0)
+        def values = [55: 10d, 50: 90d, 45: 5d, 40: 20d, 35: 30d, 25: 15d, 20: 15d, 15: 40d, 10: 1d, 5: 20d]
+        assetDatapointService.upsertValues(asset.id, "m4Test", values.collect { minutesAgo, value ->
+            new ValueDatapoint<>(end.minusMinutes(minutesAgo).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), value)
+        })
+
+        when: "the hour is queried with two buckets"
+        def datapoints = assetDatapointService.queryDatapoints(asset.id, attribute, new AssetDatapointM4Query(end.minusMinutes(60), end, 2))
+
+        then: "the first, minimum, maximum and last datapoint of each bucket should be returned in chronological order"
+        datapoints.collect { it.value } == [10d, 90d, 5d, 30d, 15d, 40d, 1d, 20d]
+        datapoints.collect { it.timestamp } == [55, 50, 45, 35, 25, 15, 10, 5].collect {
+            end.minusMinutes(it).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+        }
+
+        when: "the hour is queried with more buckets than datapoints"
+        datapoints = assetDatapointService.queryDatapoints(asset.id, attribute, new AssetDatapointM4Query(end.minusMinutes(60), end, 1000))
+
+        then: "every datapoint should be returned once"
+        datapoints.size() == values.size()
+
+        when: "a text attribute is queried"
+        assetDatapointService.queryDatapoints(asset.id, asset.getAttribute("m4Text").orElseThrow(), new AssetDatapointM4Query(end.minusMinutes(60), end, 2))
+
+        then: "the query should be rejected"
+        thrown(IllegalStateException)
+    }
+
+    def "Datapoints of several attributes should be returned by a batch query"() {
+
+        given: "the container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+
+        and: "an authenticated user of the city realm"
+        def accessToken = authenticate(
+                container,
+                keycloakTestSetup.realmCity.name,
+                KEYCLOAK_CLIENT_ID,
+                "smartcity",
+                "smartcity"
+        )
+
+        and: "datapoints for the brightness of two lights"
+        def lights = ["Light 1", "Light 2"].collect { name ->
+            assetStorageService.find(new AssetQuery()
+                    .types(LightAsset.class)
+                    .realm(new RealmPredicate(keycloakTestSetup.realmCity.name))
+                    .names(name))
+        }
+        def dateTime = LocalDateTime.of(2025, Month.AUGUST, 7, 9, 0)
+        lights.eachWithIndex { light, i ->
+            (1..3).each { j -> assetDatapointService.upsertValue(light.id, "brightness", (i * 10 + j) as Double, dateTime.minusMinutes(j)) }
+        }
+        def batchUri = serverUri(serverPort).clone()
+                .replacePath(ManagerWebService.API_PATH)
+                .path(keycloakTestSetup.realmCity.name)
+                .path("asset")
+                .path("datapoint")
+                .path("batch")
+                .build()
+        def postBatchQuery = { AssetDatapointBatchQuery batchQuery ->
+            def connection = (HttpURLConnection) batchUri.toURL().openConnection()
+            connection.setRequestMethod("POST")
+            connection.setDoOutput(true)
+            connection.setRequestProperty("Authorization", "Bearer ${accessToken}")
+            connection.setRequestProperty("Content-Type", "application/json")
+            connection.setRequestProperty("Accept", "application/json")
+            connection.outputStream.withCloseable { it.write(ValueUtil.asJSON(batchQuery).orElseThrow().getBytes("UTF-8")) }
+            return connection
+        }
+
+        when: "a batch query for both attributes is made"
+        def connection = postBatchQuery(new AssetDatapointBatchQuery(
+                lights.collect { new AttributeRef(it.id, "brightness") } as AttributeRef[],
+                new AssetDatapointAllQuery(dateTime.minusMinutes(30), dateTime)))
+
+        then: "a series should be returned for each attribute in request order"
+        connection.responseCode == 200
+        def series = ValueUtil.JSON.readValue(connection.inputStream, AssetDatapointSeries[].class)
+        series.length == 2
+        series[0].attributeRef == new AttributeRef(lights[0].id, "brightness")
+        series[0].datapoints.collect { it.value }.toSet() == [1d, 2d, 3d].toSet()
+        series[1].attributeRef == new AttributeRef(lights[1].id, "brightness")
+        series[1].datapoints.collect { it.value }.toSet() == [11d, 12d, 13d].toSet()
+
+        when: "the datapoints of one attribute are requested in the binary encoding"
+        def datapointUri = serverUri(serverPort).clone()
+                .replacePath(ManagerWebService.API_PATH)
+                .path(keycloakTestSetup.realmCity.name)
+                .path("asset")
+                .path("datapoint")
+                .path(lights[1].id)
+                .path("brightness")
+                .build()
+        connection = (HttpURLConnection) datapointUri.toURL().openConnection()
+        connection.setRequestMethod("POST")
+        connection.setDoOutput(true)
+        connection.setRequestProperty("Authorization", "Bearer ${accessToken}")
+        connection.setRequestProperty("Content-Type", "application/json")
+        connection.setRequestProperty("Accept", DatapointBinaryEncoding.MEDIA_TYPE)
+        connection.outputStream.withCloseable { it.write(ValueUtil.asJSON(new AssetDatapointAllQuery(dateTime.minusMinutes(30), dateTime)).orElseThrow().getBytes("UTF-8")) }
+
+        then: "the decoded datapoints should match the stored datapoints"
+        connection.responseCode == 200
+        connection.contentType == DatapointBinaryEncoding.MEDIA_TYPE
+        def decoded = DatapointBinaryEncoding.decode(connection.inputStream)
+        decoded.collect { it.timestamp } == series[1].datapoints.collect { it.timestamp }
+        decoded.collect { it.value } == series[1].datapoints.collect { it.value }
+
+        when: "a batch query includes an attribute that does not exist"
+        connection = postBatchQuery(new AssetDatapointBatchQuery(
+                [new AttributeRef(lights[0].id, "brightness"), new AttributeRef(lights[1].id, "doesNotExist")] as AttributeRef[],
+                new AssetDatapointAllQuery(dateTime.minusMinutes(30), dateTime)))
+
+        then: "the request should fail"
+        connection.responseCode == 404
+
+        when: "a batch query without a query is made"
+        connection = postBatchQuery(new AssetDatapointBatchQuery(
+                [new AttributeRef(lights[0].id, "brightness")] as AttributeRef[], null))
+
+        then: "the request should be rejected"
+        connection.responseCode == 400
+    }
+
+    def "Datapoints without a numeric value should be queried from their JSON value and backfilled"() {
+
+        given: "the container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+        def persistenceService = container.getService(PersistenceService.class)
+
+        and: "an asset with a number attribute"
+        def asset = assetStorageService.merge(new ThingAsset("Backfill Test")
+                .setRealm(keycloakTestSetup.realmMaster.name)
+                .addAttributes(new Attribute<>("backfillTest", ValueType.NUMBER)))
+        def attribute = asset.getAttribute("backfillTest").orElseThrow()
+        def start = LocalDateTime.of(2025, Month.OCTOBER, 1, 0, 0)
+
+        and: "datapoints stored without a numeric value like before the column existed"
+        assetDatapointService.upsertValues(asset.id, "backfillTest", (0..<10).collect { i ->
+            new ValueDatapoint<>(start.plusHours(i).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), i as Double)
+        })
+        def countWithoutNumericValue = {
+            persistenceService.doReturningTransaction { em ->
+                (em.createNativeQuery("SELECT count(*) FROM asset_datapoint WHERE entity_id = :id AND numeric_value IS NULL")
+                        .setParameter("id", asset.id)
+                        .getSingleResult() as Number).longValue()
+            }
+        }
+        persistenceService.doTransaction { em ->
+            em.createNativeQuery("UPDATE asset_datapoint SET numeric_value = NULL WHERE entity_id = :id")
+                    .setParameter("id", asset.id)
+                    .executeUpdate()
+        }
+        assert countWithoutNumericValue() == 10
+
+        expect: "queries to convert the JSON value"
+        assetDatapointService.queryDatapoints(asset.id, attribute, new AssetDatapointAllQuery(start, start.plusHours(10)))
+                .collect { it.value as Double }.sort() == (0..<10).collect { it as Double }
+
+        when: "the chunks are queued and backfilled"
+        persistenceService.doTransaction { em ->
+            em.createNativeQuery("""
+                INSERT INTO datapoint_numeric_value_backfill (relation, range_start)
+                SELECT format('%I.%I', chunk_schema, chunk_name), range_start
+                FROM timescaledb_information.chunks
+                WHERE hypertable_name = 'asset_datapoint'
+                ON CONFLICT DO NOTHING
+            """).executeUpdate()
+        }
+        new DatapointNumericValueBackfill(persistenceService).run()
+
+        then: "the numeric value should be stored and the queue be empty"
+        countWithoutNumericValue() == 0
+        persistenceService.doReturningTransaction { em ->
+            (em.createNativeQuery("SELECT count(*) FROM datapoint_numeric_value_backfill").getSingleResult() as Number).longValue()
+        } == 0
+    }
+
+    def "Numeric values should be derived from number and boolean datapoint values"() {
+        expect: "the numeric value of the JSON value"
+        AbstractDatapointService.getNumericValue(valueJSON) == numericValue
+
+        where:
+        valueJSON   | numericValue
+        "12.5"      | 12.5d
+        "-3"        | -3d
+        "1.0E10"    | 1.0E10d
+        "1e400"     | null
+        "true"      | 1d
+        "false"     | 0d
+        "\"12.5\""  | null
+        "null"      | null
+        "[1,2]"     | null
+        "{\"a\":1}" | null
+        null        | null
+    }
 }
@@ -19,6 +19,7 @@
 package org.openremote.test.assets
 
 import jakarta.ws.rs.WebApplicationException
+import jakarta.ws.rs.client.Entity
 import io.netty.channel.ChannelHandler
 import io.netty.handler.codec.string.StringDecoder
 import io.netty.handler.codec.string.StringEncoder
@@ -28,6 +29,7 @@ import org.openremote.agent.protocol.io.AbstractNettyIOClient
 import org.openremote.agent.protocol.simulator.SimulatorProtocol
 import org.openremote.agent.protocol.websocket.WebsocketIOClient
 import org.openremote.manager.agent.AgentService
+import org.openremote.manager.asset.AssetProcessingService
 import org.openremote.manager.asset.AssetStorageService
 import org.openremote.manager.datapoint.AssetDatapointService
 import org.openremote.manager.datapoint.AssetPredictedDatapointService
@@ -36,12 +38,15 @@ import org.openremote.manager.security.ManagerIdentityService
 import org.openremote.manager.setup.SetupService
 import org.openremote.model.asset.agent.ConnectionStatus
 import org.openremote.model.asset.impl.BuildingAsset
+import org.openremote.model.asset.impl.ThingAsset
 import org.openremote.model.attribute.Attribute
+import org.openremote.model.attribute.AttributeEvent
 import org.openremote.model.attribute.AttributeRef
 import org.openremote.model.attribute.MetaItem
 import org.openremote.model.auth.OAuthPasswordGrant
 import org.openremote.model.datapoint.AssetPredictedDatapointEvent
 import org.openremote.model.datapoint.AssetPredictedDatapointResource
+import org.openremote.model.datapoint.DatapointImportFormat
 import org.openremote.model.datapoint.ValueDatapoint
 import org.openremote.model.datapoint.query.AssetDatapointIntervalQuery
 import org.openremote.model.event.TriggeredEventSubscription
@@ -68,6 +73,7 @@ import static java.util.concurrent.TimeUnit.*
 import static org.openremote.model.Constants.KEYCLOAK_CLIENT_ID
 import static org.openremote.model.Constants.MASTER_REALM
 import static org.openremote.model.value.MetaItemType.ACCESS_PUBLIC_WRITE
+import static org.openremote.model.value.MetaItemType.STORE_DATA_POINTS
 import static org.openremote.setup.integration.ManagerTestSetup.thingLightToggleAttributeName
 import static spock.util.matcher.HamcrestMatchers.closeTo
 
@@ -440,6 +446,180 @@ class AssetDatapointTest extends Specification implements ManagerContainerTrait
         assert predictedData.count {it.value == false} == 2
     }
 
+    def "Test datapoints are stored when batch writing is enabled"() {
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.2)
+
+        and: "the server container is started with datapoint batch writing enabled"
+        def container = startContainer(defaultConfig() << [
+            (AssetDatapointService.OR_DATA_POINTS_WRITE_FLUSH_MILLIS): "100",
+            (AssetDatapointService.OR_DATA_POINTS_WRITE_BATCH_SIZE): "10"
+        ], defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+
+        and: "an asset with an attribute that stores datapoints"
+        def asset = assetStorageService.merge(new ThingAsset("Datapoint Batch Test")
+            .setRealm(keycloakTestSetup.realmMaster.name)
+            .addAttributes(new Attribute<>("batchTest", ValueType.NUMBER)
+                .addMeta(new MetaItem<>(STORE_DATA_POINTS, true))))
+        def attributeRef = new AttributeRef(asset.id, "batchTest")
+        def timestamp = getClockTimeOf(container)
+
+        when: "more attribute events than the batch size are sent"
+        (1..25).each { i ->
+            assetProcessingService.sendAttributeEvent(new AttributeEvent(asset.id, "batchTest", i as Double, timestamp + i * 1000))
+        }
+
+        then: "a datapoint should be stored for each event"
+        conditions.eventually {
+            def datapoints = assetDatapointService.getDatapoints(attributeRef)
+            assert datapoints.size() == 25
+            assert datapoints.collect { it.value as Double }.toSet() == (1..25).collect { it as Double }.toSet()
+        }
+
+        when: "datapoints with the same timestamp as stored datapoints are added to the writer"
+        assetDatapointService.datapointWriter.add(asset.id, "batchTest", "100", timestamp + 1000)
+        assetDatapointService.datapointWriter.add(asset.id, "batchTest", "101", timestamp + 1000)
+        assetDatapointService.datapointWriter.flush()
+
+        then: "the stored datapoint should be replaced by the last value"
+        def datapoints = assetDatapointService.getDatapoints(attributeRef)
+        datapoints.size() == 25
+        datapoints.find { it.timestamp == timestamp + 1000 }.value == 101d
+    }
+
+    def "Test historical datapoints are imported from CSV and NDJSON streams"() {
+        given: "the server container is started with a small import batch size"
+        def container = startContainer(defaultConfig() << [
+            (AssetDatapointService.OR_DATA_POINTS_IMPORT_BATCH_SIZE): "2"
+        ], defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+
+        and: "an asset with an attribute that stores datapoints"
+        def asset = assetStorageService.merge(new ThingAsset("Datapoint Import Test")
+            .setRealm(keycloakTestSetup.realmMaster.name)
+            .addAttributes(new Attribute<>("importTest", ValueType.NUMBER)
+                .addMeta(new MetaItem<>(STORE_DATA_POINTS, true))))
+        def attributeRef = new AttributeRef(asset.id, "importTest")
+
+        and: "an authenticated client"
+        def accessToken = authenticate(
+            container,
+            MASTER_REALM,
+            KEYCLOAK_CLIENT_ID,
+            "testuser1",
+            "testuser1"
+        )
+        def importTarget = getClientApiTarget(serverUri(serverPort), MASTER_REALM, accessToken)
+            .path("asset/datapoint/" + asset.id + "/importTest/import")
+
+        when: "a CSV stream with a header, unordered and duplicate timestamps is imported"
+        def response = importTarget.request().post(Entity.entity(
+            "timestamp,value\n" +
+                "1735689600000,1\n" +
+                "2025-01-01T00:30:00Z,2.5\n" +
+                "1735689900000,\"3\"\n" +
+                "1735689600000,4\n",
+            DatapointImportFormat.CSV_MEDIA_TYPE))
+
+        then: "the datapoints should be stored with the last value of each timestamp"
+        response.withCloseable { r ->
+            assert r.status == 204
+            return true
+        }
+        def datapoints = assetDatapointService.getDatapoints(attributeRef)
+        datapoints.size() == 3
+        datapoints.find { it.timestamp == 1735689600000L }.value == 4d
+        datapoints.find { it.timestamp == 1735689900000L }.value == 3d
+        datapoints.find { it.timestamp == 1735691400000L }.value == 2.5d
+
+        when: "an NDJSON stream replacing a stored datapoint is imported"
+        response = importTarget.request().post(Entity.entity(
+            "{\"x\": 1735689600000, \"y\": 10}\n{\"x\": \"2025-01-01T01:00:00Z\", \"y\": 11}\n",
+            DatapointImportFormat.NDJSON_MEDIA_TYPE))
+
+        then: "the datapoints should be stored"
+        response.withCloseable { r ->
+            assert r.status == 204
+            return true
+        }
+        def importedDatapoints = assetDatapointService.getDatapoints(attributeRef)
+        importedDatapoints.size() == 4
+        importedDatapoints.find { it.timestamp == 1735689600000L }.value == 10d
+        importedDatapoints.find { it.timestamp == 1735693200000L }.value == 11d
+
+        when: "a stream with an invalid line is imported"
+        response = importTarget.request().post(Entity.entity(
+            "1735696800000,1\nnot a datapoint\n",
+            DatapointImportFormat.CSV_MEDIA_TYPE))
+
+        then: "the import should be rejected"
+        response.withCloseable { r ->
+            assert r.status == 400
+            return true
+        }
+
+        when: "streams with a missing value, a value of the wrong type or an invalid first datapoint are imported"
+        def responses = [
+            importTarget.request().post(Entity.entity("1735700400000,\n", DatapointImportFormat.CSV_MEDIA_TYPE)),
+            importTarget.request().post(Entity.entity("{\"x\": 1735700400000}\n", DatapointImportFormat.NDJSON_MEDIA_TYPE)),
+            importTarget.request().post(Entity.entity("{\"x\": 1735700400000, \"y\": null}\n", DatapointImportFormat.NDJSON_MEDIA_TYPE)),
+            importTarget.request().post(Entity.entity("1735700400000,abc\n", DatapointImportFormat.CSV_MEDIA_TYPE)),
+            importTarget.request().post(Entity.entity("{\"x\": 1735700400000, \"y\": {\"a\": 1}}\n", DatapointImportFormat.NDJSON_MEDIA_TYPE))
+        ]
+
+        then: "each import should be rejected and nothing stored"
+        responses.every { rejected ->
+            rejected.withCloseable { r ->
+                assert r.status == 400
+                return true
+            }
+        }
+        assetDatapointService.getDatapoints(attributeRef).find { it.timestamp == 1735700400000L } == null
+    }
+
+    def "Test predicted datapoints are replaced by range"() {
+        given: "the server container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetPredictedDatapointService = container.getService(AssetPredictedDatapointService.class)
+
+        and: "an asset with a predicted forecast for the next four hours"
+        def asset = assetStorageService.merge(new ThingAsset("Predicted Replace Test")
+            .setRealm(keycloakTestSetup.realmMaster.name)
+            .addAttributes(new Attribute<>("replaceTest", ValueType.NUMBER)))
+        def attributeRef = new AttributeRef(asset.id, "replaceTest")
+        def hour = 3600000L
+        def start = Instant.ofEpochMilli(getClockTimeOf(container)).truncatedTo(ChronoUnit.HOURS).plus(1, ChronoUnit.HOURS).toEpochMilli()
+        assetPredictedDatapointService.updateValues(asset.id, "replaceTest", (0..3).collect {
+            new ValueDatapoint<>(start + it * hour, it as Double)
+        })
+
+        when: "a new forecast for the middle of that range is written"
+        assetPredictedDatapointService.replaceValues(asset.id, "replaceTest", [
+            new ValueDatapoint<>(start + hour, 10d),
+            new ValueDatapoint<>(start + (long) (1.5 * hour), 15d),
+            new ValueDatapoint<>(start + 2 * hour, 20d)
+        ])
+
+        then: "only the datapoints in the range of the new forecast should be replaced"
+        def datapoints = assetPredictedDatapointService.getDatapoints(attributeRef).sort { it.timestamp }
+        datapoints.collect { it.timestamp } == [start, start + hour, start + (long) (1.5 * hour), start + 2 * hour, start + 3 * hour]
+        datapoints.collect { it.value } == [0d, 10d, 15d, 20d, 3d]
+
+        when: "all datapoints are replaced by an empty forecast"
+        assetPredictedDatapointService.replaceAllValues(asset.id, "replaceTest", [])
+
+        then: "no predicted datapoints should be left"
+        assetPredictedDatapointService.getDatapoints(attributeRef).isEmpty()
+    }
+
     def "Test anonymous predicted datapoint writes are allowed for public write attributes"() {
         given: "expected conditions"
         def conditions = new PollingConditions(timeout: 15, delay: 0.2)
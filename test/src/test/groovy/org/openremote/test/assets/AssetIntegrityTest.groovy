@@ -21,12 +21,14 @@ package org.openremote.test.assets
 import jakarta.ws.rs.WebApplicationException
 import org.jboss.resteasy.api.validation.ViolationReport
 import org.openremote.container.timer.TimerService
+import org.openremote.manager.asset.AssetProcessingService
 import org.openremote.manager.asset.AssetStorageService
 import org.openremote.manager.datapoint.AssetDatapointService
 import org.openremote.manager.event.ClientEventService
 import org.openremote.manager.gateway.GatewayService
 import org.openremote.manager.setup.SetupService
 import org.openremote.model.asset.AssetResource
+import org.openremote.model.asset.agent.DefaultAgentLink
 import org.openremote.model.asset.impl.GatewayAsset
 import org.openremote.model.asset.impl.GroupAsset
 import org.openremote.model.asset.impl.RoomAsset
@@ -34,7 +36,10 @@ import org.openremote.model.asset.impl.ThingAsset
 import org.openremote.model.attribute.Attribute
 import org.openremote.model.attribute.AttributeState
 import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.MetaItem
 import org.openremote.model.util.UniqueIdentifierGenerator
+import org.openremote.model.value.MetaItemType
 import org.openremote.model.value.ValueType
 import org.openremote.setup.integration.KeycloakTestSetup
 import org.openremote.setup.integration.ManagerTestSetup
@@ -689,4 +694,228 @@ class AssetIntegrityTest extends Specification implements ManagerContainerTrait
         }
 
     }
+
+    def "Attribute event processing uses the latest merged asset state"() {
+        given: "the server container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def conditions = new PollingConditions(timeout: 5, delay: 0.2)
+
+        and: "an asset with a custom attribute"
+        ThingAsset testAsset = new ThingAsset("Cache Test")
+                .setRealm(keycloakTestSetup.realmMaster.name)
+                .addAttributes(new Attribute<>("cacheTest", ValueType.NUMBER))
+        testAsset = assetStorageService.merge(testAsset)
+        def now = System.currentTimeMillis()
+
+        when: "an attribute event is processed"
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(testAsset.id, "cacheTest", 1d, now - 10000))
+
+        then: "the value should be stored"
+        conditions.eventually {
+            def asset = assetStorageService.find(testAsset.id, true)
+            assert asset.getAttribute("cacheTest").flatMap { it.value }.orElse(null) == 1d
+        }
+
+        when: "the attribute is updated through a merge with a newer timestamp"
+        testAsset = assetStorageService.find(testAsset.id, true) as ThingAsset
+        testAsset.getAttribute("cacheTest").get().setValue(2d, now - 2000)
+        testAsset = assetStorageService.merge(testAsset)
+
+        and: "an attribute event older than the merged value is processed"
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(testAsset.id, "cacheTest", 3d, now - 5000))
+
+        then: "the event should be treated as outdated and the merged value retained"
+        new PollingConditions(timeout: 2, initialDelay: 1).eventually {
+            def asset = assetStorageService.find(testAsset.id, true)
+            assert asset.getAttribute("cacheTest").flatMap { it.value }.orElse(null) == 2d
+        }
+
+        when: "a newer attribute event is processed"
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(testAsset.id, "cacheTest", 4d, now))
+
+        then: "the value should be stored"
+        conditions.eventually {
+            def asset = assetStorageService.find(testAsset.id, true)
+            assert asset.getAttribute("cacheTest").flatMap { it.value }.orElse(null) == 4d
+        }
+    }
+
+    def "Gateway sourced attribute events do not modify the cached attribute meta"() {
+        given: "the server container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def conditions = new PollingConditions(timeout: 5, delay: 0.2)
+
+        and: "an asset with an attribute linked to an agent that doesn't exist"
+        ThingAsset testAsset = assetStorageService.merge(new ThingAsset("Cache Meta Test")
+                .setRealm(keycloakTestSetup.realmMaster.name)
+                .addAttributes(new Attribute<>("linkTest", ValueType.NUMBER)
+                        .addMeta(new MetaItem<>(MetaItemType.AGENT_LINK, new DefaultAgentLink("missingAgent")))))
+        def now = System.currentTimeMillis()
+
+        when: "an attribute event from a gateway is processed"
+        assetProcessingService.sendAttributeEvent(
+                new AttributeEvent(testAsset.id, "linkTest", 1d, now - 10000),
+                GatewayService.class.getSimpleName())
+
+        then: "the value should be stored and the cached attribute should still be agent linked"
+        conditions.eventually {
+            def asset = assetStorageService.find(testAsset.id, true)
+            assert asset.getAttribute("linkTest").flatMap { it.value }.orElse(null) == 1d
+            def cachedAsset = assetStorageService.assetStateCache.getIfPresent(testAsset.id)
+            assert cachedAsset != null
+            assert cachedAsset.getAttribute("linkTest").get().hasMeta(MetaItemType.AGENT_LINK)
+        }
+
+        when: "a local attribute event is processed"
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(testAsset.id, "linkTest", 2d, now - 5000))
+
+        then: "the agent service should intercept it so the value is not stored"
+        new PollingConditions(timeout: 2, initialDelay: 1).eventually {
+            def asset = assetStorageService.find(testAsset.id, true)
+            assert asset.getAttribute("linkTest").flatMap { it.value }.orElse(null) == 1d
+            def cachedAsset = assetStorageService.assetStateCache.getIfPresent(testAsset.id)
+            assert cachedAsset.getAttribute("linkTest").get().hasMeta(MetaItemType.AGENT_LINK)
+        }
+    }
+
+    def "Attribute values are stored when group commit is enabled"() {
+        given: "the server container is started with attribute value group commit enabled"
+        def container = startContainer(defaultConfig() << [(AssetStorageService.OR_ATTRIBUTE_VALUE_BATCH_WINDOW_MILLIS): "20"], defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+
+        and: "several assets"
+        def assets = (1..5).collect {
+            assetStorageService.merge(new ThingAsset("Batch Test " + it)
+                    .setRealm(keycloakTestSetup.realmMaster.name)
+                    .addAttributes(new Attribute<>("batchTest", ValueType.NUMBER)))
+        }
+
+        when: "attribute events are sent for all assets in quick succession"
+        (1..10).each { i ->
+            assets.each { asset ->
+                assetProcessingService.sendAttributeEvent(new AttributeEvent(asset.id, "batchTest", i as Double))
+            }
+        }
+
+        then: "the last value of each asset should be stored"
+        new PollingConditions(timeout: 10, delay: 0.2).eventually {
+            assets.each { asset ->
+                def storedAsset = assetStorageService.find(asset.id, true)
+                assert storedAsset.getAttribute("batchTest").flatMap { it.value }.orElse(null) == 10d
+            }
+        }
+
+        when: "an attribute event is sent for an asset that has been deleted"
+        assetStorageService.delete([assets[0].id])
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(assets[0].id, "batchTest", 11d))
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(assets[1].id, "batchTest", 11d))
+
+        then: "the other asset should still be updated"
+        new PollingConditions(timeout: 10, delay: 0.2).eventually {
+            def storedAsset = assetStorageService.find(assets[1].id, true)
+            assert storedAsset.getAttribute("batchTest").flatMap { it.value }.orElse(null) == 11d
+        }
+    }
+
+    def "Attribute events are coalesced for attributes with the coalesce events meta item"() {
+        given: "the server container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def conditions = new PollingConditions(timeout: 10, delay: 0.2)
+
+        and: "an asset with a coalesced attribute"
+        ThingAsset testAsset = assetStorageService.merge(new ThingAsset("Coalesce Test")
+                .setRealm(keycloakTestSetup.realmMaster.name)
+                .addAttributes(new Attribute<>("coalesceTest", ValueType.NUMBER)
+                        .addMeta(new MetaItem<>(MetaItemType.COALESCE_EVENTS, true))))
+        def ref = new AttributeRef(testAsset.id, "coalesceTest")
+        def now = System.currentTimeMillis()
+
+        when: "a first attribute event is processed"
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(ref, 0d, now - 10000))
+
+        then: "the value should be stored and the attribute should be known to be coalesced"
+        conditions.eventually {
+            def asset = assetStorageService.find(testAsset.id, true)
+            assert asset.getAttribute("coalesceTest").flatMap { it.value }.orElse(null) == 0d
+            assert assetProcessingService.coalescedAttributes.contains(ref)
+        }
+
+        when: "many attribute events are sent in quick succession"
+        (1..200).each { i ->
+            assetProcessingService.sendAttributeEvent(new AttributeEvent(ref, i as Double, now - 10000 + i))
+        }
+
+        then: "the last value should be stored and no events should be left pending"
+        conditions.eventually {
+            def asset = assetStorageService.find(testAsset.id, true)
+            assert asset.getAttribute("coalesceTest").flatMap { it.value }.orElse(null) == 200d
+            assert !assetProcessingService.pendingCoalescedEvents.containsKey(ref)
+        }
+
+        when: "the asset is modified"
+        testAsset = assetStorageService.find(testAsset.id, true) as ThingAsset
+        testAsset.getAttribute("coalesceTest").get().getMeta().remove(MetaItemType.COALESCE_EVENTS)
+        assetStorageService.merge(testAsset)
+
+        then: "the attribute should no longer be known to be coalesced"
+        conditions.eventually {
+            assert !assetProcessingService.coalescedAttributes.contains(ref)
+        }
+    }
+
+    def "Data points of superseded attribute events are stored for attributes with the coalesce events store data points meta item"() {
+        given: "the server container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+        def conditions = new PollingConditions(timeout: 10, delay: 0.2)
+
+        and: "an asset with a coalesced attribute that stores the data points of superseded events"
+        ThingAsset testAsset = assetStorageService.merge(new ThingAsset("Coalesce Data Point Test")
+                .setRealm(keycloakTestSetup.realmMaster.name)
+                .addAttributes(new Attribute<>("coalesceTest", ValueType.NUMBER)
+                        .addMeta(
+                                new MetaItem<>(MetaItemType.COALESCE_EVENTS, true),
+                                new MetaItem<>(MetaItemType.COALESCE_EVENTS_STORE_DATA_POINTS, true),
+                                new MetaItem<>(MetaItemType.STORE_DATA_POINTS, true))))
+        def ref = new AttributeRef(testAsset.id, "coalesceTest")
+        def now = System.currentTimeMillis()
+
+        when: "a first attribute event is processed"
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(ref, 0d, now - 10000))
+
+        then: "the attribute should be known to store the data points of superseded events"
+        conditions.eventually {
+            assert assetProcessingService.coalescedAttributes.contains(ref)
+            assert assetProcessingService.coalescedDatapointAttributes.contains(ref)
+        }
+
+        when: "many attribute events are sent in quick succession"
+        (1..200).each { i ->
+            assetProcessingService.sendAttributeEvent(new AttributeEvent(ref, i as Double, now - 10000 + i))
+        }
+
+        then: "the last value should be applied and a data point should be stored for every event"
+        conditions.eventually {
+            def asset = assetStorageService.find(testAsset.id, true)
+            assert asset.getAttribute("coalesceTest").flatMap { it.value }.orElse(null) == 200d
+            assert !assetProcessingService.pendingCoalescedEvents.containsKey(ref)
+            def datapoints = assetDatapointService.getDatapoints(ref)
+            assert datapoints.size() == 201
+            assert datapoints.collect { it.value as Double }.sort() == (0..200).collect { it as Double }
+        }
+    }
 }
@@ -20,9 +20,11 @@ package org.openremote.test.assets
 
 import jakarta.ws.rs.ForbiddenException
 import jakarta.ws.rs.WebApplicationException
+import org.openremote.manager.asset.AssetStorageService
 import org.openremote.manager.setup.SetupService
 import org.openremote.model.asset.Asset
 import org.openremote.model.asset.AssetResource
+import org.openremote.model.asset.UserAssetLink
 import org.openremote.model.asset.impl.BuildingAsset
 import org.openremote.model.asset.impl.RoomAsset
 import org.openremote.model.attribute.*
@@ -1160,4 +1162,62 @@ class AssetPermissionsTest extends Specification implements ManagerContainerTrai
            return true
         }
     }
+
+    def "Cached attribute write authorization follows asset and user asset link changes"() {
+        given: "the server container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def managerTestSetup = container.getService(SetupService.class).getTaskOfType(ManagerTestSetup.class)
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def conditions = new PollingConditions(delay: 0.2, timeout: 5)
+
+        and: "the asset resource of restricted testuser3"
+        def accessToken = authenticate(
+                container,
+                keycloakTestSetup.realmBuilding.name,
+                KEYCLOAK_CLIENT_ID,
+                "testuser3",
+                "testuser3"
+        )
+        def assetResource = getClientApiTarget(serverUri(serverPort), keycloakTestSetup.realmBuilding.name, accessToken).proxy(AssetResource.class)
+
+        when: "a private asset attribute is written on a user asset"
+        assetResource.writeAttributeValue(null, managerTestSetup.apartment1LivingroomId, "lightSwitch", false)
+
+        then: "access should be forbidden"
+        WebApplicationException ex = thrown()
+        ex.response.withCloseable { r ->
+            assert r.status == 403
+            return true
+        }
+
+        when: "the attribute is made writable for restricted users"
+        def asset = assetStorageService.find(managerTestSetup.apartment1LivingroomId)
+        asset.getAttribute("lightSwitch").get().addOrReplaceMeta(new MetaItem<>(ACCESS_RESTRICTED_WRITE, true))
+        assetStorageService.merge(asset)
+
+        then: "the attribute should eventually be writable"
+        conditions.eventually {
+            assetResource.writeAttributeValue(null, managerTestSetup.apartment1LivingroomId, "lightSwitch", false)
+            asset = assetStorageService.find(managerTestSetup.apartment1LivingroomId)
+            assert !asset.getAttribute("lightSwitch").flatMap { it.value }.orElse(true)
+        }
+
+        when: "the user asset link is removed"
+        assetStorageService.deleteUserAssetLinks([
+            new UserAssetLink(keycloakTestSetup.realmBuilding.name, keycloakTestSetup.testuser3Id, managerTestSetup.apartment1LivingroomId)
+        ])
+
+        then: "access should eventually be forbidden"
+        conditions.eventually {
+            try {
+                assetResource.writeAttributeValue(null, managerTestSetup.apartment1LivingroomId, "lightSwitch", true)
+                assert false
+            } catch (WebApplicationException e) {
+                e.response.withCloseable { r ->
+                    assert r.status == 403
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.test.assets
+
+import org.openremote.manager.asset.AssetProcessingException
+import org.openremote.manager.asset.AttributeEventAdmissionController
+import spock.lang.Specification
+
+import static org.openremote.model.attribute.AttributeWriteFailure.QUEUE_FULL
+
+class AttributeEventAdmissionControllerTest extends Specification {
+
+    def "Source limits are parsed"() {
+        when: "valid limits are parsed"
+        def limits = AttributeEventAdmissionController.parse(" RulesEngine:0:50, WebsocketClient:100 ,*:1000:90")
+
+        then: "the limits should match"
+        limits.size() == 3
+        limits[0] == new AttributeEventAdmissionController.SourceLimit("RulesEngine", 0, 50)
+        limits[1] == new AttributeEventAdmissionController.SourceLimit("WebsocketClient", 100, 100)
+        limits[2] == new AttributeEventAdmissionController.SourceLimit("*", 1000, 90)
+
+        when: "invalid limits are parsed"
+        AttributeEventAdmissionController.parse("RulesEngine:abc")
+
+        then: "an exception should be thrown"
+        thrown(IllegalArgumentException)
+
+        when: "a quota outside of the allowed range is parsed"
+        AttributeEventAdmissionController.parse("RulesEngine:0:0")
+
+        then: "an exception should be thrown"
+        thrown(IllegalArgumentException)
+    }
+
+    def "Events are shed according to source quota and rate"() {
+        given: "an admission controller"
+        def controller = new AttributeEventAdmissionController(
+            AttributeEventAdmissionController.parse("RulesEngine:0:50,WebsocketClient:1,*:0:90"), null)
+
+        when: "a rules event arrives at a lane that is half full"
+        controller.admit("RulesEngine", 50, 100)
+
+        then: "it should be rejected"
+        AssetProcessingException ex = thrown()
+        ex.reason == QUEUE_FULL
+
+        when: "a sensor event arrives at the same lane"
+        controller.admit("AgentService", 50, 100)
+
+        then: "it should be admitted"
+        noExceptionThrown()
+
+        when: "an event without a source arrives at a lane over the default quota"
+        controller.admit(null, 90, 100)
+
+        then: "it should be rejected"
+        ex = thrown()
+        ex.reason == QUEUE_FULL
+
+        when: "websocket events exceed the source rate limit"
+        controller.admit("WebsocketClient", 0, 100)
+        controller.admit("WebsocketClient", 0, 100)
+
+        then: "the second event should be rejected"
+        ex = thrown()
+        ex.reason == QUEUE_FULL
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.test.assets
+
+import org.openremote.manager.asset.AttributeEventDeadLetterStore
+import org.openremote.model.attribute.AttributeEvent
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.util.concurrent.Executor
+
+import static org.openremote.model.attribute.AttributeWriteFailure.QUEUE_FULL
+import static org.openremote.model.attribute.AttributeWriteFailure.STATE_STORAGE_FAILED
+
+class AttributeEventDeadLetterStoreTest extends Specification {
+
+    def "Dead letters are retried, parked, replayed and survive a restart"() {
+        given: "a dead letter store whose retries always fail"
+        def file = Files.createTempDirectory("deadletters").resolve("dead_letters.json")
+        def retried = []
+        def journalTasks = []
+        AttributeEventDeadLetterStore store
+        store = new AttributeEventDeadLetterStore(file, 2, 2, 0, { deadLetter ->
+            retried << deadLetter
+            store.retryFailed(deadLetter, STATE_STORAGE_FAILED)
+        }, { journalTasks << it } as Executor, null)
+
+        when: "three events are added"
+        def event1 = new AttributeEvent("asset1", "temperature", 21.5d, 1000L)
+        event1.setSource("sensor")
+        store.add(event1, QUEUE_FULL)
+        store.add(new AttributeEvent("asset2", "temperature", 22.5d, 2000L), QUEUE_FULL)
+        store.add(new AttributeEvent("asset3", "temperature", 23.5d, 3000L), QUEUE_FULL)
+
+        then: "the oldest should have been dropped"
+        store.size() == 2
+        store.getDeadLetters()*.assetId == ["asset2", "asset3"]
+
+        and: "a single journal flush should have been scheduled for them"
+        journalTasks.size() == 1
+
+        when: "the journal flush runs"
+        journalTasks.each { it.run() }
+
+        then: "they should be stored in the journal"
+        def journaled = new AttributeEventDeadLetterStore(file, 10, 2, 0, {}, { it.run() } as Executor, null)
+        journaled.load()
+        journaled.getDeadLetters()*.assetId == ["asset1", "asset2", "asset3"]
+
+        when: "the store is ticked until the retry attempts are exhausted"
+        store.tick()
+        store.tick()
+        store.tick()
+
+        then: "each dead letter should have been retried twice and then parked"
+        retried.size() == 4
+        store.getDeadLetters().every { it.attempts == 2 && it.reason == STATE_STORAGE_FAILED }
+        Files.exists(file)
+
+        when: "the file is loaded by a new store"
+        def restored = []
+        def restoredStore = new AttributeEventDeadLetterStore(file, 10, 2, 0, { restored << it }, { it.run() } as Executor, null)
+        restoredStore.load()
+
+        then: "the parked dead letters should be restored but not retried"
+        restoredStore.size() == 2
+        restoredStore.tick()
+        restored.isEmpty()
+
+        when: "the parked dead letters are replayed"
+        def replayed = restoredStore.replay()
+        restoredStore.tick()
+
+        then: "they should be retried with their original event values"
+        replayed == 2
+        restored.size() == 2
+        def event = restored[0].toEvent()
+        event.id == "asset2"
+        event.name == "temperature"
+        event.value.orElse(null) == 22.5d
+        event.timestamp == 2000L
+
+        and: "they should be kept in the store while the retries are in flight"
+        restoredStore.size() == 2
+        restoredStore.tick()
+        restored.size() == 2
+        Files.exists(file)
+
+        when: "the retries succeed"
+        restored.each { restoredStore.remove(it) }
+        restoredStore.tick()
+
+        then: "the file should have been removed as the store is now empty"
+        restoredStore.size() == 0
+        !Files.exists(file)
+    }
+}
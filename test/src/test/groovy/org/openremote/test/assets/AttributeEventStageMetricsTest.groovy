@@ -0,0 +1,79 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.test.assets
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.openremote.manager.asset.AttributeEventStageMetrics
+import org.openremote.model.attribute.AttributeEvent
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+import static org.openremote.manager.asset.AttributeEventStageMetrics.STAGE_ASSET_LOAD
+import static org.openremote.manager.asset.AttributeEventStageMetrics.OUTCOME_FAILURE
+import static org.openremote.manager.asset.AttributeEventStageMetrics.OUTCOME_SUCCESS
+import static org.openremote.manager.asset.AttributeEventStageMetrics.STAGE_INTERCEPTOR
+
+class AttributeEventStageMetricsTest extends Specification {
+
+    def "Stage durations are recorded by stage and interceptor"() {
+        given: "stage metrics and an attribute event"
+        def meterRegistry = new SimpleMeterRegistry()
+        def stageMetrics = new AttributeEventStageMetrics(meterRegistry)
+        def event = new AttributeEvent("asset1", "temperature", 21.5d)
+
+        when: "stages are timed"
+        def stage = stageMetrics.start(STAGE_ASSET_LOAD, event)
+        Thread.sleep(10)
+        stage.succeeded()
+        stageMetrics.stop(stage)
+        stage = stageMetrics.start(STAGE_ASSET_LOAD, event)
+        stage.succeeded()
+        stageMetrics.stop(stage)
+        stage = stageMetrics.start(STAGE_INTERCEPTOR, event)
+        stage.succeeded()
+        stageMetrics.stop(stage, "GatewayService")
+        stage = stageMetrics.start(STAGE_INTERCEPTOR, event)
+        stage.succeeded()
+        stageMetrics.stop(stage, "AgentService")
+
+        then: "a timer should exist for each stage and interceptor"
+        def assetLoadTimer = meterRegistry.get("or.attributes.stage").tags("stage", STAGE_ASSET_LOAD, "interceptor", "none", "outcome", OUTCOME_SUCCESS).timer()
+        assetLoadTimer.count() == 2
+        assetLoadTimer.totalTime(TimeUnit.MILLISECONDS) >= 10
+        meterRegistry.get("or.attributes.stage").tags("stage", STAGE_INTERCEPTOR, "interceptor", "GatewayService", "outcome", OUTCOME_SUCCESS).timer().count() == 1
+        meterRegistry.get("or.attributes.stage").tags("stage", STAGE_INTERCEPTOR, "interceptor", "AgentService", "outcome", OUTCOME_SUCCESS).timer().count() == 1
+
+        when: "a stage fails and is stopped more than once"
+        stage = stageMetrics.start(STAGE_ASSET_LOAD, event)
+        stageMetrics.stop(stage)
+        stageMetrics.stop(stage)
+
+        then: "it should be recorded once as a failure"
+        meterRegistry.get("or.attributes.stage").tags("stage", STAGE_ASSET_LOAD, "interceptor", "none", "outcome", OUTCOME_FAILURE).timer().count() == 1
+        assetLoadTimer.count() == 2
+
+        when: "stages are timed without a meter registry"
+        stageMetrics = new AttributeEventStageMetrics(null)
+        stageMetrics.stop(stageMetrics.start(STAGE_ASSET_LOAD, event))
+
+        then: "nothing should fail"
+        noExceptionThrown()
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.test.assets
+
+import org.openremote.manager.datapoint.DatapointQueryCache
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.datapoint.ValueDatapoint
+import org.openremote.model.datapoint.query.AssetDatapointIntervalQuery
+import org.openremote.model.datapoint.query.AssetDatapointLTTBQuery
+import org.openremote.model.datapoint.query.AssetDatapointQuery
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+import java.time.ZoneId
+import java.util.function.LongSupplier
+
+import static org.openremote.model.datapoint.query.AssetDatapointIntervalQuery.Formula.AVG
+import static org.openremote.model.datapoint.query.AssetDatapointIntervalQuery.Formula.DIFFERENCE
+
+class DatapointQueryCacheTest extends Specification {
+
+    static LocalDateTime time(String time) {
+        LocalDateTime.parse("2026-01-01T" + time)
+    }
+
+    static long millis(String time) {
+        time(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+    }
+
+    def "Closed buckets of interval queries should be cached and the rest of the range queried"() {
+        given: "a cache and a query function that records the queried ranges"
+        def now = millis("05:20")
+        def cache = new DatapointQueryCache(1000, 0, 600000, { now } as LongSupplier, null)
+        def ref = new AttributeRef("asset1", "power")
+        def queries = []
+        def queryFunction = { AssetDatapointQuery query ->
+            queries << [query.fromTime, query.toTime]
+            [new ValueDatapoint<>(0, queries.size())]
+        }
+        def query = new AssetDatapointIntervalQuery(time("00:30"), time("06:00"), "1 hour", AVG, false)
+
+        when: "the query is run"
+        def result = cache.query(ref, query, queryFunction)
+
+        then: "the partial first bucket, the closed buckets and the tail should be queried"
+        queries == [
+            [time("00:30"), time("00:59:59.999999")],
+            [time("01:00"), time("04:59:59.999999")],
+            [time("05:00"), time("06:00")]
+        ]
+        result.collect { it.value } == [1, 2, 3]
+        cache.size() == 1
+
+        when: "the query is run again"
+        queries.clear()
+        result = cache.query(ref, query, queryFunction)
+
+        then: "the closed buckets should come from the cache"
+        queries == [[time("00:30"), time("00:59:59.999999")], [time("05:00"), time("06:00")]]
+        result.collect { it.value } == [1, 2, 2]
+
+        when: "a datapoint outside of the closed buckets is written"
+        cache.invalidate(ref, millis("05:10"), millis("05:10"))
+
+        then: "the entry should be kept"
+        cache.size() == 1
+
+        when: "a datapoint is written into the closed buckets"
+        cache.invalidate(ref, millis("02:00"), millis("02:00"))
+
+        then: "the entry should be evicted"
+        cache.size() == 0
+        cache.getDatapoints() == 0
+
+        when: "the query is run again and datapoints before the closed buckets are purged"
+        cache.query(ref, query, queryFunction)
+        cache.invalidateBefore(millis("00:45"))
+
+        then: "the entry should be kept"
+        cache.size() == 1
+
+        when: "datapoints of the closed buckets are purged"
+        cache.invalidateBefore(millis("01:30"))
+
+        then: "the entry should be evicted"
+        cache.size() == 0
+
+        and: "queries that cannot be split should not be answered"
+        cache.query(ref, new AssetDatapointIntervalQuery(time("00:30"), time("06:00"), "1 hour", DIFFERENCE, false), queryFunction) == null
+        cache.query(ref, new AssetDatapointIntervalQuery(time("00:30"), time("06:00"), "1 hour 30 minutes", AVG, false), queryFunction) == null
+        cache.query(ref, new AssetDatapointIntervalQuery(time("00:30"), time("01:30"), "1 hour", AVG, false), queryFunction) == null
+    }
+
+    def "Closed buckets of LTTB queries should be downsampled separately and cached"() {
+        given: "a cache and a query function that records the queried ranges and points"
+        def now = millis("12:00:10")
+        def cache = new DatapointQueryCache(1000, 0, 600000, { now } as LongSupplier, null)
+        def ref = new AttributeRef("asset1", "power")
+        def queries = []
+        def queryFunction = { AssetDatapointLTTBQuery query ->
+            queries << [query.fromTime, query.toTime, query.amountOfPoints]
+            [new ValueDatapoint<>(0, queries.size())]
+        }
+        def query = new AssetDatapointLTTBQuery(time("00:00:30"), LocalDateTime.parse("2026-01-02T00:00:30"), 100)
+
+        when: "the query is run twice with buckets of 864 seconds"
+        cache.query(ref, query, queryFunction)
+        now = millis("12:00:20")
+        cache.query(ref, query, queryFunction)
+
+        then: "the closed buckets should only be queried once and the total amount of points kept"
+        queries == [
+            [time("00:00:30"), time("00:14:23.999999"), 3],
+            [time("00:14:24"), time("11:59:59.999999"), 94],
+            [time("12:00"), LocalDateTime.parse("2026-01-02T00:00:30"), 3],
+            [time("00:00:30"), time("00:14:23.999999"), 3],
+            [time("12:00"), LocalDateTime.parse("2026-01-02T00:00:30"), 3]
+        ]
+
+        and: "queries of few points should not be answered"
+        cache.query(ref, new AssetDatapointLTTBQuery(time("00:00"), time("12:00"), 10), queryFunction) == null
+    }
+
+    def "The least recently used entries should be evicted when the cache is full"() {
+        given: "a cache of three datapoints"
+        def cache = new DatapointQueryCache(3, 0, 600000, { millis("12:00") } as LongSupplier, null)
+        def refs = (1..3).collect { new AttributeRef("asset1", "attribute${it}") }
+        def queryFunction = { AssetDatapointQuery query -> [new ValueDatapoint<>(0, 1), new ValueDatapoint<>(1, 2)] }
+        def query = new AssetDatapointIntervalQuery(time("00:00"), time("06:00"), "1 hour", AVG, false)
+
+        when: "the closed buckets of two attributes are cached"
+        cache.query(refs[0], query, queryFunction)
+        cache.query(refs[1], query, queryFunction)
+
+        then: "only the most recent entry should be kept"
+        cache.size() == 1
+        cache.getDatapoints() == 2
+
+        when: "an entry larger than the cache is queried"
+        cache.query(refs[2], query, { [new ValueDatapoint<>(0, 1)] * 4 })
+
+        then: "it should not be cached"
+        cache.size() == 1
+    }
+
+    def "Buckets that are not settled, invalidated while queried or expired should not be cached"() {
+        given: "a cache that settles buckets after 30 minutes and expires them after 10 minutes"
+        def now = millis("05:00")
+        def cache = new DatapointQueryCache(1000, 30 * 60000, 600000, { now } as LongSupplier, null)
+        def ref = new AttributeRef("asset1", "power")
+        def queries = []
+        def queryFunction = { AssetDatapointQuery query ->
+            queries << [query.fromTime, query.toTime]
+            [new ValueDatapoint<>(0, queries.size())]
+        }
+        def query = new AssetDatapointIntervalQuery(time("00:00"), time("06:00"), "1 hour", AVG, false)
+
+        when: "the query is run"
+        cache.query(ref, query, queryFunction)
+
+        then: "the bucket that ended within the settle time should not be closed"
+        queries == [[time("00:00"), time("03:59:59.999999")], [time("04:00"), time("06:00")]]
+        cache.size() == 1
+
+        when: "a datapoint is written within the settle time"
+        cache.invalidate(ref, millis("04:45"), millis("04:45"))
+
+        then: "the entry should be kept"
+        cache.size() == 1
+
+        when: "a datapoint is written into the closed buckets"
+        cache.invalidate(ref, millis("02:00"), millis("02:00"))
+
+        then: "the entry should be evicted"
+        cache.size() == 0
+
+        when: "a datapoint is written into the closed buckets while they are queried"
+        queries.clear()
+        cache.query(ref, query) { AssetDatapointQuery q ->
+            if (queries.isEmpty()) {
+                cache.invalidate(ref, millis("02:00"), millis("02:00"))
+            }
+            queryFunction(q)
+        }
+
+        then: "the closed buckets should not be cached"
+        queries == [[time("00:00"), time("03:59:59.999999")], [time("04:00"), time("06:00")]]
+        cache.size() == 0
+
+        when: "the query is run again"
+        queries.clear()
+        cache.query(ref, query, queryFunction)
+
+        then: "the closed buckets should be cached"
+        queries.size() == 2
+        cache.size() == 1
+
+        when: "the entry expires"
+        now += 600000
+        queries.clear()
+        cache.query(ref, query, queryFunction)
+
+        then: "the closed buckets should be queried again"
+        queries == [[time("00:00"), time("03:59:59.999999")], [time("04:00"), time("06:00")]]
+        cache.size() == 1
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.test.assets
+
+import org.openremote.manager.datapoint.RecentDatapointCache
+import org.openremote.model.attribute.AttributeRef
+import spock.lang.Specification
+
+class RecentDatapointCacheTest extends Specification {
+
+    def "Recent datapoints should only be returned when the cache covers the query"() {
+        given: "a cache of at most 100 datapoints per attribute"
+        def cache = new RecentDatapointCache(100, 1024 * 1024, null)
+        def ref = new AttributeRef("asset1", "power")
+
+        when: "datapoints are added every second from 1000 seconds"
+        (0..<80).each { cache.add(ref, (1000 + it) * 1000L, it * 1d) }
+
+        then: "ranges within the added datapoints should be returned newest first"
+        cache.getDatapoints(ref, 1000000, 1002000).collect { it.value } == [2d, 1d, 0d]
+        cache.getDatapoints(ref, 1070000, 2000000).size() == 10
+        cache.getDatapoints(ref, 1070500, 1070500).isEmpty()
+
+        and: "ranges starting before the first datapoint should not be covered"
+        cache.getDatapoints(ref, 999999, 1002000) == null
+        cache.getDatapoints(new AttributeRef("asset1", "other"), 1000000, 1002000) == null
+
+        and: "the nearest datapoint should be returned when covered"
+        cache.getNearestDatapoint(ref, 1005500).timestamp == 1005000
+        cache.getNearestDatapoint(ref, 999000) == null
+
+        when: "more datapoints than fit in the buffer are added"
+        (80..<150).each { cache.add(ref, (1000 + it) * 1000L, it * 1d) }
+
+        then: "only the range of the retained datapoints should be covered"
+        cache.getDatapoints(ref, 1040000, 1041000) == null
+        cache.getDatapoints(ref, 1050000, 1051000).collect { it.value } == [51d, 50d]
+        cache.getDatapoints(ref, 1050000, 2000000).size() == 100
+
+        when: "a datapoint older than the latest datapoint is added"
+        cache.add(ref, 1120500, 999d)
+
+        then: "ranges including that datapoint should not be covered anymore"
+        cache.getDatapoints(ref, 1120000, 2000000) == null
+        cache.getDatapoints(ref, 1120501, 2000000).size() == 29
+        cache.getNearestDatapoint(ref, 1125000).value == 125d
+        cache.getNearestDatapoint(ref, 1120900) == null
+
+        when: "a datapoint with the same timestamp as the latest datapoint and a null value is added"
+        cache.add(ref, 1149000, null)
+
+        then: "the latest datapoint should be replaced"
+        cache.getDatapoints(ref, 1148000, 2000000).collect { it.value } == [null, 148d]
+
+        when: "the attribute is invalidated"
+        cache.invalidate(ref)
+
+        then: "nothing should be covered"
+        cache.getDatapoints(ref, 1148000, 2000000) == null
+        cache.getBytes() == 0
+    }
+
+    def "The least recently used attributes should be evicted when the memory budget is exceeded"() {
+        given: "a cache with room for two small buffers"
+        def cache = new RecentDatapointCache(1000, 2500, null)
+        def refs = (1..3).collect { new AttributeRef("asset1", "attribute${it}") }
+
+        when: "datapoints of two attributes are added and the first is queried"
+        cache.add(refs[0], 1000, 1d)
+        cache.add(refs[1], 1000, 2d)
+        cache.getDatapoints(refs[0], 1000, 1000)
+
+        and: "a datapoint of a third attribute is added"
+        cache.add(refs[2], 1000, 3d)
+
+        then: "the least recently used attribute should be evicted"
+        cache.size() == 2
+        cache.getDatapoints(refs[0], 1000, 1000).collect { it.value } == [1d]
+        cache.getDatapoints(refs[1], 1000, 1000) == null
+        cache.getDatapoints(refs[2], 1000, 1000).collect { it.value } == [3d]
+        cache.getBytes() <= 2500
+
+        when: "one attribute grows beyond the budget"
+        (1..200).each { cache.add(refs[2], 1000 + it, it * 1d) }
+
+        then: "the other attribute should be evicted"
+        cache.size() == 1
+        cache.getDatapoints(refs[2], 1000, 2000).size() == 201
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.test.model
+
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.event.TriggeredEventSubscription
+import org.openremote.model.event.shared.SharedEvent
+import org.openremote.model.util.ValueUtil
+import spock.lang.Specification
+
+class AttributeEventSerializationTest extends Specification {
+
+    def "Attribute event JSON is cached and invalidated when the event changes"() {
+        given: "an attribute event"
+        def event = new AttributeEvent("asset1", "temperature", [19.5d, 20.5d] as Double[], 1000L)
+        event.setRealm("master")
+
+        when: "the value JSON is retrieved"
+        def valueJSON = event.getValueJSON()
+
+        then: "it should match the value serialized directly and be reused"
+        valueJSON == ValueUtil.asJSON(event.getValue().orElse(null)).orElse(null)
+        event.getValueJSON().is(valueJSON)
+
+        when: "the event is serialized on its own and within a triggered event subscription"
+        def json = ValueUtil.asJSON(event).orElse(null)
+        def triggeredJSON = ValueUtil.asJSON(new TriggeredEventSubscription<>([event], "sub1")).orElse(null)
+
+        then: "the event JSON should be identical in both and deserialize to the same event"
+        triggeredJSON == '{"events":[' + json + '],"subscriptionId":"sub1"}'
+        def parsed = ValueUtil.parse(json, SharedEvent.class).orElse(null) as AttributeEvent
+        parsed.id == "asset1"
+        parsed.name == "temperature"
+        parsed.realm == "master"
+        parsed.timestamp == 1000L
+        parsed.value.orElse(null) == [19.5d, 20.5d] as Object[]
+
+        when: "the value and timestamp are changed"
+        event.setValue(21.5d)
+        event.setTimestamp(2000L)
+        parsed = ValueUtil.parse(ValueUtil.asJSON(event).orElse(null), SharedEvent.class).orElse(null) as AttributeEvent
+
+        then: "the cached JSON should have been regenerated"
+        event.getValueJSON() == "21.5"
+        parsed.value.orElse(null) == 21.5d
+        parsed.timestamp == 2000L
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.test.model
+
+import org.openremote.model.asset.Asset
+import org.openremote.model.attribute.Attribute
+import org.openremote.model.attribute.MetaItem
+import org.openremote.model.validation.AttributeValueValidator
+import org.openremote.model.value.MetaItemType
+import org.openremote.model.value.ValueConstraint
+import org.openremote.model.value.ValueType
+import spock.lang.Specification
+
+import java.time.Instant
+
+class AttributeValueValidatorTest extends Specification {
+
+    def "Attribute value validators are compiled from descriptors and constraints meta"() {
+        given: "the current time"
+        def now = Instant.now()
+
+        when: "a validator is compiled for an attribute without any constraints"
+        def validator = AttributeValueValidator.compile(null, ValueType.NUMBER, new Attribute<>("temperature", ValueType.NUMBER))
+
+        then: "validation should be skipped"
+        validator.isEmpty()
+        validator.is(AttributeValueValidator.NONE)
+        validator.isValid(null, now)
+
+        when: "a validator is compiled for an attribute with a constrained value type"
+        validator = AttributeValueValidator.compile(null, ValueType.POSITIVE_INTEGER, new Attribute<>("count", ValueType.POSITIVE_INTEGER))
+
+        then: "the value type constraints should be applied"
+        !validator.isEmpty()
+        validator.isValid(1, now)
+        !validator.isValid(-1, now)
+
+        when: "a validator is compiled for an array attribute with a constrained value type"
+        validator = AttributeValueValidator.compile(null, ValueType.POSITIVE_INTEGER.asArray(), new Attribute<>("counts", ValueType.POSITIVE_INTEGER.asArray()))
+
+        then: "the value type constraints should be applied to each element"
+        validator.isValid([1, 2] as Integer[], now)
+        !validator.isValid([1, -2] as Integer[], now)
+
+        when: "a validator is compiled for an attribute with a pattern constraint meta item"
+        def pattern = new ValueConstraint.Pattern("^[a-z]+\$")
+        def attribute = new Attribute<>("code", ValueType.TEXT)
+            .addMeta(new MetaItem<>(MetaItemType.CONSTRAINTS, ValueConstraint.constraints(pattern)))
+        validator = AttributeValueValidator.compile(null, ValueType.TEXT, attribute)
+
+        then: "the pattern should be applied and only compiled once"
+        validator.isValid("abc", now)
+        def compiledPattern = pattern.compiledPattern
+        compiledPattern != null
+        !validator.isValid("ABC", now)
+        pattern.compiledPattern.is(compiledPattern)
+
+        when: "a validator is compiled for an attribute whose type does not match its descriptor"
+        validator = AttributeValueValidator.compile(Asset.NOTES, ValueType.NUMBER, new Attribute<>(Asset.NOTES.name, ValueType.NUMBER))
+
+        then: "every value should be rejected"
+        !validator.isEmpty()
+        !validator.isValid(1d, now)
+
+        when: "a validator is compiled for an attribute that matches its descriptor"
+        validator = AttributeValueValidator.compile(Asset.NOTES, Asset.NOTES.type, new Attribute<>(Asset.NOTES))
+
+        then: "validation should be skipped"
+        validator.isEmpty()
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2026, OpenRemote Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ */
+package org.openremote.test.model
+
+import org.openremote.model.datapoint.DatapointBinaryEncoding
+import org.openremote.model.datapoint.ValueDatapoint
+import org.openremote.model.util.ValueUtil
+import spock.lang.Specification
+
+class DatapointBinaryEncodingTest extends Specification {
+
+    def "Datapoints should be encoded and decoded without loss"() {
+        given: "a regular series with some irregular timestamps, large values, booleans and nulls"
+        def random = new Random(1)
+        def timestamp = 1767225600000L
+        def value = 20d
+        def datapoints = (0..<10000).collect { i ->
+            timestamp += (i % 10 == 0 ? random.nextInt(100000) - 5000 : 60000)
+            if (i % 7 == 0) {
+                value += random.nextGaussian()
+            }
+            def datapointValue = i % 50 == 0 ? null : i % 33 == 0 ? true : i == 5 ? Double.MAX_VALUE : value
+            new ValueDatapoint<>(timestamp, datapointValue)
+        } as ValueDatapoint<?>[]
+
+        when: "the datapoints are encoded"
+        def outputStream = new ByteArrayOutputStream()
+        DatapointBinaryEncoding.encode(datapoints, outputStream)
+
+        and: "decoded again"
+        def decoded = DatapointBinaryEncoding.decode(new ByteArrayInputStream(outputStream.toByteArray()))
+
+        then: "the decoded datapoints should match"
+        decoded.size() == datapoints.length
+        decoded.eachWithIndex { datapoint, i ->
+            def expected = datapoints[i].value instanceof Boolean ? (datapoints[i].value ? 1d : 0d) : datapoints[i].value
+            assert datapoint.timestamp == datapoints[i].timestamp
+            assert datapoint.value == expected
+        }
+
+        and: "the encoding should be much smaller than JSON"
+        outputStream.size() * 5 < ValueUtil.asJSON(datapoints).orElseThrow().length()
+
+        when: "an empty series is encoded and decoded"
+        outputStream = new ByteArrayOutputStream()
+        DatapointBinaryEncoding.encode(new ValueDatapoint<?>[0], outputStream)
+
+        then: "the decoded series should be empty"
+        DatapointBinaryEncoding.decode(new ByteArrayInputStream(outputStream.toByteArray())).isEmpty()
+    }
+
+    def "Only number and boolean datapoints should be encodable"() {
+        expect:
+        DatapointBinaryEncoding.isEncodable([new ValueDatapoint<>(1L, 1d), new ValueDatapoint<>(2L, false), new ValueDatapoint<>(3L, null)] as ValueDatapoint<?>[])
+        !DatapointBinaryEncoding.isEncodable([new ValueDatapoint<>(1L, 1d), new ValueDatapoint<>(2L, "text")] as ValueDatapoint<?>[])
+
+        when: "a text datapoint is encoded"
+        DatapointBinaryEncoding.encode([new ValueDatapoint<>(1L, "text")] as ValueDatapoint<?>[], new ByteArrayOutputStream())
+
+        then: "it should fail"
+        thrown(IllegalArgumentException)
+    }
+}